@@ -0,0 +1,73 @@
+#!/usr/bin/env bash
+#
+# Edit-compile benchmark of the pattern index processor in a Gradle build.
+#
+# Generates a synthetic project with N annotated classes, compiles it once, makes a one-line edit in a single
+# @DDD.Entity class and measures compileJava. It is measured twice: with the processor in the isolating mode
+# (-Asdannotations.index.incremental=isolating, per type shards only) and in the default aggregating mode,
+# where Gradle recompiles everything, because the vlfsoft.* annotations have SOURCE retention.
+#
+# Usage: scripts/edit-compile-benchmark.sh <path to sdannotations jar> [classes, default 10000] [runs, default 3]
+#
+set -euo pipefail
+
+JAR=$(cd "$(dirname "$1")" && pwd)/$(basename "$1")
+CLASSES=${2:-10000}
+RUNS=${3:-3}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+generate() {
+    local dir=$1 mode=$2
+    mkdir -p "$dir"
+    cat > "$dir/settings.gradle" <<GRADLE
+rootProject.name = 'edit-compile-benchmark'
+GRADLE
+    cat > "$dir/build.gradle" <<GRADLE
+apply plugin: 'java'
+dependencies {
+    compileOnly files('$JAR')
+    annotationProcessor files('$JAR')
+}
+compileJava.options.compilerArgs += ['-Asdannotations.index.incremental=$mode']
+GRADLE
+    local i package
+    for ((i = 0; i < CLASSES; i++)); do
+        package=bench.p$((i % 100))
+        mkdir -p "$dir/src/main/java/${package//.//}"
+        cat > "$dir/src/main/java/${package//.//}/Entity$i.java" <<JAVA
+package $package;
+
+import vlfsoft.patterns.enterprise.ddd.DDD;
+
+@DDD.Entity
+public class Entity$i {
+    @DDD.Entity.Id
+    private long id;
+
+    public long id() {
+        return id;
+    }
+}
+JAVA
+    done
+}
+
+measure() {
+    local dir=$1 label=$2 run start end
+    (cd "$dir" && gradle -q --offline compileJava)
+    for ((run = 0; run < RUNS; run++)); do
+        sed -i "s/return id.*;/return id + $run + 1;/" "$dir/src/main/java/bench/p0/Entity0.java"
+        start=$(date +%s%N)
+        (cd "$dir" && gradle -q --offline compileJava)
+        end=$(date +%s%N)
+        echo "$label run $run: $(((end - start) / 1000000)) ms"
+    done
+}
+
+generate "$WORK/isolating" isolating
+generate "$WORK/aggregating" aggregating
+
+echo "$CLASSES classes, one-line edit in bench.p0.Entity0"
+measure "$WORK/isolating" "isolating"
+measure "$WORK/aggregating" "aggregating"
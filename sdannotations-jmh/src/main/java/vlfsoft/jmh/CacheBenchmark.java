@@ -0,0 +1,78 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import vlfsoft.runtime.cache.Cached;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-heavy pricing service: the generated {@code @Cached} subclass ({@link CacheBenchmark_PricingCached}, W-TinyLFU of 1000 entries)
+ * against the direct backend call and an unbounded {@link ConcurrentHashMap} memo. The keys follow a skewed (log-uniform)
+ * distribution over 100k symbols, the backend call costs about 1 us. Run with -t 1 / 4 / 16.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheBenchmark {
+
+    private static final int KEYS = 1 << 16;
+
+    private int[] keys;
+    private Pricing direct;
+    private CacheBenchmark_PricingCached cached;
+    private ConcurrentHashMap<Integer, Double> memo;
+
+    public static class Pricing {
+        @Cached(maximumSize = 1000)
+        public double price(int symbol) {
+            Blackhole.consumeCPU(1000);
+            return symbol * 0.01;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) keys[i] = (int) Math.pow(100_000, random.nextDouble());
+        direct = new Pricing();
+        cached = new CacheBenchmark_PricingCached();
+        memo = new ConcurrentHashMap<>();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.out.println(cached.caches().get(0).stats());
+    }
+
+    private int next(Cursor cursor) {
+        return keys[cursor.next++ & KEYS - 1];
+    }
+
+    @Benchmark
+    public double direct(Cursor cursor) {
+        return direct.price(next(cursor));
+    }
+
+    @Benchmark
+    public double cached(Cursor cursor) {
+        return cached.price(next(cursor));
+    }
+
+    @Benchmark
+    public double unboundedMemo(Cursor cursor) {
+        return memo.computeIfAbsent(next(cursor), direct::price);
+    }
+
+}
@@ -0,0 +1,61 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.runtime.breaker.Breaker;
+import vlfsoft.runtime.breaker.CircuitBreaker;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of a closed circuit breaker: the generated {@link CircuitBreakerBenchmark_ServiceGuarded} (count and time sliding windows)
+ * against the direct call. Most of the cost is the two {@link System#nanoTime()} of the timing and the lock of the window;
+ * gc.alloc.rate.norm must be 0.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CircuitBreakerBenchmark {
+
+    public static class Service {
+        public int compute(int x) {
+            return x * 31 + 7;
+        }
+
+        @Breaker(windowType = CircuitBreaker.WindowType.COUNT, windowSize = 100)
+        public int countWindow(int x) {
+            return x * 31 + 7;
+        }
+
+        @Breaker(windowType = CircuitBreaker.WindowType.TIME, windowSize = 60)
+        public int timeWindow(int x) {
+            return x * 31 + 7;
+        }
+    }
+
+    private int x;
+    private Service service;
+
+    @Setup
+    public void setUp() {
+        service = new CircuitBreakerBenchmark_ServiceGuarded();
+    }
+
+    @Benchmark
+    public int direct() {
+        return service.compute(x++);
+    }
+
+    @Benchmark
+    public int countWindow() {
+        return service.countWindow(x++);
+    }
+
+    @Benchmark
+    public int timeWindow() {
+        return service.timeWindow(x++);
+    }
+
+}
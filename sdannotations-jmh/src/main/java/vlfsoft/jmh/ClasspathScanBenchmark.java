@@ -0,0 +1,66 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.index.PatternIndex;
+import vlfsoft.scanner.ClasspathScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full scan of a synthetic classpath by {@link ClasspathScanner}: the codebase is split into {@link #jars} jars,
+ * the entries are stored or deflated, the scan runs on a {@link ForkJoinPool} of the given parallelism.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClasspathScanBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    @Param({"800"})
+    public int jars;
+
+    @Param({"false", "true"})
+    public boolean stored;
+
+    /**
+     * 0 - {@link Runtime#availableProcessors()}
+     */
+    @Param({"1", "0"})
+    public int parallelism;
+
+    private List<File> classpath;
+    private File directory;
+    private ForkJoinPool pool;
+    private ClasspathScanner scanner;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("sdannotations-classpath").toFile();
+        classpath = SyntheticClassFiles.writeJars(new SyntheticCodebase(size), directory, jars, stored);
+        pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        scanner = new ClasspathScanner(pool);
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+        for (File jar : classpath) jar.delete();
+        directory.delete();
+    }
+
+    @Benchmark
+    public PatternIndex scan() {
+        return scanner.scan(classpath);
+    }
+
+}
@@ -0,0 +1,101 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexReader;
+import vlfsoft.processor.RegistryCompiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady state cost of the two questions, that the tools ask, for every discovery strategy:
+ * <ul>
+ * <li> whereIs* - "where is pattern X applied" (all the usages of {@code @GOF.Proxy.Virtual})
+ * <li> patternsOf* - "which patterns does element E carry"
+ * </ul>
+ * Strategies: sourceScan (lexical scan of the sources, the lower bound of source parsing),
+ * index (loaded {@link PatternIndex}), registry (generated PatternRegistry, element -> patterns only).
+ * <p>
+ * Run with {@code -prof gc} to get the allocation rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiscoveryBenchmark {
+
+    static final String TARGET = "vlfsoft.patterns.GOF.Proxy.Virtual";
+
+    private static final int KEYS = 1024;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SyntheticCodebase codebase;
+    private PatternIndex index;
+    private MethodHandle registryPatternsOf;
+    private final SourceScanner scanner = new SourceScanner();
+    private final List<String> scanned = new ArrayList<>();
+    private String[] keys;
+    private int[] keySources;
+    private int next;
+
+    @Setup
+    public void setUp() throws Throwable {
+        codebase = new SyntheticCodebase(size);
+        index = PatternIndexReader.read(new ByteArrayInputStream(codebase.indexBytes));
+        Class<?> registry = RegistryCompiler.load(RegistryCompiler.compile(index));
+        registryPatternsOf = MethodHandles.publicLookup().findStatic(registry, "patternsOf", MethodType.methodType(int[].class, String.class));
+        Random random = new Random(0);
+        keys = new String[KEYS];
+        keySources = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keySources[i] = random.nextInt(size);
+            keys[i] = codebase.classes[keySources[i]];
+        }
+    }
+
+    @Benchmark
+    public int whereIsSourceScan() {
+        int count = 0;
+        for (String source : codebase.sources) {
+            scanned.clear();
+            scanner.scan(source, scanned);
+            if (scanned.contains(TARGET)) count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public List<String> whereIsIndex() {
+        return index.elementsAnnotatedWith(TARGET);
+    }
+
+    @Benchmark
+    public List<String> patternsOfSourceScan() {
+        scanned.clear();
+        scanner.scan(codebase.sources[keySources[next++ & (KEYS - 1)]], scanned);
+        return scanned;
+    }
+
+    @Benchmark
+    public int[] patternsOfIndex() {
+        return index.annotationsOf(index.elementId(keys[next++ & (KEYS - 1)]));
+    }
+
+    @Benchmark
+    public int[] patternsOfRegistry() throws Throwable {
+        return (int[]) registryPatternsOf.invokeExact(keys[next++ & (KEYS - 1)]);
+    }
+
+}
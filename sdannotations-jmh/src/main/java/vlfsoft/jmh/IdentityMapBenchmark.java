@@ -0,0 +1,115 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.patterns.enterprise.ddd.DDD;
+import vlfsoft.patterns.enterprise.peaa.PEAA;
+import vlfsoft.runtime.identity.IdentityScope;
+
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated {@code @PEAA.IdentityMap} ({@link IdentityMapBenchmark_EntityIdentityMap}) against {@code ConcurrentHashMap<Long, Object>}.
+ * The ids are spread over the long range, so every boxing allocates.
+ * <ul>
+ * <li> get - lookup of a present id, shared map, run with -t 1 / 4 / 16 / 64.
+ * <li> unitOfWork - a unit of work: open a scope, register 64 loaded entities, look each of them up twice, close.
+ * </ul>
+ * Compare ns/op and gc.alloc.rate.norm.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdentityMapBenchmark {
+
+    private static final int UNIT_OF_WORK = 64;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private long[] ids;
+    private Entity[] entities;
+    private IdentityMapBenchmark_EntityIdentityMap identityMap;
+    private ConcurrentHashMap<Long, Object> concurrentHashMap;
+
+    @PEAA.IdentityMap
+    public static class Entity {
+        @DDD.Entity.Id
+        final long id;
+
+        Entity(long id) {
+            this.id = id;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ids = new long[size];
+        entities = new Entity[size];
+        identityMap = new IdentityMapBenchmark_EntityIdentityMap();
+        concurrentHashMap = new ConcurrentHashMap<>();
+        for (int i = 0; i < size; i++) {
+            ids[i] = random.nextLong() >>> 1;
+            entities[i] = new Entity(ids[i]);
+            identityMap.put(entities[i]);
+            concurrentHashMap.put(ids[i], entities[i]);
+        }
+    }
+
+    private int next(Cursor cursor) {
+        int i = cursor.next;
+        cursor.next = i + 1 == size ? 0 : i + 1;
+        return i;
+    }
+
+    @Benchmark
+    public Object getIdentityMap(Cursor cursor) {
+        return identityMap.get(ids[next(cursor)]);
+    }
+
+    @Benchmark
+    public Object getConcurrentHashMap(Cursor cursor) {
+        return concurrentHashMap.get(ids[next(cursor)]);
+    }
+
+    @Benchmark
+    public int unitOfWorkIdentityMap(Cursor cursor) {
+        int found = 0;
+        try (IdentityScope scope = new IdentityScope()) {
+            IdentityMapBenchmark_EntityIdentityMap map = IdentityMapBenchmark_EntityIdentityMap.of(scope);
+            int first = next(cursor);
+            for (int i = 0; i < UNIT_OF_WORK; i++) map.put(entities[(first + i) % size]);
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < UNIT_OF_WORK; i++) {
+                    if (map.get(ids[(first + i) % size]) != null) found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public int unitOfWorkConcurrentHashMap(Cursor cursor) {
+        int found = 0;
+        ConcurrentHashMap<Long, Object> map = new ConcurrentHashMap<>();
+        int first = next(cursor);
+        for (int i = 0; i < UNIT_OF_WORK; i++) map.putIfAbsent(ids[(first + i) % size], entities[(first + i) % size]);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < UNIT_OF_WORK; i++) {
+                if (map.get(ids[(first + i) % size]) != null) found++;
+            }
+        }
+        return found;
+    }
+
+}
@@ -0,0 +1,98 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.patterns.GOF;
+import vlfsoft.patterns.enterprise.peaa.PEAA;
+
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Call overhead of a loaded virtual proxy: the generated {@code @GOF.Proxy.Virtual} proxies
+ * ({@link LazyLoadBenchmark_ServiceVirtualProxy} of an interface, {@link LazyLoadBenchmark_AccountVirtualProxy} - a ghost subclass)
+ * against the direct call and a lazy {@link Proxy} (the usual InvocationHandler, that loads the target and calls Method.invoke).
+ * Compare ns/op and gc.alloc.rate.norm (the JDK proxy boxes the arguments and the result).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LazyLoadBenchmark {
+
+    @GOF.Proxy.Virtual
+    public interface Service {
+        int compute(int x);
+    }
+
+    public static class ServiceImpl implements Service {
+        @Override
+        public int compute(int x) {
+            return x * 31 + 7;
+        }
+    }
+
+    @PEAA.LazyLoad
+    public static class Account {
+        long balance;
+
+        public long deposit(int amount) {
+            return balance += amount;
+        }
+    }
+
+    private int x;
+    private Service direct;
+    private Service generated;
+    private Service jdk;
+    private Account account;
+    private Account ghost;
+
+    @Setup
+    public void setUp() {
+        direct = new ServiceImpl();
+        generated = new LazyLoadBenchmark_ServiceVirtualProxy(ServiceImpl::new);
+        jdk = newJdkProxy();
+        account = new Account();
+        ghost = new LazyLoadBenchmark_AccountVirtualProxy(Account::new);
+        // Loaded before the measurement, only the call overhead is compared.
+        generated.compute(0);
+        jdk.compute(0);
+        ghost.deposit(0);
+    }
+
+    private static Service newJdkProxy() {
+        Service[] target = new Service[1];
+        return (Service) Proxy.newProxyInstance(Service.class.getClassLoader(), new Class<?>[]{Service.class}, (proxy, method, args) -> {
+            if (target[0] == null) target[0] = new ServiceImpl();
+            return method.invoke(target[0], args);
+        });
+    }
+
+    @Benchmark
+    public int direct() {
+        return direct.compute(x++);
+    }
+
+    @Benchmark
+    public int generatedProxy() {
+        return generated.compute(x++);
+    }
+
+    @Benchmark
+    public int jdkProxy() {
+        return jdk.compute(x++);
+    }
+
+    @Benchmark
+    public long directClass() {
+        return account.deposit(x++);
+    }
+
+    @Benchmark
+    public long ghostClass() {
+        return ghost.deposit(x++);
+    }
+
+}
@@ -0,0 +1,86 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import vlfsoft.patterns.Pattern;
+import vlfsoft.runtime.pool.ObjectPool;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pooled objects ({@link PoolBenchmark_PayloadPool}, generated by vlfsoft.processor.ObjectPoolProcessor) against new + GC.
+ * The thread count is set from the command line, f.e. for 1, 4, 16 and 64 threads:
+ * <pre>
+ * for t in 1 4 16 64; do java -jar target/benchmarks.jar PoolBenchmark -t $t -prof gc; done
+ * </pre>
+ * <ul>
+ * <li> allocate - new Payload per operation, the cost of the allocation, zeroing and the GC.
+ * <li> pooled - unbounded pool, the thread cache path.
+ * <li> bounded - pool of 64 objects without the thread caches: the striped shared stack only, the waits at 64+ threads.
+ * </ul>
+ * Compare ns/op with gc.alloc.rate.norm and gc.time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx1g"})
+public class PoolBenchmark {
+
+    @Param({"256", "16384"})
+    public int payloadSize;
+
+    private PoolBenchmark_PayloadPool pooled;
+    private PoolBenchmark_PayloadPool bounded;
+
+    @Pattern.ObjectPool
+    public static class Payload implements ObjectPool.Resettable {
+        static int size;
+        final byte[] bytes = new byte[size];
+        int length;
+
+        @Override
+        public void reset() {
+            length = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Payload.size = payloadSize;
+        pooled = new PoolBenchmark_PayloadPool();
+        bounded = new PoolBenchmark_PayloadPool(PoolBenchmark_PayloadPool.builder().maxSize(64).threadCacheSize(0));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pooled.close();
+        bounded.close();
+    }
+
+    @Benchmark
+    public void allocate(Blackhole blackhole) {
+        use(new Payload(), blackhole);
+    }
+
+    @Benchmark
+    public void pooled(Blackhole blackhole) {
+        Payload payload = pooled.acquire();
+        use(payload, blackhole);
+        pooled.release(payload);
+    }
+
+    @Benchmark
+    public void bounded(Blackhole blackhole) {
+        Payload payload = bounded.acquire();
+        use(payload, blackhole);
+        bounded.release(payload);
+    }
+
+    private static void use(Payload payload, Blackhole blackhole) {
+        payload.bytes[payload.length++] = 1;
+        blackhole.consume(payload);
+    }
+
+}
@@ -0,0 +1,64 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexReader;
+import vlfsoft.query.PatternQuery;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of {@link PatternQuery} conjunctions over the loaded index:
+ * <ul>
+ * <li> conjunction - two dense posting lists and a kind filter
+ * <li> rareConjunction - three posting lists with a small intersection
+ * <li> negation - a posting list minus another one
+ * <li> inside - the id fields of the types, that carry an annotation
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private PatternIndex index;
+
+    private final PatternQuery conjunction = PatternQuery.parse("@DDD.Aggregate.Root & @GOF.Builder & kind:type");
+    private final PatternQuery rareConjunction = PatternQuery.parse("@Pattern.ObjectPool & @GOF.Prototype & @GOF.Mediator");
+    private final PatternQuery negation = PatternQuery.parse("@DDD.Entity & !GOF.Builder");
+    private final PatternQuery inside = PatternQuery.parse("@DDD.Entity.Id & in:DDD.Entity");
+
+    @Setup
+    public void setUp() throws IOException {
+        index = PatternIndexReader.read(new ByteArrayInputStream(new SyntheticCodebase(size).indexBytes));
+    }
+
+    @Benchmark
+    public int[] conjunction() {
+        return conjunction.execute(index);
+    }
+
+    @Benchmark
+    public int[] rareConjunction() {
+        return rareConjunction.execute(index);
+    }
+
+    @Benchmark
+    public int[] negation() {
+        return negation.execute(index);
+    }
+
+    @Benchmark
+    public int[] inside() {
+        return inside.execute(index);
+    }
+
+}
@@ -0,0 +1,198 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.runtime.queue.RingQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Producer / consumer throughput of the {@link RingQueue}s against {@link ArrayBlockingQueue} and {@link LinkedBlockingQueue}
+ * of the same capacity: the producer threads offer, the consumer threads poll ({@code pingPong}) or drain runs of up to 64 items
+ * ({@code batch}, drainTo for the blocking queues). Without back-off, so the full and empty queue are counted apart:
+ * compare the {@code offered} and {@code taken} ops/us, {@code full} and {@code empty} are the failed attempts.
+ * The thread counts of the groups are set from the command line, spsc must stay 1,1 and mpsc - N,1:
+ * <pre>
+ * java -jar target/benchmarks.jar QueueBenchmark -p queue=spsc,ArrayBlockingQueue,LinkedBlockingQueue -tg 1,1
+ * java -jar target/benchmarks.jar QueueBenchmark -p queue=mpsc,mpmc,ArrayBlockingQueue,LinkedBlockingQueue -tg 4,1
+ * java -jar target/benchmarks.jar QueueBenchmark -p queue=mpmc,ArrayBlockingQueue,LinkedBlockingQueue -tg 4,4 -prof gc
+ * </pre>
+ * gc.alloc.rate.norm shows the node per item of LinkedBlockingQueue.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark {
+
+    private static final Integer ITEM = 1;
+    private static final int BATCH = 64;
+
+    @Param({"spsc", "mpsc", "mpmc", "ArrayBlockingQueue", "LinkedBlockingQueue"})
+    public String queue;
+
+    @Param({"1024"})
+    public int capacity;
+
+    private Channel channel;
+
+    /**
+     * The common operations of the compared queues.
+     */
+    interface Channel {
+        boolean offer(Integer item);
+
+        Integer poll();
+
+        int drain(Consumer<Integer> consumer, int limit);
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        switch (queue) {
+            case "spsc":
+                channel = ring(RingQueue.spsc(capacity));
+                break;
+            case "mpsc":
+                channel = ring(RingQueue.mpsc(capacity));
+                break;
+            case "mpmc":
+                channel = ring(RingQueue.mpmc(capacity));
+                break;
+            case "ArrayBlockingQueue":
+                channel = blocking(new ArrayBlockingQueue<>(capacity));
+                break;
+            case "LinkedBlockingQueue":
+                channel = blocking(new LinkedBlockingQueue<>(capacity));
+                break;
+            default:
+                throw new IllegalArgumentException(queue);
+        }
+    }
+
+    private static Channel ring(RingQueue<Integer> queue) {
+        return new Channel() {
+            @Override
+            public boolean offer(Integer item) {
+                return queue.offer(item);
+            }
+
+            @Override
+            public Integer poll() {
+                return queue.poll();
+            }
+
+            @Override
+            public int drain(Consumer<Integer> consumer, int limit) {
+                return queue.drain(consumer, limit);
+            }
+        };
+    }
+
+    private static Channel blocking(BlockingQueue<Integer> queue) {
+        return new Channel() {
+            // One consumer thread per drain list.
+            private final ThreadLocal<List<Integer>> lists = ThreadLocal.withInitial(() -> new ArrayList<>(BATCH));
+
+            @Override
+            public boolean offer(Integer item) {
+                return queue.offer(item);
+            }
+
+            @Override
+            public Integer poll() {
+                return queue.poll();
+            }
+
+            @Override
+            public int drain(Consumer<Integer> consumer, int limit) {
+                List<Integer> list = lists.get();
+                int n = queue.drainTo(list, limit);
+                for (int i = 0; i < n; i++) consumer.accept(list.get(i));
+                list.clear();
+                return n;
+            }
+        };
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ProducerCounters {
+        public long offered;
+        public long full;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            offered = full = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class ConsumerCounters implements Consumer<Integer> {
+        public long taken;
+        public long empty;
+        public long sum;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            taken = empty = 0;
+        }
+
+        @Override
+        public void accept(Integer item) {
+            sum += item;
+        }
+    }
+
+    @Benchmark
+    @Group("pingPong")
+    @GroupThreads(1)
+    public void offer(ProducerCounters counters) {
+        if (channel.offer(ITEM)) {
+            counters.offered++;
+        } else {
+            counters.full++;
+        }
+    }
+
+    @Benchmark
+    @Group("pingPong")
+    @GroupThreads(1)
+    public Integer poll(ConsumerCounters counters) {
+        Integer item = channel.poll();
+        if (item != null) {
+            counters.taken++;
+        } else {
+            counters.empty++;
+        }
+        return item;
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(1)
+    public void batchOffer(ProducerCounters counters) {
+        offer(counters);
+    }
+
+    @Benchmark
+    @Group("batch")
+    @GroupThreads(1)
+    public void drain(ConsumerCounters counters) {
+        int n = channel.drain(counters, BATCH);
+        if (n > 0) {
+            counters.taken += n;
+        } else {
+            counters.empty++;
+        }
+    }
+
+}
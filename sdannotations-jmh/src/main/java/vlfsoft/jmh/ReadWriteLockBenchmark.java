@@ -0,0 +1,167 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.runtime.lock.ReadMostlyLock;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Reader/writer ratios from 1:1 to 1000:1: a writer moves a point (two fields), the readers read it, a write after every ratio reads
+ * of a thread. The thread count is set from the command line, f.e. for 1 to 64 threads:
+ * <pre>
+ * for t in 1 2 4 8 16 32 64; do java -jar target/benchmarks.jar ReadWriteLockBenchmark -t $t; done
+ * </pre>
+ * <ul>
+ * <li> ReentrantReadWriteLock - every reader CASes the shared reader count.
+ * <li> StampedLock - its read lock, the shared reader count as well.
+ * <li> StampedLock-optimistic - tryOptimisticRead / validate, then the read lock.
+ * <li> ReadMostlyLock - the biased path: the reader increments its stripe of the striped counters.
+ * <li> ReadMostlyLock-optimistic - {@link ReadMostlyLock#read(java.util.function.Supplier)}: optimistic, then the biased path.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReadWriteLockBenchmark {
+
+    @Param({"ReentrantReadWriteLock", "StampedLock", "StampedLock-optimistic", "ReadMostlyLock", "ReadMostlyLock-optimistic"})
+    public String lock;
+
+    @Param({"1", "10", "100", "1000"})
+    public int ratio;
+
+    private int kind;
+    private ReentrantReadWriteLock reentrant;
+    private StampedLock stamped;
+    private ReadMostlyLock readMostly;
+    private long x;
+    private long y;
+
+    @State(Scope.Thread)
+    public static class Ops {
+        int n;
+    }
+
+    @Setup
+    public void setUp() {
+        switch (lock) {
+            case "ReentrantReadWriteLock":
+                kind = 0;
+                reentrant = new ReentrantReadWriteLock();
+                break;
+            case "StampedLock":
+                kind = 1;
+                stamped = new StampedLock();
+                break;
+            case "StampedLock-optimistic":
+                kind = 2;
+                stamped = new StampedLock();
+                break;
+            case "ReadMostlyLock":
+                kind = 3;
+                readMostly = ReadMostlyLock.builder().build();
+                break;
+            case "ReadMostlyLock-optimistic":
+                kind = 4;
+                readMostly = ReadMostlyLock.builder().build();
+                break;
+            default:
+                throw new IllegalArgumentException(lock);
+        }
+    }
+
+    @Benchmark
+    public long op(Ops ops) {
+        if (++ops.n > ratio) {
+            ops.n = 0;
+            write();
+            return 0;
+        }
+        return read();
+    }
+
+    private long read() {
+        switch (kind) {
+            case 0: {
+                ReentrantReadWriteLock.ReadLock readLock = reentrant.readLock();
+                readLock.lock();
+                try {
+                    return x - y;
+                } finally {
+                    readLock.unlock();
+                }
+            }
+            case 1: {
+                long stamp = stamped.readLock();
+                try {
+                    return x - y;
+                } finally {
+                    stamped.unlockRead(stamp);
+                }
+            }
+            case 2: {
+                long stamp = stamped.tryOptimisticRead();
+                long d = x - y;
+                if (stamped.validate(stamp)) return d;
+                stamp = stamped.readLock();
+                try {
+                    return x - y;
+                } finally {
+                    stamped.unlockRead(stamp);
+                }
+            }
+            case 3: {
+                long stamp = readMostly.readLock();
+                try {
+                    return x - y;
+                } finally {
+                    readMostly.unlockRead(stamp);
+                }
+            }
+            default:
+                return readMostly.read(() -> x - y);
+        }
+    }
+
+    private void write() {
+        switch (kind) {
+            case 0: {
+                ReentrantReadWriteLock.WriteLock writeLock = reentrant.writeLock();
+                writeLock.lock();
+                try {
+                    x++;
+                    y++;
+                } finally {
+                    writeLock.unlock();
+                }
+                return;
+            }
+            case 1:
+            case 2: {
+                long stamp = stamped.writeLock();
+                try {
+                    x++;
+                    y++;
+                } finally {
+                    stamped.unlockWrite(stamp);
+                }
+                return;
+            }
+            default: {
+                long stamp = readMostly.writeLock();
+                try {
+                    x++;
+                    y++;
+                } finally {
+                    readMostly.unlockWrite(stamp);
+                }
+            }
+        }
+    }
+
+}
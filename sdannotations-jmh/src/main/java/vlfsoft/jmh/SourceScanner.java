@@ -0,0 +1,44 @@
+package vlfsoft.jmh;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lexical scanner of the annotation usages in a source: resolves {@code @Simple.Nested} references through the imports.
+ * It does not build a syntax tree, so it is the lower bound of any source parsing strategy.
+ */
+final class SourceScanner {
+
+    private final Map<String, String> imports = new HashMap<>();
+
+    /**
+     * Adds to the result the canonical names of the vlfsoft.* annotations used in the source.
+     */
+    void scan(String source, List<String> result) {
+        imports.clear();
+        int length = source.length();
+        int i = 0;
+        while (i < length) {
+            char c = source.charAt(i);
+            if (c == 'i' && source.startsWith("import ", i)) {
+                int end = source.indexOf(';', i);
+                String name = source.substring(i + 7, end).trim();
+                imports.put(name.substring(name.lastIndexOf('.') + 1), name);
+                i = end + 1;
+            } else if (c == '@') {
+                int start = ++i;
+                while (i < length && (Character.isJavaIdentifierPart(source.charAt(i)) || source.charAt(i) == '.')) i++;
+                String reference = source.substring(start, i);
+                int dot = reference.indexOf('.');
+                String imported = imports.get(dot < 0 ? reference : reference.substring(0, dot));
+                if (imported != null && imported.startsWith("vlfsoft.")) {
+                    result.add(dot < 0 ? imported : imported + reference.substring(dot));
+                }
+            } else {
+                i++;
+            }
+        }
+    }
+
+}
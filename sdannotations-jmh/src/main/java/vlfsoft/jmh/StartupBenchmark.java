@@ -0,0 +1,81 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexReader;
+import vlfsoft.processor.RegistryCompiler;
+import vlfsoft.scanner.ClasspathScanner;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of every discovery strategy: the time to get from nothing to the first answer.
+ * <ul>
+ * <li> sourceScan - there is nothing to load, the first answer needs the full scan
+ * <li> index - read {@link PatternIndex} from its binary form
+ * <li> mappedIndex - memory-map the binary form and answer "which patterns does element E carry" from the mapping
+ * <li> registry - load and initialize the generated PatternRegistry in a fresh class loader
+ * <li> classfileScan - scan the codebase compiled against the CLASS retention annotations (100 jars) with {@link ClasspathScanner}
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(3)
+public class StartupBenchmark {
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    private SyntheticCodebase codebase;
+    private File registryClasses;
+    private List<File> classpath;
+    private File indexFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        codebase = new SyntheticCodebase(size);
+        registryClasses = RegistryCompiler.compile(codebase.index);
+        indexFile = File.createTempFile("sdannotations", ".idx");
+        indexFile.deleteOnExit();
+        Files.write(indexFile.toPath(), codebase.indexBytes);
+        classpath = SyntheticClassFiles.writeJars(codebase, Files.createTempDirectory("sdannotations-classpath").toFile(), 100, false);
+    }
+
+    @Benchmark
+    public List<String> sourceScan() {
+        SourceScanner scanner = new SourceScanner();
+        List<String> usages = new ArrayList<>();
+        for (String source : codebase.sources) scanner.scan(source, usages);
+        return usages;
+    }
+
+    @Benchmark
+    public PatternIndex classfileScan() {
+        return new ClasspathScanner().scan(classpath);
+    }
+
+    @Benchmark
+    public PatternIndex index() throws IOException {
+        return PatternIndexReader.read(new ByteArrayInputStream(codebase.indexBytes));
+    }
+
+    @Benchmark
+    public List<String> mappedIndex() throws IOException {
+        return PatternIndexReader.map(indexFile).annotationsOf(codebase.classes[0]);
+    }
+
+    @Benchmark
+    public Class<?> registry() throws IOException, ClassNotFoundException {
+        return RegistryCompiler.load(registryClasses);
+    }
+
+}
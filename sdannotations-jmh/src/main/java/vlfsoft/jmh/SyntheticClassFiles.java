@@ -0,0 +1,135 @@
+package vlfsoft.jmh;
+
+import vlfsoft.index.PatternIndex;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Class files of {@link SyntheticCodebase} as they are compiled against the CLASS retention variant of sdannotations:
+ * the annotations are in RuntimeInvisibleAnnotations attributes. The classes are minimal (no methods),
+ * which is enough for the bytecode scanners.
+ */
+final class SyntheticClassFiles {
+
+    private SyntheticClassFiles() {
+    }
+
+    /**
+     * Writes the classes of the codebase into the jars in the directory.
+     *
+     * @param stored true - the entries are stored, false - deflated
+     */
+    static List<File> writeJars(SyntheticCodebase codebase, File directory, int jars, boolean stored) throws IOException {
+        PatternIndex index = codebase.index;
+        List<File> result = new ArrayList<>(jars);
+        List<ZipOutputStream> outputs = new ArrayList<>(jars);
+        try {
+            for (int i = 0; i < jars; i++) {
+                File jar = new File(directory, "synthetic-" + i + ".jar");
+                ZipOutputStream out = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(jar)));
+                out.setLevel(stored ? 0 : 6);
+                outputs.add(out);
+                result.add(jar);
+            }
+            for (int c = 0; c < codebase.size; c++) {
+                String className = codebase.classes[c];
+                List<String> patterns = index.annotationsOf(className);
+                byte[] classFile = classFile(className, patterns);
+                ZipOutputStream out = outputs.get(c % jars);
+                ZipEntry entry = new ZipEntry(className.replace('.', '/') + ".class");
+                if (stored) {
+                    java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+                    crc.update(classFile);
+                    entry.setMethod(ZipEntry.STORED);
+                    entry.setSize(classFile.length);
+                    entry.setCompressedSize(classFile.length);
+                    entry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(entry);
+                out.write(classFile);
+                out.closeEntry();
+            }
+        } finally {
+            for (ZipOutputStream out : outputs) out.close();
+        }
+        return result;
+    }
+
+    static byte[] classFile(String className, List<String> patterns) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(52);
+
+        out.writeShort(9 + patterns.size()); // constant_pool_count
+        out.writeByte(1);
+        out.writeUTF(className.replace('.', '/')); // #1
+        out.writeByte(7);
+        out.writeShort(1); // #2 this
+        out.writeByte(1);
+        out.writeUTF("java/lang/Object"); // #3
+        out.writeByte(7);
+        out.writeShort(3); // #4 super
+        out.writeByte(1);
+        out.writeUTF("id"); // #5
+        out.writeByte(1);
+        out.writeUTF("J"); // #6
+        out.writeByte(1);
+        out.writeUTF("RuntimeInvisibleAnnotations"); // #7
+        out.writeByte(1);
+        out.writeUTF(descriptor(SyntheticCodebase.ENTITY_ID)); // #8
+        for (String pattern : patterns) {
+            out.writeByte(1);
+            out.writeUTF(descriptor(pattern)); // #9...
+        }
+
+        out.writeShort(0x0021); // public super
+        out.writeShort(2);
+        out.writeShort(4);
+        out.writeShort(0); // interfaces
+
+        out.writeShort(1); // fields
+        out.writeShort(0x0002); // private
+        out.writeShort(5);
+        out.writeShort(6);
+        out.writeShort(1);
+        writeAnnotations(out, 8, 1);
+
+        out.writeShort(0); // methods
+
+        out.writeShort(1); // attributes
+        writeAnnotations(out, 9, patterns.size());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static void writeAnnotations(DataOutputStream out, int firstType, int count) throws IOException {
+        out.writeShort(7);
+        out.writeInt(2 + 4 * count);
+        out.writeShort(count);
+        for (int i = 0; i < count; i++) {
+            out.writeShort(firstType + i);
+            out.writeShort(0); // element_value_pairs
+        }
+    }
+
+    /**
+     * vlfsoft.patterns.enterprise.ddd.DDD.Entity.Id -> Lvlfsoft/patterns/enterprise/ddd/DDD$Entity$Id;
+     */
+    static String descriptor(String annotation) {
+        StringBuilder result = new StringBuilder("L");
+        boolean nested = false;
+        for (String part : annotation.split("\\.")) {
+            if (result.length() > 1) result.append(nested ? '$' : '/');
+            result.append(part);
+            if (Character.isUpperCase(part.charAt(0))) nested = true;
+        }
+        return result.append(';').toString();
+    }
+
+}
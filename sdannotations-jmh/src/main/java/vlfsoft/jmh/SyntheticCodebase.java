@@ -0,0 +1,88 @@
+package vlfsoft.jmh;
+
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic codebase: N classes, every class is marked with 1..3 patterns from {@link #PATTERNS}
+ * and has an {@code @DDD.Entity.Id} field.
+ * <p>
+ * The same codebase is available as the sources (what a source parser sees) and as {@link PatternIndex}
+ * (what {@link vlfsoft.processor.PatternIndexProcessor} would produce from these sources).
+ */
+public final class SyntheticCodebase {
+
+    /**
+     * {source reference, canonical name}
+     */
+    static final String[][] PATTERNS = {
+            {"DDD.Entity", "vlfsoft.patterns.enterprise.ddd.DDD.Entity"},
+            {"DDD.Aggregate.Root", "vlfsoft.patterns.enterprise.ddd.DDD.Aggregate.Root"},
+            {"DDD.Repository", "vlfsoft.patterns.enterprise.ddd.DDD.Repository"},
+            {"GOF.Singleton.Implementation.Lazy", "vlfsoft.patterns.GOF.Singleton.Implementation.Lazy"},
+            {"GOF.Proxy.Virtual", "vlfsoft.patterns.GOF.Proxy.Virtual"},
+            {"GOF.Builder", "vlfsoft.patterns.GOF.Builder"},
+            {"GOF.Prototype", "vlfsoft.patterns.GOF.Prototype"},
+            {"GOF.Mediator", "vlfsoft.patterns.GOF.Mediator"},
+            {"Pattern.ObjectPool", "vlfsoft.patterns.Pattern.ObjectPool"},
+            {"Pattern.UtilityClass", "vlfsoft.patterns.Pattern.UtilityClass"},
+            {"Pattern.Delegation", "vlfsoft.patterns.Pattern.Delegation"},
+    };
+
+    static final String ENTITY_ID = "vlfsoft.patterns.enterprise.ddd.DDD.Entity.Id";
+
+    private static final String IMPORTS = "import vlfsoft.patterns.GOF;\n"
+            + "import vlfsoft.patterns.Pattern;\n"
+            + "import vlfsoft.patterns.enterprise.ddd.DDD;\n\n";
+
+    public final int size;
+    /**
+     * Binary names of the classes.
+     */
+    public final String[] classes;
+    public final String[] sources;
+    public final PatternIndex index;
+    public final byte[] indexBytes;
+
+    public SyntheticCodebase(int size) {
+        this.size = size;
+        classes = new String[size];
+        sources = new String[size];
+        PatternIndex.Builder builder = new PatternIndex.Builder();
+        Random random = new Random(size);
+        StringBuilder source = new StringBuilder(512);
+        for (int i = 0; i < size; i++) {
+            String packageName = "bench.p" + (i % 100);
+            String simpleName = "C" + i;
+            classes[i] = packageName + "." + simpleName;
+
+            source.setLength(0);
+            source.append("package ").append(packageName).append(";\n\n").append(IMPORTS);
+            int count = 1 + random.nextInt(3);
+            for (int j = 0; j < count; j++) {
+                String[] pattern = PATTERNS[random.nextInt(PATTERNS.length)];
+                source.append('@').append(pattern[0]).append('\n');
+                builder.add(classes[i], PatternIndex.Kind.TYPE, null, pattern[1]);
+            }
+            source.append("public class ").append(simpleName).append(" {\n\n")
+                    .append("    @DDD.Entity.Id\n")
+                    .append("    private long id;\n\n")
+                    .append("    public long id() {\n        return id;\n    }\n\n}\n");
+            builder.add(classes[i] + "#id", PatternIndex.Kind.FIELD, classes[i], ENTITY_ID);
+            sources[i] = source.toString();
+        }
+        index = builder.build();
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            PatternIndexWriter.write(index, out);
+            indexBytes = out.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
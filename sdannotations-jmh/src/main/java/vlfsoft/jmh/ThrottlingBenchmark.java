@@ -0,0 +1,74 @@
+package vlfsoft.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import vlfsoft.runtime.throttle.KeyedRateLimiter;
+import vlfsoft.runtime.throttle.RateLimiter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a {@link RateLimiter} call, run with -t 1 / 4 / 16 / 64:
+ * <ul>
+ * <li> allowed - the permit is taken (a CAS), rejected - the limit is exhausted (no CAS, the load shedding path).
+ * <li> allowedAt - with the time of the caller, without the clock read.
+ * <li> tenant - a {@link KeyedRateLimiter} of 1024 tenants under a global limit.
+ * <li> nanoTime - the clock read alone, the floor of the calls, that read it.
+ * </ul>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ThrottlingBenchmark {
+
+    private static final int TENANTS = 1024;
+
+    private RateLimiter unlimited;
+    private RateLimiter exhausted;
+    private KeyedRateLimiter<Integer> tenants;
+    private Integer[] tenantIds;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setUp() {
+        unlimited = RateLimiter.tokenBucket(1L << 40, 1e9);
+        exhausted = RateLimiter.tokenBucket(1, 1e-3);
+        exhausted.tryAcquire();
+        RateLimiter global = RateLimiter.builder().name("global").permitsPerSecond(1e9).burst(1L << 40).build();
+        tenants = new KeyedRateLimiter<>(tenant -> RateLimiter.builder().name("tenant-" + tenant).permitsPerSecond(1e9).burst(1L << 30).parent(global));
+        tenantIds = new Integer[TENANTS];
+        for (int i = 0; i < TENANTS; i++) tenantIds[i] = i;
+    }
+
+    @Benchmark
+    public boolean allowed() {
+        return unlimited.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean allowedAt() {
+        return unlimited.tryAcquire(1, 0L);
+    }
+
+    @Benchmark
+    public boolean rejected() {
+        return exhausted.tryAcquire();
+    }
+
+    @Benchmark
+    public boolean tenant(Cursor cursor) {
+        return tenants.tryAcquire(tenantIds[cursor.next++ & TENANTS - 1]);
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+
+}
@@ -0,0 +1,48 @@
+package vlfsoft.processor;
+
+import vlfsoft.index.PatternIndex;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * Benchmark helper: generates the registry with {@link PatternRegistryWriter} (as the processor does with
+ * -Asdannotations.registry) and compiles it, without compiling the whole synthetic codebase.
+ */
+public final class RegistryCompiler {
+
+    public static final String CLASS_NAME = "bench.PatternRegistry";
+
+    private RegistryCompiler() {
+    }
+
+    /**
+     * @return directory with the compiled {@link #CLASS_NAME}
+     */
+    public static File compile(PatternIndex index) throws IOException {
+        File directory = Files.createTempDirectory("sdannotations-registry").toFile();
+        File source = new File(directory, CLASS_NAME.replace('.', '/') + ".java");
+        source.getParentFile().mkdirs();
+        try (Writer out = Files.newBufferedWriter(source.toPath(), StandardCharsets.UTF_8)) {
+            PatternRegistryWriter.write(out, CLASS_NAME, index);
+        }
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler.run(null, null, null, "-proc:none", "-d", directory.getPath(), source.getPath()) != 0) {
+            throw new IllegalStateException("Unable to compile " + source);
+        }
+        return directory;
+    }
+
+    public static Class<?> load(File directory) throws IOException, ClassNotFoundException {
+        ClassLoader loader = new URLClassLoader(new URL[]{directory.toURI().toURL()}, RegistryCompiler.class.getClassLoader());
+        return Class.forName(CLASS_NAME, true, loader);
+    }
+
+}
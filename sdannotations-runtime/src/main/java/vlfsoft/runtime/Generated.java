@@ -0,0 +1,19 @@
+package vlfsoft.runtime;
+
+import java.lang.annotation.*;
+
+/**
+ * Marks the classes generated by the sdannotations processors.
+ * CLASS retention with "Generated" in the name: the coverage tools (f.e. JaCoCo) skip such classes.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface Generated {
+
+    /**
+     * @return class name of the processor.
+     */
+    String value();
+
+}
@@ -0,0 +1,60 @@
+package vlfsoft.runtime.breaker;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Companion of {@code @Microservices.CircuitBreaker} with the settings of the {@link CircuitBreaker}:
+ * the class with such methods gets the generated subclass {@code <Class>Guarded}, that calls them through the breaker.
+ * On the class - one breaker for all its public methods, a method can have its own.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target({ElementType.TYPE, ElementType.METHOD})
+public @interface Breaker {
+
+    /**
+     * Name of the breaker, the methods with the same name share it, default - the name of the class or of the method.
+     */
+    String name() default "";
+
+    /**
+     * See {@link CircuitBreaker.Builder#failureRateThreshold(float)}.
+     */
+    float failureRateThreshold() default 50;
+
+    /**
+     * See {@link CircuitBreaker.Builder#slowCallRateThreshold(float)}.
+     */
+    float slowCallRateThreshold() default 100;
+
+    /**
+     * See {@link CircuitBreaker.Builder#slowCallDuration(long, TimeUnit)}, in the {@link #unit()}.
+     */
+    long slowCallDuration() default 60_000;
+
+    /**
+     * See {@link CircuitBreaker.Builder#slidingWindow(CircuitBreaker.WindowType, int)}.
+     */
+    CircuitBreaker.WindowType windowType() default CircuitBreaker.WindowType.COUNT;
+
+    int windowSize() default 100;
+
+    /**
+     * See {@link CircuitBreaker.Builder#minimumNumberOfCalls(int)}, 0 - its default; more than the size of a COUNT window is an error.
+     */
+    int minimumNumberOfCalls() default 0;
+
+    /**
+     * See {@link CircuitBreaker.Builder#waitInOpenState(long, TimeUnit)}, in the {@link #unit()}.
+     */
+    long waitInOpenState() default 60_000;
+
+    /**
+     * See {@link CircuitBreaker.Builder#permittedCallsInHalfOpenState(int)}.
+     */
+    int permittedCallsInHalfOpenState() default 10;
+
+    TimeUnit unit() default TimeUnit.MILLISECONDS;
+
+}
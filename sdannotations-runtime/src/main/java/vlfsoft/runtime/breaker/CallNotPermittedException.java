@@ -0,0 +1,14 @@
+package vlfsoft.runtime.breaker;
+
+/**
+ * The call is rejected by the open {@link CircuitBreaker}. Without the stack trace: one instance per breaker.
+ */
+public class CallNotPermittedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public CallNotPermittedException(String breaker) {
+        super("CircuitBreaker " + breaker + " does not permit the call", null, false, false);
+    }
+
+}
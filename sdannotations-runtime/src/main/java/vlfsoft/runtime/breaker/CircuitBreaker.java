@@ -0,0 +1,462 @@
+package vlfsoft.runtime.breaker;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Circuit breaker, the runtime of {@code @Microservices.CircuitBreaker}:
+ * <ul>
+ * <li> CLOSED - the calls pass, their outcomes go to the sliding window; when the failure rate or the slow call rate of the window
+ * reaches the threshold (after {@link Builder#minimumNumberOfCalls(int)}), the breaker opens.
+ * <li> OPEN - the calls are rejected with {@link CallNotPermittedException} for {@link Builder#waitInOpenState(long, TimeUnit)}.
+ * <li> HALF_OPEN - at most {@link Builder#permittedCallsInHalfOpenState(int)} probe calls pass, concurrently or one after another,
+ * their failure rate closes or opens the breaker again.
+ * </ul>
+ * The window is a ring of buckets in primitive long arrays: {@link WindowType#COUNT} - the last N calls, a bucket per call,
+ * {@link WindowType#TIME} - the last N seconds, a bucket per second. Recording an outcome allocates nothing,
+ * it updates the bucket and the totals under a short lock, {@link #tryAcquirePermission()} of a closed breaker is a volatile read.
+ * <pre>
+ * if (!breaker.tryAcquirePermission()) throw breaker.notPermitted();
+ * long start = System.nanoTime();
+ * try {
+ *     T result = call();
+ *     breaker.onSuccess(System.nanoTime() - start);
+ *     return result;
+ * } catch (Throwable e) {
+ *     breaker.onError(System.nanoTime() - start, e);
+ *     throw e;
+ * }
+ * </pre>
+ * or {@link #call(Callable)}.
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    public enum WindowType {COUNT, TIME}
+
+    public interface Listener {
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final float failureRateThreshold;
+    private final float slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumNumberOfCalls;
+    private final long waitInOpenNanos;
+    private final int permittedCallsInHalfOpenState;
+    private final Predicate<? super Throwable> recordFailure;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final CallNotPermittedException notPermitted;
+
+    private final Window window;
+    private volatile State state = State.CLOSED;
+    private volatile long openUntil;
+    // Half-open probes: the permits left and the outcomes, the outcomes are guarded by the lock of the window.
+    private final AtomicInteger probePermits = new AtomicInteger();
+    private int probeCalls;
+    private int probeFailures;
+    private int probeSlowCalls;
+    private final LongAdder notPermittedCalls = new LongAdder();
+
+    protected CircuitBreaker(Builder builder) {
+        this.name = builder.name;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.slowCallNanos = builder.slowCallNanos;
+        this.minimumNumberOfCalls = builder.minimumNumberOfCalls > 0 ? builder.minimumNumberOfCalls
+                : builder.windowType == WindowType.COUNT ? Math.min(Builder.MINIMUM_NUMBER_OF_CALLS, builder.windowSize) : Builder.MINIMUM_NUMBER_OF_CALLS;
+        this.waitInOpenNanos = builder.waitInOpenNanos;
+        this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+        this.recordFailure = builder.recordFailure;
+        this.listeners.addAll(builder.listeners);
+        this.window = new Window(builder.windowType, builder.windowSize);
+        this.notPermitted = new CallNotPermittedException(name);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public State state() {
+        return state;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(Objects.requireNonNull(listener, "listener"));
+    }
+
+    /**
+     * @return true, if the call can be made; then exactly one of {@link #onSuccess(long)}, {@link #onError(long, Throwable)}
+     * or {@link #releasePermission()} must follow.
+     */
+    public boolean tryAcquirePermission() {
+        State state = this.state;
+        if (state == State.CLOSED) return true;
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openUntil < 0) {
+                notPermittedCalls.increment();
+                return false;
+            }
+            synchronized (window) {
+                if (this.state == State.OPEN && System.nanoTime() - openUntil >= 0) transition(State.OPEN, State.HALF_OPEN);
+            }
+            if (this.state == State.CLOSED) return true;
+        }
+        for (int permits; (permits = probePermits.get()) > 0; ) {
+            if (probePermits.compareAndSet(permits, permits - 1)) return true;
+        }
+        notPermittedCalls.increment();
+        return false;
+    }
+
+    /**
+     * Gives back the permission of a call, that was not made.
+     */
+    public void releasePermission() {
+        if (state == State.HALF_OPEN) probePermits.incrementAndGet();
+    }
+
+    /**
+     * @return the exception for a rejected call, one instance without the stack trace, so the rejection allocates nothing.
+     */
+    public CallNotPermittedException notPermitted() {
+        return notPermitted;
+    }
+
+    public void onSuccess(long durationNanos) {
+        record(durationNanos, false);
+    }
+
+    /**
+     * Records a failure, if the predicate of the breaker ({@link Builder#recordFailure(Predicate)}) accepts the error, else a success.
+     */
+    public void onError(long durationNanos, Throwable error) {
+        record(durationNanos, recordFailure.test(error));
+    }
+
+    /**
+     * Calls the callable, if permitted, and records the outcome.
+     *
+     * @throws CallNotPermittedException if the breaker is open.
+     */
+    public <T> T call(Callable<T> callable) throws Exception {
+        if (!tryAcquirePermission()) throw notPermitted;
+        long start = System.nanoTime();
+        try {
+            T result = callable.call();
+            onSuccess(System.nanoTime() - start);
+            return result;
+        } catch (Throwable e) {
+            onError(System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    private void record(long durationNanos, boolean failure) {
+        boolean slow = durationNanos >= slowCallNanos;
+        synchronized (window) {
+            switch (state) {
+                case CLOSED:
+                    window.record(failure, slow);
+                    if (window.calls >= minimumNumberOfCalls && exceeded(window.calls, window.failures, window.slowCalls)) {
+                        transition(State.CLOSED, State.OPEN);
+                    }
+                    break;
+                case HALF_OPEN:
+                    probeCalls++;
+                    if (failure) probeFailures++;
+                    if (slow) probeSlowCalls++;
+                    if (probeCalls >= permittedCallsInHalfOpenState) {
+                        transition(State.HALF_OPEN, exceeded(probeCalls, probeFailures, probeSlowCalls) ? State.OPEN : State.CLOSED);
+                    }
+                    break;
+                default:
+                    // A call permitted before the breaker opened.
+            }
+        }
+    }
+
+    private boolean exceeded(long calls, long failures, long slowCalls) {
+        return failures * 100f >= failureRateThreshold * calls || slowCalls * 100f >= slowCallRateThreshold * calls;
+    }
+
+    /**
+     * Under the lock of the window.
+     */
+    private void transition(State from, State to) {
+        if (state != from) return;
+        switch (to) {
+            case OPEN:
+                openUntil = System.nanoTime() + waitInOpenNanos;
+                probePermits.set(0);
+                break;
+            case HALF_OPEN:
+                probeCalls = probeFailures = probeSlowCalls = 0;
+                probePermits.set(permittedCallsInHalfOpenState);
+                break;
+            default:
+                window.reset();
+                probePermits.set(0);
+        }
+        state = to;
+        for (Listener listener : listeners) {
+            try {
+                listener.onStateChange(this, from, to);
+            } catch (RuntimeException e) {
+                // A listener does not break the breaker.
+            }
+        }
+    }
+
+    /**
+     * Forces the state, f.e. by an operator.
+     */
+    public void transitionTo(State to) {
+        synchronized (window) {
+            transition(state, to);
+        }
+    }
+
+    public Metrics metrics() {
+        synchronized (window) {
+            window.roll(System.nanoTime());
+            return new Metrics(state, window.calls, window.failures, window.slowCalls, notPermittedCalls.sum());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + "{" + state + "}";
+    }
+
+    /**
+     * Snapshot of the sliding window.
+     */
+    public static final class Metrics {
+        public final State state;
+        public final long calls;
+        public final long failures;
+        public final long slowCalls;
+        public final long notPermittedCalls;
+
+        Metrics(State state, long calls, long failures, long slowCalls, long notPermittedCalls) {
+            this.state = state;
+            this.calls = calls;
+            this.failures = failures;
+            this.slowCalls = slowCalls;
+            this.notPermittedCalls = notPermittedCalls;
+        }
+
+        /**
+         * @return percentage of the failed calls in the window, -1 - no calls.
+         */
+        public float failureRate() {
+            return calls == 0 ? -1 : failures * 100f / calls;
+        }
+
+        public float slowCallRate() {
+            return calls == 0 ? -1 : slowCalls * 100f / calls;
+        }
+
+        @Override
+        public String toString() {
+            return state + "{calls=" + calls + ", failures=" + failures + ", slowCalls=" + slowCalls + ", notPermitted=" + notPermittedCalls + "}";
+        }
+    }
+
+    /**
+     * Ring of the buckets and their totals, guarded by its monitor.
+     * A bucket is identified by its epoch: the number of the call (COUNT) or of the second (TIME), a bucket of an older epoch is stale.
+     */
+    private static final class Window {
+        private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+        final boolean time;
+        final long[] epochs;
+        final long[] bucketCalls;
+        final long[] bucketFailures;
+        final long[] bucketSlowCalls;
+        long sequence;
+        long calls;
+        long failures;
+        long slowCalls;
+
+        Window(WindowType type, int size) {
+            this.time = type == WindowType.TIME;
+            this.epochs = new long[size];
+            this.bucketCalls = new long[size];
+            this.bucketFailures = new long[size];
+            this.bucketSlowCalls = new long[size];
+            reset();
+        }
+
+        void record(boolean failure, boolean slow) {
+            long now = time ? System.nanoTime() : 0;
+            long epoch = time ? now / SECOND : sequence++;
+            int i = (int) Math.floorMod(epoch, (long) epochs.length);
+            if (epochs[i] != epoch) {
+                if (time) roll(now);
+                evict(i);
+                epochs[i] = epoch;
+            }
+            bucketCalls[i]++;
+            calls++;
+            if (failure) {
+                bucketFailures[i]++;
+                failures++;
+            }
+            if (slow) {
+                bucketSlowCalls[i]++;
+                slowCalls++;
+            }
+        }
+
+        /**
+         * Drops the buckets older than the window, only the time window ages without the calls.
+         */
+        void roll(long now) {
+            if (!time) return;
+            long oldest = now / SECOND - epochs.length + 1;
+            for (int i = 0; i < epochs.length; i++) {
+                if (epochs[i] < oldest && bucketCalls[i] != 0) evict(i);
+            }
+        }
+
+        private void evict(int i) {
+            calls -= bucketCalls[i];
+            failures -= bucketFailures[i];
+            slowCalls -= bucketSlowCalls[i];
+            bucketCalls[i] = bucketFailures[i] = bucketSlowCalls[i] = 0;
+        }
+
+        void reset() {
+            for (int i = 0; i < epochs.length; i++) {
+                epochs[i] = Long.MIN_VALUE;
+                bucketCalls[i] = bucketFailures[i] = bucketSlowCalls[i] = 0;
+            }
+            calls = failures = slowCalls = 0;
+        }
+    }
+
+    public static class Builder {
+        static final int MINIMUM_NUMBER_OF_CALLS = 100;
+
+        private String name = "circuitBreaker";
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 100;
+        private long slowCallNanos = TimeUnit.SECONDS.toNanos(60);
+        private WindowType windowType = WindowType.COUNT;
+        private int windowSize = 100;
+        /**
+         * 0 - the default.
+         */
+        private int minimumNumberOfCalls;
+        private long waitInOpenNanos = TimeUnit.SECONDS.toNanos(60);
+        private int permittedCallsInHalfOpenState = 10;
+        private Predicate<? super Throwable> recordFailure = e -> true;
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        public Builder name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Failure percentage, that opens the breaker, default 50.
+         */
+        public Builder failureRateThreshold(float failureRateThreshold) {
+            if (!(failureRateThreshold > 0 && failureRateThreshold <= 100)) throw new IllegalArgumentException("failureRateThreshold: " + failureRateThreshold);
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Percentage of the slow calls, that opens the breaker, default 100.
+         */
+        public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+            if (!(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100)) throw new IllegalArgumentException("slowCallRateThreshold: " + slowCallRateThreshold);
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * A call of this duration or longer is slow, default 60 s.
+         */
+        public Builder slowCallDuration(long duration, TimeUnit unit) {
+            if (duration <= 0) throw new IllegalArgumentException("slowCallDuration: " + duration);
+            this.slowCallNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * The last size calls (COUNT) or seconds (TIME), default the last 100 calls.
+         */
+        public Builder slidingWindow(WindowType type, int size) {
+            if (size < 1) throw new IllegalArgumentException("size: " + size);
+            this.windowType = Objects.requireNonNull(type, "type");
+            this.windowSize = size;
+            return this;
+        }
+
+        /**
+         * Calls in the window, before the rates are considered, default 100, but at most the size of a COUNT window:
+         * the COUNT window never holds more calls than its size, so a larger minimum is rejected by {@link #build()}.
+         */
+        public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+            if (minimumNumberOfCalls < 1) throw new IllegalArgumentException("minimumNumberOfCalls: " + minimumNumberOfCalls);
+            this.minimumNumberOfCalls = minimumNumberOfCalls;
+            return this;
+        }
+
+        /**
+         * Time, that the breaker stays open before the probes, default 60 s.
+         */
+        public Builder waitInOpenState(long duration, TimeUnit unit) {
+            if (duration < 0) throw new IllegalArgumentException("waitInOpenState: " + duration);
+            this.waitInOpenNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Probe calls of the half-open state, also the maximum of them in flight, default 10.
+         */
+        public Builder permittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+            if (permittedCallsInHalfOpenState < 1) throw new IllegalArgumentException("permittedCallsInHalfOpenState: " + permittedCallsInHalfOpenState);
+            this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+            return this;
+        }
+
+        /**
+         * The errors, that are failures, the others count as successes, default all.
+         */
+        public Builder recordFailure(Predicate<? super Throwable> recordFailure) {
+            this.recordFailure = Objects.requireNonNull(recordFailure, "recordFailure");
+            return this;
+        }
+
+        public Builder listener(Listener listener) {
+            listeners.add(Objects.requireNonNull(listener, "listener"));
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            if (windowType == WindowType.COUNT && minimumNumberOfCalls > windowSize) {
+                throw new IllegalArgumentException("minimumNumberOfCalls " + minimumNumberOfCalls + " > COUNT window size " + windowSize);
+            }
+            return new CircuitBreaker(this);
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+package vlfsoft.runtime.bridge;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Log-linear histogram of the latencies in nanos (HdrHistogram style): the values below {@value #SUB_BUCKETS} have their own buckets,
+ * every power of two above is split into {@value #SUB_BUCKETS} buckets, so a value is kept within 1/{@value #SUB_BUCKETS} (~6%)
+ * of it, from nanos to hours in 960 counters. Recording is an atomic increment, no allocation, no lock;
+ * {@link #snapshot()} copies the counters for the percentiles.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        counts.getAndIncrement(index(nanos));
+        total.increment();
+        sum.add(nanos);
+    }
+
+    static int index(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (value >>> shift & SUB_BUCKETS - 1);
+    }
+
+    /**
+     * @return the highest value of the bucket.
+     */
+    static long highest(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = index / SUB_BUCKETS - 1;
+        long lowest = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+        total.reset();
+        sum.reset();
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) count += copy[i] = counts.get(i);
+        return new Snapshot(copy, count, sum.sum());
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+
+        Snapshot(long[] counts, long count, long sum) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        public long count() {
+            return count;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile f.e. 99.9.
+         * @return the value, that the percentile of the recorded values does not exceed (the highest value of its bucket).
+         */
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return highest(i);
+            }
+            return max();
+        }
+
+        public long max() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[i] != 0) return highest(i);
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{count=%d, mean=%.0f, p50=%d, p90=%d, p99=%d, p99.9=%d, max=%d ns}",
+                    count, mean(), percentile(50), percentile(90), percentile(99), percentile(99.9), max());
+        }
+    }
+
+}
@@ -0,0 +1,331 @@
+package vlfsoft.runtime.bridge;
+
+import vlfsoft.runtime.queue.RingQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * The queueing layer of {@code @ConcurrencyPattern.HalfSyncHalfAsync}: the async layer (a selector loop, the completions of the futures)
+ * hands the requests to the blocking {@link Handler} of the sync layer without blocking itself.
+ * <p>
+ * Every worker thread of the sync layer has its bounded MPSC {@link RingQueue}, a request goes to the shorter queue of two random ones
+ * (the power of two choices), the worker drains its queue in runs and parks, when it is empty; the producer unparks it.
+ * Backpressure: {@link #offer(Object, BiConsumer)} returns false, when the queues are full, so the selector loop stops reading
+ * (f.e. clears OP_READ) until the {@link Builder#onResume(Runnable)} listener is called - a worker queue drained to the half;
+ * {@link #submit(Object)} fails the future with {@link RejectedExecutionException}.
+ * <p>
+ * The crossing (from the offer to the start of the handler) and the service time are recorded in the {@link LatencyHistogram}s,
+ * that is where the queueing delay of the hop shows in the percentiles.
+ * <p>
+ * The workers are daemon threads, they do not keep the JVM alive: {@link #close()} and {@link #awaitTermination(long, TimeUnit)}
+ * handle the queued requests before the exit.
+ * <pre>
+ * SyncBridge&lt;Request, Response&gt; bridge = SyncBridge.builder(request -&gt; jdbcService.handle(request)).workers(32)
+ *     .queueCapacity(1024).onResume(selector::wakeup).build();
+ * // selector loop
+ * if (!bridge.offer(request, (response, error) -&gt; connection.reply(response, error))) key.interestOps(0);
+ * // futures
+ * CompletableFuture&lt;Response&gt; response = bridge.submit(decoded);
+ * </pre>
+ */
+public class SyncBridge<T, R> implements AutoCloseable {
+
+    /**
+     * The blocking code of the sync layer.
+     */
+    public interface Handler<T, R> {
+        R handle(T request) throws Exception;
+    }
+
+    private static final int BATCH = 64;
+    private static final int SPINS = 256;
+    private static final int YIELDS = 64;
+
+    private final String name;
+    private final Handler<? super T, ? extends R> handler;
+    private final Runnable onResume;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicBoolean saturated = new AtomicBoolean();
+    private final LatencyHistogram crossing = new LatencyHistogram();
+    private final LatencyHistogram service = new LatencyHistogram();
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+
+    protected SyncBridge(Builder<T, R> builder) {
+        this.name = builder.name;
+        this.handler = builder.handler;
+        this.onResume = builder.onResume;
+        for (int i = 0; i < builder.workers; i++) workers.add(new Worker(RingQueue.mpsc(builder.queueCapacity), name + "-" + i));
+        for (Worker worker : workers) worker.thread.start();
+    }
+
+    public static <T, R> Builder<T, R> builder(Handler<? super T, ? extends R> handler) {
+        return new Builder<>(handler);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Hands the request to the sync layer, the callback gets the response or the error on the worker thread.
+     *
+     * @return false - the queues are full or the bridge is closed, the request is not taken: the async layer must stop producing.
+     */
+    public boolean offer(T request, BiConsumer<? super R, ? super Throwable> callback) {
+        Objects.requireNonNull(callback, "callback");
+        return offer(new Task<>(request, callback));
+    }
+
+    /**
+     * @return future of the response, failed with {@link RejectedExecutionException}, if the queues are full or the bridge is closed.
+     */
+    public CompletableFuture<R> submit(T request) {
+        Task<T, R> task = new Task<>(request, null);
+        if (!offer(task)) task.completeExceptionally(new RejectedExecutionException(name + " is full"));
+        return task;
+    }
+
+    /**
+     * Crosses, when the source completes, f.e. the decoding on an async pool.
+     */
+    public CompletableFuture<R> submit(CompletionStage<? extends T> source) {
+        return source.toCompletableFuture().thenCompose(this::submit);
+    }
+
+    private boolean offer(Task<T, R> task) {
+        Objects.requireNonNull(task.request, "request");
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int size = workers.size();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size);
+        if (workers.get(second).queue.size() < workers.get(first).queue.size()) first = second;
+        task.enqueuedAt = System.nanoTime();
+        if (offer(task, first)) return true;
+        // The flag before the last pass: a queue, that is still full, is drained after the flag, so its worker calls onResume.
+        // Without the pass the workers could drain to the half and park in between, onResume would never come.
+        saturated.set(true);
+        if (offer(task, first)) return true;
+        rejected.increment();
+        return false;
+    }
+
+    private boolean offer(Task<T, R> task, int first) {
+        int size = workers.size();
+        for (int i = 0; i < size; i++) {
+            Worker worker = workers.get((first + i) % size);
+            if (worker.queue.offer(task)) {
+                accepted.increment();
+                if (worker.parked) LockSupport.unpark(worker.thread);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return requests waiting in the queues.
+     */
+    public int queueDepth() {
+        int depth = 0;
+        // Without the poison pills of the closed queues.
+        for (Worker worker : workers) depth += Math.max(0, worker.queue.size() - (worker.queue.isClosed() ? 1 : 0));
+        return depth;
+    }
+
+    /**
+     * @return the time from the offer to the start of the handler.
+     */
+    public LatencyHistogram crossing() {
+        return crossing;
+    }
+
+    /**
+     * @return the time of the handler.
+     */
+    public LatencyHistogram service() {
+        return service;
+    }
+
+    public long accepted() {
+        return accepted.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    public long failed() {
+        return failed.sum();
+    }
+
+    /**
+     * The poison pill: the new requests are rejected, the queued ones are handled, then the workers end.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.queue.close();
+            LockSupport.unpark(worker.thread);
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) return !worker.thread.isAlive();
+            worker.thread.join(millis);
+            if (worker.thread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{accepted=" + accepted() + ", rejected=" + rejected() + ", failed=" + failed() + ", queueDepth=" + queueDepth()
+                + ", crossing=" + crossing + ", service=" + service + "}";
+    }
+
+    /**
+     * The request with its completion: the future itself for {@link #submit(Object)} or the callback of {@link #offer(Object, BiConsumer)}.
+     */
+    private static final class Task<T, R> extends CompletableFuture<R> {
+        final T request;
+        final BiConsumer<? super R, ? super Throwable> callback;
+        long enqueuedAt;
+
+        Task(T request, BiConsumer<? super R, ? super Throwable> callback) {
+            this.request = request;
+            this.callback = callback;
+        }
+
+        void done(R response, Throwable error) {
+            if (callback != null) {
+                callback.accept(response, error);
+            } else if (error != null) {
+                completeExceptionally(error);
+            } else {
+                complete(response);
+            }
+        }
+    }
+
+    private final class Worker implements Runnable, Consumer<Task<T, R>> {
+        final RingQueue<Task<T, R>> queue;
+        final Thread thread;
+        volatile boolean parked;
+
+        Worker(RingQueue<Task<T, R>> queue, String name) {
+            this.queue = queue;
+            this.thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (true) {
+                int n = queue.drain(this, BATCH);
+                if (n < 0) return;
+                if (n > 0) {
+                    idle = 0;
+                    resume();
+                } else if (++idle < SPINS) {
+                    // Spin: the next request of a busy front end is near.
+                } else if (idle < SPINS + YIELDS) {
+                    Thread.yield();
+                } else {
+                    parked = true;
+                    // Re-check after the flag: a producer either sees the flag or its request is seen here.
+                    if (queue.isEmpty()) LockSupport.park(this);
+                    parked = false;
+                    idle = 0;
+                }
+            }
+        }
+
+        @Override
+        public void accept(Task<T, R> task) {
+            long start = System.nanoTime();
+            crossing.record(start - task.enqueuedAt);
+            R response = null;
+            Throwable error = null;
+            try {
+                response = handler.handle(task.request);
+            } catch (Throwable e) {
+                error = e;
+                failed.increment();
+            }
+            service.record(System.nanoTime() - start);
+            try {
+                task.done(response, error);
+            } catch (RuntimeException e) {
+                // The callback of the async layer does not stop the worker.
+                failed.increment();
+            }
+        }
+
+        private void resume() {
+            if (saturated.get() && queue.size() <= queue.capacity() / 2 && saturated.compareAndSet(true, false) && onResume != null) {
+                onResume.run();
+            }
+        }
+    }
+
+    public static class Builder<T, R> {
+        private final Handler<? super T, ? extends R> handler;
+        private String name = "bridge";
+        private int workers = Runtime.getRuntime().availableProcessors();
+        private int queueCapacity = 1024;
+        private Runnable onResume;
+
+        Builder(Handler<? super T, ? extends R> handler) {
+            this.handler = Objects.requireNonNull(handler, "handler");
+        }
+
+        public Builder<T, R> name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Threads of the sync layer, the blocking handlers in parallel, default the number of the cores.
+         */
+        public Builder<T, R> workers(int workers) {
+            if (workers < 1) throw new IllegalArgumentException("workers: " + workers);
+            this.workers = workers;
+            return this;
+        }
+
+        /**
+         * Requests per worker queue, rounded up to a power of two, default 1024.
+         */
+        public Builder<T, R> queueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Called by a worker, when the bridge was full and its queue is drained to the half: the async layer can produce again.
+         */
+        public Builder<T, R> onResume(Runnable onResume) {
+            this.onResume = onResume;
+            return this;
+        }
+
+        public SyncBridge<T, R> build() {
+            return new SyncBridge<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,708 @@
+package vlfsoft.runtime.cache;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Loading cache, the runtime of {@code @Pattern.Caching}: bounded by the number or the total weight of the entries,
+ * with W-TinyLFU eviction, refresh-ahead and coalescing of the concurrent loads of a key.
+ * <p>
+ * Eviction (W-TinyLFU): a new entry enters the admission window (LRU, 1% of the maximum), the entries leaving the window
+ * compete with the victims of the main space (segmented LRU: probation 20%, protected 80%) by their access frequency,
+ * estimated by a 4-bit count-min sketch, that is halved periodically. So a burst of one-off keys does not flush the frequently used ones.
+ * <p>
+ * Reads are lock-free: a {@link ConcurrentHashMap} lookup and an offer to a lossy striped buffer of the accesses,
+ * the buffers are replayed on the policy under a lock by the writes or when a buffer is full.
+ * <p>
+ * Loads: the concurrent misses of a key wait for one call of the loader. With {@link Builder#refreshAfterWrite(long, TimeUnit)}
+ * the first read of a stale entry reloads it on the executor and still returns the old value (refresh-ahead),
+ * {@link Builder#expireAfterWrite(long, TimeUnit)} - the expired entry is loaded again as a miss.
+ * <p>
+ * {@link #stats()} - hits, misses, loads, load failures, load time, evictions.
+ */
+public class Cache<K, V> {
+
+    public interface Loader<K, V> {
+        /**
+         * @return the value, null - nothing is cached.
+         */
+        V load(K key) throws Exception;
+    }
+
+    public interface Weigher<K, V> {
+        /**
+         * @return weight of the entry, not negative.
+         */
+        int weigh(K key, V value);
+    }
+
+    /**
+     * Thrown by {@link #get(Object)}, if the loader fails with a checked exception, the cause.
+     */
+    public static class LoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LoadException(Throwable cause) {
+            super(cause);
+        }
+    }
+
+    private static final int WINDOW = 0, PROBATION = 1, PROTECTED = 2, DEAD = 3;
+    private static final int READ_BUFFER_SIZE = 32;
+    private static final int READ_BUFFERS = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() - 1 << 1 | 1));
+
+    private final String name;
+    private final Loader<? super K, V> loader;
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireNanos;
+    private final long refreshNanos;
+    private final Executor executor;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Loading<V>> loading = new ConcurrentHashMap<>();
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFERS];
+
+    // The policy, guarded by the lock.
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<K, V> window = new Deque<>();
+    private final Deque<K, V> probation = new Deque<>();
+    private final Deque<K, V> protectedDeque = new Deque<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight;
+    private long protectedWeight;
+    private volatile long weightedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong maxLoadNanos = new AtomicLong();
+
+    protected Cache(Builder<K, V> builder) {
+        if (builder.loader == null) throw new IllegalStateException("No loader");
+        if (builder.maximumSize >= 0 && builder.maximumWeight >= 0) throw new IllegalStateException("Both maximumSize and maximumWeight");
+        if (builder.maximumWeight >= 0 && builder.weigher == null) throw new IllegalStateException("maximumWeight without weigher");
+        this.name = builder.name;
+        this.loader = builder.loader;
+        this.weigher = builder.maximumWeight >= 0 ? builder.weigher : null;
+        this.maximum = builder.maximumWeight >= 0 ? builder.maximumWeight : builder.maximumSize >= 0 ? builder.maximumSize : Long.MAX_VALUE;
+        this.windowMaximum = Math.max(1, maximum / 100);
+        this.protectedMaximum = (long) ((maximum - windowMaximum) * 0.8);
+        this.expireNanos = builder.expireNanos;
+        this.refreshNanos = builder.refreshNanos;
+        this.executor = builder.executor;
+        for (int i = 0; i < readBuffers.length; i++) readBuffers[i] = new ReadBuffer();
+        sketch.ensureCapacity(weigher == null && maximum != Long.MAX_VALUE ? maximum : 1024);
+    }
+
+    public static <K, V> Builder<K, V> builder(Loader<? super K, V> loader) {
+        return new Builder<K, V>().loader(loader);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return the cached value or the value of the loader, the concurrent misses of the key share one load.
+     * @throws LoadException if the loader throws a checked exception, the unchecked ones are thrown as is.
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            long now = expireNanos > 0 || refreshNanos > 0 ? System.nanoTime() : 0;
+            if (expireNanos <= 0 || now - node.writeNanos < expireNanos) {
+                hits.increment();
+                afterRead(node);
+                // Read before the refresh: it replaces the value of the node, maybe before this thread returns.
+                V value = node.value;
+                if (refreshNanos > 0 && now - node.writeNanos >= refreshNanos) refresh(node);
+                return value;
+            }
+        }
+        misses.increment();
+        return load(key);
+    }
+
+    /**
+     * @return the cached value or null, the loader is not called.
+     */
+    public V getIfPresent(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null || expireNanos > 0 && System.nanoTime() - node.writeNanos >= expireNanos) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        afterRead(node);
+        return node.value;
+    }
+
+    public void put(K key, V value) {
+        Objects.requireNonNull(value, "value");
+        lock.lock();
+        try {
+            write(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            Node<K, V> node = data.remove(key);
+            if (node != null) unlink(node);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            drainReadBuffers();
+            for (K key : data.keySet()) {
+                Node<K, V> node = data.remove(key);
+                if (node != null) unlink(node);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long estimatedSize() {
+        return data.size();
+    }
+
+    /**
+     * @return the total weight of the entries, with no weigher - the number of them.
+     */
+    public long weightedSize() {
+        return weightedSize;
+    }
+
+    public Stats stats() {
+        return new Stats(name, hits.sum(), misses.sum(), loads.sum(), loadFailures.sum(), loadNanos.sum(), maxLoadNanos.get(),
+                refreshes.sum(), evictions.sum());
+    }
+
+    private V load(K key) {
+        Loading<V> own = new Loading<>();
+        Loading<V> running = loading.putIfAbsent(key, own);
+        if (running != null) return running.await();
+        try {
+            // A concurrent load could complete between the miss and putIfAbsent.
+            Node<K, V> node = data.get(key);
+            V value = node != null && (expireNanos <= 0 || System.nanoTime() - node.writeNanos < expireNanos) ? node.value : callLoader(key);
+            own.complete(value, null);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.complete(null, e);
+            throw e;
+        } finally {
+            loading.remove(key, own);
+        }
+    }
+
+    private V callLoader(K key) {
+        long start = System.nanoTime();
+        V value;
+        try {
+            value = loader.load(key);
+        } catch (RuntimeException | Error e) {
+            loadFailures.increment();
+            throw e;
+        } catch (Exception e) {
+            loadFailures.increment();
+            throw new LoadException(e);
+        } finally {
+            recordLoad(System.nanoTime() - start);
+        }
+        if (value != null) put(key, value);
+        return value;
+    }
+
+    private void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+        for (long max; nanos > (max = maxLoadNanos.get()) && !maxLoadNanos.compareAndSet(max, nanos); ) ;
+    }
+
+    private void refresh(Node<K, V> node) {
+        if (!node.refreshing.compareAndSet(false, true)) return;
+        refreshes.increment();
+        try {
+            executor.execute(() -> {
+                try {
+                    long start = System.nanoTime();
+                    V value;
+                    try {
+                        value = loader.load(node.key);
+                    } finally {
+                        recordLoad(System.nanoTime() - start);
+                    }
+                    lock.lock();
+                    try {
+                        // Not replaced or removed meanwhile.
+                        if (data.get(node.key) == node) {
+                            if (value != null) write(node.key, value);
+                            else if (data.remove(node.key, node)) unlink(node);
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                } catch (Exception | Error e) {
+                    // The old value stays, the next stale read retries.
+                    loadFailures.increment();
+                } finally {
+                    node.refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            node.refreshing.set(false);
+        }
+    }
+
+    /**
+     * Under the lock.
+     */
+    private void write(K key, V value) {
+        drainReadBuffers();
+        int weight = weigher == null ? 1 : weigher.weigh(key, value);
+        if (weight < 0) throw new IllegalArgumentException("Negative weight of " + key + ": " + weight);
+        Node<K, V> node = data.get(key);
+        if (node != null) {
+            long delta = weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+            node.writeNanos = System.nanoTime();
+            weightedSize += delta;
+            if (node.queue == WINDOW) windowWeight += delta;
+            else if (node.queue == PROTECTED) protectedWeight += delta;
+            onAccess(node);
+        } else {
+            node = new Node<>(key, value, weight);
+            data.put(key, node);
+            window.addLast(node);
+            windowWeight += weight;
+            weightedSize += weight;
+            // Weight bounded or unbounded: the sketch grows with the number of the entries.
+            if (data.size() > sketch.capacity()) sketch.ensureCapacity(data.size() * 2L);
+            sketch.increment(key.hashCode());
+        }
+        evict();
+    }
+
+    private void afterRead(Node<K, V> node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().getId() & readBuffers.length - 1];
+        if (!buffer.offer(node) && lock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) buffer.drain(this);
+    }
+
+    /**
+     * Under the lock: the frequency of the key and the position of the entry in its LRU.
+     */
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == DEAD) return;
+        sketch.increment(node.key.hashCode());
+        if (node.queue == WINDOW) {
+            window.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            probation.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedWeight += node.weight;
+            // The protected overflow goes back to the probation.
+            while (protectedWeight > protectedMaximum && protectedDeque.first != null) {
+                Node<K, V> demoted = protectedDeque.first;
+                protectedDeque.remove(demoted);
+                protectedWeight -= demoted.weight;
+                demoted.queue = PROBATION;
+                probation.addLast(demoted);
+            }
+        } else {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    /**
+     * Under the lock: the window overflow moves to the probation as the candidates, while the cache is over the maximum
+     * a candidate competes with the oldest probation entry (the victim), the less frequent one is evicted.
+     */
+    private void evict() {
+        Node<K, V> candidate = null;
+        while (windowWeight > windowMaximum && window.first != null) {
+            Node<K, V> node = window.first;
+            window.remove(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probation.addLast(node);
+            if (candidate == null) candidate = node;
+        }
+        while (weightedSize > maximum) {
+            Node<K, V> victim = probation.first != null ? probation.first : protectedDeque.first != null ? protectedDeque.first : window.first;
+            if (victim == null) break;
+            if (candidate == null || candidate == victim) {
+                if (candidate == victim) candidate = candidate.next;
+                evict(victim);
+            } else if (sketch.frequency(candidate.key.hashCode()) > sketch.frequency(victim.key.hashCode())) {
+                evict(victim);
+            } else {
+                Node<K, V> next = candidate.next;
+                evict(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        if (data.remove(node.key, node)) evictions.increment();
+        unlink(node);
+    }
+
+    private void unlink(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW:
+                window.remove(node);
+                windowWeight -= node.weight;
+                break;
+            case PROBATION:
+                probation.remove(node);
+                break;
+            case PROTECTED:
+                protectedDeque.remove(node);
+                protectedWeight -= node.weight;
+                break;
+            default:
+                return;
+        }
+        weightedSize -= node.weight;
+        node.queue = DEAD;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeNanos;
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        // Guarded by the lock.
+        int weight;
+        int queue;
+        Node<K, V> prev, next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Access ordered list: first - the least recently used.
+     */
+    private static final class Deque<K, V> {
+        Node<K, V> first, last;
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) first = node;
+            else last.next = node;
+            last = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) first = node.next;
+            else node.prev.next = node.next;
+            if (node.next == null) last = node.prev;
+            else node.next.prev = node.prev;
+            node.prev = node.next = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != last) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Lossy ring of the read entries: a full buffer drops the access, the frequency is an estimate anyway.
+     */
+    @SuppressWarnings("serial")
+    private static final class ReadBuffer extends AtomicLong {
+        // The padding keeps the write counters (the AtomicLong value) of the neighbour buffers in different cache lines.
+        long p1, p2, p3, p4, p5, p6, p7;
+        final AtomicReferenceArray<Node<?, ?>> nodes = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+        volatile long reads;
+
+        /**
+         * @return false, if the buffer is full.
+         */
+        boolean offer(Node<?, ?> node) {
+            long writes = get();
+            if (writes - reads >= READ_BUFFER_SIZE) return false;
+            if (compareAndSet(writes, writes + 1)) nodes.lazySet((int) writes & READ_BUFFER_SIZE - 1, node);
+            return true;
+        }
+
+        /**
+         * Under the lock of the cache.
+         */
+        @SuppressWarnings("unchecked")
+        <K, V> void drain(Cache<K, V> cache) {
+            long reads = this.reads;
+            for (long writes = get(); reads < writes; reads++) {
+                int index = (int) reads & READ_BUFFER_SIZE - 1;
+                Node<?, ?> node = nodes.get(index);
+                // Claimed, but not yet published.
+                if (node == null) break;
+                nodes.lazySet(index, null);
+                cache.onAccess((Node<K, V>) node);
+            }
+            this.reads = reads;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, 16 per long, 4 counters per key;
+     * after 10 increments per counter slot all the counters are halved, so the old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+        private long[] table = new long[0];
+        private int mask;
+        private int size;
+        private int sampleSize;
+
+        int capacity() {
+            return table.length;
+        }
+
+        void ensureCapacity(long maximum) {
+            int capacity = (int) Math.min(Math.max(maximum, 16), 1 << 22);
+            capacity = Integer.highestOneBit(capacity - 1 << 1);
+            if (capacity <= table.length) return;
+            table = new long[capacity];
+            mask = capacity - 1;
+            sampleSize = 10 * capacity;
+            size = 0;
+        }
+
+        int frequency(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int offset = start + i << 2;
+                frequency = Math.min(frequency, (int) (table[index(hash, i)] >>> offset & 0xfL));
+            }
+            return frequency;
+        }
+
+        void increment(int hashCode) {
+            int hash = spread(hashCode);
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                int index = index(hash, i);
+                int offset = start + i << 2;
+                if ((table[index] >>> offset & 0xfL) != 0xfL) {
+                    table[index] += 1L << offset;
+                    added = true;
+                }
+            }
+            if (added && ++size == sampleSize) {
+                for (int i = 0; i < table.length; i++) table[i] = table[i] >>> 1 & 0x7777777777777777L;
+                size /= 2;
+            }
+        }
+
+        private int index(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        private static int spread(int x) {
+            x = (x >>> 16 ^ x) * 0x45d9f3b;
+            x = (x >>> 16 ^ x) * 0x45d9f3b;
+            return x >>> 16 ^ x;
+        }
+    }
+
+    /**
+     * A load in progress, the concurrent misses of the key wait for it.
+     */
+    private static final class Loading<V> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private V value;
+        private Throwable failure;
+
+        void complete(V value, Throwable failure) {
+            this.value = value;
+            this.failure = failure;
+            done.countDown();
+        }
+
+        V await() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) Thread.currentThread().interrupt();
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+            return value;
+        }
+    }
+
+    /**
+     * Snapshot of the counters.
+     */
+    public static final class Stats {
+        public final String name;
+        public final long hits;
+        public final long misses;
+        public final long loads;
+        public final long loadFailures;
+        public final long loadNanos;
+        public final long maxLoadNanos;
+        public final long refreshes;
+        public final long evictions;
+
+        Stats(String name, long hits, long misses, long loads, long loadFailures, long loadNanos, long maxLoadNanos, long refreshes, long evictions) {
+            this.name = name;
+            this.hits = hits;
+            this.misses = misses;
+            this.loads = loads;
+            this.loadFailures = loadFailures;
+            this.loadNanos = loadNanos;
+            this.maxLoadNanos = maxLoadNanos;
+            this.refreshes = refreshes;
+            this.evictions = evictions;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 1 : (double) hits / requests;
+        }
+
+        public double averageLoadNanos() {
+            return loads == 0 ? 0 : (double) loadNanos / loads;
+        }
+
+        @Override
+        public String toString() {
+            return name + "{hits=" + hits + ", misses=" + misses + ", hitRate=" + String.format("%.3f", hitRate()) + ", loads=" + loads
+                    + ", loadFailures=" + loadFailures + ", averageLoad=" + TimeUnit.NANOSECONDS.toMicros((long) averageLoadNanos())
+                    + " us, maxLoad=" + TimeUnit.NANOSECONDS.toMicros(maxLoadNanos) + " us, refreshes=" + refreshes + ", evictions=" + evictions + "}";
+        }
+    }
+
+    public static class Builder<K, V> {
+        private String name = "cache";
+        private Loader<? super K, V> loader;
+        private long maximumSize = -1;
+        private long maximumWeight = -1;
+        private Weigher<? super K, ? super V> weigher;
+        private long expireNanos;
+        private long refreshNanos;
+        private Executor executor = ForkJoinPool.commonPool();
+
+        public Builder<K, V> name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        public Builder<K, V> loader(Loader<? super K, V> loader) {
+            this.loader = Objects.requireNonNull(loader, "loader");
+            return this;
+        }
+
+        /**
+         * Maximum number of the entries, unbounded by default.
+         */
+        public Builder<K, V> maximumSize(long maximumSize) {
+            if (maximumSize < 0) throw new IllegalArgumentException("maximumSize: " + maximumSize);
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Maximum total weight of the entries, instead of {@link #maximumSize(long)}.
+         */
+        public Builder<K, V> maximumWeight(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+            if (maximumWeight < 0) throw new IllegalArgumentException("maximumWeight: " + maximumWeight);
+            this.maximumWeight = maximumWeight;
+            this.weigher = Objects.requireNonNull(weigher, "weigher");
+            return this;
+        }
+
+        /**
+         * The entries older than the duration are loaded again by {@link Cache#get(Object)}, 0 (default) - never.
+         */
+        public Builder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0) throw new IllegalArgumentException("expireAfterWrite: " + duration);
+            this.expireNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * The entries older than the duration are reloaded on the executor by the first read, that still returns the old value,
+         * 0 (default) - never. Shorter than {@link #expireAfterWrite(long, TimeUnit)}, so the hot entries never expire.
+         */
+        public Builder<K, V> refreshAfterWrite(long duration, TimeUnit unit) {
+            if (duration < 0) throw new IllegalArgumentException("refreshAfterWrite: " + duration);
+            this.refreshNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Executor of the refreshes, default {@link ForkJoinPool#commonPool()}.
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        public Cache<K, V> build() {
+            return new Cache<>(this);
+        }
+    }
+
+}
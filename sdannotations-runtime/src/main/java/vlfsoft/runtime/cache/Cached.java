@@ -0,0 +1,42 @@
+package vlfsoft.runtime.cache;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Companion of {@code @Pattern.Caching} with the settings of the {@link Cache} of the method:
+ * the class with such methods gets the generated caching subclass {@code <Class>Cached}.
+ */
+@Documented
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface Cached {
+
+    /**
+     * Maximum number of the entries, negative - unbounded.
+     */
+    long maximumSize() default 10_000;
+
+    /**
+     * Maximum total weight of the entries by the {@link #weigher()}, used instead of {@link #maximumSize()}, if not negative.
+     */
+    long maximumWeight() default -1;
+
+    /**
+     * {@link Cache.Weigher} with a no-arg constructor, for {@link #maximumWeight()}.
+     */
+    Class<?> weigher() default Void.class;
+
+    /**
+     * See {@link Cache.Builder#expireAfterWrite(long, TimeUnit)}, 0 - never.
+     */
+    long expireAfterWrite() default 0;
+
+    /**
+     * See {@link Cache.Builder#refreshAfterWrite(long, TimeUnit)}, 0 - never.
+     */
+    long refreshAfterWrite() default 0;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+}
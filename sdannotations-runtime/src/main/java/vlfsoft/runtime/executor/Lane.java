@@ -0,0 +1,201 @@
+package vlfsoft.runtime.executor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One lane of the {@link ThreadPool}: the executor of the CPU-bound or of the blocking tasks with the counters.
+ * A task is timed twice: when it starts (the wait in the queue or for the permit of the semaphore) and when it ends (the run).
+ * The counters are {@link LongAdder}s, the cost per task is two {@link System#nanoTime()} and a few uncontended adds.
+ */
+public final class Lane extends AbstractExecutorService {
+
+    private final String name;
+    private final ExecutorService executor;
+    /**
+     * Bounds the running tasks of the virtual threads, null - the pool size bounds them.
+     */
+    private final Semaphore semaphore;
+    private final boolean virtual;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder active = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder runNanos = new LongAdder();
+
+    Lane(String name, ExecutorService executor, Semaphore semaphore, boolean virtual) {
+        this.name = name;
+        this.executor = executor;
+        this.semaphore = semaphore;
+        this.virtual = virtual;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return true, if the tasks run on the virtual threads.
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long queuedAt = System.nanoTime();
+        queued.increment();
+        try {
+            executor.execute(new LaneTask(task, queuedAt));
+        } catch (RejectedExecutionException e) {
+            queued.decrement();
+            rejected.increment();
+            throw e;
+        }
+        submitted.increment();
+    }
+
+    private void run(Runnable task, long queuedAt) {
+        if (semaphore != null) {
+            try {
+                semaphore.acquire();
+            } catch (InterruptedException e) {
+                // shutdownNow: the task never starts.
+                queued.decrement();
+                rejected.increment();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        long start = System.nanoTime();
+        queued.decrement();
+        active.increment();
+        waitNanos.add(start - queuedAt);
+        boolean ok = false;
+        try {
+            task.run();
+            ok = true;
+        } finally {
+            runNanos.add(System.nanoTime() - start);
+            active.decrement();
+            (ok ? completed : failed).increment();
+            if (semaphore != null) semaphore.release();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * @return the submitted tasks, that never started.
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> pending = executor.shutdownNow();
+        List<Runnable> tasks = new ArrayList<>(pending.size());
+        for (Runnable runnable : pending) {
+            if (runnable instanceof LaneTask) {
+                queued.decrement();
+                tasks.add(((LaneTask) runnable).task);
+            } else {
+                tasks.add(runnable);
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * The queued task: {@link #shutdownNow()} returns the submitted one.
+     */
+    private final class LaneTask implements Runnable {
+        final Runnable task;
+        final long queuedAt;
+
+        LaneTask(Runnable task, long queuedAt) {
+            this.task = task;
+            this.queuedAt = queuedAt;
+        }
+
+        @Override
+        public void run() {
+            Lane.this.run(task, queuedAt);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(submitted.sum(), rejected.sum(), queued.sum(), active.sum(), completed.sum(), failed.sum(), waitNanos.sum(), runNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return name + (virtual ? "(virtual)" : "") + stats();
+    }
+
+    /**
+     * Snapshot of the counters, the sums of the adders are not atomic together.
+     */
+    public static final class Stats {
+        public final long submitted;
+        public final long rejected;
+        /**
+         * Tasks waiting in the queue or for the permit: the queue depth.
+         */
+        public final long queued;
+        public final long active;
+        public final long completed;
+        public final long failed;
+        public final long waitNanos;
+        public final long runNanos;
+
+        Stats(long submitted, long rejected, long queued, long active, long completed, long failed, long waitNanos, long runNanos) {
+            this.submitted = submitted;
+            this.rejected = rejected;
+            this.queued = queued;
+            this.active = active;
+            this.completed = completed;
+            this.failed = failed;
+            this.waitNanos = waitNanos;
+            this.runNanos = runNanos;
+        }
+
+        public double averageWaitNanos() {
+            long started = completed + failed + active;
+            return started == 0 ? 0 : (double) waitNanos / started;
+        }
+
+        public double averageRunNanos() {
+            long finished = completed + failed;
+            return finished == 0 ? 0 : (double) runNanos / finished;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("{submitted=%d, rejected=%d, queued=%d, active=%d, completed=%d, failed=%d, averageWait=%.0f ns, averageRun=%.0f ns}",
+                    submitted, rejected, queued, active, completed, failed, averageWaitNanos(), averageRunNanos());
+        }
+    }
+
+}
@@ -0,0 +1,234 @@
+package vlfsoft.runtime.executor;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pool, the runtime of {@code @ConcurrencyPattern.ThreadPool}: two {@link Lane}s, the task goes by its class
+ * <ul>
+ * <li> {@link #cpu()} - the CPU-bound tasks: the platform threads, one per core by default, and a bounded queue,
+ * a full queue rejects the task with {@link RejectedExecutionException}.
+ * <li> {@link #io()} - the blocking tasks ({@link Blocking} or the classes of {@link Builder#blocking(Class[])}), f.e. JDBC:
+ * a virtual thread per task, at most {@link Builder#ioConcurrency(int)} of them run (a {@link Semaphore}), the others wait
+ * for the permit on their unmounted virtual threads. So the blocking code scales past the platform thread limit as it is.
+ * </ul>
+ * The virtual threads (Java 21+) are looked up by reflection, the code is Java 8. Without them the io lane is a platform pool
+ * of ioConcurrency threads with an unbounded queue. Note: a virtual thread blocked inside synchronized pins its carrier
+ * (before Java 24), the JDBC drivers with the synchronized I/O need the ioConcurrency not above the number of the carriers.
+ * <pre>
+ * ThreadPool pool = ThreadPool.builder().name("orders").ioConcurrency(200).blocking(OrderQuery.class).build();
+ * pool.execute(new OrderQuery(id));         // io
+ * pool.execute(() -&gt; price(order));        // cpu
+ * pool.io().submit(() -&gt; repository.load(id));
+ * </pre>
+ */
+public class ThreadPool extends AbstractExecutorService {
+
+    /**
+     * Marks the blocking tasks, that go to the {@link #io()} lane.
+     */
+    public interface Blocking {
+    }
+
+    private final String name;
+    private final Lane cpu;
+    private final Lane io;
+    private final ClassValue<Boolean> blocking;
+
+    protected ThreadPool(Builder builder) {
+        this.name = builder.name;
+        ThreadPoolExecutor cpuExecutor = new ThreadPoolExecutor(builder.cpuThreads, builder.cpuThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(builder.cpuQueueCapacity), threadFactory(name + "-cpu-"));
+        cpuExecutor.prestartAllCoreThreads();
+        this.cpu = new Lane(name + "-cpu", cpuExecutor, null, false);
+        ExecutorService virtual = builder.virtualThreads ? virtualThreadPerTaskExecutor(name + "-io-") : null;
+        if (virtual != null) {
+            this.io = new Lane(name + "-io", virtual, new Semaphore(builder.ioConcurrency), true);
+        } else {
+            ThreadPoolExecutor ioExecutor = new ThreadPoolExecutor(builder.ioConcurrency, builder.ioConcurrency, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), threadFactory(name + "-io-"));
+            ioExecutor.allowCoreThreadTimeOut(true);
+            this.io = new Lane(name + "-io", ioExecutor, null, false);
+        }
+        List<Class<?>> classes = new ArrayList<>(builder.blocking);
+        this.blocking = new ClassValue<Boolean>() {
+            @Override
+            protected Boolean computeValue(Class<?> type) {
+                for (Class<?> c : classes) {
+                    if (c.isAssignableFrom(type)) return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 0).factory()), null - no virtual threads.
+     */
+    static ExecutorService virtualThreadPerTaskExecutor(String prefix) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            // Before Java 21, or the preview is not enabled (Java 19, 20).
+            return null;
+        }
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger number = new AtomicInteger();
+        return runnable -> new Thread(runnable, prefix + number.getAndIncrement());
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public Lane cpu() {
+        return cpu;
+    }
+
+    public Lane io() {
+        return io;
+    }
+
+    /**
+     * @return the lane of the task class.
+     */
+    public Lane lane(Class<?> taskType) {
+        return blocking.get(taskType) ? io : cpu;
+    }
+
+    /**
+     * Runs the task in the lane of its class, the tasks of {@link #submit(Callable)} - in the lane of the callable.
+     */
+    @Override
+    public void execute(Runnable task) {
+        Class<?> type = task instanceof RoutedTask ? ((RoutedTask<?>) task).type : task.getClass();
+        lane(type).execute(task);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new RoutedTask<>(callable, callable.getClass());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new RoutedTask<>(Executors.callable(runnable, value), runnable.getClass());
+    }
+
+    private static final class RoutedTask<T> extends FutureTask<T> {
+        final Class<?> type;
+
+        RoutedTask(Callable<T> callable, Class<?> type) {
+            super(callable);
+            this.type = type;
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        cpu.shutdown();
+        io.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> tasks = new ArrayList<>(cpu.shutdownNow());
+        tasks.addAll(io.shutdownNow());
+        return tasks;
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return cpu.isShutdown() && io.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return cpu.isTerminated() && io.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return cpu.awaitTermination(timeout, unit) && io.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return name + "{" + cpu + ", " + io + "}";
+    }
+
+    public static class Builder {
+        private String name = "pool";
+        private int cpuThreads = Runtime.getRuntime().availableProcessors();
+        private int cpuQueueCapacity = 10_000;
+        private int ioConcurrency = 256;
+        private boolean virtualThreads = true;
+        private final Set<Class<?>> blocking = new LinkedHashSet<>(Collections.singleton(Blocking.class));
+
+        public Builder name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Platform threads of the cpu lane, default the number of the cores.
+         */
+        public Builder cpuThreads(int cpuThreads) {
+            if (cpuThreads < 1) throw new IllegalArgumentException("cpuThreads: " + cpuThreads);
+            this.cpuThreads = cpuThreads;
+            return this;
+        }
+
+        /**
+         * Tasks waiting in the cpu lane, over it they are rejected, default 10 000.
+         */
+        public Builder cpuQueueCapacity(int cpuQueueCapacity) {
+            if (cpuQueueCapacity < 1) throw new IllegalArgumentException("cpuQueueCapacity: " + cpuQueueCapacity);
+            this.cpuQueueCapacity = cpuQueueCapacity;
+            return this;
+        }
+
+        /**
+         * Running tasks of the io lane, f.e. the size of the JDBC connection pool, default 256.
+         */
+        public Builder ioConcurrency(int ioConcurrency) {
+            if (ioConcurrency < 1) throw new IllegalArgumentException("ioConcurrency: " + ioConcurrency);
+            this.ioConcurrency = ioConcurrency;
+            return this;
+        }
+
+        /**
+         * Virtual threads for the io lane, if the JVM has them, default true; false - the platform pool always.
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Task classes (and their subclasses), that go to the io lane, besides the {@link Blocking} ones.
+         */
+        public Builder blocking(Class<?>... types) {
+            blocking.addAll(Arrays.asList(types));
+            return this;
+        }
+
+        public ThreadPool build() {
+            return new ThreadPool(this);
+        }
+    }
+
+}
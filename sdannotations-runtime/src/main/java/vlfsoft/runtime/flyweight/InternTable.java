@@ -0,0 +1,184 @@
+package vlfsoft.runtime.flyweight;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+
+/**
+ * Concurrent weak-valued intern table, the repository of the flyweights generated for {@code @GOF.Flyweight.Intrinsic}.
+ * <p>
+ * The table is split into segments by the hash, every segment is an open addressing (linear probing) array of weak entries.
+ * {@link #intern(Key)}:
+ * <ul>
+ * <li> hit - lock-free probing of the current array of the segment, no allocation besides the key
+ * (the generated keys are usually scalar replaced).
+ * <li> miss - the segment is locked, probed again, the new flyweight is created and inserted.
+ * </ul>
+ * The table does not keep the flyweights alive: the entries of the collected ones are removed under the segment lock,
+ * when the segment is changed next time, or by {@link #expunge()}.
+ * <p>
+ * The lock-free readers may see a stale array or a not yet visible entry, that only sends them to the locked path,
+ * so every key has at most one live flyweight.
+ */
+public final class InternTable<T> {
+
+    /**
+     * Intrinsic state of a flyweight, that identifies it.
+     */
+    public interface Key<T> {
+        int hash();
+
+        boolean matches(T flyweight);
+
+        T create();
+    }
+
+    private static final int SEGMENTS = 16;
+    private static final int MIN_CAPACITY = 8;
+
+    private final Segment<T>[] segments;
+
+    public InternTable() {
+        segments = newSegments(SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Segment<T>[] newSegments(int count) {
+        return (Segment<T>[]) new Segment<?>[count];
+    }
+
+    /**
+     * @return the live flyweight, that matches the key, or the new one of {@link Key#create()}.
+     */
+    public T intern(Key<T> key) {
+        int hash = spread(key.hash());
+        Segment<T> segment = segments[hash >>> 28];
+        Entry<T>[] entries = segment.entries;
+        int mask = entries.length - 1;
+        for (int i = hash & mask; ; i = i + 1 & mask) {
+            Entry<T> entry = entries[i];
+            if (entry == null) break;
+            if (entry.hash == hash) {
+                T flyweight = entry.get();
+                if (flyweight != null && key.matches(flyweight)) return flyweight;
+            }
+        }
+        return segment.intern(key, hash);
+    }
+
+    /**
+     * @return number of the entries, including the collected, but not yet removed flyweights.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<T> segment : segments) size += segment.size;
+        return size;
+    }
+
+    /**
+     * Removes the entries of the collected flyweights.
+     */
+    public void expunge() {
+        for (Segment<T> segment : segments) {
+            synchronized (segment) {
+                segment.expunge(true);
+            }
+        }
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static final class Entry<T> extends WeakReference<T> {
+        final int hash;
+
+        Entry(T referent, int hash, ReferenceQueue<T> queue) {
+            super(referent, queue);
+            this.hash = hash;
+        }
+    }
+
+    private static final class Segment<T> {
+        /**
+         * Replaced, not modified in place, when the entries are rehashed; the writes of the new entries are plain,
+         * a reader, that does not see one, takes the locked path.
+         */
+        volatile Entry<T>[] entries = newEntries(MIN_CAPACITY);
+        /**
+         * Live and collected, but not yet removed, entries.
+         */
+        volatile int size;
+        private final ReferenceQueue<T> queue = new ReferenceQueue<>();
+        private int collected;
+
+        synchronized T intern(Key<T> key, int hash) {
+            expunge(false);
+            Entry<T>[] entries = this.entries;
+            int mask = entries.length - 1;
+            int i = hash & mask;
+            for (; ; i = i + 1 & mask) {
+                Entry<T> entry = entries[i];
+                if (entry == null) break;
+                if (entry.hash == hash) {
+                    T flyweight = entry.get();
+                    if (flyweight != null && key.matches(flyweight)) return flyweight;
+                }
+            }
+            T flyweight = key.create();
+            if (size + 1 > entries.length * 3 / 4) {
+                entries = rehash(size + 1);
+                mask = entries.length - 1;
+                for (i = hash & mask; entries[i] != null; i = i + 1 & mask) ;
+            }
+            entries[i] = new Entry<>(flyweight, hash, queue);
+            this.entries = entries;
+            size++;
+            return flyweight;
+        }
+
+        /**
+         * Removes the collected entries. Linear probing can't just null a slot, so the whole array is rebuilt,
+         * when a quarter of the entries is collected (or always, if forced).
+         */
+        void expunge(boolean force) {
+            while (queue.poll() != null) collected++;
+            if (collected > 0 && (force || collected >= size / 4)) entries = rehash(0);
+        }
+
+        /**
+         * @return new array with the live entries, that has room for at least the required count, it is not published.
+         */
+        private Entry<T>[] rehash(int required) {
+            Entry<T>[] old = entries;
+            int live = 0;
+            for (Entry<T> entry : old) {
+                if (entry != null && entry.get() != null) live++;
+            }
+            int capacity = MIN_CAPACITY;
+            while (Math.max(live + 1, required) > capacity / 2) capacity <<= 1;
+            Entry<T>[] entries = newEntries(capacity);
+            int mask = capacity - 1;
+            for (Entry<T> entry : old) {
+                if (entry == null || entry.get() == null) continue;
+                int i = entry.hash & mask;
+                while (entries[i] != null) i = i + 1 & mask;
+                entries[i] = entry;
+            }
+            size = live;
+            collected = 0;
+            return entries;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> Entry<T>[] newEntries(int capacity) {
+            return (Entry<T>[]) new Entry<?>[capacity];
+        }
+    }
+
+}
@@ -0,0 +1,78 @@
+package vlfsoft.runtime.identity;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Identity maps of one unit of work (business transaction): one map per entity type, they are dropped together with the scope.
+ * <pre>
+ * try (IdentityScope scope = IdentityScope.open()) {
+ *     Order order = OrderIdentityMap.current().computeIfAbsent(id, orderMapper::load);
+ *     ...
+ * }
+ * </pre>
+ * {@link #open()} binds the scope to the current thread ({@link #current()}), the scopes can be nested,
+ * {@link #close()} restores the enclosing one. A scope can also be created with the constructor and passed explicitly.
+ */
+public class IdentityScope implements AutoCloseable {
+
+    private static final ThreadLocal<IdentityScope> CURRENT = new ThreadLocal<>();
+
+    private final ConcurrentHashMap<Class<?>, LongIdentityMap<?>> maps = new ConcurrentHashMap<>();
+    private final IdentityScope enclosing;
+    private final boolean bound;
+
+    public IdentityScope() {
+        this(null, false);
+    }
+
+    private IdentityScope(IdentityScope enclosing, boolean bound) {
+        this.enclosing = enclosing;
+        this.bound = bound;
+    }
+
+    /**
+     * @return new scope, that is the current one of the thread until {@link #close()}.
+     */
+    public static IdentityScope open() {
+        IdentityScope scope = new IdentityScope(CURRENT.get(), true);
+        CURRENT.set(scope);
+        return scope;
+    }
+
+    /**
+     * @throws IllegalStateException if no scope is open in the thread.
+     */
+    public static IdentityScope current() {
+        IdentityScope scope = CURRENT.get();
+        if (scope == null) throw new IllegalStateException("No IdentityScope is open in " + Thread.currentThread().getName());
+        return scope;
+    }
+
+    /**
+     * @return identity map of the entity type in this scope, it is created by the factory on the first call.
+     */
+    @SuppressWarnings("unchecked")
+    public <T, M extends LongIdentityMap<T>> M map(Class<T> entityType, Supplier<M> factory) {
+        LongIdentityMap<?> map = maps.get(entityType);
+        if (map == null) map = maps.computeIfAbsent(entityType, type -> factory.get());
+        return (M) map;
+    }
+
+    public <T> LongIdentityMap<T> map(Class<T> entityType) {
+        return map(entityType, LongIdentityMap::new);
+    }
+
+    /**
+     * Drops the maps and, if the scope was opened with {@link #open()}, restores the enclosing scope of the thread.
+     */
+    @Override
+    public void close() {
+        maps.clear();
+        if (bound && CURRENT.get() == this) {
+            if (enclosing != null) CURRENT.set(enclosing);
+            else CURRENT.remove();
+        }
+    }
+
+}
@@ -0,0 +1,296 @@
+package vlfsoft.runtime.identity;
+
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Identity map of the entities with long ids, the runtime of {@code @PEAA.IdentityMap}: id -> the loaded instance.
+ * <p>
+ * The ids are not boxed: the map is split into segments by the hash of the id, every segment is an open addressing table
+ * (linear probing, backward shift deletion) of long keys and the values, guarded by a {@link StampedLock}.
+ * {@link #get(long)} is an optimistic read: no lock, no CAS and no allocation, unless a writer of the same segment interferes.
+ * The writes lock the segment only.
+ * <p>
+ * Usually one map per entity type per unit of work, see {@link IdentityScope}.
+ */
+public class LongIdentityMap<T> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int MIN_CAPACITY = 16;
+
+    private final ToLongFunction<? super T> idOf;
+    private final Segment[] segments;
+    private final int segmentShift;
+
+    public LongIdentityMap() {
+        this(null);
+    }
+
+    /**
+     * @param idOf id of an entity, f.e. {@code order -> order.id}, for {@link #put(Object)}; null - only the id based methods.
+     */
+    public LongIdentityMap(ToLongFunction<? super T> idOf) {
+        this(idOf, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param segments number of the independently locked segments, rounded up to a power of 2.
+     */
+    public LongIdentityMap(ToLongFunction<? super T> idOf, int segments) {
+        if (segments < 1) throw new IllegalArgumentException("segments: " + segments);
+        this.idOf = idOf;
+        int count = Integer.highestOneBit(segments - 1 << 1 | 1);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) this.segments[i] = new Segment();
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(count);
+    }
+
+    /**
+     * @return the entity with the id or null.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(long id) {
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        long stamp = segment.tryOptimisticRead();
+        if (stamp != 0) {
+            Object value = segment.table.find(id, hash);
+            if (segment.validate(stamp)) return (T) value;
+        }
+        stamp = segment.readLock();
+        try {
+            return (T) segment.table.find(id, hash);
+        } finally {
+            segment.unlockRead(stamp);
+        }
+    }
+
+    public boolean containsKey(long id) {
+        return get(id) != null;
+    }
+
+    /**
+     * @return the entity, that is already in the map (it is kept), or null, if the entity is added.
+     */
+    @SuppressWarnings("unchecked")
+    public T putIfAbsent(long id, T entity) {
+        Objects.requireNonNull(entity, "entity");
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        long stamp = segment.writeLock();
+        try {
+            return (T) segment.put(id, hash, entity, false);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return the entity with the same id, that is replaced, or null.
+     */
+    @SuppressWarnings("unchecked")
+    public T put(long id, T entity) {
+        Objects.requireNonNull(entity, "entity");
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        long stamp = segment.writeLock();
+        try {
+            return (T) segment.put(id, hash, entity, true);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * {@link #putIfAbsent(long, Object)} with the id of the entity.
+     *
+     * @throws UnsupportedOperationException if the map was created without the id function.
+     */
+    public T put(T entity) {
+        if (idOf == null) throw new UnsupportedOperationException("The map has no id function");
+        return putIfAbsent(idOf.applyAsLong(entity), entity);
+    }
+
+    /**
+     * @return the entity with the id, it is loaded and added, if it is not in the map.
+     * The loader is called without a lock, so two threads can load the same id, only one of the instances is kept and returned to both.
+     * The loaded null is not added and returned.
+     */
+    public T computeIfAbsent(long id, LongFunction<? extends T> loader) {
+        T entity = get(id);
+        if (entity != null) return entity;
+        T loaded = loader.apply(id);
+        if (loaded == null) return null;
+        T existing = putIfAbsent(id, loaded);
+        return existing != null ? existing : loaded;
+    }
+
+    /**
+     * @return the removed entity or null.
+     */
+    @SuppressWarnings("unchecked")
+    public T remove(long id) {
+        long hash = hash(id);
+        Segment segment = segment(hash);
+        long stamp = segment.writeLock();
+        try {
+            return (T) segment.remove(id, hash);
+        } finally {
+            segment.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) size += segment.size;
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            long stamp = segment.writeLock();
+            try {
+                segment.table = new Table(MIN_CAPACITY);
+                segment.size = 0;
+            } finally {
+                segment.unlockWrite(stamp);
+            }
+        }
+    }
+
+    public interface EntryConsumer<T> {
+        void accept(long id, T entity);
+    }
+
+    /**
+     * Visits the entries segment by segment, every segment under its read lock.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super T> consumer) {
+        for (Segment segment : segments) {
+            long stamp = segment.readLock();
+            try {
+                Table table = segment.table;
+                for (int i = 0; i < table.values.length; i++) {
+                    if (table.values[i] != null) consumer.accept(table.keys[i], (T) table.values[i]);
+                }
+            } finally {
+                segment.unlockRead(stamp);
+            }
+        }
+    }
+
+    private Segment segment(long hash) {
+        return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+    }
+
+    /**
+     * The high bits select the segment, the low bits - the slot.
+     */
+    private static long hash(long id) {
+        long h = id;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Keys and values are replaced together on resize, so an optimistic reader never sees the arrays of different tables.
+     */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * The number of the probes is bounded: an optimistic reader can see the table in the middle of a change.
+         */
+        Object find(long id, long hash) {
+            int i = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                Object value = values[i];
+                if (value == null) return null;
+                if (keys[i] == id) return value;
+                i = i + 1 & mask;
+            }
+            return null;
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class Segment extends StampedLock {
+        Table table = new Table(MIN_CAPACITY);
+        volatile int size;
+
+        Object put(long id, long hash, Object entity, boolean replace) {
+            Table table = this.table;
+            int i = (int) hash & table.mask;
+            for (Object value; (value = table.values[i]) != null; i = i + 1 & table.mask) {
+                if (table.keys[i] == id) {
+                    if (replace) table.values[i] = entity;
+                    return value;
+                }
+            }
+            if (size + 1 > (table.mask + 1) * 3 / 4) {
+                table = resize(table);
+                for (i = (int) hash & table.mask; table.values[i] != null; i = i + 1 & table.mask) ;
+            }
+            table.keys[i] = id;
+            table.values[i] = entity;
+            size++;
+            return null;
+        }
+
+        Object remove(long id, long hash) {
+            Table table = this.table;
+            int mask = table.mask;
+            int i = (int) hash & mask;
+            for (Object value; (value = table.values[i]) != null; i = i + 1 & mask) {
+                if (table.keys[i] != id) continue;
+                // Backward shift: move the following entries of the cluster, that can't be found past the hole, into it.
+                int hole = i;
+                for (int j = i + 1 & mask; table.values[j] != null; j = j + 1 & mask) {
+                    int home = (int) hash(table.keys[j]) & mask;
+                    if ((j - home & mask) >= (j - hole & mask)) {
+                        table.keys[hole] = table.keys[j];
+                        table.values[hole] = table.values[j];
+                        hole = j;
+                    }
+                }
+                table.values[hole] = null;
+                size--;
+                return value;
+            }
+            return null;
+        }
+
+        private Table resize(Table old) {
+            Table table = new Table((old.mask + 1) * 2);
+            for (int j = 0; j < old.values.length; j++) {
+                if (old.values[j] == null) continue;
+                int i = (int) hash(old.keys[j]) & table.mask;
+                while (table.values[i] != null) i = i + 1 & table.mask;
+                table.keys[i] = old.keys[j];
+                table.values[i] = old.values[j];
+            }
+            this.table = table;
+            return table;
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+package vlfsoft.runtime.lazy;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.function.Supplier;
+
+/**
+ * Value holder, the runtime of {@code @PEAA.LazyLoad} and {@code @GOF.Proxy.Virtual}: the value is loaded on the first {@link #get()}.
+ * <p>
+ * The loaded value is published with a single CAS, no lock: after the load {@link #get()} is a volatile read and a null check.
+ * The threads, that miss the value at the same time, call the loader concurrently, the first CAS wins,
+ * all of them get the same instance. So the loader must be safe to call more than once, f.e. a load by the id.
+ * <p>
+ * The generated virtual proxies ({@code <Type>VirtualProxy}) keep the value in their own field and use {@link #load(AtomicReferenceFieldUpdater, Object, Supplier)},
+ * so a call through a proxy is one more monomorphic call, without reflection, boxing or allocation.
+ */
+public final class Lazy<T> implements Supplier<T> {
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<Lazy, Object> VALUE = AtomicReferenceFieldUpdater.newUpdater(Lazy.class, Object.class, "value");
+
+    private final Supplier<? extends T> loader;
+    private volatile T value;
+
+    private Lazy(Supplier<? extends T> loader) {
+        this.loader = loader;
+    }
+
+    public static <T> Lazy<T> of(Supplier<? extends T> loader) {
+        return new Lazy<>(Objects.requireNonNull(loader, "loader"));
+    }
+
+    /**
+     * @throws NullPointerException if the loader returns null.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get() {
+        T value = this.value;
+        return value != null ? value : (T) load(VALUE, this, loader);
+    }
+
+    public boolean isLoaded() {
+        return value != null;
+    }
+
+    /**
+     * Loads the value of the holder field of the owner and publishes it with one CAS, if the field is still null.
+     *
+     * @return the published value: the loaded one or the one, that another thread has published first.
+     * @throws NullPointerException if the loader returns null.
+     */
+    public static <O, T> T load(AtomicReferenceFieldUpdater<O, T> field, O owner, Supplier<? extends T> loader) {
+        T loaded = Objects.requireNonNull(loader.get(), "The loader returned null");
+        return field.compareAndSet(owner, null, loaded) ? loaded : field.get(owner);
+    }
+
+    @Override
+    public String toString() {
+        T value = this.value;
+        return value != null ? "Lazy[" + value + "]" : "Lazy[not loaded]";
+    }
+
+}
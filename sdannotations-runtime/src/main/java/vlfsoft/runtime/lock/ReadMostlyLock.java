@@ -0,0 +1,240 @@
+package vlfsoft.runtime.lock;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Read-mostly lock, the runtime of {@code @ConcurrencyPattern.ReaderWriterLock}: a {@link StampedLock} with two read paths,
+ * that do not write a shared reader counter
+ * <ul>
+ * <li> optimistic - {@link #tryOptimisticRead()} and {@link #validate(long)}, no write at all, the reader retries,
+ * if a writer came in between.
+ * <li> biased (BRAVO, Dice and Kogan, 2019) - while the lock is read-biased a reader increments its stripe of the striped reader counters
+ * (a stripe per thread hash, a cache line each), the writer revokes the bias and waits for the stripes to drain.
+ * The revocation is slow, so the bias is inhibited for {@link Builder#inhibitMultiplier(int)} times the revocation time after it,
+ * the readers go to the read lock of the StampedLock meanwhile, then the first of them restores the bias.
+ * </ul>
+ * The stamps are like the ones of the StampedLock: a read stamp goes back to {@link #unlockRead(long)}, a write stamp - to {@link #unlockWrite(long)}.
+ * The lock is not reentrant.
+ * <pre>
+ * ReadMostlyLock lock = ReadMostlyLock.builder().build();
+ * double distance = lock.read(() -&gt; Math.hypot(x, y));
+ * lock.write(() -&gt; { x += dx; y += dy; });
+ * </pre>
+ */
+public class ReadMostlyLock {
+
+    /**
+     * Ints per stripe: a stripe on its own cache line (64 bytes).
+     */
+    private static final int PAD = 16;
+    private static final int SPINS = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    private final AtomicIntegerArray readers;
+    private final int mask;
+    private final int optimisticRetries;
+    private final long inhibitMultiplier;
+    private volatile boolean biased = true;
+    /**
+     * Until then the bias is not restored, by the writers.
+     */
+    private long inhibitUntil;
+    /**
+     * By the writers.
+     */
+    private long revocations;
+
+    protected ReadMostlyLock(Builder builder) {
+        int stripes = builder.stripes == 1 ? 1 : Integer.highestOneBit(builder.stripes - 1) << 1;
+        this.readers = new AtomicIntegerArray((stripes + 1) * PAD);
+        this.mask = stripes - 1;
+        this.optimisticRetries = builder.optimisticRetries;
+        this.inhibitMultiplier = builder.inhibitMultiplier;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return stripe of the current thread, by the thread id: the thread keeps its stripe, the threads spread over the stripes.
+     */
+    private int stripe() {
+        int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+        return ((h ^ (h >>> 16)) & mask) + 1;
+    }
+
+    /**
+     * @return stamp for {@link #validate(long)}, 0 - write-locked.
+     */
+    public long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    /**
+     * @return true, if there was no write since the stamp of {@link #tryOptimisticRead()}.
+     */
+    public boolean validate(long stamp) {
+        return lock.validate(stamp);
+    }
+
+    /**
+     * @return stamp for {@link #unlockRead(long)}: negative - the stripe of the biased path, positive - the read lock of the StampedLock.
+     */
+    public long readLock() {
+        if (biased) {
+            int stripe = stripe();
+            readers.getAndIncrement(stripe * PAD);
+            // Re-check after the increment: the writer either sees the increment or its revocation is seen here.
+            if (biased) return -stripe;
+            readers.getAndDecrement(stripe * PAD);
+        }
+        long stamp = lock.readLock();
+        // No writer holds the lock now: the bias can be restored.
+        if (!biased && System.nanoTime() - inhibitUntil >= 0) biased = true;
+        return stamp;
+    }
+
+    public void unlockRead(long stamp) {
+        if (stamp < 0) {
+            readers.getAndDecrement((int) -stamp * PAD);
+        } else {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Takes the write lock of the StampedLock and revokes the bias: waits for the readers of the stripes.
+     */
+    public long writeLock() {
+        long stamp = lock.writeLock();
+        if (biased) revoke();
+        return stamp;
+    }
+
+    public void unlockWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    private void revoke() {
+        long start = System.nanoTime();
+        biased = false;
+        for (int i = PAD; i < readers.length(); i += PAD) {
+            for (int spins = 0; readers.get(i) != 0; spins++) {
+                if (spins >= SPINS) Thread.yield();
+            }
+        }
+        long now = System.nanoTime();
+        inhibitUntil = now + (now - start) * inhibitMultiplier;
+        revocations++;
+    }
+
+    /**
+     * Reads optimistically, then under the read lock, if a writer came in between {@link Builder#optimisticRetries(int)} times.
+     * The reader may see the state in the middle of a write, so it must only read the fields (no loops by them, no side effects),
+     * its result and its exception are dropped, if the validation fails.
+     */
+    public <T> T read(Supplier<T> reader) {
+        for (int i = 0; i < optimisticRetries; i++) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp == 0) continue;
+            T result;
+            try {
+                result = reader.get();
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) throw e;
+                continue;
+            }
+            if (lock.validate(stamp)) return result;
+        }
+        long stamp = readLock();
+        try {
+            return reader.get();
+        } finally {
+            unlockRead(stamp);
+        }
+    }
+
+    public <T> T write(Supplier<T> writer) {
+        long stamp = writeLock();
+        try {
+            return writer.get();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void write(Runnable writer) {
+        long stamp = writeLock();
+        try {
+            writer.run();
+        } finally {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return true, if the readers take the biased path now.
+     */
+    public boolean isBiased() {
+        return biased;
+    }
+
+    public boolean isWriteLocked() {
+        return lock.isWriteLocked();
+    }
+
+    /**
+     * @return revocations of the bias by the writers, read under the write lock for the exact value.
+     */
+    public long revocations() {
+        return revocations;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadMostlyLock{stripes=" + (mask + 1) + ", biased=" + biased + ", revocations=" + revocations + ", " + lock + "}";
+    }
+
+    public static class Builder {
+        private int stripes = 4 * Runtime.getRuntime().availableProcessors();
+        private int optimisticRetries = 1;
+        private int inhibitMultiplier = 9;
+
+        /**
+         * Reader counters, rounded up to a power of two, default 4 per core: fewer threads share a counter.
+         */
+        public Builder stripes(int stripes) {
+            if (stripes < 1 || stripes > 1 << 16) throw new IllegalArgumentException("stripes: " + stripes);
+            this.stripes = stripes;
+            return this;
+        }
+
+        /**
+         * Optimistic attempts of {@link #read(Supplier)} before the read lock, default 1; 0 - the read lock always,
+         * f.e. for a reader, that can't see a half-written state.
+         */
+        public Builder optimisticRetries(int optimisticRetries) {
+            if (optimisticRetries < 0) throw new IllegalArgumentException("optimisticRetries: " + optimisticRetries);
+            this.optimisticRetries = optimisticRetries;
+            return this;
+        }
+
+        /**
+         * The bias stays off for this times the last revocation time, default 9 (BRAVO): the writers pay at most 1/(1 + 9)
+         * of their time for the revocations; 0 - the bias is restored by the next reader.
+         */
+        public Builder inhibitMultiplier(int inhibitMultiplier) {
+            if (inhibitMultiplier < 0) throw new IllegalArgumentException("inhibitMultiplier: " + inhibitMultiplier);
+            this.inhibitMultiplier = inhibitMultiplier;
+            return this;
+        }
+
+        public ReadMostlyLock build() {
+            return new ReadMostlyLock(this);
+        }
+    }
+
+}
@@ -0,0 +1,728 @@
+package vlfsoft.runtime.pool;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of expensive objects, the runtime of {@code @Pattern.ObjectPool}, the typed pools are generated by vlfsoft.processor.ObjectPoolProcessor.
+ * See <a href="https://sourcemaking.com/design_patterns/object_pool">Object Pool Design Pattern</a>
+ * <p>
+ * {@link #acquire()} / {@link #release(Object)}:
+ * <ul>
+ * <li> fast path - a small per thread cache, locked with an uncontended CAS of its owner, so a waiting thread can take its objects.
+ * <li> shared path - a striped stack, the stripe of the thread is locked with a single CAS,
+ * a busy stripe is skipped on acquisition.
+ * <li> slow path - a new object is created, while there are less than {@link Builder#maxSize(int)} objects,
+ * otherwise the thread waits up to {@link Builder#maxWait(long, TimeUnit)} for a released one.
+ * </ul>
+ * The pool is growing by default (maxSize is unlimited) and keeps up to {@link Builder#maxIdle(int)} idle objects,
+ * the rest are destroyed on release. The idle objects of the shared stack are destroyed after {@link Builder#idleTimeout(long, TimeUnit)}.
+ * The objects in the caches of the terminated threads are returned to the pool, when a thread creates its cache, and by the eviction.
+ * The thread caches do not refer the pool, so a pool, that is not closed, is garbage collected with the objects in them,
+ * though the threads, that used it, are alive.
+ * <p>
+ * Leak detection ({@link Builder#leakDetection(LeakDetection)}) tracks the acquired objects weakly and reports the ones,
+ * that were garbage collected without {@link #release(Object)}, with the stack trace of their acquisition.
+ * A leaked tracked object frees its place in the bounded pool.
+ */
+public class ObjectPool<T> implements AutoCloseable {
+
+    /**
+     * Life cycle of the pooled objects.
+     */
+    public interface Factory<T> {
+        T create();
+
+        /**
+         * Prepares the released object for the next {@link #acquire()}, f.e. clears its state.
+         */
+        default void reset(T object) {
+        }
+
+        /**
+         * Disposes the object, that leaves the pool.
+         */
+        default void destroy(T object) {
+        }
+    }
+
+    /**
+     * Pooled objects, that clear their state themselves; the generated pools call {@link #reset()} on release.
+     */
+    public interface Resettable {
+        void reset();
+    }
+
+    public enum LeakDetection {
+        DISABLED,
+        /**
+         * Every {@value #SAMPLING_INTERVAL}th acquisition of a thread is tracked.
+         */
+        SAMPLED,
+        /**
+         * Every acquisition is tracked: exact, but slow.
+         */
+        PARANOID;
+
+        static final int SAMPLING_INTERVAL = 128;
+    }
+
+    public interface LeakListener {
+        void leaked(ObjectPool<?> pool, Throwable acquiredAt);
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(ObjectPool.class.getName());
+
+    private static final LeakListener LOG_LEAKS = (pool, acquiredAt) ->
+            LOGGER.log(Level.WARNING, pool + ": an object was garbage collected without release", acquiredAt);
+
+    private static final ScheduledExecutorService EVICTOR = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "sdannotations-pool-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String name;
+    private final Factory<T> factory;
+    private final int maxSize;
+    private final long maxWaitNanos;
+    private final int threadCacheSize;
+    private final LeakDetection leakDetection;
+    private final LeakListener leakListener;
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+    /**
+     * A plain ThreadLocal and a value without a reference back to the pool: the entries of the threads do not keep the pool alive.
+     */
+    private final ThreadLocal<ThreadCache> threadCaches = new ThreadLocal<>();
+    private final ConcurrentLinkedQueue<ThreadCache> caches = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Created and not yet destroyed objects.
+     */
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger waiters = new AtomicInteger();
+    private final Object monitor = new Object();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong destroyed = new AtomicLong();
+
+    /**
+     * Eviction generation, the idle objects are stamped with it; incremented by the evictor and by {@link #evict()} and {@link #close()}.
+     */
+    private final AtomicLong epoch = new AtomicLong();
+    private final ScheduledFuture<?> eviction;
+    private volatile boolean closed;
+
+    private final ConcurrentHashMap<LeakReference, LeakReference> tracked;
+    private final ReferenceQueue<Object> collected;
+
+    protected ObjectPool(Builder<T> builder) {
+        this.name = builder.name;
+        this.factory = Objects.requireNonNull(builder.factory, "factory");
+        this.maxSize = builder.maxSize;
+        this.maxWaitNanos = builder.maxWaitNanos;
+        this.threadCacheSize = builder.maxIdle == 0 ? 0 : builder.threadCacheSize;
+        this.leakDetection = builder.leakDetection;
+        this.leakListener = builder.leakListener;
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) << 1;
+        int stripeSize = (Math.min(builder.maxIdle, maxSize) + stripeCount - 1) / stripeCount;
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe(stripeSize);
+        this.stripeMask = stripeCount - 1;
+        if (leakDetection != LeakDetection.DISABLED) {
+            tracked = new ConcurrentHashMap<>();
+            collected = new ReferenceQueue<>();
+        } else {
+            tracked = null;
+            collected = null;
+        }
+        this.eviction = builder.idleTimeoutNanos > 0 ? scheduleEviction(this, builder.idleTimeoutNanos) : null;
+    }
+
+    public static <T> Builder<T> builder(Factory<T> factory) {
+        return new Builder<T>().factory(factory);
+    }
+
+    /**
+     * @return pooled or new object.
+     * @throws NoSuchElementException if the pool is bounded and no object was released during {@link Builder#maxWait(long, TimeUnit)}.
+     */
+    public T acquire() {
+        T object = tryAcquire(true);
+        if (object == null) throw new NoSuchElementException(this + " is exhausted: " + maxSize + " objects are in use");
+        return object;
+    }
+
+    /**
+     * @return pooled or new object, null if the bounded pool is exhausted. Does not wait.
+     */
+    public T tryAcquire() {
+        return tryAcquire(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private T tryAcquire(boolean wait) {
+        if (closed) throw new IllegalStateException(this + " is closed");
+        ThreadCache cache = threadCache();
+        T object = cache.size > 0 ? (T) cache.poll() : null;
+        if (object == null) {
+            object = pollShared(cache);
+            if (object == null) object = createOrWait(wait);
+            if (object == null) return null;
+        }
+        if (tracked != null && (leakDetection == LeakDetection.PARANOID || (++cache.acquisitions & (LeakDetection.SAMPLING_INTERVAL - 1)) == 0)) {
+            track(object);
+        }
+        return object;
+    }
+
+    /**
+     * Returns the object to the pool. The object must not be used after the release.
+     */
+    public void release(T object) {
+        Objects.requireNonNull(object, "object");
+        if (tracked != null && !tracked.isEmpty()) untrack(object);
+        try {
+            factory.reset(object);
+        } catch (RuntimeException e) {
+            destroy(object);
+            throw e;
+        }
+        if (closed) {
+            destroy(object);
+            return;
+        }
+        ThreadCache cache = threadCache();
+        // The waiting threads get the object from the shared stack at once.
+        if (cache.size < cache.items.length && waiters.get() == 0 && cache.offer(object)) return;
+        // A destroyed object frees its place for a waiting thread too.
+        if (!pushShared(cache, object)) destroy(object);
+        if (waiters.get() > 0) {
+            synchronized (monitor) {
+                monitor.notify();
+            }
+        }
+    }
+
+    private ThreadCache threadCache() {
+        ThreadCache cache = threadCaches.get();
+        if (cache == null) {
+            // Once per thread: the caches of the terminated threads do not pile up without the eviction.
+            pruneCaches();
+            cache = new ThreadCache(threadCacheSize);
+            caches.add(cache);
+            threadCaches.set(cache);
+        }
+        return cache;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T pollShared(ThreadCache cache) {
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe stripe = stripes[cache.probe + i & stripeMask];
+            if (stripe.size == 0 || !stripe.tryLock()) continue;
+            try {
+                if (stripe.size > 0) {
+                    Object object = stripe.items[--stripe.size];
+                    stripe.items[stripe.size] = null;
+                    if (i > 0) cache.rehash();
+                    return (T) object;
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return false, if all the stripes are full.
+     */
+    private boolean pushShared(ThreadCache cache, T object) {
+        long stamp = epoch.get();
+        // The busy stripes are skipped on the first pass and waited for on the second one.
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < stripes.length; i++) {
+                Stripe stripe = stripes[cache.probe + i & stripeMask];
+                if (stripe.size == stripe.items.length) continue;
+                if (pass == 0) {
+                    if (!stripe.tryLock()) continue;
+                } else {
+                    stripe.lock();
+                }
+                try {
+                    // The close evicts every stripe under its lock after it is closed: nothing is pushed after that.
+                    if (closed) return false;
+                    if (stripe.size < stripe.items.length) {
+                        stripe.since[stripe.size] = stamp;
+                        stripe.items[stripe.size++] = object;
+                        return true;
+                    }
+                } finally {
+                    stripe.unlock();
+                }
+            }
+        }
+        return false;
+    }
+
+    private T createOrWait(boolean wait) {
+        long deadline = 0;
+        for (; ; ) {
+            int count = live.get();
+            if (count < maxSize) {
+                if (!live.compareAndSet(count, count + 1)) continue;
+                try {
+                    T object = factory.create();
+                    created.incrementAndGet();
+                    return object;
+                } catch (RuntimeException | Error e) {
+                    live.decrementAndGet();
+                    throw e;
+                }
+            }
+            T stolen = steal();
+            if (stolen != null) return stolen;
+            if (!wait) return null;
+            if (deadline == 0) deadline = System.nanoTime() + maxWaitNanos;
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) return null;
+            pollLeaks();
+            waiters.incrementAndGet();
+            try {
+                synchronized (monitor) {
+                    T object = pollShared(threadCache());
+                    if (object != null) return object;
+                    if (live.get() >= maxSize) {
+                        // Bounded slices: an object can be released into a thread cache, just before this thread started waiting,
+                        // it is stolen on the next round.
+                        monitor.wait(Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(remaining), 10)));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } finally {
+                waiters.decrementAndGet();
+            }
+            T object = pollShared(threadCache());
+            if (object != null) return object;
+        }
+    }
+
+    /**
+     * Takes an idle object from the cache of another thread, the bounded pool is exhausted.
+     */
+    @SuppressWarnings("unchecked")
+    private T steal() {
+        for (ThreadCache cache : caches) {
+            if (cache.size == 0 || cache.closed) continue;
+            Object object = cache.poll();
+            if (object != null) return (T) object;
+        }
+        return null;
+    }
+
+    /**
+     * Returns to the pool the objects from the caches of the terminated threads and drops the caches.
+     */
+    @SuppressWarnings("unchecked")
+    private void pruneCaches() {
+        for (ThreadCache cache : caches) {
+            Thread owner = cache.owner.get();
+            if (owner != null && owner.isAlive()) continue;
+            if (!caches.remove(cache)) continue;
+            for (Object object; (object = cache.take()) != null; ) {
+                if (closed || !pushShared(cache, (T) object)) destroy((T) object);
+            }
+        }
+    }
+
+    private void destroy(T object) {
+        live.decrementAndGet();
+        destroyed.incrementAndGet();
+        try {
+            factory.destroy(object);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, this + ": destroy failed", e);
+        }
+    }
+
+    /**
+     * Destroys the objects, that are idle in the shared stack longer than the idle timeout, and returns to the pool the objects
+     * from the caches of the terminated threads. Runs periodically, if {@link Builder#idleTimeout(long, TimeUnit)} is set.
+     */
+    @SuppressWarnings("unchecked")
+    public void evict() {
+        // The eviction period is a half of the timeout: the objects, stamped two evictions ago, are idle at least for the timeout.
+        long stamp = epoch.getAndIncrement() - 1;
+        pruneCaches();
+        for (Stripe stripe : stripes) {
+            // The oldest objects are at the bottom of the stack.
+            int expired = 0;
+            stripe.lock();
+            Object[] evicted;
+            try {
+                while (expired < stripe.size && (closed || stripe.since[expired] < stamp)) expired++;
+                evicted = new Object[expired];
+                System.arraycopy(stripe.items, 0, evicted, 0, expired);
+                System.arraycopy(stripe.items, expired, stripe.items, 0, stripe.size - expired);
+                System.arraycopy(stripe.since, expired, stripe.since, 0, stripe.size - expired);
+                for (int i = stripe.size - expired; i < stripe.size; i++) stripe.items[i] = null;
+                stripe.size -= expired;
+            } finally {
+                stripe.unlock();
+            }
+            for (Object object : evicted) destroy((T) object);
+        }
+        pollLeaks();
+    }
+
+    private static ScheduledFuture<?> scheduleEviction(ObjectPool<?> pool, long idleTimeoutNanos) {
+        long period = Math.max(1, idleTimeoutNanos / 2);
+        Eviction eviction = new Eviction(pool);
+        eviction.future = EVICTOR.scheduleAtFixedRate(eviction, period, period, TimeUnit.NANOSECONDS);
+        return eviction.future;
+    }
+
+    /**
+     * Refers the pool weakly, so an abandoned (not closed) pool is garbage collected and its task is cancelled.
+     */
+    private static final class Eviction implements Runnable {
+        private final WeakReference<ObjectPool<?>> pool;
+        volatile ScheduledFuture<?> future;
+
+        Eviction(ObjectPool<?> pool) {
+            this.pool = new WeakReference<>(pool);
+        }
+
+        @Override
+        public void run() {
+            ObjectPool<?> pool = this.pool.get();
+            if (pool != null && !pool.closed) {
+                pool.evict();
+            } else if (future != null) {
+                future.cancel(false);
+            }
+        }
+    }
+
+    private void track(T object) {
+        Throwable acquiredAt = new Throwable("Acquired from " + this + " by " + Thread.currentThread().getName());
+        LeakReference reference = new LeakReference(object, collected, acquiredAt);
+        tracked.put(reference, reference);
+    }
+
+    private void untrack(T object) {
+        // Equal by the identity of the referent.
+        LeakReference reference = tracked.remove(new LeakReference(object, null, null));
+        if (reference != null) reference.clear();
+    }
+
+    private void pollLeaks() {
+        if (collected == null) return;
+        for (Reference<?> reference; (reference = collected.poll()) != null; ) {
+            LeakReference leak = (LeakReference) reference;
+            if (tracked.remove(leak) == null) continue;
+            live.decrementAndGet();
+            leakListener.leaked(this, leak.acquiredAt);
+        }
+    }
+
+    /**
+     * Stops the eviction and destroys the idle objects, in the caches of all the threads too.
+     * The objects released after the close are destroyed.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public void close() {
+        closed = true;
+        if (eviction != null) eviction.cancel(false);
+        // The cache is closed under its lock, the offers check it under the lock: nothing is cached after the drain.
+        for (ThreadCache cache : caches) {
+            for (Object object : cache.close()) destroy((T) object);
+        }
+        caches.clear();
+        threadCaches.remove();
+        evict();
+    }
+
+    /**
+     * @return created and not destroyed objects: in use and idle.
+     */
+    public int liveCount() {
+        return live.get();
+    }
+
+    public long createdCount() {
+        return created.get();
+    }
+
+    public long destroyedCount() {
+        return destroyed.get();
+    }
+
+    /**
+     * @return idle objects in the shared stack, without the thread caches.
+     */
+    public int sharedIdleCount() {
+        int count = 0;
+        for (Stripe stripe : stripes) count += stripe.size;
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "ObjectPool[" + name + "]";
+    }
+
+    /**
+     * Lock of a single CAS, the owner of a thread cache takes it uncontended.
+     */
+    private abstract static class CasLock {
+        private static final AtomicIntegerFieldUpdater<CasLock> STATE = AtomicIntegerFieldUpdater.newUpdater(CasLock.class, "state");
+        private volatile int state;
+
+        final boolean tryLock() {
+            return state == 0 && STATE.compareAndSet(this, 0, 1);
+        }
+
+        final void lock() {
+            while (!tryLock()) Thread.yield();
+        }
+
+        final void unlock() {
+            STATE.lazySet(this, 0);
+        }
+    }
+
+    /**
+     * Per thread cache: used by its owner, the waiting threads of the exhausted pool take its objects,
+     * the pruning returns them to the pool, when the owner is terminated, the close destroys them.
+     * Static: the value of the ThreadLocal must not refer the pool.
+     */
+    private static final class ThreadCache extends CasLock {
+        final Object[] items;
+        /**
+         * Under the lock, read without it only as a hint.
+         */
+        int size;
+        int probe;
+        int acquisitions;
+        /**
+         * Set under the lock by the close of the pool.
+         */
+        volatile boolean closed;
+        final WeakReference<Thread> owner = new WeakReference<>(Thread.currentThread());
+
+        ThreadCache(int capacity) {
+            items = new Object[capacity];
+            long id = Thread.currentThread().getId();
+            probe = (int) (id * 0x9E3779B97F4A7C15L >>> 32);
+        }
+
+        /**
+         * @return the last cached object, null - empty or busy.
+         */
+        Object poll() {
+            return tryLock() ? pollLocked() : null;
+        }
+
+        /**
+         * @return the last cached object, null - empty. Waits for the lock: the pruning and the close take every object.
+         */
+        Object take() {
+            lock();
+            return pollLocked();
+        }
+
+        private Object pollLocked() {
+            try {
+                if (size == 0) return null;
+                Object object = items[--size];
+                items[size] = null;
+                return object;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Closes the cache.
+         *
+         * @return the cached objects.
+         */
+        Object[] close() {
+            lock();
+            try {
+                closed = true;
+                Object[] objects = new Object[size];
+                System.arraycopy(items, 0, objects, 0, size);
+                for (int i = 0; i < size; i++) items[i] = null;
+                size = 0;
+                return objects;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * @return false - full, busy or closed.
+         */
+        boolean offer(Object object) {
+            if (!tryLock()) return false;
+            try {
+                if (closed || size == items.length) return false;
+                items[size++] = object;
+                return true;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Moves the thread to another stripe after a contention, like {@link java.util.concurrent.atomic.LongAdder}.
+         */
+        void rehash() {
+            int h = probe;
+            h ^= h << 13;
+            h ^= h >>> 17;
+            h ^= h << 5;
+            probe = h;
+        }
+    }
+
+    /**
+     * Stack of idle objects guarded by a CAS lock, padded against false sharing with the neighbour stripes.
+     */
+    @SuppressWarnings("unused")
+    private static final class Stripe extends CasLock {
+        long p1, p2, p3, p4, p5, p6, p7;
+        final Object[] items;
+        final long[] since;
+        int size;
+        long q1, q2, q3, q4, q5, q6, q7;
+
+        Stripe(int capacity) {
+            items = new Object[capacity];
+            since = new long[capacity];
+        }
+    }
+
+    private static final class LeakReference extends WeakReference<Object> {
+        final Throwable acquiredAt;
+        private final int hash;
+
+        LeakReference(Object referent, ReferenceQueue<Object> queue, Throwable acquiredAt) {
+            super(referent, queue);
+            this.acquiredAt = acquiredAt;
+            this.hash = System.identityHashCode(referent);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) return true;
+            if (!(other instanceof LeakReference)) return false;
+            Object referent = get();
+            return referent != null && referent == ((LeakReference) other).get();
+        }
+    }
+
+    public static class Builder<T> {
+        private String name = "pool";
+        private Factory<T> factory;
+        private int maxSize = Integer.MAX_VALUE;
+        private int maxIdle = 1024;
+        private long maxWaitNanos = TimeUnit.SECONDS.toNanos(30);
+        private long idleTimeoutNanos;
+        private int threadCacheSize = 8;
+        private LeakDetection leakDetection = LeakDetection.DISABLED;
+        private LeakListener leakListener = LOG_LEAKS;
+
+        public Builder<T> name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public Builder<T> factory(Factory<T> factory) {
+            this.factory = factory;
+            return this;
+        }
+
+        /**
+         * Maximum number of the objects in use and idle, unlimited by default.
+         */
+        public Builder<T> maxSize(int maxSize) {
+            if (maxSize < 1) throw new IllegalArgumentException("maxSize: " + maxSize);
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * Maximum number of the idle objects in the shared stack, default 1024, 0 - no idle objects, the thread caches too.
+         */
+        public Builder<T> maxIdle(int maxIdle) {
+            if (maxIdle < 0) throw new IllegalArgumentException("maxIdle: " + maxIdle);
+            this.maxIdle = maxIdle;
+            return this;
+        }
+
+        /**
+         * Maximum time of {@link #acquire()} in the exhausted bounded pool, default 30 seconds.
+         */
+        public Builder<T> maxWait(long maxWait, TimeUnit unit) {
+            this.maxWaitNanos = unit.toNanos(maxWait);
+            return this;
+        }
+
+        /**
+         * The idle objects of the shared stack are destroyed after the timeout (up to 1.5 timeout), 0 (default) - never.
+         */
+        public Builder<T> idleTimeout(long idleTimeout, TimeUnit unit) {
+            this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+            return this;
+        }
+
+        /**
+         * Idle objects per thread, default 8, 0 - every release goes to the shared stack.
+         */
+        public Builder<T> threadCacheSize(int threadCacheSize) {
+            if (threadCacheSize < 0) throw new IllegalArgumentException("threadCacheSize: " + threadCacheSize);
+            this.threadCacheSize = threadCacheSize;
+            return this;
+        }
+
+        public Builder<T> leakDetection(LeakDetection leakDetection) {
+            this.leakDetection = leakDetection;
+            return this;
+        }
+
+        /**
+         * Receives the leaks, by default they are logged with java.util.logging.
+         */
+        public Builder<T> leakListener(LeakListener leakListener) {
+            this.leakListener = leakListener;
+            return this;
+        }
+
+        public ObjectPool<T> build() {
+            return new ObjectPool<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package vlfsoft.runtime.queue;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Many producers, many consumers (D. Vyukov's bounded queue): every slot has its sequence, the number of the lap
+ * that the slot waits for: s - free for the tail s, s + 1 - filled for the head s. The producers claim by a CAS of the tail,
+ * the consumers by a CAS of the head, {@link #drain(Consumer, int)} claims a run of the filled slots by one CAS.
+ */
+public class MpmcRingQueue<E> extends RingQueue<E> {
+
+    private final AtomicLongArray sequences;
+
+    public MpmcRingQueue(int capacity) {
+        super(capacity);
+        this.sequences = new AtomicLongArray(mask + 1);
+        for (int i = 0; i <= mask; i++) sequences.lazySet(i, i);
+    }
+
+    @Override
+    public boolean offer(E item) {
+        Objects.requireNonNull(item, "item");
+        return claim(item, false);
+    }
+
+    private boolean claim(Object item, boolean close) {
+        while (true) {
+            long current = tail.get();
+            if ((current & CLOSED) != 0) return false;
+            long t = current >>> 1;
+            int index = (int) t & mask;
+            long sequence = sequences.get(index);
+            if (sequence == t) {
+                if (tail.compareAndSet(current, current + STEP | (close ? CLOSED : 0))) {
+                    buffer.lazySet(index, item);
+                    sequences.lazySet(index, t + 1);
+                    return true;
+                }
+            } else if (sequence < t) {
+                // The slot of the previous lap is not taken yet: full.
+                if (!close) return false;
+                Thread.yield();
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        while (true) {
+            long h = head.get();
+            int index = (int) h & mask;
+            long sequence = sequences.get(index);
+            if (sequence == h + 1) {
+                Object item = buffer.get(index);
+                if (item == POISON) return null;
+                if (head.compareAndSet(h, h + 1)) {
+                    buffer.lazySet(index, null);
+                    sequences.lazySet(index, h + mask + 1);
+                    return (E) item;
+                }
+            } else if (sequence < h + 1) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long h;
+        int n;
+        do {
+            h = head.get();
+            n = 0;
+            while (n < limit && n <= mask) {
+                int index = (int) (h + n) & mask;
+                if (sequences.get(index) != h + n + 1 || buffer.get(index) == POISON) break;
+                n++;
+            }
+            if (n == 0) return buffer.get((int) h & mask) == POISON && sequences.get((int) h & mask) == h + 1 ? -1 : 0;
+        } while (!head.compareAndSet(h, h + n));
+        // The run is ours and can't be given back: all its items go to the consumer, the first error is thrown after them.
+        Throwable error = null;
+        for (int i = 0; i < n; i++) {
+            int index = (int) (h + i) & mask;
+            Object item = buffer.get(index);
+            buffer.lazySet(index, null);
+            sequences.lazySet(index, h + i + mask + 1);
+            try {
+                consumer.accept((E) item);
+            } catch (Throwable e) {
+                if (error == null) error = e;
+            }
+        }
+        if (error instanceof RuntimeException) throw (RuntimeException) error;
+        if (error instanceof Error) throw (Error) error;
+        return n;
+    }
+
+    @Override
+    public void close() {
+        claim(POISON, true);
+    }
+
+}
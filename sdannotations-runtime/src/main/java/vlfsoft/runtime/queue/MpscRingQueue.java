@@ -0,0 +1,92 @@
+package vlfsoft.runtime.queue;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Many producers, one consumer: a producer claims the slot by a CAS of the tail and publishes the item by an ordered store,
+ * the consumer sees a claimed, not yet published slot as null. The producers share the cached limit of the tail
+ * and read the head only when it is reached.
+ */
+public class MpscRingQueue<E> extends RingQueue<E> {
+
+    public MpscRingQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(E item) {
+        Objects.requireNonNull(item, "item");
+        while (true) {
+            long current = tail.get();
+            if ((current & CLOSED) != 0) return false;
+            long t = current >>> 1;
+            if (t >= tail.cache) {
+                long limit = head.get() + mask + 1;
+                if (t >= limit) return false;
+                tail.cache = limit;
+            }
+            if (tail.compareAndSet(current, current + STEP)) {
+                buffer.lazySet((int) t & mask, item);
+                return true;
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        int index = (int) h & mask;
+        Object item = buffer.get(index);
+        if (item == null) {
+            if (h == tail.get() >>> 1) return null;
+            // Claimed by a producer between its CAS and its store.
+            while ((item = buffer.get(index)) == null) Thread.yield();
+        }
+        if (item == POISON) return null;
+        buffer.lazySet(index, null);
+        head.lazySet(h + 1);
+        return (E) item;
+    }
+
+    /**
+     * Stops at a claimed, not yet published slot.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long h = head.get();
+        int n = 0;
+        try {
+            while (n < limit) {
+                int index = (int) (h + n) & mask;
+                Object item = buffer.get(index);
+                if (item == null || item == POISON) break;
+                buffer.lazySet(index, null);
+                n++;
+                consumer.accept((E) item);
+            }
+        } finally {
+            // One head update for the run, also when the consumer throws: its item is taken.
+            if (n > 0) head.lazySet(h + n);
+        }
+        return n == 0 && buffer.get((int) h & mask) == POISON ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        while (true) {
+            long current = tail.get();
+            if ((current & CLOSED) != 0) return;
+            long t = current >>> 1;
+            if (t >= head.get() + mask + 1) {
+                Thread.yield();
+            } else if (tail.compareAndSet(current, current + STEP | CLOSED)) {
+                buffer.lazySet((int) t & mask, POISON);
+                return;
+            }
+        }
+    }
+
+}
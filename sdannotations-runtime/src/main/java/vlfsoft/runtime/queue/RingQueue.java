@@ -0,0 +1,159 @@
+package vlfsoft.runtime.queue;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded lock-free ring buffer queue, the runtime of {@code @ConcurrencyPattern.ProducerConsumer.Queue}:
+ * {@link #spsc(int)} - one producer and one consumer, {@link #mpsc(int)} - many producers and one consumer,
+ * {@link #mpmc(int)} - many of both. Unlike LinkedBlockingQueue there is no node per item and no lock:
+ * the items are in a preallocated array, the head and the tail are {@link Sequence}s on their own cache lines,
+ * the producers claim the slots by the tail (a plain ordered store or a CAS), the consumers release them by the head.
+ * <p>
+ * {@link #drain(Consumer, int)} takes a run of the items with one update of the head (one CAS for MPMC).
+ * {@link #put(Object)} and {@link #take()} wait by spinning, yielding and then parking for {@value #PARK_NANOS} ns, no signals.
+ * <p>
+ * {@link #close()} is the poison pill ({@code @ConcurrencyPattern.ProducerConsumer.Queue.Item.PoisonPill}): the queue rejects
+ * the new items, the pill goes after the items offered before and is never taken, so every consumer reaches it:
+ * {@link #poll()} and {@link #take()} return null, {@link #drain(Consumer, int)} returns -1, {@link #isTerminated()} is true.
+ * The tail keeps the closed flag in the lowest bit, so closing is atomic with the claims of the producers.
+ */
+public abstract class RingQueue<E> {
+
+    static final Object POISON = new Object();
+    static final long CLOSED = 1;
+    static final long STEP = 2;
+
+    private static final int SPINS = 128;
+    private static final int YIELDS = 128;
+    private static final long PARK_NANOS = 1_000;
+
+    final int mask;
+    final AtomicReferenceArray<Object> buffer;
+    /**
+     * The next slot to take, cache - of the consumer: the known tail (SPSC).
+     */
+    final Sequence head = new Sequence();
+    /**
+     * The next slot to fill * {@value #STEP} | {@value #CLOSED}, cache - of the producers: the known limit of the tail.
+     */
+    final Sequence tail = new Sequence();
+
+    RingQueue(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) throw new IllegalArgumentException("capacity: " + capacity);
+        int size = 1 << 32 - Integer.numberOfLeadingZeros(capacity - 1);
+        this.mask = size - 1;
+        this.buffer = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * @param capacity rounded up to a power of two.
+     */
+    public static <E> RingQueue<E> spsc(int capacity) {
+        return new SpscRingQueue<>(capacity);
+    }
+
+    public static <E> RingQueue<E> mpsc(int capacity) {
+        return new MpscRingQueue<>(capacity);
+    }
+
+    public static <E> RingQueue<E> mpmc(int capacity) {
+        return new MpmcRingQueue<>(capacity);
+    }
+
+    /**
+     * @return false, if the queue is full or closed.
+     */
+    public abstract boolean offer(E item);
+
+    /**
+     * @return the head item, null - the queue is empty or only the poison pill is left.
+     */
+    public abstract E poll();
+
+    /**
+     * Takes the available items (at most limit) and passes them to the consumer.
+     *
+     * @return the number of the items, -1 - none, the poison pill is reached.
+     */
+    public abstract int drain(Consumer<? super E> consumer, int limit);
+
+    /**
+     * The poison pill: the items offered before are taken, then the consumers see the end. Waits for a free slot for the pill.
+     * For {@link #spsc(int)} - by the producer.
+     */
+    public abstract void close();
+
+    /**
+     * Waits for a free slot.
+     *
+     * @throws IllegalStateException the queue is closed.
+     */
+    public void put(E item) throws InterruptedException {
+        Objects.requireNonNull(item, "item");
+        for (int idle = 0; !offer(item); idle++) {
+            if (isClosed()) throw new IllegalStateException("The queue is closed");
+            idle(idle);
+        }
+    }
+
+    /**
+     * Waits for an item.
+     *
+     * @return the item, null - the poison pill is reached.
+     */
+    public E take() throws InterruptedException {
+        for (int idle = 0; ; idle++) {
+            E item = poll();
+            if (item != null) return item;
+            if (isTerminated()) return null;
+            idle(idle);
+        }
+    }
+
+    private static void idle(int idle) throws InterruptedException {
+        if (idle < SPINS) return;
+        if (idle < SPINS + YIELDS) {
+            Thread.yield();
+            return;
+        }
+        LockSupport.parkNanos(PARK_NANOS);
+        if (Thread.interrupted()) throw new InterruptedException();
+    }
+
+    public boolean isClosed() {
+        return (tail.get() & CLOSED) != 0;
+    }
+
+    /**
+     * @return true, if the consumers have reached the poison pill: nothing more will come.
+     */
+    public boolean isTerminated() {
+        return buffer.get((int) head.get() & mask) == POISON;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return approximate number of the items, the poison pill included.
+     */
+    public int size() {
+        long head = this.head.get();
+        long size = (tail.get() >>> 1) - head;
+        return (int) Math.max(0, Math.min(size, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "{size=" + size() + ", capacity=" + capacity() + (isClosed() ? ", closed" : "") + "}";
+    }
+
+}
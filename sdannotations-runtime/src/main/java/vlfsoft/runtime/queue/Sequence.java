@@ -0,0 +1,40 @@
+package vlfsoft.runtime.queue;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Sequence counter alone on its cache lines: 7 longs of padding on both sides (the fields of a superclass are laid out first),
+ * so the producers and the consumers do not invalidate each other's lines (false sharing).
+ * {@link #cache} is the owner's copy of the opposite counter, next to its own one.
+ */
+final class Sequence extends SequenceFields {
+
+    private static final AtomicLongFieldUpdater<SequenceFields> VALUE = AtomicLongFieldUpdater.newUpdater(SequenceFields.class, "value");
+
+    long p11, p12, p13, p14, p15, p16, p17;
+
+    long get() {
+        return value;
+    }
+
+    /**
+     * Ordered store: the writes before it are visible before it, no store-load fence.
+     */
+    void lazySet(long value) {
+        VALUE.lazySet(this, value);
+    }
+
+    boolean compareAndSet(long expected, long value) {
+        return VALUE.compareAndSet(this, expected, value);
+    }
+
+}
+
+abstract class SequencePadding {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class SequenceFields extends SequencePadding {
+    volatile long value;
+    volatile long cache;
+}
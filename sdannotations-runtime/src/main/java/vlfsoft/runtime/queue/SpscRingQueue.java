@@ -0,0 +1,82 @@
+package vlfsoft.runtime.queue;
+
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * One producer, one consumer: the claims are ordered stores without CAS, each side caches the opposite counter
+ * and reads it only when the queue looks full or empty.
+ */
+public class SpscRingQueue<E> extends RingQueue<E> {
+
+    public SpscRingQueue(int capacity) {
+        super(capacity);
+    }
+
+    @Override
+    public boolean offer(E item) {
+        Objects.requireNonNull(item, "item");
+        long current = tail.get();
+        if ((current & CLOSED) != 0) return false;
+        long t = current >>> 1;
+        if (t >= tail.cache) {
+            long limit = head.get() + mask + 1;
+            if (t >= limit) return false;
+            tail.cache = limit;
+        }
+        buffer.lazySet((int) t & mask, item);
+        tail.lazySet(current + STEP);
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        long h = head.get();
+        if (h >= head.cache) {
+            long available = tail.get() >>> 1;
+            if (h >= available) return null;
+            head.cache = available;
+        }
+        int index = (int) h & mask;
+        Object item = buffer.get(index);
+        if (item == POISON) return null;
+        buffer.lazySet(index, null);
+        head.lazySet(h + 1);
+        return (E) item;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public int drain(Consumer<? super E> consumer, int limit) {
+        long h = head.get();
+        long available = (tail.get() >>> 1) - h;
+        head.cache = h + available;
+        int n = 0;
+        try {
+            while (n < limit && n < available) {
+                int index = (int) (h + n) & mask;
+                Object item = buffer.get(index);
+                if (item == POISON) break;
+                buffer.lazySet(index, null);
+                n++;
+                consumer.accept((E) item);
+            }
+        } finally {
+            // One head update for the run, also when the consumer throws: its item is taken.
+            if (n > 0) head.lazySet(h + n);
+        }
+        return n == 0 && buffer.get((int) h & mask) == POISON ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        long current = tail.get();
+        if ((current & CLOSED) != 0) return;
+        long t = current >>> 1;
+        while (t >= head.get() + mask + 1) Thread.yield();
+        buffer.lazySet((int) t & mask, POISON);
+        tail.lazySet(current + STEP | CLOSED);
+    }
+
+}
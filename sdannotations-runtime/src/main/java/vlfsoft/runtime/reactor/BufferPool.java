@@ -0,0 +1,53 @@
+package vlfsoft.runtime.reactor;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Direct buffers of one size, owned by one event loop, so without synchronization. The buffers are slices of the slabs
+ * of {@value #SLAB} buffers: one native allocation per slab, the released buffers are reused last in, first out (warm in the cache).
+ */
+final class BufferPool {
+
+    private static final int SLAB = 64;
+
+    private final int bufferSize;
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>(SLAB);
+    private int allocated;
+
+    BufferPool(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = free.pollLast();
+        if (buffer == null) {
+            slab();
+            buffer = free.pollLast();
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        free.addLast(buffer);
+    }
+
+    private void slab() {
+        ByteBuffer slab = ByteBuffer.allocateDirect(bufferSize * SLAB);
+        for (int i = 0; i < SLAB; i++) {
+            slab.limit((i + 1) * bufferSize).position(i * bufferSize);
+            free.addLast(slab.slice());
+        }
+        allocated += SLAB;
+    }
+
+    int allocated() {
+        return allocated;
+    }
+
+    int available() {
+        return free.size();
+    }
+
+}
@@ -0,0 +1,172 @@
+package vlfsoft.runtime.reactor;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Socket channel of an {@link EventLoop} with its pooled read buffer and the queue of the pending writes.
+ * The methods, but {@link #execute(Runnable)}, are called on the thread of the loop, f.e. from the {@link Handler}.
+ */
+public final class Connection {
+
+    final EventLoop loop;
+    final SocketChannel channel;
+    final Handler handler;
+    SelectionKey key;
+    /**
+     * Completed, when a connection of {@link Reactor#connect(SocketAddress, Handler)} is established, null - an accepted one.
+     */
+    final CompletableFuture<Connection> connected;
+    private ByteBuffer in;
+    /**
+     * Pooled buffers in the write mode, the bytes from 0 to the position wait for the channel.
+     */
+    private final ArrayDeque<ByteBuffer> out = new ArrayDeque<>(4);
+    private long pendingBytes;
+    private boolean closed;
+
+    Connection(EventLoop loop, SocketChannel channel, Handler handler, CompletableFuture<Connection> connected) {
+        this.loop = loop;
+        this.channel = channel;
+        this.handler = handler;
+        this.connected = connected;
+    }
+
+    public SocketChannel channel() {
+        return channel;
+    }
+
+    public SocketAddress remoteAddress() throws IOException {
+        return channel.getRemoteAddress();
+    }
+
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Runs the task on the thread of the loop of the connection, f.e. a write of a response computed elsewhere.
+     */
+    public void execute(Runnable task) {
+        loop.execute(task);
+    }
+
+    /**
+     * @return bytes, that wait for the channel: the handler can stop reading ({@link #setReadable(boolean)}) on a slow peer.
+     */
+    public long pendingBytes() {
+        return pendingBytes;
+    }
+
+    public void setReadable(boolean readable) {
+        if (closed) return;
+        key.interestOps(readable ? key.interestOps() | SelectionKey.OP_READ : key.interestOps() & ~SelectionKey.OP_READ);
+    }
+
+    /**
+     * Writes the bytes to the channel, the rest, that the channel does not take now, is copied into the pooled buffers
+     * and written, when the channel is writable. The source can be reused after the call.
+     */
+    public void write(ByteBuffer src) throws IOException {
+        if (closed) throw new ClosedChannelException();
+        if (out.isEmpty()) {
+            channel.write(src);
+            if (!src.hasRemaining()) return;
+        }
+        while (src.hasRemaining()) {
+            ByteBuffer buffer = out.peekLast();
+            if (buffer == null || !buffer.hasRemaining()) {
+                buffer = loop.buffers.acquire();
+                out.addLast(buffer);
+            }
+            int n = Math.min(buffer.remaining(), src.remaining());
+            int limit = src.limit();
+            src.limit(src.position() + n);
+            buffer.put(src);
+            src.limit(limit);
+            pendingBytes += n;
+        }
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+    }
+
+    void opened() throws IOException {
+        in = loop.buffers.acquire();
+        handler.onOpen(this);
+        if (connected != null) connected.complete(this);
+    }
+
+    void finishConnect() throws IOException {
+        if (!channel.finishConnect()) return;
+        key.interestOps(SelectionKey.OP_READ);
+        opened();
+    }
+
+    void read() throws IOException {
+        int n = channel.read(in);
+        if (n < 0) {
+            close(null);
+            return;
+        }
+        if (n == 0) return;
+        in.flip();
+        handler.onRead(this, in);
+        if (closed) return;
+        if (in.remaining() == in.capacity()) throw new IOException("The frame does not fit the buffer of " + in.capacity() + " bytes");
+        in.compact();
+    }
+
+    void flush() throws IOException {
+        while (!out.isEmpty()) {
+            ByteBuffer buffer = out.peekFirst();
+            buffer.flip();
+            pendingBytes -= channel.write(buffer);
+            if (buffer.hasRemaining()) {
+                buffer.compact();
+                return;
+            }
+            loop.buffers.release(out.pollFirst());
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+
+    public void close() {
+        close(null);
+    }
+
+    void close(Throwable cause) {
+        if (closed) return;
+        closed = true;
+        if (key != null) key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+        if (in != null) loop.buffers.release(in);
+        in = null;
+        while (!out.isEmpty()) loop.buffers.release(out.pollFirst());
+        pendingBytes = 0;
+        loop.connections--;
+        if (connected != null && !connected.isDone()) {
+            connected.completeExceptionally(cause != null ? cause : new ClosedChannelException());
+            return;
+        }
+        try {
+            handler.onClose(this, cause);
+        } catch (RuntimeException e) {
+            // The handler does not stop the loop.
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Connection{" + channel + (closed ? ", closed" : "") + ", pendingBytes=" + pendingBytes + "}";
+    }
+
+}
@@ -0,0 +1,253 @@
+package vlfsoft.runtime.reactor;
+
+import vlfsoft.runtime.queue.RingQueue;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.net.StandardSocketOptions;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * One selector, one thread: the channels registered with the loop are served only by it, so the {@link Connection}s
+ * and the {@link BufferPool} need no synchronization. The other threads pass the tasks through a bounded MPSC {@link RingQueue},
+ * the selector is woken up only, if the loop sleeps in the select.
+ * <p>
+ * The ready keys are taken by {@code Selector.select(Consumer, long)} (Java 11+, by a {@link MethodHandle}):
+ * no selected key set and no iterator, so a loop serving the established connections allocates nothing.
+ * On Java 8 it is the selected key set with an iterator per wakeup.
+ */
+final class EventLoop implements Runnable, Consumer<SelectionKey> {
+
+    private static final int TASKS = 4096;
+    private static final MethodHandle SELECT;
+    private static final MethodHandle SELECT_NOW;
+
+    static {
+        MethodHandle select = null;
+        MethodHandle selectNow = null;
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+            select = lookup.findVirtual(Selector.class, "select", MethodType.methodType(int.class, Consumer.class, long.class));
+            selectNow = lookup.findVirtual(Selector.class, "selectNow", MethodType.methodType(int.class, Consumer.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            // Java 8: the selected key set.
+        }
+        SELECT = select;
+        SELECT_NOW = selectNow;
+    }
+
+    final Reactor reactor;
+    final Selector selector;
+    final BufferPool buffers;
+    final Thread thread;
+    private final RingQueue<Runnable> tasks = RingQueue.mpsc(TASKS);
+    private volatile boolean sleeping;
+    private volatile boolean closing;
+    /**
+     * Open connections, only by the loop.
+     */
+    int connections;
+
+    EventLoop(Reactor reactor, int bufferSize, String name) throws IOException {
+        this.reactor = reactor;
+        this.selector = Selector.open();
+        this.buffers = new BufferPool(bufferSize);
+        this.thread = new Thread(this, name);
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    void execute(Runnable task) {
+        while (!tasks.offer(task)) {
+            if (closing) throw new RejectedExecutionException(thread.getName() + " is closed");
+            Thread.yield();
+        }
+        if (sleeping && !inLoop()) selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (!closing) {
+                runTasks();
+                sleeping = true;
+                // Re-check after the flag: a producer either sees the flag or its task is seen here.
+                if (tasks.isEmpty()) {
+                    select();
+                } else {
+                    selectNow();
+                }
+                sleeping = false;
+            }
+        } catch (Throwable e) {
+            // The loop can't continue: its connections are closed.
+            closeAll(e);
+            return;
+        }
+        closeAll(null);
+    }
+
+    /**
+     * @return the number of the served keys.
+     */
+    private int select() throws Throwable {
+        // invokeExact needs the exact signature: (Selector, Consumer, long) int.
+        if (SELECT != null) return (int) SELECT.invokeExact(selector, (Consumer) this, 0L);
+        int n = selector.select();
+        processSelectedKeys();
+        return n;
+    }
+
+    private int selectNow() throws Throwable {
+        if (SELECT_NOW != null) return (int) SELECT_NOW.invokeExact(selector, (Consumer) this);
+        int n = selector.selectNow();
+        processSelectedKeys();
+        return n;
+    }
+
+    private void processSelectedKeys() {
+        for (Iterator<SelectionKey> keys = selector.selectedKeys().iterator(); keys.hasNext(); ) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            accept(key);
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // A task does not stop the loop.
+            }
+        }
+    }
+
+    /**
+     * Serves a ready key.
+     */
+    @Override
+    public void accept(SelectionKey key) {
+        Object attachment = key.attachment();
+        if (attachment instanceof Acceptor) {
+            ((Acceptor) attachment).accept();
+            return;
+        }
+        Connection connection = (Connection) attachment;
+        try {
+            int ready = key.readyOps();
+            if ((ready & SelectionKey.OP_CONNECT) != 0) connection.finishConnect();
+            if ((ready & SelectionKey.OP_WRITE) != 0) connection.flush();
+            if ((ready & SelectionKey.OP_READ) != 0 && connection.isOpen()) connection.read();
+        } catch (IOException | RuntimeException e) {
+            connection.close(e);
+        }
+    }
+
+    /**
+     * Registers an accepted or a connecting channel, on the loop. A failure closes the connection (and fails the future).
+     *
+     * @param connected future of a connecting channel, null - an accepted one.
+     */
+    Connection register(SocketChannel channel, Handler handler, int ops, CompletableFuture<Connection> connected) {
+        Connection connection = new Connection(this, channel, handler, connected);
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            connection.key = channel.register(selector, ops, connection);
+            connections++;
+            if (ops == SelectionKey.OP_READ) connection.opened();
+        } catch (IOException | RuntimeException e) {
+            connections++;
+            connection.close(e);
+        }
+        return connection;
+    }
+
+    void listen(ServerSocketChannel server, Supplier<? extends Handler> handlers, boolean distribute) {
+        try {
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT, new Acceptor(server, handlers, distribute));
+        } catch (IOException e) {
+            close(server);
+        }
+    }
+
+    void shutdown() {
+        closing = true;
+        selector.wakeup();
+    }
+
+    private void closeAll(Throwable cause) {
+        closing = true;
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof Connection) ((Connection) attachment).close(cause);
+            if (attachment instanceof Acceptor) close(((Acceptor) attachment).server);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+        // The registrations passed by the other loops close their channels on the closed selector.
+        runTasks();
+    }
+
+    private static void close(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+    }
+
+    /**
+     * The listening channel: accepts into this loop (SO_REUSEPORT, a channel per loop) or into the next loop of the reactor.
+     */
+    private final class Acceptor {
+        final ServerSocketChannel server;
+        final Supplier<? extends Handler> handlers;
+        final boolean distribute;
+
+        Acceptor(ServerSocketChannel server, Supplier<? extends Handler> handlers, boolean distribute) {
+            this.server = server;
+            this.handlers = handlers;
+            this.distribute = distribute;
+        }
+
+        void accept() {
+            SocketChannel channel;
+            try {
+                while ((channel = server.accept()) != null) {
+                    try {
+                        EventLoop loop = distribute ? reactor.next() : EventLoop.this;
+                        Handler handler = handlers.get();
+                        if (loop == EventLoop.this) {
+                            register(channel, handler, SelectionKey.OP_READ, null);
+                        } else {
+                            SocketChannel accepted = channel;
+                            loop.execute(() -> loop.register(accepted, handler, SelectionKey.OP_READ, null));
+                        }
+                    } catch (RuntimeException e) {
+                        // The supplier failed or the loop is closed: the connection is refused, the next ones are accepted.
+                        close(channel);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                // Too many open files or the like: the next accept may succeed.
+            }
+        }
+    }
+
+}
@@ -0,0 +1,27 @@
+package vlfsoft.runtime.reactor;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Event handler of a {@link Connection}, called on the thread of its event loop: must not block.
+ * An exception closes the connection.
+ */
+public interface Handler {
+
+    default void onOpen(Connection connection) throws IOException {
+    }
+
+    /**
+     * @param in the received bytes (a pooled direct buffer of the connection, in the read mode):
+     *           the remaining bytes, f.e. an incomplete frame, are kept for the next read.
+     */
+    void onRead(Connection connection, ByteBuffer in) throws IOException;
+
+    /**
+     * @param cause the error, null - closed by a side.
+     */
+    default void onClose(Connection connection, Throwable cause) {
+    }
+
+}
@@ -0,0 +1,235 @@
+package vlfsoft.runtime.reactor;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Reactor, the runtime of {@code @ConcurrencyPattern.Reactor}: {@link Builder#loops(int)} event loops (one per core by default),
+ * each is a {@link java.nio.channels.Selector} on its own thread, that dispatches the events of its channels to their {@link Handler}s.
+ * <ul>
+ * <li> {@link #bind(SocketAddress, Supplier)} - with SO_REUSEPORT (Java 9+ on Linux, BSD, looked up by reflection) every loop gets
+ * its own listening channel on the port and the kernel spreads the connections; otherwise the first loop accepts
+ * and hands the connections to the loops round-robin.
+ * <li> {@link #connect(SocketAddress, Handler)} - the outgoing connections, f.e. of a gateway to its backends.
+ * </ul>
+ * The reads go into a pooled direct buffer of the connection, the writes, that the socket does not take at once, wait in the pooled
+ * buffers; the pools belong to the loops. With the established connections the loops do not allocate (Java 11+, see {@link EventLoop}).
+ * <pre>
+ * Reactor reactor = Reactor.builder().bufferSize(16 * 1024).build();
+ * InetSocketAddress address = reactor.bind(new InetSocketAddress(8080), () -&gt; (connection, in) -&gt; connection.write(in));
+ * </pre>
+ */
+public class Reactor implements AutoCloseable {
+
+    private static final SocketOption<Boolean> SO_REUSEPORT = reusePort();
+
+    private final String name;
+    private final int backlog;
+    private final EventLoop[] loops;
+    private int next;
+
+    protected Reactor(Builder builder) throws IOException {
+        this.name = builder.name;
+        this.backlog = builder.backlog;
+        this.loops = new EventLoop[builder.loops];
+        for (int i = 0; i < loops.length; i++) loops[i] = new EventLoop(this, builder.bufferSize, name + "-" + i);
+        for (EventLoop loop : loops) loop.thread.start();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return StandardSocketOptions.SO_REUSEPORT, null - before Java 9.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Boolean> reusePort() {
+        try {
+            return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+        } catch (NoSuchFieldException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Listens on the address, every accepted connection gets a handler of the supplier.
+     *
+     * @return the bound address, f.e. with the port of the port 0.
+     */
+    public InetSocketAddress bind(SocketAddress address, Supplier<? extends Handler> handlers) throws IOException {
+        Objects.requireNonNull(handlers, "handlers");
+        List<ServerSocketChannel> servers = new ArrayList<>();
+        try {
+            ServerSocketChannel first = ServerSocketChannel.open();
+            servers.add(first);
+            boolean reusePort = loops.length > 1 && SO_REUSEPORT != null && first.supportedOptions().contains(SO_REUSEPORT);
+            if (reusePort) first.setOption(SO_REUSEPORT, true);
+            first.bind(address, backlog);
+            InetSocketAddress bound = (InetSocketAddress) first.getLocalAddress();
+            if (!reusePort) {
+                loops[0].execute(() -> loops[0].listen(first, handlers, true));
+                return bound;
+            }
+            for (int i = 1; i < loops.length; i++) {
+                ServerSocketChannel server = ServerSocketChannel.open();
+                servers.add(server);
+                server.setOption(SO_REUSEPORT, true);
+                server.bind(bound, backlog);
+            }
+            for (int i = 0; i < loops.length; i++) {
+                EventLoop loop = loops[i];
+                ServerSocketChannel server = servers.get(i);
+                loop.execute(() -> loop.listen(server, handlers, false));
+            }
+            return bound;
+        } catch (IOException | RuntimeException e) {
+            for (ServerSocketChannel server : servers) server.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Connects to the address on the next loop.
+     *
+     * @return future of the connection, completed after {@link Handler#onOpen(Connection)}.
+     */
+    public CompletableFuture<Connection> connect(SocketAddress address, Handler handler) {
+        Objects.requireNonNull(handler, "handler");
+        CompletableFuture<Connection> connected = new CompletableFuture<>();
+        EventLoop loop = next();
+        loop.execute(() -> {
+            SocketChannel channel = null;
+            Connection connection = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                boolean done = channel.connect(address);
+                // The future goes in before any callback: a failed onOpen completes it.
+                connection = loop.register(channel, handler, SelectionKey.OP_CONNECT, connected);
+                if (done && connection.isOpen()) connection.finishConnect();
+            } catch (IOException | RuntimeException e) {
+                if (connection != null) {
+                    connection.close(e);
+                } else if (channel != null) {
+                    close(channel);
+                }
+                connected.completeExceptionally(e);
+            }
+        });
+        return connected;
+    }
+
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // Closed anyway.
+        }
+    }
+
+    /**
+     * Round-robin, by the accepting loop and the callers of {@link #connect(SocketAddress, Handler)}: a race only skews it.
+     */
+    EventLoop next() {
+        int i = next;
+        next = i + 1 == loops.length ? 0 : i + 1;
+        return loops[i];
+    }
+
+    public int loops() {
+        return loops.length;
+    }
+
+    /**
+     * @return true, if the JVM and the platform have SO_REUSEPORT: {@link #bind(SocketAddress, Supplier)} makes a listening channel per loop.
+     */
+    public static boolean isReusePortSupported() {
+        if (SO_REUSEPORT == null) return false;
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            return channel.supportedOptions().contains(SO_REUSEPORT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Closes the listening channels and the connections, the loops end.
+     */
+    @Override
+    public void close() {
+        for (EventLoop loop : loops) loop.shutdown();
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (EventLoop loop : loops) {
+            long millis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (millis <= 0) return !loop.thread.isAlive();
+            loop.thread.join(millis);
+            if (loop.thread.isAlive()) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{loops=" + loops.length + "}";
+    }
+
+    public static class Builder {
+        private String name = "reactor";
+        private int loops = Runtime.getRuntime().availableProcessors();
+        private int bufferSize = 16 * 1024;
+        private int backlog = 1024;
+
+        public Builder name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Event loops (threads), default the number of the cores.
+         */
+        public Builder loops(int loops) {
+            if (loops < 1) throw new IllegalArgumentException("loops: " + loops);
+            this.loops = loops;
+            return this;
+        }
+
+        /**
+         * Size of the pooled buffers, also the largest frame, that a handler can wait for, default 16 KiB.
+         */
+        public Builder bufferSize(int bufferSize) {
+            if (bufferSize < 64) throw new IllegalArgumentException("bufferSize: " + bufferSize);
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder backlog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        public Reactor build() throws IOException {
+            return new Reactor(this);
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+package vlfsoft.runtime.repository;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batching loader of a repository, the runtime of {@code @DDD.Repository} against the N+1 queries (DataLoader style):
+ * {@link #load(Object)} does not query, it adds the key to the current batch and returns a future,
+ * the batch is loaded by one call of the {@link BatchFunction} (f.e. {@link InQuery} - one {@code IN (...)} query), when
+ * <ul>
+ * <li> it reaches {@link Builder#maxBatchSize(int)} keys,
+ * <li> the {@link Builder#window(long, TimeUnit)} since its first key elapses (the static timer thread),
+ * <li> or {@link #dispatch()} is called, f.e. at the end of the tick or of the request, before the futures are joined.
+ * </ul>
+ * The keys of a batch are unique: a repeated key gets the same future. With {@link Builder#memoize(boolean)} the futures
+ * of the loaded keys are also kept (the loader of one request), so a key is loaded once per loader.
+ * <pre>
+ * List&lt;CompletableFuture&lt;Customer&gt;&gt; customers = orders.stream().map(o -&gt; loader.load(o.customerId())).collect(toList());
+ * loader.dispatch();
+ * </pre>
+ * The batch function runs on the {@link Builder#executor(Executor)}. {@link #stats()} has the batch size distribution
+ * to tune the batch size and the window.
+ */
+public class BatchLoader<K, V> {
+
+    /**
+     * Loads the values of the keys at once.
+     */
+    public interface BatchFunction<K, V> {
+        /**
+         * @param keys unique keys, at most the max batch size of them.
+         * @return the found values by the keys, a missing key completes its future with null.
+         */
+        Map<K, V> load(List<K> keys) throws Exception;
+
+        /**
+         * @return the most keys of a {@link #load(List)}, f.e. {@link InQuery.Builder#maxPlaceholders(int)}, default unlimited.
+         */
+        default int maxBatchSize() {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Dispatches the batches by the window.
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "BatchLoader-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Batch size buckets of the stats: 1, 2-3, 4-7, ... - by the highest bit.
+     */
+    private static final int BUCKETS = 32;
+
+    private final String name;
+    private final BatchFunction<K, V> function;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Executor executor;
+    private final Map<K, CompletableFuture<V>> memo;
+    // Guarded by this.
+    private Batch<K, V> batch;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder keys = new LongAdder();
+    private final LongAdder failedBatches = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+    private final LongAdder[] sizes = new LongAdder[BUCKETS];
+
+    protected BatchLoader(Builder<K, V> builder) {
+        this.name = builder.name;
+        this.function = builder.function;
+        this.maxBatchSize = builder.maxBatchSize > 0 ? builder.maxBatchSize : Math.min(Builder.MAX_BATCH_SIZE, function.maxBatchSize());
+        this.windowNanos = builder.windowNanos;
+        this.executor = builder.executor;
+        this.memo = builder.memoize ? new HashMap<>() : null;
+        for (int i = 0; i < BUCKETS; i++) sizes[i] = new LongAdder();
+    }
+
+    public static <K, V> Builder<K, V> builder(BatchFunction<K, V> function) {
+        return new Builder<>(function);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return future of the value of the key (null - not found), completed, when the batch of the key is loaded.
+     */
+    public CompletableFuture<V> load(K key) {
+        Objects.requireNonNull(key, "key");
+        requests.increment();
+        Batch<K, V> full = null;
+        CompletableFuture<V> future;
+        synchronized (this) {
+            future = memo != null ? memo.get(key) : null;
+            if (future == null && batch != null) future = batch.futures.get(key);
+            if (future != null) {
+                deduplicated.increment();
+                return future;
+            }
+            if (batch == null) {
+                batch = new Batch<>();
+                if (windowNanos > 0) {
+                    Batch<K, V> scheduled = batch;
+                    batch.timer = TIMER.schedule(() -> dispatch(scheduled), windowNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+            future = new CompletableFuture<>();
+            batch.futures.put(key, future);
+            if (memo != null) memo.put(key, future);
+            if (batch.futures.size() >= maxBatchSize) {
+                full = batch;
+                batch = null;
+            }
+        }
+        if (full != null) submit(full);
+        return future;
+    }
+
+    /**
+     * @return future of the found values by the keys, completed, when all their batches are loaded.
+     */
+    public CompletableFuture<Map<K, V>> loadAll(Collection<? extends K> keys) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        for (K key : keys) futures.put(key, load(key));
+        return CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            Map<K, V> values = new LinkedHashMap<>();
+            for (Map.Entry<K, CompletableFuture<V>> future : futures.entrySet()) {
+                V value = future.getValue().join();
+                if (value != null) values.put(future.getKey(), value);
+            }
+            return values;
+        });
+    }
+
+    /**
+     * Loads the current batch now.
+     */
+    public void dispatch() {
+        Batch<K, V> current;
+        synchronized (this) {
+            current = batch;
+            batch = null;
+        }
+        if (current != null) submit(current);
+    }
+
+    /**
+     * By the timer: the batch may already be dispatched by the size or {@link #dispatch()}.
+     */
+    private void dispatch(Batch<K, V> scheduled) {
+        synchronized (this) {
+            if (batch != scheduled) return;
+            batch = null;
+        }
+        submit(scheduled);
+    }
+
+    private void submit(Batch<K, V> batch) {
+        if (batch.timer != null) batch.timer.cancel(false);
+        try {
+            executor.execute(() -> run(batch));
+        } catch (RejectedExecutionException e) {
+            fail(batch, e);
+        }
+    }
+
+    private void run(Batch<K, V> batch) {
+        int size = batch.futures.size();
+        batches.increment();
+        keys.add(size);
+        sizes[31 - Integer.numberOfLeadingZeros(size)].increment();
+        long start = System.nanoTime();
+        Map<K, V> values;
+        try {
+            values = function.load(new ArrayList<>(batch.futures.keySet()));
+        } catch (Throwable e) {
+            loadNanos.add(System.nanoTime() - start);
+            fail(batch, e);
+            return;
+        }
+        loadNanos.add(System.nanoTime() - start);
+        for (Map.Entry<K, CompletableFuture<V>> future : batch.futures.entrySet()) {
+            future.getValue().complete(values != null ? values.get(future.getKey()) : null);
+        }
+    }
+
+    private void fail(Batch<K, V> batch, Throwable e) {
+        failedBatches.increment();
+        if (memo != null) {
+            // The failed keys are loaded again by the next request.
+            synchronized (this) {
+                for (Map.Entry<K, CompletableFuture<V>> future : batch.futures.entrySet()) memo.remove(future.getKey(), future.getValue());
+            }
+        }
+        for (CompletableFuture<V> future : batch.futures.values()) future.completeExceptionally(e);
+    }
+
+    /**
+     * Puts the value into the memo, f.e. an entity loaded by another query, if not there yet.
+     */
+    public void prime(K key, V value) {
+        if (memo == null) return;
+        synchronized (this) {
+            memo.putIfAbsent(key, CompletableFuture.completedFuture(value));
+        }
+    }
+
+    /**
+     * Removes the key from the memo, f.e. after the entity is changed.
+     */
+    public void clear(K key) {
+        if (memo == null) return;
+        synchronized (this) {
+            memo.remove(key);
+        }
+    }
+
+    public void clearAll() {
+        if (memo == null) return;
+        synchronized (this) {
+            memo.clear();
+        }
+    }
+
+    public Stats stats() {
+        long[] histogram = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) histogram[i] = sizes[i].sum();
+        return new Stats(requests.sum(), deduplicated.sum(), batches.sum(), keys.sum(), failedBatches.sum(), loadNanos.sum(), histogram);
+    }
+
+    @Override
+    public String toString() {
+        return name + stats();
+    }
+
+    private static final class Batch<K, V> {
+        final Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        ScheduledFuture<?> timer;
+    }
+
+    /**
+     * Snapshot of the counters.
+     */
+    public static final class Stats {
+        public final long requests;
+        /**
+         * Requests, that got the future of the same key in the batch or in the memo.
+         */
+        public final long deduplicated;
+        public final long batches;
+        public final long keys;
+        public final long failedBatches;
+        public final long loadNanos;
+        private final long[] histogram;
+
+        Stats(long requests, long deduplicated, long batches, long keys, long failedBatches, long loadNanos, long[] histogram) {
+            this.requests = requests;
+            this.deduplicated = deduplicated;
+            this.batches = batches;
+            this.keys = keys;
+            this.failedBatches = failedBatches;
+            this.loadNanos = loadNanos;
+            this.histogram = histogram;
+        }
+
+        /**
+         * @return the number of the batches of the size [2^i, 2^(i+1)) at the index i.
+         */
+        public long[] batchSizeHistogram() {
+            return histogram.clone();
+        }
+
+        public double averageBatchSize() {
+            return batches == 0 ? 0 : (double) keys / batches;
+        }
+
+        public double averageLoadNanos() {
+            return batches == 0 ? 0 : (double) loadNanos / batches;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder s = new StringBuilder("{requests=").append(requests).append(", deduplicated=").append(deduplicated)
+                    .append(", batches=").append(batches).append(", failed=").append(failedBatches)
+                    .append(", averageBatchSize=").append(String.format("%.1f", averageBatchSize())).append(", sizes={");
+            boolean first = true;
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] == 0) continue;
+                s.append(first ? "" : ", ").append(1L << i).append(i == 0 ? "" : "-" + ((1L << i + 1) - 1)).append('=').append(histogram[i]);
+                first = false;
+            }
+            return s.append("}}").toString();
+        }
+    }
+
+    public static class Builder<K, V> {
+        private final BatchFunction<K, V> function;
+        private String name = "loader";
+        static final int MAX_BATCH_SIZE = 100;
+        private int maxBatchSize;
+        private long windowNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        private Executor executor = ForkJoinPool.commonPool();
+        private boolean memoize;
+
+        Builder(BatchFunction<K, V> function) {
+            this.function = Objects.requireNonNull(function, "function");
+        }
+
+        public Builder<K, V> name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        /**
+         * Keys of a batch, f.e. the limit of the IN list of the database, not over {@link BatchFunction#maxBatchSize()},
+         * default 100 or the limit of the function, if it is less.
+         */
+        public Builder<K, V> maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize: " + maxBatchSize);
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * Time, that a batch collects the keys after the first one, default 1 ms, 0 - only by the size and {@link BatchLoader#dispatch()}.
+         */
+        public Builder<K, V> window(long duration, TimeUnit unit) {
+            if (duration < 0) throw new IllegalArgumentException("window: " + duration);
+            this.windowNanos = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Runs the batch function, default {@link ForkJoinPool#commonPool()}, f.e. a pool of the JDBC connections size.
+         */
+        public Builder<K, V> executor(Executor executor) {
+            this.executor = Objects.requireNonNull(executor, "executor");
+            return this;
+        }
+
+        /**
+         * Keeps the futures of the loaded keys, default false: for a loader per request.
+         */
+        public Builder<K, V> memoize(boolean memoize) {
+            this.memoize = memoize;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException if the max batch size is over the limit of the batch function: the batch would fail in the database.
+         */
+        public BatchLoader<K, V> build() {
+            if (maxBatchSize > function.maxBatchSize()) {
+                throw new IllegalArgumentException("maxBatchSize " + maxBatchSize + " is over the limit of the batch function " + function.maxBatchSize());
+            }
+            return new BatchLoader<>(this);
+        }
+    }
+
+}
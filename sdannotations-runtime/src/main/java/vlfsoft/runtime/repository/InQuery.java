@@ -0,0 +1,162 @@
+package vlfsoft.runtime.repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * {@link BatchLoader.BatchFunction} of one {@code IN (...)} query by the keys of the batch:
+ * <pre>
+ * BatchLoader&lt;Long, Customer&gt; customers = BatchLoader.builder(InQuery.builder(dataSource,
+ *         "SELECT id, name FROM customer WHERE id IN (?)", rs -&gt; new Customer(rs.getLong(1), rs.getString(2)), Customer::id).build())
+ *     .maxBatchSize(500).build();
+ * </pre>
+ * The {@code IN (?)} of the SQL is expanded to the placeholders of the keys. The number of the placeholders is rounded up
+ * to a power of two, the last key repeats in the rest: the database sees a few statement shapes (1, 2, 4, ... max)
+ * instead of one per batch size, so the statements and their plans are reused (not over {@link Builder#maxPlaceholders(int)}).
+ */
+public class InQuery<K, V> implements BatchLoader.BatchFunction<K, V> {
+
+    public interface RowMapper<V> {
+        V map(ResultSet resultSet) throws SQLException;
+    }
+
+    public interface Binder<K> {
+        void bind(PreparedStatement statement, int index, K key) throws SQLException;
+    }
+
+    private static final String IN = "IN (?)";
+
+    private final DataSource dataSource;
+    private final String prefix;
+    private final String suffix;
+    private final RowMapper<V> rowMapper;
+    private final Function<? super V, ? extends K> key;
+    private final Binder<? super K> binder;
+    private final boolean padding;
+    private final int maxPlaceholders;
+    /**
+     * The SQL by the log2 of the number of the placeholders, built on demand.
+     */
+    private final String[] statements = new String[32];
+
+    protected InQuery(Builder<K, V> builder) {
+        int in = builder.sql.indexOf(IN);
+        if (in < 0) throw new IllegalArgumentException("No " + IN + " in " + builder.sql);
+        this.dataSource = builder.dataSource;
+        this.prefix = builder.sql.substring(0, in) + "IN (";
+        this.suffix = builder.sql.substring(in + IN.length() - 1);
+        this.rowMapper = builder.rowMapper;
+        this.key = builder.key;
+        this.binder = builder.binder;
+        this.padding = builder.padding;
+        this.maxPlaceholders = builder.maxPlaceholders;
+    }
+
+    /**
+     * @param sql       the query with {@code IN (?)} for the keys.
+     * @param rowMapper maps the current row of the result set to the value.
+     * @param key       the key of the value.
+     */
+    public static <K, V> Builder<K, V> builder(DataSource dataSource, String sql, RowMapper<V> rowMapper, Function<? super V, ? extends K> key) {
+        return new Builder<>(dataSource, sql, rowMapper, key);
+    }
+
+    @Override
+    public Map<K, V> load(List<K> keys) throws SQLException {
+        if (keys.size() > maxPlaceholders) throw new IllegalArgumentException(keys.size() + " keys, maxPlaceholders: " + maxPlaceholders);
+        Map<K, V> values = new HashMap<>(keys.size() * 4 / 3 + 1);
+        if (keys.isEmpty()) return values;
+        int placeholders = keys.size();
+        int padded = Math.max(1, Integer.highestOneBit(placeholders - 1) << 1);
+        if (padding && padded <= maxPlaceholders) placeholders = padded;
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(sql(placeholders))) {
+            for (int i = 0; i < placeholders; i++) binder.bind(statement, i + 1, keys.get(Math.min(i, keys.size() - 1)));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    V value = rowMapper.map(resultSet);
+                    values.put(key.apply(value), value);
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return {@link Builder#maxPlaceholders(int)}: the max batch size of the loader.
+     */
+    @Override
+    public int maxBatchSize() {
+        return maxPlaceholders;
+    }
+
+    String sql(int placeholders) {
+        if (Integer.bitCount(placeholders) != 1) return build(placeholders);
+        int log = 31 - Integer.numberOfLeadingZeros(placeholders);
+        String sql = statements[log];
+        // A race builds the same string twice.
+        if (sql == null) statements[log] = sql = build(placeholders);
+        return sql;
+    }
+
+    private String build(int placeholders) {
+        StringBuilder s = new StringBuilder(prefix.length() + suffix.length() + placeholders * 3).append(prefix);
+        for (int i = 0; i < placeholders; i++) s.append(i > 0 ? ", ?" : "?");
+        return s.append(suffix).toString();
+    }
+
+    public static class Builder<K, V> {
+        private final DataSource dataSource;
+        private final String sql;
+        private final RowMapper<V> rowMapper;
+        private final Function<? super V, ? extends K> key;
+        private Binder<? super K> binder = PreparedStatement::setObject;
+        private boolean padding = true;
+        private int maxPlaceholders = 1000;
+
+        Builder(DataSource dataSource, String sql, RowMapper<V> rowMapper, Function<? super V, ? extends K> key) {
+            this.dataSource = Objects.requireNonNull(dataSource, "dataSource");
+            this.sql = Objects.requireNonNull(sql, "sql");
+            this.rowMapper = Objects.requireNonNull(rowMapper, "rowMapper");
+            this.key = Objects.requireNonNull(key, "key");
+        }
+
+        /**
+         * Binds a key, default {@link PreparedStatement#setObject(int, Object)}.
+         */
+        public Builder<K, V> binder(Binder<? super K> binder) {
+            this.binder = Objects.requireNonNull(binder, "binder");
+            return this;
+        }
+
+        /**
+         * Rounds the number of the placeholders up to a power of two, default true.
+         */
+        public Builder<K, V> padding(boolean padding) {
+            this.padding = padding;
+            return this;
+        }
+
+        /**
+         * Limit of the IN list of the database, the padding does not go over it, also the max batch size of the loader, default 1000 (Oracle).
+         */
+        public Builder<K, V> maxPlaceholders(int maxPlaceholders) {
+            if (maxPlaceholders < 1) throw new IllegalArgumentException("maxPlaceholders: " + maxPlaceholders);
+            this.maxPlaceholders = maxPlaceholders;
+            return this;
+        }
+
+        public InQuery<K, V> build() {
+            return new InQuery<>(this);
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package vlfsoft.runtime.throttle;
+
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Rate limiters per key, f.e. per tenant or per endpoint, created on the first use with the common parent (the global limit):
+ * <pre>
+ * RateLimiter global = RateLimiter.builder().name("global").permitsPerSecond(200_000).burst(2_000).build();
+ * KeyedRateLimiter&lt;String&gt; tenants = new KeyedRateLimiter&lt;&gt;(tenant -&gt;
+ *         RateLimiter.builder().name(tenant).permitsPerSecond(1_000).burst(100).parent(global));
+ * if (!tenants.tryAcquire(tenantId)) return TOO_MANY_REQUESTS;
+ * </pre>
+ * {@link #cleanUp()} drops the limiters, that are full, so the map does not grow with the keys, that are gone.
+ */
+public class KeyedRateLimiter<K> {
+
+    private final ConcurrentHashMap<K, RateLimiter> limiters = new ConcurrentHashMap<>();
+    private final Function<? super K, RateLimiter> factory;
+
+    /**
+     * @param builder builder of the limiter of a key.
+     */
+    public KeyedRateLimiter(Function<? super K, RateLimiter.Builder> builder) {
+        Objects.requireNonNull(builder, "builder");
+        this.factory = key -> builder.apply(key).build();
+    }
+
+    public RateLimiter limiter(K key) {
+        RateLimiter limiter = limiters.get(key);
+        return limiter != null ? limiter : limiters.computeIfAbsent(key, factory);
+    }
+
+    public boolean tryAcquire(K key) {
+        return limiter(key).tryAcquire(1);
+    }
+
+    public boolean tryAcquire(K key, int permits) {
+        return limiter(key).tryAcquire(permits);
+    }
+
+    public CompletableFuture<Void> acquire(K key, int permits) {
+        return limiter(key).acquire(permits);
+    }
+
+    public CompletableFuture<Void> acquire(K key, int permits, long maxWait, TimeUnit unit) {
+        return limiter(key).acquire(permits, maxWait, unit);
+    }
+
+    public int size() {
+        return limiters.size();
+    }
+
+    /**
+     * Removes the full limiters: a new one for the key starts full, so no permits are lost or gained.
+     * A request racing with the removal can take the permits from the removed limiter, it is one burst at most.
+     */
+    public void cleanUp() {
+        long now = System.nanoTime();
+        for (Iterator<RateLimiter> i = limiters.values().iterator(); i.hasNext(); ) {
+            if (i.next().isIdle(now)) i.remove();
+        }
+    }
+
+}
@@ -0,0 +1,243 @@
+package vlfsoft.runtime.throttle;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter, the runtime of {@code @Pattern.Throttling}: GCRA (generic cell rate algorithm) on one {@link AtomicLong}, without locks.
+ * <p>
+ * The state is the theoretical arrival time (TAT) of the next permit in nanos: a permit costs the emission interval T = 1 s / rate,
+ * a request conforms, if after it the TAT is not ahead of now by more than burst * T. It is the same as a token bucket of the capacity burst,
+ * refilled at the rate, so both are built here: {@link #gcra(long, TimeUnit, long)} by the emission interval and the burst tolerance,
+ * {@link #tokenBucket(long, double)} by the capacity and the refill rate. The bucket holds {@link #availablePermits()}.
+ * <p>
+ * {@link #tryAcquire()} is a {@link System#nanoTime()}, a volatile read and a CAS, an over-limit request is rejected without the CAS;
+ * {@link #tryAcquire(int, long)} takes the time from the caller.
+ * {@link #acquire()} reserves the permits ahead (the TAT moves into the future) and completes the future, when they are due.
+ * <p>
+ * Hierarchical limits: a limiter with a {@link Builder#parent(RateLimiter)} (f.e. per tenant and the global one) takes the permits
+ * from itself and then from the parent, a rejection by the parent gives the own permits back.
+ * See {@link KeyedRateLimiter} for the limiters per key.
+ */
+public class RateLimiter {
+
+    /**
+     * Completes the reservations of {@link #acquire(int)}.
+     */
+    private static final ScheduledThreadPoolExecutor TIMER = new ScheduledThreadPoolExecutor(1, runnable -> {
+        Thread thread = new Thread(runnable, "RateLimiter-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static {
+        TIMER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final String name;
+    private final long interval;
+    private final long tolerance;
+    private final RateLimiter parent;
+    private final AtomicLong tat;
+
+    protected RateLimiter(Builder builder) {
+        if (builder.interval <= 0) throw new IllegalStateException("No rate");
+        this.name = builder.name;
+        this.interval = builder.interval;
+        this.tolerance = builder.burst * builder.interval;
+        this.parent = builder.parent;
+        // Starts full: any TAT not ahead of now means the burst is available.
+        this.tat = new AtomicLong(System.nanoTime());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @param emissionInterval time per permit.
+     * @param burst            permits, that can be taken at once after an idle period, at least 1.
+     */
+    public static RateLimiter gcra(long emissionInterval, TimeUnit unit, long burst) {
+        return builder().emissionInterval(emissionInterval, unit).burst(burst).build();
+    }
+
+    /**
+     * @param capacity        tokens of the full bucket.
+     * @param refillPerSecond tokens added per second.
+     */
+    public static RateLimiter tokenBucket(long capacity, double refillPerSecond) {
+        return builder().permitsPerSecond(refillPerSecond).burst(capacity).build();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public RateLimiter parent() {
+        return parent;
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * @return true, if the permits are taken from this limiter and all its parents, false - nothing is taken.
+     */
+    public boolean tryAcquire(int permits) {
+        return reserve(permits, System.nanoTime(), 0) == 0;
+    }
+
+    /**
+     * {@link #tryAcquire(int)} at the time, that the caller has already read, f.e. the arrival of the request:
+     * the clock read is the most of the cost of the call.
+     *
+     * @param nanoTime {@link System#nanoTime()}, not older than the previous calls by more than the burst.
+     */
+    public boolean tryAcquire(int permits, long nanoTime) {
+        return reserve(permits, nanoTime, 0) == 0;
+    }
+
+    public CompletableFuture<Void> acquire() {
+        return acquire(1);
+    }
+
+    /**
+     * Reserves the permits, however long the wait is.
+     *
+     * @return future, completed when the permits are due: at once, if they are available, or by the timer thread.
+     */
+    public CompletableFuture<Void> acquire(int permits) {
+        return acquire(permits, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Reserves the permits, if they are due within the maximum wait.
+     *
+     * @return future, completed when the permits are due, or failed with {@link RejectedExecutionException} at once,
+     * if the wait is longer than the maximum (nothing is reserved).
+     */
+    public CompletableFuture<Void> acquire(int permits, long maxWait, TimeUnit unit) {
+        long wait = reserve(permits, System.nanoTime(), unit.toNanos(maxWait));
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        if (wait == 0) {
+            future.complete(null);
+        } else if (wait < 0) {
+            future.completeExceptionally(new RejectedExecutionException(name + ": " + permits + " permits are not available within " + maxWait + " " + unit));
+        } else {
+            TIMER.schedule(() -> future.complete(null), wait, TimeUnit.NANOSECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * @return permits, that {@link #tryAcquire(int)} can take now from this limiter (the parents are not considered).
+     */
+    public long availablePermits() {
+        long now = System.nanoTime();
+        long available = now + tolerance - Math.max(tat.get(), now);
+        return available <= 0 ? 0 : available / interval;
+    }
+
+    /**
+     * @return the wait in nanos until the permits are due, 0 - now, -1 - over the maximum wait, nothing is reserved.
+     */
+    long reserve(int permits, long now, long maxWait) {
+        if (permits < 1) throw new IllegalArgumentException("permits: " + permits);
+        long cost = permits * interval;
+        long wait;
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current, now) + cost;
+            wait = next - now - tolerance;
+            if (wait > maxWait) return -1;
+            if (tat.compareAndSet(current, next)) break;
+        }
+        if (wait < 0) wait = 0;
+        if (parent == null) return wait;
+        long parentWait = parent.reserve(permits, now, maxWait);
+        if (parentWait < 0) {
+            refund(cost, now);
+            return -1;
+        }
+        return Math.max(wait, parentWait);
+    }
+
+    /**
+     * Gives back the cost of a reservation, that was not used, the TAT is not moved behind now (the full bucket).
+     */
+    private void refund(long cost, long now) {
+        while (true) {
+            long current = tat.get();
+            long next = Math.max(current - cost, now);
+            if (next >= current || tat.compareAndSet(current, next)) return;
+        }
+    }
+
+    /**
+     * @return true, if the limiter is full, so replacing it with a new one changes nothing.
+     */
+    boolean isIdle(long now) {
+        return tat.get() <= now;
+    }
+
+    @Override
+    public String toString() {
+        return name + "{interval=" + interval + " ns, burst=" + tolerance / interval + ", available=" + availablePermits()
+                + (parent != null ? ", parent=" + parent.name : "") + "}";
+    }
+
+    public static class Builder {
+        private String name = "limiter";
+        private long interval;
+        private long burst = 1;
+        private RateLimiter parent;
+
+        public Builder name(String name) {
+            this.name = Objects.requireNonNull(name, "name");
+            return this;
+        }
+
+        public Builder permitsPerSecond(double permitsPerSecond) {
+            if (!(permitsPerSecond > 0)) throw new IllegalArgumentException("permitsPerSecond: " + permitsPerSecond);
+            this.interval = Math.max(1, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+            return this;
+        }
+
+        /**
+         * Time per permit, the alternative of {@link #permitsPerSecond(double)}.
+         */
+        public Builder emissionInterval(long duration, TimeUnit unit) {
+            if (duration <= 0) throw new IllegalArgumentException("emissionInterval: " + duration);
+            this.interval = unit.toNanos(duration);
+            return this;
+        }
+
+        /**
+         * Permits, that can be taken at once after an idle period (the capacity of the bucket), default 1.
+         */
+        public Builder burst(long burst) {
+            if (burst < 1) throw new IllegalArgumentException("burst: " + burst);
+            this.burst = burst;
+            return this;
+        }
+
+        /**
+         * Limiter, that also gives every permit, f.e. the global one for a tenant limiter.
+         */
+        public Builder parent(RateLimiter parent) {
+            this.parent = parent;
+            return this;
+        }
+
+        public RateLimiter build() {
+            return new RateLimiter(this);
+        }
+    }
+
+}
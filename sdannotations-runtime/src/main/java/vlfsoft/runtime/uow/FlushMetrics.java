@@ -0,0 +1,96 @@
+package vlfsoft.runtime.uow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings of one {@link UnitOfWork#commit(java.sql.Connection)}: the whole flush, the commit of the transaction
+ * and every batch (one statement shape of a table).
+ */
+public class FlushMetrics {
+
+    /**
+     * Rows of one statement shape, written with one prepared statement.
+     */
+    public static class Batch {
+        public final String table;
+        public final UnitOfWork.Operation operation;
+        public final String sql;
+        public final int rows;
+        /**
+         * Round trips: the number of {@link java.sql.PreparedStatement#executeBatch()} calls.
+         */
+        public final int executions;
+        /**
+         * Prepare, bind and execute.
+         */
+        public final long nanos;
+
+        Batch(String table, UnitOfWork.Operation operation, String sql, int rows, int executions, long nanos) {
+            this.table = table;
+            this.operation = operation;
+            this.sql = sql;
+            this.rows = rows;
+            this.executions = executions;
+            this.nanos = nanos;
+        }
+
+        @Override
+        public String toString() {
+            return operation + " " + table + ": " + rows + " rows, " + executions + " executions, " + TimeUnit.NANOSECONDS.toMicros(nanos) + " us";
+        }
+    }
+
+    private final List<Batch> batches = new ArrayList<>();
+    private final int[] rows = new int[UnitOfWork.Operation.values().length];
+    private int executions;
+    long commitNanos;
+    long totalNanos;
+
+    void add(Batch batch) {
+        batches.add(batch);
+        rows[batch.operation.ordinal()] += batch.rows;
+        executions += batch.executions;
+    }
+
+    public List<Batch> batches() {
+        return Collections.unmodifiableList(batches);
+    }
+
+    public int rows(UnitOfWork.Operation operation) {
+        return rows[operation.ordinal()];
+    }
+
+    public int rows() {
+        int total = 0;
+        for (int r : rows) total += r;
+        return total;
+    }
+
+    public int executions() {
+        return executions;
+    }
+
+    /**
+     * Time of {@link java.sql.Connection#commit()}.
+     */
+    public long commitNanos() {
+        return commitNanos;
+    }
+
+    /**
+     * Time of the whole flush, including the commit.
+     */
+    public long totalNanos() {
+        return totalNanos;
+    }
+
+    @Override
+    public String toString() {
+        return "FlushMetrics{" + rows() + " rows, " + batches.size() + " batches, " + executions + " executions, "
+                + TimeUnit.NANOSECONDS.toMicros(totalNanos) + " us, commit " + TimeUnit.NANOSECONDS.toMicros(commitNanos) + " us}";
+    }
+
+}
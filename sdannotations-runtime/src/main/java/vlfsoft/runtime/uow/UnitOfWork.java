@@ -0,0 +1,439 @@
+package vlfsoft.runtime.uow;
+
+import vlfsoft.runtime.identity.IdentityScope;
+import vlfsoft.runtime.identity.LongIdentityMap;
+
+import java.lang.reflect.Constructor;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Unit of work engine, the runtime of {@code @PEAA.UnitOfWork}: tracks the new, dirty and removed entities of a business transaction
+ * and writes them with JDBC batches on {@link #commit(Connection)}.
+ * <p>
+ * Every registered entity gets a slot in the tracker of its type, the states are three bitsets over the slots,
+ * so the registration is a bit set and the commit walks the bitsets. The loaded entities are kept in the identity maps of
+ * the {@link IdentityScope} of the unit of work ({@link #get(Class, long)}), for a {@code @PEAA.IdentityMap} type it is its generated map,
+ * so {@code OrderIdentityMap.of(scope)} and the unit of work share it.
+ * <p>
+ * Commit:
+ * <ul>
+ * <li> the types are ordered by {@link Mapper#dependsOn()} (the referenced types first), the inserts and the updates run in this order,
+ * the deletes - in the reverse one, so the foreign keys hold at every statement.
+ * <li> the rows of a type are grouped by the statement shape ({@link Mapper#sql(Operation, Object)}),
+ * a group is one {@link PreparedStatement} and {@link PreparedStatement#executeBatch()} per {@link Builder#maxBatchSize(int)} rows.
+ * <li> one JDBC transaction: auto-commit is switched off for the flush, a failure rolls back and keeps the tracked changes.
+ * </ul>
+ * Every commit returns {@link FlushMetrics}, also passed to {@link Builder#metricsListener(Consumer)}.
+ * <p>
+ * Standard JDBC only, it runs against any driver, f.e. H2 in-memory database ("jdbc:h2:mem:test") for the tests.
+ * A unit of work is not thread-safe, it belongs to one business transaction.
+ */
+public class UnitOfWork implements AutoCloseable {
+
+    public enum Operation {INSERT, UPDATE, DELETE}
+
+    /**
+     * Maps the entities of a type to the rows of a table.
+     */
+    public interface Mapper<T> {
+        Class<T> type();
+
+        String table();
+
+        long id(T entity);
+
+        /**
+         * @return SQL of the statement for the entity, f.e. an update of the changed columns only;
+         * the entities with the same SQL are batched together.
+         */
+        String sql(Operation operation, T entity);
+
+        void bind(Operation operation, PreparedStatement statement, T entity) throws SQLException;
+
+        /**
+         * @return the types, that the rows of this type refer to (foreign keys): they are inserted before and deleted after this type.
+         */
+        default Collection<Class<?>> dependsOn() {
+            return Collections.emptyList();
+        }
+    }
+
+    private final List<Tracker<?>> declared = new ArrayList<>();
+    /**
+     * Type -> tracker, also the subclasses of the mapped types.
+     */
+    private final Map<Class<?>, Tracker<?>> trackers = new HashMap<>();
+    private final IdentityScope scope;
+    private final boolean ownScope;
+    private final int maxBatchSize;
+    private final Consumer<FlushMetrics> metricsListener;
+    private List<Tracker<?>> order;
+
+    protected UnitOfWork(Builder builder) {
+        this.ownScope = builder.scope == null;
+        this.scope = ownScope ? new IdentityScope() : builder.scope;
+        this.maxBatchSize = builder.maxBatchSize;
+        this.metricsListener = builder.metricsListener;
+        for (Mapper<?> mapper : builder.mappers) add(mapper);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    private <T> void add(Mapper<T> mapper) {
+        Tracker<T> tracker = new Tracker<>(mapper, scope.map(mapper.type(), identityMapFactory(mapper.type())));
+        if (trackers.putIfAbsent(mapper.type(), tracker) != null) throw new IllegalArgumentException("Two mappers of " + mapper.type().getName());
+        declared.add(tracker);
+    }
+
+    /**
+     * @return factory of the generated {@code <Type>IdentityMap} (vlfsoft.processor.IdentityMapProcessor, the nested types joined with '_'),
+     * its {@code of(scope)} expects its own class in the scope; the plain LongIdentityMap for the other types.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Supplier<LongIdentityMap<T>> identityMapFactory(Class<T> type) {
+        Constructor<?> constructor;
+        try {
+            Class<?> generated = Class.forName(type.getName().replace('$', '_') + "IdentityMap", false, type.getClassLoader());
+            if (!LongIdentityMap.class.isAssignableFrom(generated)) return LongIdentityMap::new;
+            constructor = generated.getConstructor();
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            return LongIdentityMap::new;
+        }
+        return () -> {
+            try {
+                return (LongIdentityMap<T>) constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Can't create " + constructor.getDeclaringClass().getName(), e);
+            }
+        };
+    }
+
+    /**
+     * @return the loaded or registered entity with the id or null.
+     */
+    public <T> T get(Class<T> type, long id) {
+        return tracker(type).identityMap.get(id);
+    }
+
+    /**
+     * Registers a loaded entity: it is not written, until it is registered dirty or removed.
+     *
+     * @return the entity with the same id, that is already registered (use it instead of the argument), or the argument.
+     */
+    public <T> T registerClean(T entity) {
+        Tracker<T> tracker = tracker(entity);
+        T existing = tracker.identityMap.putIfAbsent(tracker.mapper.id(entity), entity);
+        return existing != null ? existing : entity;
+    }
+
+    public <T> void registerNew(T entity) {
+        Tracker<T> tracker = tracker(entity);
+        long id = tracker.mapper.id(entity);
+        T existing = tracker.identityMap.putIfAbsent(id, entity);
+        if (existing != null && existing != entity) throw new IllegalStateException(tracker.mapper.table() + " " + id + " is already registered");
+        int slot = tracker.slot(id, entity);
+        if (tracker.removed.get(slot)) throw new IllegalStateException(tracker.mapper.table() + " " + id + " is removed");
+        tracker.created.set(slot);
+    }
+
+    public <T> void registerDirty(T entity) {
+        Tracker<T> tracker = tracker(entity);
+        long id = tracker.mapper.id(entity);
+        tracker.identityMap.putIfAbsent(id, entity);
+        int slot = tracker.slot(id, entity);
+        if (tracker.removed.get(slot)) throw new IllegalStateException(tracker.mapper.table() + " " + id + " is removed");
+        if (!tracker.created.get(slot)) tracker.dirty.set(slot);
+    }
+
+    public <T> void registerRemoved(T entity) {
+        Tracker<T> tracker = tracker(entity);
+        long id = tracker.mapper.id(entity);
+        int slot = tracker.slot(id, entity);
+        tracker.identityMap.remove(id);
+        tracker.dirty.clear(slot);
+        // A new entity was never written, it is just forgotten.
+        if (tracker.created.get(slot)) tracker.created.clear(slot);
+        else tracker.removed.set(slot);
+    }
+
+    /**
+     * @return true, if there is nothing to write.
+     */
+    public boolean isClean() {
+        for (Tracker<?> tracker : declared) {
+            if (!tracker.created.isEmpty() || !tracker.dirty.isEmpty() || !tracker.removed.isEmpty()) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the tracked changes in one transaction of the connection and forgets them.
+     * The auto-commit of the connection is restored after the flush.
+     *
+     * @throws SQLException after the rollback, the changes stay tracked.
+     */
+    public FlushMetrics commit(Connection connection) throws SQLException {
+        FlushMetrics metrics = new FlushMetrics();
+        long start = System.nanoTime();
+        boolean autoCommit = connection.getAutoCommit();
+        if (autoCommit) connection.setAutoCommit(false);
+        try {
+            List<Tracker<?>> order = order();
+            for (Tracker<?> tracker : order) flush(connection, tracker, Operation.INSERT, tracker.created, metrics);
+            for (Tracker<?> tracker : order) flush(connection, tracker, Operation.UPDATE, tracker.dirty, metrics);
+            for (int i = order.size() - 1; i >= 0; i--) flush(connection, order.get(i), Operation.DELETE, order.get(i).removed, metrics);
+            long commitStart = System.nanoTime();
+            connection.commit();
+            metrics.commitNanos = System.nanoTime() - commitStart;
+        } catch (SQLException | RuntimeException | Error e) {
+            try {
+                connection.rollback();
+            } catch (SQLException rollback) {
+                e.addSuppressed(rollback);
+            }
+            throw e;
+        } finally {
+            if (autoCommit) connection.setAutoCommit(true);
+        }
+        for (Tracker<?> tracker : declared) tracker.committed();
+        metrics.totalNanos = System.nanoTime() - start;
+        if (metricsListener != null) metricsListener.accept(metrics);
+        return metrics;
+    }
+
+    /**
+     * Forgets the tracked changes and the identity maps of the own scope. The maps of the {@link Builder#scope(IdentityScope)}
+     * are shared with the caller: only the new entities, that were never written, are removed from them.
+     */
+    public void rollback() {
+        for (Tracker<?> tracker : declared) tracker.clear(ownScope);
+    }
+
+    /**
+     * Forgets the changes, closes the scope, if the unit of work created it: the scope of {@link Builder#scope(IdentityScope)}
+     * belongs to the caller.
+     */
+    @Override
+    public void close() {
+        rollback();
+        if (ownScope) scope.close();
+    }
+
+    private <T> void flush(Connection connection, Tracker<T> tracker, Operation operation, BitSet slots, FlushMetrics metrics) throws SQLException {
+        if (slots.isEmpty()) return;
+        // Statement shape -> slots, in the order of the registration.
+        Map<String, Slots> groups = new LinkedHashMap<>();
+        for (int slot = slots.nextSetBit(0); slot >= 0; slot = slots.nextSetBit(slot + 1)) {
+            groups.computeIfAbsent(tracker.mapper.sql(operation, tracker.entity(slot)), sql -> new Slots()).add(slot);
+        }
+        for (Map.Entry<String, Slots> group : groups.entrySet()) {
+            String sql = group.getKey();
+            int[] members = group.getValue().slots;
+            int size = group.getValue().size;
+            long start = System.nanoTime();
+            int executions = 0;
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < size; i++) {
+                    tracker.mapper.bind(operation, statement, tracker.entity(members[i]));
+                    statement.addBatch();
+                    if ((i + 1) % maxBatchSize == 0 || i + 1 == size) {
+                        statement.executeBatch();
+                        executions++;
+                    }
+                }
+            }
+            metrics.add(new FlushMetrics.Batch(tracker.mapper.table(), operation, sql, size, executions, System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * @return trackers in the order of the dependencies: the referenced types first.
+     */
+    private List<Tracker<?>> order() {
+        if (order != null) return order;
+        List<Tracker<?>> result = new ArrayList<>();
+        Set<Class<?>> visited = new HashSet<>();
+        Set<Class<?>> visiting = new LinkedHashSet<>();
+        for (Tracker<?> tracker : declared) visit(tracker.mapper.type(), visited, visiting, result);
+        return order = result;
+    }
+
+    private void visit(Class<?> type, Set<Class<?>> visited, Set<Class<?>> visiting, List<Tracker<?>> result) {
+        Tracker<?> tracker = trackers.get(type);
+        if (tracker == null || visited.contains(type)) return;
+        if (!visiting.add(type)) throw new IllegalStateException("Cyclic dependencies of the mappers: " + visiting);
+        for (Class<?> dependency : tracker.mapper.dependsOn()) visit(dependency, visited, visiting, result);
+        visiting.remove(type);
+        visited.add(type);
+        result.add(tracker);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Tracker<T> tracker(T entity) {
+        return (Tracker<T>) tracker(entity.getClass());
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Tracker<T> tracker(Class<T> type) {
+        Tracker<T> tracker = (Tracker<T>) trackers.get(type);
+        if (tracker == null) {
+            // A subclass of a mapped type, f.e. a lazy load proxy.
+            for (Class<?> t = type.getSuperclass(); t != null && tracker == null; t = t.getSuperclass()) tracker = (Tracker<T>) trackers.get(t);
+            if (tracker == null) throw new IllegalArgumentException("No mapper of " + type.getName());
+            trackers.put(type, tracker);
+        }
+        return tracker;
+    }
+
+    private static final class Slots {
+        int[] slots = new int[16];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) slots = Arrays.copyOf(slots, size * 2);
+            slots[size++] = slot;
+        }
+    }
+
+    /**
+     * Entities of a type in the slots and their states: bits of {@link #created}, {@link #dirty}, {@link #removed}.
+     */
+    private static final class Tracker<T> {
+        final Mapper<T> mapper;
+        final LongIdentityMap<T> identityMap;
+        final BitSet created = new BitSet();
+        final BitSet dirty = new BitSet();
+        final BitSet removed = new BitSet();
+        private Object[] entities = new Object[16];
+        private int count;
+        /**
+         * id -> slot + 1, open addressing, 0 - empty.
+         */
+        private long[] ids = new long[32];
+        private int[] slots = new int[32];
+
+        Tracker(Mapper<T> mapper, LongIdentityMap<T> identityMap) {
+            this.mapper = mapper;
+            this.identityMap = identityMap;
+        }
+
+        @SuppressWarnings("unchecked")
+        T entity(int slot) {
+            return (T) entities[slot];
+        }
+
+        /**
+         * @return slot of the id, a new one for the new id, the entity of the slot is replaced.
+         */
+        int slot(long id, T entity) {
+            int mask = ids.length - 1;
+            int i = index(id, mask);
+            for (; slots[i] != 0; i = i + 1 & mask) {
+                if (ids[i] == id) {
+                    entities[slots[i] - 1] = entity;
+                    return slots[i] - 1;
+                }
+            }
+            if (count == entities.length) entities = Arrays.copyOf(entities, count * 2);
+            entities[count] = entity;
+            ids[i] = id;
+            slots[i] = count + 1;
+            if (++count > ids.length / 2) rehash();
+            return count - 1;
+        }
+
+        private static int index(long id, int mask) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ h >>> 32) & mask;
+        }
+
+        private void rehash() {
+            long[] oldIds = ids;
+            int[] oldSlots = slots;
+            ids = new long[oldIds.length * 2];
+            slots = new int[oldSlots.length * 2];
+            int mask = ids.length - 1;
+            for (int j = 0; j < oldIds.length; j++) {
+                if (oldSlots[j] == 0) continue;
+                int i = index(oldIds[j], mask);
+                while (slots[i] != 0) i = i + 1 & mask;
+                ids[i] = oldIds[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+
+        /**
+         * After the commit the written entities are clean, the slots are reused by the next changes.
+         */
+        void committed() {
+            created.clear();
+            dirty.clear();
+            removed.clear();
+            Arrays.fill(entities, 0, count, null);
+            Arrays.fill(slots, 0);
+            count = 0;
+        }
+
+        /**
+         * @param ownMap true - the identity map belongs to the unit of work, it is cleared.
+         */
+        void clear(boolean ownMap) {
+            if (ownMap) {
+                identityMap.clear();
+            } else {
+                for (int slot = created.nextSetBit(0); slot >= 0; slot = created.nextSetBit(slot + 1)) {
+                    T entity = entity(slot);
+                    long id = mapper.id(entity);
+                    if (identityMap.get(id) == entity) identityMap.remove(id);
+                }
+            }
+            committed();
+        }
+    }
+
+    public static class Builder {
+        private final List<Mapper<?>> mappers = new ArrayList<>();
+        private IdentityScope scope;
+        private int maxBatchSize = 500;
+        private Consumer<FlushMetrics> metricsListener;
+
+        public Builder mapper(Mapper<?> mapper) {
+            mappers.add(mapper);
+            return this;
+        }
+
+        /**
+         * Scope of the identity maps, by default a new one, that is closed with the unit of work.
+         */
+        public Builder scope(IdentityScope scope) {
+            this.scope = scope;
+            return this;
+        }
+
+        /**
+         * Maximum rows per {@link PreparedStatement#executeBatch()}, default 500.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize: " + maxBatchSize);
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        public Builder metricsListener(Consumer<FlushMetrics> metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        public UnitOfWork build() {
+            return new UnitOfWork(this);
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package vlfsoft.runtime.breaker;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    private static final IOException FAILURE = new IOException("failure");
+
+    @Test
+    public void smallCountWindowOpens() {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindow(CircuitBreaker.WindowType.COUNT, 20)
+                .waitInOpenState(1, TimeUnit.MINUTES)
+                .build();
+        for (int i = 0; i < 10; i++) record(breaker, false);
+        for (int i = 0; i < 9; i++) record(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        record(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+        assertFalse(breaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void explicitMinimumWithinCountWindow() {
+        CircuitBreaker breaker = CircuitBreaker.builder()
+                .slidingWindow(CircuitBreaker.WindowType.COUNT, 10)
+                .minimumNumberOfCalls(5)
+                .build();
+        for (int i = 0; i < 4; i++) record(breaker, true);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.state());
+        record(breaker, true);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.state());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void minimumOverCountWindowIsRejected() {
+        CircuitBreaker.builder()
+                .slidingWindow(CircuitBreaker.WindowType.COUNT, 20)
+                .minimumNumberOfCalls(21)
+                .build();
+    }
+
+    private static void record(CircuitBreaker breaker, boolean failure) {
+        assertTrue(breaker.tryAcquirePermission());
+        if (failure) {
+            breaker.onError(1, FAILURE);
+        } else {
+            breaker.onSuccess(1);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package vlfsoft.runtime.bridge;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class SyncBridgeTest {
+
+    @Test
+    public void fullBridgeRejectsAndResumesWhenDrained() throws Exception {
+        CountDownLatch handling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch resumed = new CountDownLatch(1);
+        SyncBridge<Integer, Integer> bridge = SyncBridge.<Integer, Integer>builder(request -> {
+            handling.countDown();
+            release.await();
+            return request * 2;
+        }).workers(1).queueCapacity(4).onResume(resumed::countDown).build();
+        try {
+            List<Integer> responses = new CopyOnWriteArrayList<>();
+            assertTrue(bridge.offer(0, (response, error) -> responses.add(response)));
+            assertTrue(handling.await(5, TimeUnit.SECONDS));
+
+            int offered = 1;
+            while (bridge.offer(offered, (response, error) -> responses.add(response))) offered++;
+            // The worker holds the queue of 4 in the handler or in its queue.
+            assertTrue("offered " + offered, offered >= 4 && offered <= 5);
+            assertEquals(1, bridge.rejected());
+            try {
+                bridge.submit(100).join();
+                fail();
+            } catch (CompletionException e) {
+                assertTrue(e.getCause() instanceof RejectedExecutionException);
+            }
+            assertEquals(2, bridge.rejected());
+            assertEquals(1, resumed.getCount());
+
+            release.countDown();
+            assertTrue(resumed.await(5, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(14), bridge.submit(7).get(5, TimeUnit.SECONDS));
+            assertEquals(offered, responses.size());
+            assertEquals(offered + 1, bridge.accepted());
+        } finally {
+            release.countDown();
+            bridge.close();
+        }
+        assertTrue(bridge.awaitTermination(5, TimeUnit.SECONDS));
+        // The head of the queue moves after the run of the worker, that completes the futures.
+        assertEquals(0, bridge.queueDepth());
+    }
+
+    @Test
+    public void handlerErrorGoesToCallbackAndFuture() throws Exception {
+        SyncBridge<String, String> bridge = SyncBridge.<String, String>builder(request -> {
+            if (request.isEmpty()) throw new IOException("empty");
+            return request.toUpperCase();
+        }).workers(2).build();
+        try {
+            CompletableFuture<Throwable> error = new CompletableFuture<>();
+            assertTrue(bridge.offer("", (response, e) -> error.complete(e)));
+            assertTrue(error.get(5, TimeUnit.SECONDS) instanceof IOException);
+            try {
+                bridge.submit("").get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof IOException);
+            }
+            assertEquals("A", bridge.submit(CompletableFuture.completedFuture("a")).get(5, TimeUnit.SECONDS));
+            assertEquals(2, bridge.failed());
+            assertEquals(3, bridge.service().snapshot().count());
+            assertEquals(3, bridge.crossing().snapshot().count());
+        } finally {
+            bridge.close();
+        }
+    }
+
+    @Test
+    public void closeHandlesQueuedRequestsAndRejectsNewOnes() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SyncBridge<Integer, Integer> bridge = SyncBridge.<Integer, Integer>builder(request -> {
+            release.await();
+            return request;
+        }).workers(1).build();
+        List<CompletableFuture<Integer>> responses = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 10; i++) responses.add(bridge.submit(i));
+        bridge.close();
+        assertFalse(bridge.offer(10, (response, error) -> {
+        }));
+        assertFalse(bridge.awaitTermination(50, TimeUnit.MILLISECONDS));
+        release.countDown();
+        assertTrue(bridge.awaitTermination(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 10; i++) assertEquals(Integer.valueOf(i), responses.get(i).join());
+    }
+
+    @Test
+    public void histogramKeepsValueWithinBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 1000; nanos++) histogram.record(nanos * 1000);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.count());
+        assertEquals(500_500, snapshot.mean(), 1e-9);
+        assertEquals(500_000, snapshot.percentile(50), 500_000 / 16);
+        assertEquals(990_000, snapshot.percentile(99), 990_000 / 16);
+        assertTrue(snapshot.max() >= 1_000_000);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().count());
+    }
+
+}
@@ -0,0 +1,127 @@
+package vlfsoft.runtime.cache;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CacheTest {
+
+    @Test
+    public void frequentKeysSurviveScanOfOneOffKeys() {
+        Cache<Integer, String> cache = Cache.<Integer, String>builder(String::valueOf).maximumSize(100).build();
+        for (int round = 0; round < 5; round++) {
+            for (int key = 0; key < 100; key++) cache.get(key);
+        }
+        for (int key = 1000; key < 2000; key++) cache.get(key);
+        assertEquals(100, cache.estimatedSize());
+
+        int hot = 0;
+        for (int key = 0; key < 100; key++) {
+            if (cache.getIfPresent(key) != null) hot++;
+        }
+        // An LRU keeps none of them: the scan is 10 times the cache.
+        assertTrue("hot keys left: " + hot, hot >= 90);
+        assertEquals(1000, cache.stats().evictions);
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+        Cache<String, String> cache = Cache.<String, String>builder(key -> {
+            loads.incrementAndGet();
+            loading.countDown();
+            release.await();
+            return key.toUpperCase();
+        }).build();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) results.add(executor.submit(() -> cache.get("a")));
+            assertTrue(loading.await(5, TimeUnit.SECONDS));
+            // Let the other threads reach the running load.
+            Thread.sleep(100);
+            release.countDown();
+            for (Future<String> result : results) assertEquals("A", result.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().loads);
+        assertEquals(8, cache.stats().misses);
+    }
+
+    @Test
+    public void failedLoadIsNotCached() {
+        AtomicInteger calls = new AtomicInteger();
+        Cache<String, String> cache = Cache.<String, String>builder(key -> {
+            if (calls.getAndIncrement() == 0) throw new IOException("down");
+            return key;
+        }).build();
+        try {
+            cache.get("a");
+            fail();
+        } catch (Cache.LoadException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+        assertEquals("a", cache.get("a"));
+        assertEquals(1, cache.stats().loadFailures);
+        assertEquals("a", cache.get("a"));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void staleReadReturnsOldValueAndRefreshes() throws Exception {
+        AtomicInteger version = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Cache<String, String> cache = Cache.<String, String>builder(key -> key + version.incrementAndGet())
+                    .refreshAfterWrite(50, TimeUnit.MILLISECONDS).executor(executor).build();
+            assertEquals("a1", cache.get("a"));
+            assertEquals("a1", cache.get("a"));
+            Thread.sleep(60);
+            assertEquals("a1", cache.get("a"));
+            // The refresh ran on the executor before this task.
+            executor.submit(() -> {
+            }).get(5, TimeUnit.SECONDS);
+            assertEquals("a2", cache.get("a"));
+            Cache.Stats stats = cache.stats();
+            assertEquals(1, stats.refreshes);
+            assertEquals(2, stats.loads);
+            assertEquals(1, stats.misses);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void expiredEntryIsLoadedAgain() throws Exception {
+        AtomicInteger version = new AtomicInteger();
+        Cache<String, String> cache = Cache.<String, String>builder(key -> key + version.incrementAndGet())
+                .expireAfterWrite(30, TimeUnit.MILLISECONDS).build();
+        assertEquals("a1", cache.get("a"));
+        Thread.sleep(40);
+        assertNull(cache.getIfPresent("a"));
+        assertEquals("a2", cache.get("a"));
+    }
+
+    @Test
+    public void weightBoundsCache() {
+        Cache<String, String> cache = Cache.<String, String>builder(key -> key)
+                .maximumWeight(10, (key, value) -> value.length()).build();
+        cache.get("aaaa");
+        cache.get("bbbb");
+        cache.get("cccc");
+        assertTrue(cache.weightedSize() <= 10);
+        assertEquals(2, cache.estimatedSize());
+    }
+
+}
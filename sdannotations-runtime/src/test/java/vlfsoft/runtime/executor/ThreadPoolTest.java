@@ -0,0 +1,148 @@
+package vlfsoft.runtime.executor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class ThreadPoolTest {
+
+    private static final class Query implements Callable<String>, ThreadPool.Blocking {
+        @Override
+        public String call() {
+            return Thread.currentThread().getName();
+        }
+    }
+
+    private static final class Report implements Runnable {
+        final CompletableFuture<String> thread = new CompletableFuture<>();
+
+        @Override
+        public void run() {
+            thread.complete(Thread.currentThread().getName());
+        }
+    }
+
+    private static String thread(ThreadPool pool, Runnable task) throws Exception {
+        CompletableFuture<String> thread = new CompletableFuture<>();
+        pool.execute(() -> {
+            task.run();
+            thread.complete(Thread.currentThread().getName());
+        });
+        return thread.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void taskGoesToLaneOfItsClass() throws Exception {
+        ThreadPool pool = ThreadPool.builder().name("test").cpuThreads(1).ioConcurrency(2).blocking(Report.class).build();
+        try {
+            assertSame(pool.io(), pool.lane(Query.class));
+            assertSame(pool.io(), pool.lane(Report.class));
+            assertSame(pool.cpu(), pool.lane(Runnable.class));
+
+            // The callable decides the lane of submit, not the FutureTask around it.
+            assertTrue(pool.submit(new Query()).get(5, TimeUnit.SECONDS).startsWith("test-io-"));
+            assertTrue(pool.submit(() -> Thread.currentThread().getName()).get(5, TimeUnit.SECONDS).startsWith("test-cpu-"));
+            Report report = new Report();
+            pool.execute(report);
+            assertTrue(report.thread.get(5, TimeUnit.SECONDS).startsWith("test-io-"));
+            Report submitted = new Report();
+            pool.submit(submitted).get(5, TimeUnit.SECONDS);
+            assertTrue(submitted.thread.join().startsWith("test-io-"));
+            assertTrue(thread(pool, () -> {
+            }).startsWith("test-cpu-"));
+
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+            assertEquals(3, pool.io().stats().completed);
+            assertEquals(2, pool.cpu().stats().completed);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void fullCpuQueueRejectsTask() throws Exception {
+        ThreadPool pool = ThreadPool.builder().cpuThreads(1).cpuQueueCapacity(1).build();
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            pool.execute(() -> {
+                running.countDown();
+                awaitUninterruptibly(release);
+            });
+            assertTrue(running.await(5, TimeUnit.SECONDS));
+            pool.execute(() -> {
+            });
+            try {
+                pool.execute(() -> {
+                });
+                fail();
+            } catch (RejectedExecutionException expected) {
+            }
+            Lane.Stats stats = pool.cpu().stats();
+            assertEquals(2, stats.submitted);
+            assertEquals(1, stats.rejected);
+            assertEquals(1, stats.queued);
+            assertEquals(1, stats.active);
+        } finally {
+            release.countDown();
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shutdownNowReturnsSubmittedTasksThatNeverStarted() throws Exception {
+        ThreadPool pool = ThreadPool.builder().cpuThreads(1).ioConcurrency(1).virtualThreads(false).build();
+        CountDownLatch running = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blocker = () -> {
+            running.countDown();
+            awaitUninterruptibly(release);
+        };
+        Runnable cpuTask = () -> {
+        };
+        Report ioTask = new Report();
+        pool.execute(blocker);
+        pool.io().execute(blocker);
+        assertTrue(running.await(5, TimeUnit.SECONDS));
+        pool.execute(cpuTask);
+        pool.io().execute(ioTask);
+        Future<String> query = pool.submit(new Query());
+
+        List<Runnable> tasks = pool.shutdownNow();
+        // The tasks as they were given, not the wrappers of the lanes.
+        assertEquals(3, tasks.size());
+        assertTrue(tasks.containsAll(Arrays.asList(cpuTask, ioTask)));
+        assertTrue(tasks.contains((Runnable) query));
+        assertTrue(pool.isShutdown());
+        assertEquals(0, pool.cpu().stats().queued);
+        assertEquals(0, pool.io().stats().queued);
+        try {
+            pool.execute(cpuTask);
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        release.countDown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertFalse(ioTask.thread.isDone());
+        assertFalse(query.isDone());
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+}
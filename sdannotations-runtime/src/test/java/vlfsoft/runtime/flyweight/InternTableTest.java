@@ -0,0 +1,108 @@
+package vlfsoft.runtime.flyweight;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class InternTableTest {
+
+    private static final class Point {
+        final int x;
+
+        Point(int x) {
+            this.x = x;
+        }
+    }
+
+    private static final class PointKey implements InternTable.Key<Point> {
+        static final AtomicInteger created = new AtomicInteger();
+        final int x;
+
+        PointKey(int x) {
+            this.x = x;
+        }
+
+        @Override
+        public int hash() {
+            // Few hash values: the probing goes past the entries of the other keys.
+            return x % 7;
+        }
+
+        @Override
+        public boolean matches(Point flyweight) {
+            return flyweight.x == x;
+        }
+
+        @Override
+        public Point create() {
+            created.incrementAndGet();
+            return new Point(x);
+        }
+    }
+
+    @Test
+    public void keyHasOneFlyweightAcrossRehash() {
+        InternTable<Point> table = new InternTable<>();
+        List<Point> points = new ArrayList<>();
+        for (int x = 0; x < 1000; x++) points.add(table.intern(new PointKey(x)));
+        assertEquals(1000, table.size());
+        for (int x = 0; x < 1000; x++) {
+            Point point = table.intern(new PointKey(x));
+            assertSame(points.get(x), point);
+            assertEquals(x, point.x);
+        }
+        assertEquals(1000, table.size());
+    }
+
+    @Test
+    public void collectedFlyweightsAreExpunged() throws InterruptedException {
+        InternTable<Point> table = new InternTable<>();
+        List<Point> kept = new ArrayList<>();
+        for (int x = 0; x < 10_000; x++) {
+            Point point = table.intern(new PointKey(x));
+            if (x % 10 == 0) kept.add(point);
+        }
+        for (int attempt = 0; attempt < 50 && table.size() > kept.size(); attempt++) {
+            System.gc();
+            Thread.sleep(10);
+            table.expunge();
+        }
+        assertEquals(kept.size(), table.size());
+        for (Point point : kept) assertSame(point, table.intern(new PointKey(point.x)));
+        // The collected one is created again.
+        assertEquals(1, table.intern(new PointKey(1)).x);
+        assertEquals(kept.size() + 1, table.size());
+    }
+
+    @Test
+    public void concurrentInternReturnsSameFlyweight() throws Exception {
+        InternTable<Point> table = new InternTable<>();
+        PointKey.created.set(0);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            CyclicBarrier start = new CyclicBarrier(threads);
+            List<Future<Point[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    Point[] points = new Point[2000];
+                    for (int x = 0; x < points.length; x++) points[x] = table.intern(new PointKey(x));
+                    return points;
+                }));
+            }
+            Point[] first = results.get(0).get(30, TimeUnit.SECONDS);
+            for (Future<Point[]> result : results) assertArrayEquals(first, result.get(30, TimeUnit.SECONDS));
+            assertEquals(2000, table.size());
+            assertEquals(2000, PointKey.created.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package vlfsoft.runtime.identity;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class IdentityScopeTest {
+
+    @Test
+    public void nestedScopeRestoresEnclosingOne() {
+        try (IdentityScope outer = IdentityScope.open()) {
+            outer.map(String.class).put(1, "outer");
+            try (IdentityScope inner = IdentityScope.open()) {
+                assertSame(inner, IdentityScope.current());
+                assertNull(IdentityScope.current().map(String.class).get(1));
+                inner.map(String.class).put(1, "inner");
+            }
+            assertSame(outer, IdentityScope.current());
+            assertEquals("outer", IdentityScope.current().map(String.class).get(1));
+        }
+        try {
+            IdentityScope.current();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void scopeIsCurrentInItsThreadOnly() throws Exception {
+        try (IdentityScope scope = IdentityScope.open()) {
+            assertSame(scope, IdentityScope.current());
+            CompletableFuture<Boolean> open = CompletableFuture.supplyAsync(() -> {
+                try {
+                    IdentityScope.current();
+                    return true;
+                } catch (IllegalStateException e) {
+                    return false;
+                }
+            });
+            assertFalse(open.get());
+        }
+    }
+
+    @Test
+    public void closeDropsMaps() {
+        IdentityScope scope = new IdentityScope();
+        LongIdentityMap<String> map = scope.map(String.class);
+        assertSame(map, scope.map(String.class));
+        assertNotSame(map, scope.map(Integer.class));
+        scope.close();
+        assertNotSame(map, scope.map(String.class));
+        // An explicit scope is not bound to the thread.
+        try {
+            IdentityScope.current();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,69 @@
+package vlfsoft.runtime.identity;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIdentityMapTest {
+
+    @Test
+    public void removalKeepsEveryOtherKeyOfClusterFound() {
+        // One segment and few keys: long clusters, that wrap around the table, and many backward shifts.
+        LongIdentityMap<String> map = new LongIdentityMap<>(null, 1);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int step = 0; step < 100_000; step++) {
+            long id = random.nextInt(24) - 4;
+            if (random.nextInt(3) == 0) {
+                assertEquals("remove " + id + " at " + step, expected.remove(id), map.remove(id));
+            } else {
+                String entity = "e" + step;
+                assertEquals("put " + id + " at " + step, expected.put(id, entity), map.put(id, entity));
+            }
+            if (step % 16 == 0) {
+                for (long key = -4; key < 20; key++) assertEquals("get " + key + " at " + step, expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Long, String> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void resizeKeepsEntries() {
+        LongIdentityMap<Long> map = new LongIdentityMap<>(Long::longValue, 4);
+        for (long id = 0; id < 10_000; id++) assertNull(map.put(Long.valueOf(id * 31)));
+        assertEquals(10_000, map.size());
+        for (long id = 0; id < 10_000; id++) assertEquals(Long.valueOf(id * 31), map.get(id * 31));
+        assertNull(map.get(1));
+        for (long id = 0; id < 10_000; id += 2) assertNotNull(map.remove(id * 31));
+        assertEquals(5_000, map.size());
+        for (long id = 1; id < 10_000; id += 2) assertTrue(map.containsKey(id * 31));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(31));
+    }
+
+    @Test
+    public void putIfAbsentKeepsFirstInstance() {
+        LongIdentityMap<String> map = new LongIdentityMap<>();
+        String first = new String("a");
+        assertNull(map.putIfAbsent(1, first));
+        assertSame(first, map.putIfAbsent(1, new String("a")));
+        assertSame(first, map.computeIfAbsent(1, id -> "loaded"));
+        assertEquals("loaded", map.computeIfAbsent(2, id -> "loaded"));
+        assertNull(map.computeIfAbsent(3, id -> null));
+        assertFalse(map.containsKey(3));
+        try {
+            map.put("b");
+            fail();
+        } catch (UnsupportedOperationException expected) {
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package vlfsoft.runtime.lock;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ReadMostlyLockTest {
+
+    @Test
+    public void writerRevokesBiasAndWaitsForBiasedReader() throws Exception {
+        ReadMostlyLock lock = ReadMostlyLock.builder().build();
+        assertTrue(lock.isBiased());
+        long read = lock.readLock();
+        assertTrue(read < 0);
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> writer = executor.submit(lock::writeLock);
+            Thread.sleep(100);
+            // The writer holds the StampedLock and spins on the stripe of the reader.
+            assertFalse(writer.isDone());
+            assertFalse(lock.isBiased());
+            lock.unlockRead(read);
+            long write = writer.get(5, TimeUnit.SECONDS);
+            assertEquals(1, lock.revocations());
+            assertTrue(lock.isWriteLocked());
+            assertEquals(0, lock.tryOptimisticRead());
+            lock.unlockWrite(write);
+            assertFalse(lock.isWriteLocked());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void biasIsInhibitedAfterSlowRevocation() throws Exception {
+        ReadMostlyLock lock = ReadMostlyLock.builder().inhibitMultiplier(1000).build();
+        long read = lock.readLock();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> lock.write(() -> {
+            }));
+            // The revocation takes at least 50 ms: the bias stays off for 50 s.
+            Thread.sleep(50);
+            lock.unlockRead(read);
+            writer.get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        for (int i = 0; i < 3; i++) {
+            long stamp = lock.readLock();
+            assertTrue(stamp > 0);
+            lock.unlockRead(stamp);
+        }
+        assertFalse(lock.isBiased());
+    }
+
+    @Test
+    public void firstReaderRestoresBiasWithoutInhibit() {
+        ReadMostlyLock lock = ReadMostlyLock.builder().inhibitMultiplier(0).build();
+        lock.write(() -> {
+        });
+        assertEquals(1, lock.revocations());
+        assertFalse(lock.isBiased());
+
+        long stamp = lock.readLock();
+        assertTrue(stamp > 0);
+        lock.unlockRead(stamp);
+        assertTrue(lock.isBiased());
+        stamp = lock.readLock();
+        assertTrue(stamp < 0);
+        lock.unlockRead(stamp);
+    }
+
+    @Test
+    public void optimisticReadRetriesUnderReadLockAfterWrite() throws Exception {
+        ReadMostlyLock lock = ReadMostlyLock.builder().optimisticRetries(1).build();
+        int[] state = {1};
+        AtomicInteger calls = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            int value = lock.read(() -> {
+                if (calls.getAndIncrement() == 0) {
+                    try {
+                        // A writer comes in between: the optimistic result is dropped.
+                        executor.submit(() -> lock.write(() -> state[0] = 2)).get(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException | ExecutionException | TimeoutException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return state[0];
+            });
+            assertEquals(2, value);
+            assertEquals(2, calls.get());
+            assertEquals(Integer.valueOf(2), lock.read(() -> state[0]));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,151 @@
+package vlfsoft.runtime.pool;
+
+import org.junit.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ObjectPoolTest {
+
+    private static final class Counting implements ObjectPool.Factory<Object> {
+        final AtomicInteger destroyed = new AtomicInteger();
+
+        @Override
+        public Object create() {
+            return new Object();
+        }
+
+        @Override
+        public void destroy(Object object) {
+            destroyed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Runs the task on a thread, that stays alive until the returned latch is counted down.
+     */
+    private static CountDownLatch onLiveThread(Runnable task) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        CountDownLatch end = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            task.run();
+            done.countDown();
+            try {
+                end.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        return end;
+    }
+
+    @Test
+    public void exhaustedPoolTakesObjectFromCacheOfAnotherThread() throws InterruptedException {
+        ObjectPool<Object> pool = ObjectPool.builder(new Counting()).maxSize(1).maxWait(5, TimeUnit.SECONDS).build();
+        Object[] released = new Object[1];
+        CountDownLatch end = onLiveThread(() -> {
+            released[0] = pool.acquire();
+            pool.release(released[0]);
+        });
+        try {
+            assertEquals(0, pool.sharedIdleCount());
+            assertSame(released[0], pool.acquire());
+            assertEquals(1, pool.createdCount());
+        } finally {
+            end.countDown();
+        }
+    }
+
+    @Test
+    public void closeDestroysObjectsInCachesOfOtherThreads() throws InterruptedException {
+        Counting factory = new Counting();
+        ObjectPool<Object> pool = ObjectPool.builder(factory).build();
+        CountDownLatch end = onLiveThread(() -> {
+            Object a = pool.acquire();
+            Object b = pool.acquire();
+            pool.release(a);
+            pool.release(b);
+        });
+        try {
+            pool.close();
+            assertEquals(2, factory.destroyed.get());
+            assertEquals(0, pool.liveCount());
+        } finally {
+            end.countDown();
+        }
+        try {
+            pool.acquire();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void cacheOfTerminatedThreadIsReturnedToSharedStack() throws InterruptedException {
+        ObjectPool<Object> pool = ObjectPool.builder(new Counting()).build();
+        Thread thread = new Thread(() -> pool.release(pool.acquire()));
+        thread.start();
+        thread.join();
+        // The first use of the pool by this thread prunes the caches, the object goes to the shared stack, then to this thread.
+        Object object = pool.acquire();
+        assertEquals(1, pool.createdCount());
+        assertEquals(0, pool.sharedIdleCount());
+        pool.release(object);
+    }
+
+    @Test
+    public void noIdleObjectsWithMaxIdleZero() {
+        Counting factory = new Counting();
+        ObjectPool<Object> pool = ObjectPool.builder(factory).maxIdle(0).build();
+        pool.release(pool.acquire());
+        pool.release(pool.acquire());
+        assertEquals(2, pool.createdCount());
+        assertEquals(2, factory.destroyed.get());
+        assertEquals(0, pool.liveCount());
+    }
+
+    @Test
+    public void evictionDestroysObjectsIdleForTwoEvictions() {
+        Counting factory = new Counting();
+        ObjectPool<Object> pool = ObjectPool.builder(factory).threadCacheSize(0).build();
+        pool.release(pool.acquire());
+        pool.evict();
+        pool.evict();
+        assertEquals(1, pool.sharedIdleCount());
+        pool.evict();
+        assertEquals(0, pool.sharedIdleCount());
+        assertEquals(1, factory.destroyed.get());
+    }
+
+    @Test
+    public void abandonedPoolIsCollectedWhileItsThreadsAreAlive() throws InterruptedException {
+        WeakReference<ObjectPool<Object>> reference = abandonedPool();
+        CountDownLatch end = onLiveThread(() -> {
+            ObjectPool<Object> pool = reference.get();
+            if (pool != null) pool.release(pool.acquire());
+        });
+        try {
+            for (int i = 0; i < 50 && reference.get() != null; i++) {
+                System.gc();
+                Thread.sleep(20);
+            }
+            assertNull(reference.get());
+        } finally {
+            end.countDown();
+        }
+    }
+
+    private static WeakReference<ObjectPool<Object>> abandonedPool() {
+        ObjectPool<Object> pool = ObjectPool.builder(new Counting()).idleTimeout(1, TimeUnit.MINUTES).build();
+        pool.release(pool.acquire());
+        return new WeakReference<>(pool);
+    }
+
+}
@@ -0,0 +1,136 @@
+package vlfsoft.runtime.queue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.IntFunction;
+
+import static org.junit.Assert.*;
+
+public class RingQueueTest {
+
+    private static final int ITEMS = 100_000;
+
+    private static void assertPoisonPill(RingQueue<Integer> queue) throws InterruptedException {
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        queue.close();
+        assertTrue(queue.isClosed());
+        assertFalse(queue.offer(4));
+        try {
+            queue.put(4);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertFalse(queue.isTerminated());
+
+        assertEquals(Integer.valueOf(1), queue.poll());
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(2, queue.drain(drained::add, 16));
+        assertEquals(Arrays.asList(2, 3), drained);
+        // The pill is never taken: every consumer sees it.
+        for (int i = 0; i < 2; i++) {
+            assertEquals(-1, queue.drain(drained::add, 16));
+            assertNull(queue.poll());
+            assertNull(queue.take());
+            assertTrue(queue.isTerminated());
+        }
+    }
+
+    @Test
+    public void poisonPillGoesAfterItemsOfferedBefore() throws InterruptedException {
+        assertPoisonPill(RingQueue.spsc(4));
+        assertPoisonPill(RingQueue.mpsc(4));
+        assertPoisonPill(RingQueue.mpmc(4));
+    }
+
+    @Test
+    public void fullQueueRejectsOffer() {
+        for (RingQueue<Integer> queue : Arrays.asList(RingQueue.<Integer>spsc(3), RingQueue.<Integer>mpsc(3), RingQueue.<Integer>mpmc(3))) {
+            assertEquals(4, queue.capacity());
+            for (int i = 0; i < 4; i++) assertTrue(queue.offer(i));
+            assertFalse(queue.toString(), queue.offer(4));
+            assertEquals(4, queue.size());
+            assertEquals(Integer.valueOf(0), queue.poll());
+            assertTrue(queue.offer(4));
+        }
+    }
+
+    @Test
+    public void spscKeepsOrder() throws Exception {
+        RingQueue<Integer> queue = RingQueue.spsc(64);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> producer = executor.submit(() -> {
+                for (int i = 0; i < ITEMS; i++) queue.put(i);
+                queue.close();
+                return null;
+            });
+            int expected = 0;
+            for (Integer item; (item = queue.take()) != null; expected++) assertEquals(expected, item.intValue());
+            assertEquals(ITEMS, expected);
+            producer.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void mpscKeepsOrderOfEveryProducer() throws Exception {
+        assertOrderPerProducer(RingQueue::mpsc, 4, 1);
+    }
+
+    @Test
+    public void mpmcDeliversEveryItemOnceInOrderOfEveryProducer() throws Exception {
+        assertOrderPerProducer(RingQueue::mpmc, 4, 4);
+    }
+
+    /**
+     * The items are producer * ITEMS + sequence: a consumer sees the items of a producer in its order, all the consumers - every item once.
+     */
+    private static void assertOrderPerProducer(IntFunction<RingQueue<Integer>> queues, int producers, int consumers) throws Exception {
+        RingQueue<Integer> queue = queues.apply(64);
+        AtomicIntegerArray taken = new AtomicIntegerArray(producers * ITEMS);
+        ExecutorService executor = Executors.newFixedThreadPool(producers + consumers);
+        try {
+            CyclicBarrier start = new CyclicBarrier(producers + consumers);
+            List<Future<?>> producing = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                int producer = p;
+                producing.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ITEMS; i++) queue.put(producer * ITEMS + i);
+                    return null;
+                }));
+            }
+            List<Future<?>> consuming = new ArrayList<>();
+            for (int c = 0; c < consumers; c++) {
+                consuming.add(executor.submit(() -> {
+                    start.await();
+                    int[] last = new int[producers];
+                    Arrays.fill(last, -1);
+                    for (Integer item; (item = queue.take()) != null; ) {
+                        int producer = item / ITEMS;
+                        int sequence = item % ITEMS;
+                        assertTrue(item + " after " + last[producer], sequence > last[producer]);
+                        last[producer] = sequence;
+                        assertEquals(0, taken.getAndIncrement(item));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : producing) future.get(30, TimeUnit.SECONDS);
+            queue.close();
+            for (Future<?> future : consuming) future.get(30, TimeUnit.SECONDS);
+            for (int i = 0; i < taken.length(); i++) assertEquals("item " + i, 1, taken.get(i));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package vlfsoft.runtime.reactor;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+/**
+ * Echo servers on 127.0.0.1.
+ */
+public class ReactorTest {
+
+    private static final InetSocketAddress LOOPBACK = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+    private Reactor server;
+    private Reactor client;
+
+    @After
+    public void tearDown() throws InterruptedException {
+        for (Reactor reactor : new Reactor[]{server, client}) {
+            if (reactor == null) continue;
+            reactor.close();
+            assertTrue(reactor.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static Handler echo() {
+        return (connection, in) -> connection.write(in);
+    }
+
+    private static void assertEcho(Socket socket, String message) throws IOException {
+        socket.getOutputStream().write(message.getBytes("US-ASCII"));
+        byte[] bytes = new byte[message.length()];
+        InputStream in = socket.getInputStream();
+        for (int n = 0; n < bytes.length; ) {
+            int read = in.read(bytes, n, bytes.length - n);
+            assertTrue(read > 0);
+            n += read;
+        }
+        assertEquals(message, new String(bytes, "US-ASCII"));
+    }
+
+    private static Socket connect(InetSocketAddress address) throws IOException {
+        Socket socket = new Socket(address.getAddress(), address.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    @Test
+    public void connectionsAreSpreadOverLoops() throws Exception {
+        server = Reactor.builder().name("server").loops(4).build();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        CountDownLatch opened = new CountDownLatch(20);
+        InetSocketAddress address = server.bind(LOOPBACK, () -> new Handler() {
+            @Override
+            public void onOpen(Connection connection) {
+                threads.add(connection.loop.thread);
+                opened.countDown();
+            }
+
+            @Override
+            public void onRead(Connection connection, ByteBuffer in) throws IOException {
+                connection.write(in);
+            }
+        });
+        Socket[] sockets = new Socket[20];
+        try {
+            for (int i = 0; i < sockets.length; i++) {
+                sockets[i] = connect(address);
+                assertEcho(sockets[i], "ping " + i);
+            }
+            assertTrue(opened.await(5, TimeUnit.SECONDS));
+            // Round-robin without SO_REUSEPORT, the hash of the kernel with it.
+            assertTrue(threads.toString(), threads.size() > 1);
+            for (Thread thread : threads) assertTrue(thread.getName(), thread.getName().startsWith("server-"));
+        } finally {
+            for (Socket socket : sockets) {
+                if (socket != null) socket.close();
+            }
+        }
+    }
+
+    @Test
+    public void failedHandlerSupplierClosesAcceptedConnection() throws Exception {
+        server = Reactor.builder().loops(1).build();
+        AtomicInteger calls = new AtomicInteger();
+        Supplier<Handler> handlers = () -> {
+            if (calls.getAndIncrement() == 0) throw new IllegalStateException("no handler");
+            return echo();
+        };
+        InetSocketAddress address = server.bind(LOOPBACK, handlers);
+        try (Socket refused = connect(address)) {
+            assertEquals(-1, refused.getInputStream().read());
+        }
+        try (Socket socket = connect(address)) {
+            assertEcho(socket, "accepted");
+        }
+    }
+
+    @Test
+    public void connectToClosedPortFails() throws Exception {
+        client = Reactor.builder().loops(1).build();
+        InetSocketAddress closed;
+        try (ServerSocketChannel channel = ServerSocketChannel.open()) {
+            channel.bind(LOOPBACK);
+            closed = (InetSocketAddress) channel.getLocalAddress();
+        }
+        try {
+            client.connect(closed, echo()).get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof ConnectException);
+        }
+    }
+
+    @Test
+    public void closeReturnsBuffersToPool() throws Exception {
+        server = Reactor.builder().loops(1).bufferSize(64 * 1024).build();
+        client = Reactor.builder().loops(1).build();
+        CompletableFuture<Long> pending = new CompletableFuture<>();
+        CompletableFuture<int[]> buffers = new CompletableFuture<>();
+        InetSocketAddress address = server.bind(LOOPBACK, () -> new Handler() {
+            @Override
+            public void onRead(Connection connection, ByteBuffer in) throws IOException {
+                in.position(in.limit());
+                // More than the socket buffers take: the rest waits in the pooled buffers.
+                connection.write(ByteBuffer.allocate(16 << 20));
+                pending.complete(connection.pendingBytes());
+            }
+
+            @Override
+            public void onClose(Connection connection, Throwable cause) {
+                BufferPool pool = connection.loop.buffers;
+                buffers.complete(new int[]{pool.allocated(), pool.available(), connection.loop.connections});
+            }
+        });
+        Connection connection = client.connect(address, new Handler() {
+            @Override
+            public void onOpen(Connection connection) throws IOException {
+                connection.setReadable(false);
+                connection.write(ByteBuffer.wrap(new byte[]{1}));
+            }
+
+            @Override
+            public void onRead(Connection connection, ByteBuffer in) {
+                fail();
+            }
+        }).get(5, TimeUnit.SECONDS);
+        assertTrue(pending.get(5, TimeUnit.SECONDS) > 0);
+        connection.execute(connection::close);
+
+        int[] pool = buffers.get(5, TimeUnit.SECONDS);
+        assertTrue(pool[0] > 1);
+        assertEquals("available", pool[0], pool[1]);
+        assertEquals("connections", 0, pool[2]);
+    }
+
+}
@@ -0,0 +1,165 @@
+package vlfsoft.runtime.repository;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class BatchLoaderTest {
+
+    /**
+     * Records the batches, a key maps to its name, the negative keys are not found.
+     */
+    private static final class Names implements BatchLoader.BatchFunction<Integer, String> {
+        final List<List<Integer>> batches = Collections.synchronizedList(new ArrayList<>());
+        int failures;
+
+        @Override
+        public Map<Integer, String> load(List<Integer> keys) throws IOException {
+            batches.add(keys);
+            if (failures > 0) {
+                failures--;
+                throw new IOException("down");
+            }
+            Map<Integer, String> values = new HashMap<>();
+            for (Integer key : keys) {
+                if (key >= 0) values.put(key, "n" + key);
+            }
+            return values;
+        }
+    }
+
+    private static BatchLoader.Builder<Integer, String> loader(Names names) {
+        return BatchLoader.builder(names).executor(Runnable::run).window(0, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void repeatedKeysOfBatchShareFuture() {
+        Names names = new Names();
+        BatchLoader<Integer, String> loader = loader(names).build();
+        CompletableFuture<String> first = loader.load(1);
+        loader.load(2);
+        CompletableFuture<String> missing = loader.load(-1);
+        assertSame(first, loader.load(1));
+        assertFalse(first.isDone());
+        loader.dispatch();
+
+        assertEquals(Collections.singletonList(Arrays.asList(1, 2, -1)), names.batches);
+        assertEquals("n1", first.join());
+        assertNull(missing.join());
+        // Without the memo the loaded key goes to the next batch.
+        assertNotSame(first, loader.load(1));
+        BatchLoader.Stats stats = loader.stats();
+        assertEquals(5, stats.requests);
+        assertEquals(1, stats.deduplicated);
+        assertEquals(1, stats.batches);
+    }
+
+    @Test
+    public void fullBatchIsDispatchedBySize() {
+        Names names = new Names();
+        BatchLoader<Integer, String> loader = loader(names).maxBatchSize(2).build();
+        CompletableFuture<Map<Integer, String>> all = loader.loadAll(Arrays.asList(1, 2, 3, 4, 5));
+        assertFalse(all.isDone());
+        assertEquals(Arrays.asList(Arrays.asList(1, 2), Arrays.asList(3, 4)), names.batches);
+        loader.dispatch();
+        assertEquals(5, all.join().size());
+        assertEquals(5.0 / 3, loader.stats().averageBatchSize(), 1e-9);
+        long[] histogram = loader.stats().batchSizeHistogram();
+        assertEquals(1, histogram[0]);
+        assertEquals(2, histogram[1]);
+    }
+
+    @Test
+    public void batchIsDispatchedByWindow() throws Exception {
+        Names names = new Names();
+        BatchLoader<Integer, String> loader = BatchLoader.builder(names).executor(Runnable::run).window(20, TimeUnit.MILLISECONDS).build();
+        long start = System.nanoTime();
+        CompletableFuture<String> a = loader.load(1);
+        CompletableFuture<String> b = loader.load(2);
+        assertEquals("n1", a.get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(15));
+        assertEquals("n2", b.join());
+        assertEquals(1, names.batches.size());
+    }
+
+    @Test
+    public void memoizedKeyIsLoadedOnceAndFailedKeyAgain() {
+        Names names = new Names();
+        names.failures = 1;
+        BatchLoader<Integer, String> loader = loader(names).memoize(true).build();
+        CompletableFuture<String> failed = loader.load(1);
+        loader.dispatch();
+        try {
+            failed.join();
+            fail();
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+
+        CompletableFuture<String> loaded = loader.load(1);
+        assertNotSame(failed, loaded);
+        loader.dispatch();
+        assertEquals("n1", loaded.join());
+        assertSame(loaded, loader.load(1));
+        assertEquals(2, names.batches.size());
+        assertEquals(1, loader.stats().failedBatches);
+
+        loader.prime(7, "primed");
+        assertEquals("primed", loader.load(7).join());
+        loader.clear(1);
+        loader.load(1);
+        loader.dispatch();
+        assertEquals(3, names.batches.size());
+    }
+
+    @Test
+    public void maxBatchSizeOverLimitOfFunctionIsRejected() {
+        BatchLoader.BatchFunction<Integer, String> limited = new BatchLoader.BatchFunction<Integer, String>() {
+            @Override
+            public Map<Integer, String> load(List<Integer> keys) {
+                return Collections.emptyMap();
+            }
+
+            @Override
+            public int maxBatchSize() {
+                return 10;
+            }
+        };
+        try {
+            BatchLoader.builder(limited).maxBatchSize(11).build();
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void inQueryPadsPlaceholdersWithLastKey() throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:in;DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(100))");
+            statement.execute("INSERT INTO customer VALUES (1, 'Ann'), (2, 'Bob'), (3, 'Cid')");
+        }
+        InQuery<Long, String[]> query = InQuery.builder(dataSource, "SELECT id, name FROM customer WHERE id IN (?) ORDER BY id",
+                rs -> new String[]{rs.getString(1), rs.getString(2)}, row -> Long.valueOf(row[0])).maxPlaceholders(8).build();
+        assertEquals("SELECT id, name FROM customer WHERE id IN (?, ?, ?, ?) ORDER BY id", query.sql(4));
+
+        BatchLoader<Long, String[]> loader = BatchLoader.builder(query).executor(Runnable::run).window(0, TimeUnit.MILLISECONDS).build();
+        CompletableFuture<Map<Long, String[]>> all = loader.loadAll(Arrays.asList(3L, 1L, 9L));
+        loader.dispatch();
+        Map<Long, String[]> found = all.join();
+        assertEquals(new HashSet<>(Arrays.asList(1L, 3L)), found.keySet());
+        assertEquals("Cid", found.get(3L)[1]);
+    }
+
+}
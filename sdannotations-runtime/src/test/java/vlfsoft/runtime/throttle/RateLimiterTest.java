@@ -0,0 +1,105 @@
+package vlfsoft.runtime.throttle;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * The permits are taken at the given times after the creation: the limiter starts full at its creation.
+ */
+public class RateLimiterTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static int acquired(RateLimiter limiter, long now, int attempts) {
+        int acquired = 0;
+        for (int i = 0; i < attempts; i++) {
+            if (limiter.tryAcquire(1, now)) acquired++;
+        }
+        return acquired;
+    }
+
+    @Test
+    public void burstThenEmissionInterval() {
+        RateLimiter limiter = RateLimiter.gcra(10, TimeUnit.MILLISECONDS, 3);
+        long start = System.nanoTime();
+        assertEquals(3, acquired(limiter, start, 10));
+        assertEquals(0, acquired(limiter, start + 5 * MS, 10));
+        assertEquals(1, acquired(limiter, start + 10 * MS, 10));
+        assertEquals(2, acquired(limiter, start + 30 * MS, 10));
+        // An idle period refills the burst, not more.
+        assertEquals(3, acquired(limiter, start + 1000 * MS, 10));
+    }
+
+    @Test
+    public void permitsOverBurstAreRejected() {
+        RateLimiter limiter = RateLimiter.tokenBucket(5, 100);
+        long start = System.nanoTime();
+        assertFalse(limiter.tryAcquire(6, start));
+        assertTrue(limiter.tryAcquire(5, start));
+        assertFalse(limiter.tryAcquire(1, start));
+        try {
+            limiter.tryAcquire(0, start);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void rejectionByParentRefundsOwnPermits() {
+        RateLimiter global = RateLimiter.builder().name("global").emissionInterval(10, TimeUnit.MILLISECONDS).burst(2).build();
+        KeyedRateLimiter<String> tenants = new KeyedRateLimiter<>(tenant ->
+                RateLimiter.builder().name(tenant).emissionInterval(10, TimeUnit.MILLISECONDS).burst(2).parent(global));
+        RateLimiter a = tenants.limiter("a");
+        RateLimiter b = tenants.limiter("b");
+        long start = System.nanoTime();
+        assertSame(global, b.parent());
+        assertEquals(2, acquired(a, start, 2));
+        assertEquals(0, global.availablePermits());
+
+        // The global limit rejects b, b keeps its permits.
+        assertEquals(0, acquired(b, start, 5));
+        assertEquals(2, b.availablePermits());
+        assertEquals(1, acquired(b, start + 10 * MS, 5));
+        assertEquals(0, acquired(a, start + 10 * MS, 5));
+        assertEquals(2, tenants.size());
+    }
+
+    @Test
+    public void acquireWaitsForReservedPermits() throws Exception {
+        RateLimiter limiter = RateLimiter.gcra(50, TimeUnit.MILLISECONDS, 1);
+        assertTrue(limiter.acquire().isDone());
+        long start = System.nanoTime();
+        CompletableFuture<Void> reserved = limiter.acquire();
+        assertFalse(reserved.isDone());
+        reserved.get(5, TimeUnit.SECONDS);
+        assertTrue(System.nanoTime() - start >= 30 * MS);
+
+        CompletableFuture<Void> rejected = limiter.acquire(1, 1, TimeUnit.MILLISECONDS);
+        try {
+            rejected.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+        }
+    }
+
+    @Test
+    public void cleanUpDropsFullLimiters() throws InterruptedException {
+        KeyedRateLimiter<String> limiters = new KeyedRateLimiter<>(key -> RateLimiter.builder().name(key).emissionInterval(20, TimeUnit.MILLISECONDS));
+        assertTrue(limiters.tryAcquire("a"));
+        assertFalse(limiters.tryAcquire("a"));
+        limiters.limiter("b");
+        limiters.cleanUp();
+        assertEquals(1, limiters.size());
+        Thread.sleep(30);
+        limiters.cleanUp();
+        assertEquals(0, limiters.size());
+    }
+
+}
@@ -0,0 +1,309 @@
+package vlfsoft.runtime.uow;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import vlfsoft.runtime.identity.IdentityScope;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Against the H2 in-memory database: customer 1 - n orders, the orders refer the customers by a foreign key.
+ */
+public class UnitOfWorkTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+
+    static final class Customer {
+        final long id;
+        String name;
+        String email;
+
+        Customer(long id, String name, String email) {
+            this.id = id;
+            this.name = name;
+            this.email = email;
+        }
+    }
+
+    static final class Order {
+        final long id;
+        final long customerId;
+        int amount;
+
+        Order(long id, long customerId, int amount) {
+            this.id = id;
+            this.customerId = customerId;
+            this.amount = amount;
+        }
+    }
+
+    /**
+     * The updates set the email only, if there is one: two statement shapes.
+     */
+    static final class CustomerMapper implements UnitOfWork.Mapper<Customer> {
+        @Override
+        public Class<Customer> type() {
+            return Customer.class;
+        }
+
+        @Override
+        public String table() {
+            return "customer";
+        }
+
+        @Override
+        public long id(Customer entity) {
+            return entity.id;
+        }
+
+        @Override
+        public String sql(UnitOfWork.Operation operation, Customer entity) {
+            switch (operation) {
+                case INSERT:
+                    return "INSERT INTO customer (id, name, email) VALUES (?, ?, ?)";
+                case UPDATE:
+                    return entity.email == null ? "UPDATE customer SET name = ? WHERE id = ?" : "UPDATE customer SET name = ?, email = ? WHERE id = ?";
+                default:
+                    return "DELETE FROM customer WHERE id = ?";
+            }
+        }
+
+        @Override
+        public void bind(UnitOfWork.Operation operation, PreparedStatement statement, Customer entity) throws SQLException {
+            int i = 1;
+            if (operation == UnitOfWork.Operation.INSERT) statement.setLong(i++, entity.id);
+            if (operation != UnitOfWork.Operation.DELETE) {
+                statement.setString(i++, entity.name);
+                if (operation == UnitOfWork.Operation.INSERT || entity.email != null) statement.setString(i++, entity.email);
+            }
+            if (operation != UnitOfWork.Operation.INSERT) statement.setLong(i, entity.id);
+        }
+    }
+
+    static final class OrderMapper implements UnitOfWork.Mapper<Order> {
+        @Override
+        public Class<Order> type() {
+            return Order.class;
+        }
+
+        @Override
+        public String table() {
+            return "orders";
+        }
+
+        @Override
+        public long id(Order entity) {
+            return entity.id;
+        }
+
+        @Override
+        public String sql(UnitOfWork.Operation operation, Order entity) {
+            switch (operation) {
+                case INSERT:
+                    return "INSERT INTO orders (id, customer_id, amount) VALUES (?, ?, ?)";
+                case UPDATE:
+                    return "UPDATE orders SET amount = ? WHERE id = ?";
+                default:
+                    return "DELETE FROM orders WHERE id = ?";
+            }
+        }
+
+        @Override
+        public void bind(UnitOfWork.Operation operation, PreparedStatement statement, Order entity) throws SQLException {
+            switch (operation) {
+                case INSERT:
+                    statement.setLong(1, entity.id);
+                    statement.setLong(2, entity.customerId);
+                    statement.setInt(3, entity.amount);
+                    break;
+                case UPDATE:
+                    statement.setInt(1, entity.amount);
+                    statement.setLong(2, entity.id);
+                    break;
+                default:
+                    statement.setLong(1, entity.id);
+            }
+        }
+
+        @Override
+        public Collection<Class<?>> dependsOn() {
+            return Collections.singletonList(Customer.class);
+        }
+    }
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:uow" + DATABASES.incrementAndGet());
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE customer (id BIGINT PRIMARY KEY, name VARCHAR(100) NOT NULL, email VARCHAR(100))");
+            statement.execute("CREATE TABLE orders (id BIGINT PRIMARY KEY, customer_id BIGINT NOT NULL REFERENCES customer (id), amount INT NOT NULL)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    private UnitOfWork.Builder unitOfWork() {
+        // The order mapper first: the order of the flush comes from dependsOn, not from the registration.
+        return UnitOfWork.builder().mapper(new OrderMapper()).mapper(new CustomerMapper());
+    }
+
+    private int count(String table) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM " + table)) {
+            rows.next();
+            return rows.getInt(1);
+        }
+    }
+
+    @Test
+    public void insertsInForeignKeyOrderAndDeletesInReverseOrder() throws SQLException {
+        Customer customer = new Customer(1, "Ann", null);
+        Order order = new Order(10, 1, 5);
+        try (UnitOfWork uow = unitOfWork().build()) {
+            uow.registerNew(order);
+            uow.registerNew(customer);
+            FlushMetrics metrics = uow.commit(connection);
+            assertEquals("customer", metrics.batches().get(0).table);
+            assertEquals("orders", metrics.batches().get(1).table);
+            assertEquals(1, count("customer"));
+            assertEquals(1, count("orders"));
+            assertTrue(uow.isClean());
+
+            uow.registerRemoved(customer);
+            uow.registerRemoved(order);
+            metrics = uow.commit(connection);
+            assertEquals("orders", metrics.batches().get(0).table);
+            assertEquals("customer", metrics.batches().get(1).table);
+            assertEquals(0, count("customer"));
+            assertEquals(0, count("orders"));
+        }
+        assertTrue(connection.getAutoCommit());
+    }
+
+    @Test
+    public void groupsByStatementShapeAndSplitsByMaxBatchSize() throws SQLException {
+        List<Customer> customers = new ArrayList<>();
+        try (UnitOfWork uow = unitOfWork().maxBatchSize(2).build()) {
+            for (int i = 0; i < 5; i++) {
+                Customer customer = new Customer(i, "c" + i, null);
+                customers.add(customer);
+                uow.registerNew(customer);
+            }
+            FlushMetrics metrics = uow.commit(connection);
+            assertEquals(1, metrics.batches().size());
+            assertEquals(5, metrics.batches().get(0).rows);
+            assertEquals(3, metrics.batches().get(0).executions);
+
+            for (Customer customer : customers) {
+                customer.name = customer.name.toUpperCase();
+                if (customer.id >= 3) customer.email = customer.id + "@example.com";
+                uow.registerDirty(customer);
+            }
+            metrics = uow.commit(connection);
+            assertEquals(2, metrics.batches().size());
+            assertEquals("UPDATE customer SET name = ? WHERE id = ?", metrics.batches().get(0).sql);
+            assertEquals(3, metrics.batches().get(0).rows);
+            assertEquals(2, metrics.batches().get(0).executions);
+            assertEquals(2, metrics.batches().get(1).rows);
+            assertEquals(1, metrics.batches().get(1).executions);
+            assertEquals(3, metrics.executions());
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet rows = statement.executeQuery("SELECT COUNT(*) FROM customer WHERE name = UPPER(name) AND (id < 3 OR email IS NOT NULL)")) {
+            rows.next();
+            assertEquals(5, rows.getInt(1));
+        }
+    }
+
+    @Test
+    public void failureRollsBackAndKeepsChanges() throws SQLException {
+        Customer customer = new Customer(1, "Ann", null);
+        try (UnitOfWork uow = unitOfWork().build()) {
+            uow.registerNew(new Customer(2, "Bob", null));
+            // No customer 1 yet: the foreign key fails after the customer 2 is inserted.
+            uow.registerNew(new Order(10, 1, 5));
+            try {
+                uow.commit(connection);
+                fail();
+            } catch (SQLException expected) {
+            }
+            assertEquals(0, count("customer"));
+            assertFalse(uow.isClean());
+            assertTrue(connection.getAutoCommit());
+
+            uow.registerNew(customer);
+            FlushMetrics metrics = uow.commit(connection);
+            assertEquals(3, metrics.rows(UnitOfWork.Operation.INSERT));
+            assertEquals(2, count("customer"));
+            assertEquals(1, count("orders"));
+        }
+    }
+
+    @Test
+    public void metricsDescribeTheFlush() throws SQLException {
+        List<FlushMetrics> listened = new ArrayList<>();
+        Customer customer = new Customer(1, "Ann", null);
+        Order order = new Order(10, 1, 5);
+        try (UnitOfWork uow = unitOfWork().metricsListener(listened::add).build()) {
+            uow.registerNew(customer);
+            uow.registerNew(order);
+            uow.commit(connection);
+            order.amount = 7;
+            uow.registerDirty(order);
+            uow.registerNew(new Order(11, 1, 3));
+            FlushMetrics metrics = uow.commit(connection);
+
+            assertEquals(2, listened.size());
+            assertSame(metrics, listened.get(1));
+            assertEquals(1, metrics.rows(UnitOfWork.Operation.INSERT));
+            assertEquals(1, metrics.rows(UnitOfWork.Operation.UPDATE));
+            assertEquals(0, metrics.rows(UnitOfWork.Operation.DELETE));
+            assertEquals(2, metrics.rows());
+            assertEquals(2, metrics.executions());
+            FlushMetrics.Batch update = metrics.batches().get(1);
+            assertEquals("orders", update.table);
+            assertEquals(UnitOfWork.Operation.UPDATE, update.operation);
+            assertEquals("UPDATE orders SET amount = ? WHERE id = ?", update.sql);
+            assertTrue(update.nanos > 0);
+            assertTrue(metrics.commitNanos() > 0);
+            assertTrue(metrics.totalNanos() >= metrics.commitNanos() + update.nanos);
+        }
+    }
+
+    @Test
+    public void sharedScopeKeepsItsMapsOnRollbackAndClose() {
+        IdentityScope scope = new IdentityScope();
+        Customer loaded = new Customer(1, "Ann", null);
+        try (UnitOfWork uow = unitOfWork().scope(scope).build()) {
+            assertSame(loaded, uow.registerClean(loaded));
+            uow.registerNew(new Customer(2, "Bob", null));
+            uow.rollback();
+            assertTrue(uow.isClean());
+            assertSame(loaded, uow.get(Customer.class, 1));
+            assertNull(uow.get(Customer.class, 2));
+        }
+        assertSame(loaded, scope.map(Customer.class).get(1));
+    }
+
+    @Test
+    public void ownScopeIsClearedOnRollback() {
+        try (UnitOfWork uow = unitOfWork().build()) {
+            uow.registerClean(new Customer(1, "Ann", null));
+            uow.rollback();
+            assertNull(uow.get(Customer.class, 1));
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package vlfsoft.index;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link PatternIndex} on the heap arrays, the result of {@link PatternIndex.Builder#build()}.
+ */
+final class ArrayPatternIndex extends PatternIndex {
+
+    private final String[] annotations;
+    private final String[] elements;
+    private final Kind[] kinds;
+    private final int[] enclosingTypes;
+    private final int[][] annotationsOf;
+    private final int[][] elementsOf;
+    private final Map<String, Integer> elementIds;
+
+    ArrayPatternIndex(String[] annotations, String[] elements, Kind[] kinds, int[] enclosingTypes, int[][] annotationsOf, int[][] elementsOf) {
+        this.annotations = annotations;
+        this.elements = elements;
+        this.kinds = kinds;
+        this.enclosingTypes = enclosingTypes;
+        this.annotationsOf = annotationsOf;
+        this.elementsOf = elementsOf;
+        this.elementIds = new HashMap<>(elements.length * 2);
+        for (int i = 0; i < elements.length; i++) {
+            elementIds.put(elements[i], i);
+        }
+    }
+
+    @Override
+    public int annotationCount() {
+        return annotations.length;
+    }
+
+    @Override
+    public int elementCount() {
+        return elements.length;
+    }
+
+    @Override
+    public String annotation(int annotationId) {
+        return annotations[annotationId];
+    }
+
+    @Override
+    public int annotationId(String annotation) {
+        int id = Arrays.binarySearch(annotations, annotation);
+        return id >= 0 ? id : -1;
+    }
+
+    @Override
+    public String element(int elementId) {
+        return elements[elementId];
+    }
+
+    @Override
+    public int elementId(String element) {
+        Integer id = elementIds.get(element);
+        return id != null ? id : -1;
+    }
+
+    @Override
+    public Kind kind(int elementId) {
+        return kinds[elementId];
+    }
+
+    @Override
+    public int enclosingType(int elementId) {
+        return enclosingTypes[elementId];
+    }
+
+    @Override
+    public int[] annotationsOf(int elementId) {
+        return annotationsOf[elementId];
+    }
+
+    @Override
+    public int[] elementsAnnotatedWith(int annotationId) {
+        return elementsOf[annotationId];
+    }
+
+}
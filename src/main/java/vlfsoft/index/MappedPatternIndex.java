@@ -0,0 +1,371 @@
+package vlfsoft.index;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * {@link PatternIndex} over the binary form of {@link PatternIndexWriter} (version 2) in a {@link ByteBuffer},
+ * f.e. {@link java.nio.MappedByteBuffer} of {@link PatternIndexReader#map(java.io.File)}.
+ * <p>
+ * Opening reads only the header. The strings, records and posting lists are decoded from the buffer on access:
+ * the annotation names and the posting lists (annotation -> elements) are cached after the first decoding,
+ * the element keys and records are decoded on every call. The element keys are searched by their bytes without decoding.
+ */
+final class MappedPatternIndex extends PatternIndex {
+
+    private final ByteBuffer buffer;
+    private final int annotationCount;
+    private final int elementCount;
+    private final boolean unsortedBytes;
+    private final int annotationsTable;
+    private final int annotationsData;
+    private final int blockCount;
+    private final int elementsTable;
+    private final int elementsData;
+    private final int recordsTable;
+    private final int recordsData;
+    private final int postingsTable;
+    private final int postingsData;
+
+    private final AtomicReferenceArray<String> annotations;
+    private final AtomicReferenceArray<int[]> postings;
+
+    /**
+     * @param buffer the index from position 0, version 2.
+     */
+    MappedPatternIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.limit() < PatternIndexWriter.HEADER_SIZE || buffer.getInt(0) != PatternIndexWriter.MAGIC) {
+            throw new IOException("Not a sdannotations index");
+        }
+        int version = buffer.getShort(4) & 0xffff;
+        if (version != PatternIndexWriter.VERSION) throw new IOException("Unsupported sdannotations index version " + version);
+        unsortedBytes = (buffer.getShort(6) & PatternIndexWriter.FLAG_UNSORTED_BYTES) != 0;
+        annotationCount = buffer.getInt(8);
+        elementCount = buffer.getInt(12);
+        if (buffer.getInt(32) > buffer.limit()) throw new IOException("Truncated sdannotations index");
+        blockCount = (elementCount + PatternIndexWriter.BLOCK_SIZE - 1) / PatternIndexWriter.BLOCK_SIZE;
+        annotationsTable = buffer.getInt(16);
+        annotationsData = annotationsTable + annotationCount * 4;
+        elementsTable = buffer.getInt(20);
+        elementsData = elementsTable + blockCount * 4;
+        recordsTable = buffer.getInt(24);
+        recordsData = recordsTable + elementCount * 4;
+        postingsTable = buffer.getInt(28);
+        postingsData = postingsTable + annotationCount * 4;
+        annotations = new AtomicReferenceArray<>(annotationCount);
+        postings = new AtomicReferenceArray<>(annotationCount);
+    }
+
+    @Override
+    public int annotationCount() {
+        return annotationCount;
+    }
+
+    @Override
+    public int elementCount() {
+        return elementCount;
+    }
+
+    @Override
+    public String annotation(int annotationId) {
+        String annotation = annotations.get(annotationId);
+        if (annotation == null) {
+            int position = annotationsData + buffer.getInt(annotationsTable + annotationId * 4);
+            long length = varint(position);
+            byte[] bytes = new byte[value(length)];
+            read(next(length), bytes, 0, bytes.length);
+            annotation = new String(bytes, StandardCharsets.UTF_8);
+            annotations.lazySet(annotationId, annotation);
+        }
+        return annotation;
+    }
+
+    @Override
+    public int annotationId(String annotation) {
+        int low = 0;
+        int high = annotationCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int diff = annotation(middle).compareTo(annotation);
+            if (diff < 0) low = middle + 1;
+            else if (diff > 0) high = middle - 1;
+            else return middle;
+        }
+        return -1;
+    }
+
+    @Override
+    public String element(int elementId) {
+        if (elementId < 0 || elementId >= elementCount) throw new IndexOutOfBoundsException("Element " + elementId);
+        KeyCursor cursor = new KeyCursor(blockStart(elementId / PatternIndexWriter.BLOCK_SIZE), 64);
+        for (int i = elementId % PatternIndexWriter.BLOCK_SIZE; i >= 0; i--) cursor.advance();
+        return new String(cursor.bytes, 0, cursor.length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int elementId(String element) {
+        byte[] key = element.getBytes(StandardCharsets.UTF_8);
+        if (unsortedBytes) {
+            for (int i = 0; i < elementCount; i++) {
+                if (element(i).equals(element)) return i;
+            }
+            return -1;
+        }
+        // The last block, which first key is <= the key.
+        int low = 0;
+        int high = blockCount - 1;
+        int block = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (compareFirstKey(middle, key) <= 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        if (block < 0) return -1;
+
+        int first = block * PatternIndexWriter.BLOCK_SIZE;
+        int count = Math.min(PatternIndexWriter.BLOCK_SIZE, elementCount - first);
+        KeyCursor cursor = new KeyCursor(blockStart(block), Math.max(64, key.length));
+        for (int i = 0; i < count; i++) {
+            cursor.advance();
+            int diff = compare(cursor.bytes, cursor.length, key);
+            if (diff == 0) return first + i;
+            if (diff > 0) return -1;
+        }
+        return -1;
+    }
+
+    @Override
+    public Kind kind(int elementId) {
+        return Kind.of(buffer.get(record(elementId)));
+    }
+
+    @Override
+    public int enclosingType(int elementId) {
+        return value(varint(record(elementId) + 1)) - 1;
+    }
+
+    @Override
+    public int[] annotationsOf(int elementId) {
+        long enclosing = varint(record(elementId) + 1);
+        return ids(next(enclosing));
+    }
+
+    @Override
+    public int[] elementsAnnotatedWith(int annotationId) {
+        int[] ids = postings.get(annotationId);
+        if (ids == null) {
+            ids = ids(postingsData + buffer.getInt(postingsTable + annotationId * 4));
+            postings.lazySet(annotationId, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * @return the index decoded into the heap arrays, sequentially.
+     */
+    ArrayPatternIndex decode() {
+        String[] annotationNames = new String[annotationCount];
+        int[][] elementsOf = new int[annotationCount][];
+        for (int i = 0; i < annotationCount; i++) {
+            annotationNames[i] = annotation(i);
+            elementsOf[i] = elementsAnnotatedWith(i);
+        }
+        String[] elements = new String[elementCount];
+        Kind[] kinds = new Kind[elementCount];
+        int[] enclosingTypes = new int[elementCount];
+        int[][] annotationsOf = new int[elementCount][];
+        KeyCursor cursor = null;
+        for (int i = 0; i < elementCount; i++) {
+            if (i % PatternIndexWriter.BLOCK_SIZE == 0) cursor = new KeyCursor(blockStart(i / PatternIndexWriter.BLOCK_SIZE), 64);
+            cursor.advance();
+            elements[i] = new String(cursor.bytes, 0, cursor.length, StandardCharsets.UTF_8);
+            int record = record(i);
+            kinds[i] = Kind.of(buffer.get(record));
+            long enclosing = varint(record + 1);
+            enclosingTypes[i] = value(enclosing) - 1;
+            annotationsOf[i] = ids(next(enclosing));
+        }
+        return new ArrayPatternIndex(annotationNames, elements, kinds, enclosingTypes, annotationsOf, elementsOf);
+    }
+
+    /**
+     * @return sequential reader of the element keys in the order of the ids.
+     */
+    ElementReader elements() {
+        return new ElementReader();
+    }
+
+    /**
+     * @return sequential reader of the posting list of the annotation, that does not materialize it.
+     */
+    IdReader posting(int annotationId) {
+        return new IdReader(postingsData + buffer.getInt(postingsTable + annotationId * 4));
+    }
+
+    /**
+     * Element keys one by one, each block is decoded once.
+     */
+    final class ElementReader {
+        private int next;
+        private KeyCursor cursor;
+
+        boolean hasNext() {
+            return next < elementCount;
+        }
+
+        /**
+         * @return id of the next element, its key is {@link #key()}.
+         */
+        int next() {
+            if (next % PatternIndexWriter.BLOCK_SIZE == 0) cursor = new KeyCursor(blockStart(next / PatternIndexWriter.BLOCK_SIZE), 64);
+            cursor.advance();
+            return next++;
+        }
+
+        String key() {
+            return new String(cursor.bytes, 0, cursor.length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Delta-coded ids one by one.
+     */
+    final class IdReader {
+        private int remaining;
+        private int position;
+        private int id;
+
+        IdReader(int position) {
+            long count = varint(position);
+            this.remaining = value(count);
+            this.position = MappedPatternIndex.next(count);
+        }
+
+        int remaining() {
+            return remaining;
+        }
+
+        int nextId() {
+            long delta = varint(position);
+            id += value(delta);
+            position = MappedPatternIndex.next(delta);
+            remaining--;
+            return id;
+        }
+    }
+
+    private int record(int elementId) {
+        if (elementId < 0 || elementId >= elementCount) throw new IndexOutOfBoundsException("Element " + elementId);
+        return recordsData + buffer.getInt(recordsTable + elementId * 4);
+    }
+
+    private int blockStart(int block) {
+        return elementsData + buffer.getInt(elementsTable + block * 4);
+    }
+
+    /**
+     * Delta-coded ids at the position.
+     */
+    private int[] ids(int position) {
+        long count = varint(position);
+        int[] ids = new int[value(count)];
+        position = next(count);
+        int id = 0;
+        for (int i = 0; i < ids.length; i++) {
+            long delta = varint(position);
+            id += value(delta);
+            ids[i] = id;
+            position = next(delta);
+        }
+        return ids;
+    }
+
+    /**
+     * Reconstructs the front-coded keys of a block one by one.
+     */
+    private final class KeyCursor {
+        byte[] bytes;
+        int length;
+        private int position;
+        private boolean first = true;
+
+        KeyCursor(int position, int capacity) {
+            this.position = position;
+            this.bytes = new byte[capacity];
+        }
+
+        void advance() {
+            int shared = 0;
+            if (!first) {
+                long prefix = varint(position);
+                shared = value(prefix);
+                position = next(prefix);
+            }
+            first = false;
+            long suffix = varint(position);
+            position = next(suffix);
+            int suffixLength = value(suffix);
+            length = shared + suffixLength;
+            if (length > bytes.length) bytes = Arrays.copyOf(bytes, Math.max(length, bytes.length * 2));
+            read(position, bytes, shared, suffixLength);
+            position += suffixLength;
+        }
+    }
+
+    private int compareFirstKey(int block, byte[] key) {
+        long length = varint(blockStart(block));
+        int position = next(length);
+        int size = value(length);
+        int common = Math.min(size, key.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (buffer.get(position + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return size - key.length;
+    }
+
+    private static int compare(byte[] a, int length, byte[] b) {
+        int common = Math.min(length, b.length);
+        for (int i = 0; i < common; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return length - b.length;
+    }
+
+    private void read(int position, byte[] target, int offset, int length) {
+        for (int i = 0; i < length; i++) target[offset + i] = buffer.get(position + i);
+    }
+
+    /**
+     * @return value and the position after the varint, see {@link #value(long)} and {@link #next(long)}.
+     */
+    private long varint(int position) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get(position++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (long) value << 32 | position & 0xffffffffL;
+    }
+
+    private static int value(long varint) {
+        return (int) (varint >>> 32);
+    }
+
+    private static int next(long varint) {
+        return (int) varint;
+    }
+
+}
@@ -0,0 +1,209 @@
+package vlfsoft.index;
+
+import java.util.*;
+
+/**
+ * Index of the source code elements, that are marked with the vlfsoft.* annotations.
+ * <p>
+ * The index keeps both directions of the mapping:
+ * element -> annotations ({@link #annotationsOf(int)}) and annotation -> elements ({@link #elementsAnnotatedWith(int)}).
+ * Both directions are sorted arrays of ids (posting lists), so that downstream tools can answer "where is pattern X applied"
+ * without parsing any source.
+ * <p>
+ * The index is produced at compile time by {@link vlfsoft.processor.PatternIndexProcessor} into {@link #RESOURCE}
+ * and read back with {@link PatternIndexReader}. The index is immutable: either the arrays of {@link Builder#build()}
+ * or the binary form, that is decoded lazily ({@link PatternIndexReader#map(java.io.File)}).
+ * <p>
+ * Element keys:
+ * <ul>
+ * <li> type: binary name, f.e. {@code com.acme.Order$Line}
+ * <li> field: {@code com.acme.Order#total}
+ * <li> method: {@code com.acme.Order#add(com.acme.Order$Line,int)}
+ * <li> constructor: {@code com.acme.Order#<init>()}
+ * <li> parameter: {@code com.acme.Order#add(com.acme.Order$Line,int):quantity}
+ * <li> package: {@code com.acme}
+ * </ul>
+ */
+public abstract class PatternIndex {
+
+    /**
+     * Location of the index inside the jar.
+     */
+    public static final String RESOURCE = "META-INF/sdannotations.idx";
+
+    /**
+     * Location of the per top level type shards of the index, f.e. META-INF/sdannotations/com.acme.Order.idx
+     */
+    public static final String SHARDS_DIRECTORY = "META-INF/sdannotations/";
+
+    public static final String SHARD_SUFFIX = ".idx";
+
+    public enum Kind {
+        TYPE, FIELD, METHOD, CONSTRUCTOR, PARAMETER, PACKAGE, OTHER;
+
+        private static final Kind[] VALUES = values();
+
+        static Kind of(int ordinal) {
+            return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : OTHER;
+        }
+    }
+
+    public static final PatternIndex EMPTY = new Builder().build();
+
+    PatternIndex() {
+    }
+
+    public abstract int annotationCount();
+
+    public abstract int elementCount();
+
+    /**
+     * @return canonical name of the annotation, f.e. {@code vlfsoft.patterns.GOF.Singleton}
+     */
+    public abstract String annotation(int annotationId);
+
+    /**
+     * @return id of the annotation or -1, if the annotation is not used in the indexed sources.
+     */
+    public abstract int annotationId(String annotation);
+
+    public abstract String element(int elementId);
+
+    /**
+     * @return id of the element or -1, if the element is not marked with any of the vlfsoft.* annotations.
+     */
+    public abstract int elementId(String element);
+
+    public abstract Kind kind(int elementId);
+
+    /**
+     * @return id of the nearest enclosing type, that is marked with vlfsoft.* annotation(s), or -1.
+     */
+    public abstract int enclosingType(int elementId);
+
+    /**
+     * @return sorted ids of the annotations, that mark the element. Do not modify the returned array.
+     */
+    public abstract int[] annotationsOf(int elementId);
+
+    /**
+     * @return sorted ids of the elements, that are marked with the annotation. Do not modify the returned array.
+     */
+    public abstract int[] elementsAnnotatedWith(int annotationId);
+
+    public List<String> elementsAnnotatedWith(String annotation) {
+        int id = annotationId(annotation);
+        if (id < 0) return Collections.emptyList();
+        int[] ids = elementsAnnotatedWith(id);
+        List<String> result = new ArrayList<>(ids.length);
+        for (int element : ids) result.add(element(element));
+        return result;
+    }
+
+    public List<String> annotationsOf(String element) {
+        int id = elementId(element);
+        if (id < 0) return Collections.emptyList();
+        int[] ids = annotationsOf(id);
+        List<String> result = new ArrayList<>(ids.length);
+        for (int annotation : ids) result.add(annotation(annotation));
+        return result;
+    }
+
+    /**
+     * Combines several indexes (f.e. read from different jars) into one.
+     */
+    public static PatternIndex merge(Iterable<PatternIndex> indexes) {
+        Builder builder = new Builder();
+        for (PatternIndex index : indexes) {
+            builder.addAll(index);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Mutable accumulator of the index, {@link #build()} produces immutable {@link PatternIndex}.
+     */
+    public static final class Builder {
+
+        private static final class Entry {
+            final Kind kind;
+            String enclosingType;
+            final SortedSet<String> annotations = new TreeSet<>();
+
+            Entry(Kind kind) {
+                this.kind = kind;
+            }
+        }
+
+        private final Map<String, Entry> entries = new LinkedHashMap<>();
+
+        /**
+         * @param enclosingType key of the enclosing type or null.
+         */
+        public Builder add(String element, Kind kind, String enclosingType, String annotation) {
+            Entry entry = entries.get(element);
+            if (entry == null) {
+                entry = new Entry(kind);
+                entries.put(element, entry);
+            }
+            if (enclosingType != null) entry.enclosingType = enclosingType;
+            entry.annotations.add(annotation);
+            return this;
+        }
+
+        public Builder addAll(PatternIndex index) {
+            for (int element = 0; element < index.elementCount(); element++) {
+                int enclosing = index.enclosingType(element);
+                String enclosingType = enclosing >= 0 ? index.element(enclosing) : null;
+                for (int annotation : index.annotationsOf(element)) {
+                    add(index.element(element), index.kind(element), enclosingType, index.annotation(annotation));
+                }
+            }
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return entries.isEmpty();
+        }
+
+        public PatternIndex build() {
+            SortedSet<String> annotationSet = new TreeSet<>();
+            for (Entry entry : entries.values()) annotationSet.addAll(entry.annotations);
+            String[] annotations = annotationSet.toArray(new String[0]);
+
+            String[] elements = entries.keySet().toArray(new String[0]);
+            Arrays.sort(elements);
+            Map<String, Integer> elementIds = new HashMap<>(elements.length * 2);
+            for (int i = 0; i < elements.length; i++) elementIds.put(elements[i], i);
+
+            Kind[] kinds = new Kind[elements.length];
+            int[] enclosingTypes = new int[elements.length];
+            int[][] annotationsOf = new int[elements.length][];
+            int[] postingSizes = new int[annotations.length];
+            for (int i = 0; i < elements.length; i++) {
+                Entry entry = entries.get(elements[i]);
+                kinds[i] = entry.kind;
+                Integer enclosing = entry.enclosingType != null ? elementIds.get(entry.enclosingType) : null;
+                enclosingTypes[i] = enclosing != null ? enclosing : -1;
+                int[] ids = new int[entry.annotations.size()];
+                int j = 0;
+                for (String annotation : entry.annotations) {
+                    ids[j] = Arrays.binarySearch(annotations, annotation);
+                    postingSizes[ids[j]]++;
+                    j++;
+                }
+                annotationsOf[i] = ids;
+            }
+
+            // Elements are visited in ascending order, so the reverse posting lists come out sorted.
+            int[][] elementsOf = new int[annotations.length][];
+            for (int i = 0; i < annotations.length; i++) elementsOf[i] = new int[postingSizes[i]];
+            int[] fill = new int[annotations.length];
+            for (int i = 0; i < elements.length; i++) {
+                for (int annotation : annotationsOf[i]) elementsOf[annotation][fill[annotation]++] = i;
+            }
+            return new ArrayPatternIndex(annotations, elements, kinds, enclosingTypes, annotationsOf, elementsOf);
+        }
+    }
+
+}
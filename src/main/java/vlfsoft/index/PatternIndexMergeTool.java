@@ -0,0 +1,56 @@
+package vlfsoft.index;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command line front end of {@link PatternIndexMerger}.
+ * <p>
+ * Usage: PatternIndexMergeTool [-incremental &lt;work directory&gt;] &lt;output&gt; &lt;input&gt;...
+ * <ul>
+ * <li> input - an index file or @file with the paths of the index files, one per line.
+ * <li> -incremental - keep the merged segments in the work directory and re-merge only the segments with the changed inputs.
+ * </ul>
+ * f.e. {@code PatternIndexMergeTool -incremental build/sdannotations build/sdannotations.idx @build/module-indexes.txt}
+ */
+public final class PatternIndexMergeTool {
+
+    private PatternIndexMergeTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        File workDirectory = null;
+        int first = 0;
+        if (args.length > 1 && "-incremental".equals(args[0])) {
+            workDirectory = new File(args[1]);
+            first = 2;
+        }
+        if (args.length - first < 2) {
+            System.err.println("Usage: PatternIndexMergeTool [-incremental <work directory>] <output> <input>...");
+            System.exit(2);
+        }
+        File output = new File(args[first]);
+        List<File> inputs = new ArrayList<>();
+        for (int i = first + 1; i < args.length; i++) {
+            if (args[i].startsWith("@")) {
+                for (String line : Files.readAllLines(new File(args[i].substring(1)).toPath(), StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) inputs.add(new File(line.trim()));
+                }
+            } else {
+                inputs.add(new File(args[i]));
+            }
+        }
+
+        long start = System.nanoTime();
+        boolean written = true;
+        if (workDirectory != null) written = new PatternIndexMerger(workDirectory).update(inputs, output);
+        else PatternIndexMerger.merge(inputs, output);
+        System.err.printf("%s %s from %d indexes in %d ms%n", written ? "Merged" : "Up to date:", output, inputs.size(),
+                (System.nanoTime() - start) / 1000000);
+    }
+
+}
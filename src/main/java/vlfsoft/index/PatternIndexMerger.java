@@ -0,0 +1,435 @@
+package vlfsoft.index;
+
+import java.io.*;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Merges the indexes of the modules of a build (f.e. one {@link PatternIndex#RESOURCE} per Gradle module) into one index.
+ * <p>
+ * {@link #merge(List, File)} is a streaming k-way merge: the inputs are memory-mapped, the element keys are merged
+ * in their sorted order and written to the output as they come, the posting lists are merged per annotation.
+ * The heap holds only the cursors of the inputs and the annotation names, the local -&gt; global element id mapping
+ * is kept in a memory-mapped temporary file, so the memory does not depend on the size of the indexes.
+ * <p>
+ * {@link #update(List, File)} re-merges incrementally: the inputs are distributed over a fixed number of segments by their paths,
+ * every segment is merged separately into the work directory and is rebuilt only if one of its inputs has changed
+ * (length or modification time), then the segments are merged into the output.
+ * <p>
+ * The element keys of the same element in several inputs (f.e. a package split between the modules) are joined.
+ * The enclosing type of an element is resolved by its key, that is a prefix of the element key (see {@link PatternIndex}).
+ */
+public final class PatternIndexMerger {
+
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String INPUTS_SUFFIX = ".inputs";
+
+    private final File workDirectory;
+    private final int segments;
+
+    public PatternIndexMerger(File workDirectory) {
+        this(workDirectory, DEFAULT_SEGMENTS);
+    }
+
+    /**
+     * @param workDirectory the merged segments and their input lists, that are kept between the runs.
+     */
+    public PatternIndexMerger(File workDirectory, int segments) {
+        if (segments < 1) throw new IllegalArgumentException("segments: " + segments);
+        this.workDirectory = workDirectory;
+        this.segments = segments;
+    }
+
+    /**
+     * Merges the changed segments and then all the segments into the output.
+     *
+     * @return false, if none of the inputs has changed since the previous update and the output is up to date.
+     */
+    public boolean update(List<File> inputs, File output) throws IOException {
+        if (!workDirectory.isDirectory() && !workDirectory.mkdirs()) throw new IOException("Unable to create " + workDirectory);
+        List<List<File>> groups = new ArrayList<>(segments);
+        for (int i = 0; i < segments; i++) groups.add(new ArrayList<File>());
+        for (File input : inputs) {
+            String path = input.getAbsolutePath();
+            groups.get((path.hashCode() & Integer.MAX_VALUE) % segments).add(input.getAbsoluteFile());
+        }
+
+        boolean changed = !output.isFile();
+        List<File> segmentFiles = new ArrayList<>();
+        for (int i = 0; i < segments; i++) {
+            List<File> group = groups.get(i);
+            File segment = new File(workDirectory, SEGMENT_PREFIX + i + PatternIndex.SHARD_SUFFIX);
+            File inputList = new File(workDirectory, SEGMENT_PREFIX + i + INPUTS_SUFFIX);
+            if (group.isEmpty()) {
+                if (segment.isFile()) changed = true;
+                Files.deleteIfExists(segment.toPath());
+                Files.deleteIfExists(inputList.toPath());
+                continue;
+            }
+            Collections.sort(group);
+            String signature = signature(group);
+            if (!segment.isFile() || !inputList.isFile() || !signature.equals(new String(Files.readAllBytes(inputList.toPath()), StandardCharsets.UTF_8))) {
+                // The input list is written after the segment, so an interrupted merge is repeated.
+                Files.deleteIfExists(inputList.toPath());
+                merge(group, segment);
+                Files.write(inputList.toPath(), signature.getBytes(StandardCharsets.UTF_8));
+                changed = true;
+            }
+            segmentFiles.add(segment);
+        }
+        if (changed) merge(segmentFiles, output);
+        return changed;
+    }
+
+    private static String signature(List<File> inputs) {
+        StringBuilder result = new StringBuilder();
+        for (File input : inputs) {
+            result.append(input.length()).append('\t').append(input.lastModified()).append('\t').append(input.getPath()).append('\n');
+        }
+        return result.toString();
+    }
+
+    /**
+     * Streaming merge of the index files into the output file.
+     * The temporary files are created next to the output, the output is replaced atomically, when the merge is complete.
+     */
+    public static void merge(List<File> inputs, File output) throws IOException {
+        File directory = output.getAbsoluteFile().getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Unable to create " + directory);
+        List<File> temporaryFiles = new ArrayList<>();
+        try {
+            List<MappedPatternIndex> indexes = new ArrayList<>(inputs.size());
+            for (File input : inputs) indexes.add(open(input, directory, temporaryFiles));
+            File merged = temporaryFile(directory, temporaryFiles);
+            new Merge(indexes, directory, temporaryFiles).write(merged);
+            Files.move(merged.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            for (File file : temporaryFiles) {
+                if (!file.delete()) file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Maps the index, the indexes of the previous format versions are converted into a temporary file.
+     */
+    private static MappedPatternIndex open(File input, File directory, List<File> temporaryFiles) throws IOException {
+        PatternIndex index = PatternIndexReader.map(input);
+        if (index instanceof MappedPatternIndex) return (MappedPatternIndex) index;
+        File converted = temporaryFile(directory, temporaryFiles);
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(converted))) {
+            PatternIndexWriter.write(index, out);
+        }
+        return (MappedPatternIndex) PatternIndexReader.map(converted);
+    }
+
+    private static File temporaryFile(File directory, List<File> temporaryFiles) throws IOException {
+        File file = File.createTempFile("sdannotations-merge", ".tmp", directory);
+        temporaryFiles.add(file);
+        return file;
+    }
+
+    /**
+     * State of a single merge.
+     */
+    private static final class Merge {
+
+        private final List<MappedPatternIndex> inputs;
+        private final File directory;
+        private final List<File> temporaryFiles;
+
+        private final String[] annotations;
+        /**
+         * Per input: local annotation id -&gt; global annotation id.
+         */
+        private final int[][] annotationIds;
+        /**
+         * Per input: first slot of the input in {@link #elementIds}.
+         */
+        private final long[] elementBases;
+        /**
+         * Local element id -&gt; global element id of all the inputs, memory-mapped.
+         */
+        private MappedByteBuffer elementIds;
+        private int elementCount;
+        private int flags;
+
+        Merge(List<MappedPatternIndex> inputs, File directory, List<File> temporaryFiles) {
+            this.inputs = inputs;
+            this.directory = directory;
+            this.temporaryFiles = temporaryFiles;
+            SortedSet<String> names = new TreeSet<>();
+            for (MappedPatternIndex input : inputs) {
+                for (int i = 0; i < input.annotationCount(); i++) names.add(input.annotation(i));
+            }
+            annotations = names.toArray(new String[0]);
+            annotationIds = new int[inputs.size()][];
+            elementBases = new long[inputs.size()];
+            long base = 0;
+            for (int i = 0; i < inputs.size(); i++) {
+                MappedPatternIndex input = inputs.get(i);
+                annotationIds[i] = new int[input.annotationCount()];
+                for (int j = 0; j < annotationIds[i].length; j++) annotationIds[i][j] = Arrays.binarySearch(annotations, input.annotation(j));
+                elementBases[i] = base;
+                base += input.elementCount();
+            }
+        }
+
+        void write(File output) throws IOException {
+            long slots = elementBases.length == 0 ? 0 : elementBases[elementBases.length - 1] + inputs.get(inputs.size() - 1).elementCount();
+            if (slots * 4 > Integer.MAX_VALUE) throw new IOException("Too many elements to merge: " + slots);
+            File idsFile = temporaryFile(directory, temporaryFiles);
+            try (FileChannel channel = FileChannel.open(idsFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                elementIds = channel.map(FileChannel.MapMode.READ_WRITE, 0, slots * 4);
+                elementIds.order(ByteOrder.nativeOrder());
+            }
+
+            PatternIndexWriter.Section annotationSection = new PatternIndexWriter.Section(annotations.length);
+            for (int i = 0; i < annotations.length; i++) {
+                annotationSection.start(i);
+                annotationSection.writeBytes(annotations[i].getBytes(StandardCharsets.UTF_8));
+            }
+            try (SpilledSection elements = new SpilledSection();
+                 SpilledSection records = new SpilledSection();
+                 SpilledSection postings = new SpilledSection()) {
+                mergeElements(elements, records);
+                mergePostings(postings);
+                elements.finish();
+                records.finish();
+                postings.finish();
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(output)))) {
+                    PatternIndexWriter.writeHeader(out, flags, annotations.length, elementCount,
+                            annotationSection.size(), elements.size(), records.size(), postings.size());
+                    annotationSection.writeTo(out);
+                    elements.writeTo(out);
+                    records.writeTo(out);
+                    postings.writeTo(out);
+                }
+            }
+        }
+
+        private void mergeElements(SpilledSection elements, SpilledSection records) throws IOException {
+            PriorityQueue<Head> heads = new PriorityQueue<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                Head head = new Head(i, inputs.get(i).elements());
+                if (head.advance()) heads.add(head);
+            }
+            // Keys of the enclosing candidates: every key on the stack is a prefix of the next one.
+            List<String> stackKeys = new ArrayList<>();
+            List<Integer> stackIds = new ArrayList<>();
+            byte[] previous = null;
+            int[] ids = new int[8];
+            while (!heads.isEmpty()) {
+                String key = heads.peek().key;
+                int global = elementCount++;
+                PatternIndex.Kind kind = null;
+                String enclosingKey = null;
+                int idCount = 0;
+                // All the inputs, that contain the key.
+                while (!heads.isEmpty() && heads.peek().key.equals(key)) {
+                    Head head = heads.poll();
+                    MappedPatternIndex input = inputs.get(head.input);
+                    elementIds.putInt((int) (elementBases[head.input] + head.element) * 4, global);
+                    if (kind == null) kind = input.kind(head.element);
+                    int enclosing = input.enclosingType(head.element);
+                    if (enclosingKey == null && enclosing >= 0) enclosingKey = input.element(enclosing);
+                    for (int local : input.annotationsOf(head.element)) {
+                        if (idCount == ids.length) ids = Arrays.copyOf(ids, idCount * 2);
+                        ids[idCount++] = annotationIds[head.input][local];
+                    }
+                    if (head.advance()) heads.add(head);
+                }
+
+                while (!stackKeys.isEmpty() && !key.startsWith(stackKeys.get(stackKeys.size() - 1))) {
+                    stackKeys.remove(stackKeys.size() - 1);
+                    stackIds.remove(stackIds.size() - 1);
+                }
+                int enclosingId = -1;
+                for (int i = stackKeys.size() - 1; i >= 0 && enclosingKey != null; i--) {
+                    if (stackKeys.get(i).equals(enclosingKey)) {
+                        enclosingId = stackIds.get(i);
+                        break;
+                    }
+                }
+                stackKeys.add(key);
+                stackIds.add(global);
+
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                if (previous != null && PatternIndexWriter.compare(previous, bytes) >= 0) flags |= PatternIndexWriter.FLAG_UNSORTED_BYTES;
+                if (global % PatternIndexWriter.BLOCK_SIZE == 0) {
+                    elements.start();
+                    elements.writeVarint(bytes.length);
+                    elements.out.write(bytes);
+                } else {
+                    int shared = PatternIndexWriter.sharedPrefix(previous, bytes);
+                    elements.writeVarint(shared);
+                    elements.writeVarint(bytes.length - shared);
+                    elements.out.write(bytes, shared, bytes.length - shared);
+                }
+                previous = bytes;
+
+                Arrays.sort(ids, 0, idCount);
+                records.start();
+                records.out.writeByte(kind.ordinal());
+                records.writeVarint(enclosingId + 1);
+                int distinct = 0;
+                for (int i = 0; i < idCount; i++) {
+                    if (i == 0 || ids[i] != ids[i - 1]) distinct++;
+                }
+                records.writeVarint(distinct);
+                for (int i = 0, last = 0; i < idCount; i++) {
+                    if (i > 0 && ids[i] == ids[i - 1]) continue;
+                    records.writeVarint(ids[i] - last);
+                    last = ids[i];
+                }
+            }
+        }
+
+        /**
+         * Per annotation: k-way merge of the posting lists of the inputs, mapped to the global element ids.
+         * The lists are merged twice, the count precedes the ids in the format.
+         */
+        private void mergePostings(SpilledSection postings) throws IOException {
+            int[][] localIds = new int[inputs.size()][];
+            for (int i = 0; i < inputs.size(); i++) {
+                localIds[i] = new int[annotations.length];
+                Arrays.fill(localIds[i], -1);
+                for (int local = 0; local < annotationIds[i].length; local++) localIds[i][annotationIds[i][local]] = local;
+            }
+            for (int annotation = 0; annotation < annotations.length; annotation++) {
+                postings.start();
+                int count = 0;
+                PostingMerge merge = new PostingMerge(localIds, annotation);
+                for (int id = merge.next(); id >= 0; id = merge.next()) count++;
+                postings.writeVarint(count);
+                merge = new PostingMerge(localIds, annotation);
+                int last = 0;
+                for (int id = merge.next(); id >= 0; id = merge.next()) {
+                    postings.writeVarint(id - last);
+                    last = id;
+                }
+            }
+        }
+
+        /**
+         * Distinct global element ids of an annotation in ascending order.
+         */
+        private final class PostingMerge {
+            private final PriorityQueue<long[]> heads = new PriorityQueue<>((a, b) -> Long.compare(a[0], b[0]));
+            private final List<MappedPatternIndex.IdReader> readers = new ArrayList<>();
+            private int last = -1;
+
+            PostingMerge(int[][] localIds, int annotation) {
+                for (int i = 0; i < inputs.size(); i++) {
+                    int local = localIds[i][annotation];
+                    if (local < 0) continue;
+                    readers.add(inputs.get(i).posting(local));
+                    push(readers.size() - 1, i);
+                }
+            }
+
+            /**
+             * @return next id or -1.
+             */
+            int next() {
+                while (!heads.isEmpty()) {
+                    long[] head = heads.poll();
+                    push((int) head[1], (int) head[2]);
+                    if (head[0] != last) {
+                        last = (int) head[0];
+                        return last;
+                    }
+                }
+                return -1;
+            }
+
+            private void push(int reader, int input) {
+                MappedPatternIndex.IdReader ids = readers.get(reader);
+                if (ids.remaining() == 0) return;
+                int global = elementIds.getInt((int) (elementBases[input] + ids.nextId()) * 4);
+                heads.add(new long[]{global, reader, input});
+            }
+        }
+
+        /**
+         * Current element of an input.
+         */
+        private static final class Head implements Comparable<Head> {
+            final int input;
+            final MappedPatternIndex.ElementReader reader;
+            int element;
+            String key;
+
+            Head(int input, MappedPatternIndex.ElementReader reader) {
+                this.input = input;
+                this.reader = reader;
+            }
+
+            boolean advance() {
+                if (!reader.hasNext()) return false;
+                element = reader.next();
+                key = reader.key();
+                return true;
+            }
+
+            @Override
+            public int compareTo(Head other) {
+                int diff = key.compareTo(other.key);
+                return diff != 0 ? diff : Integer.compare(input, other.input);
+            }
+        }
+
+        /**
+         * Section, which offset table and data are written into the temporary files.
+         */
+        private final class SpilledSection implements Closeable {
+            private final File tableFile = temporaryFile(directory, temporaryFiles);
+            private final File dataFile = temporaryFile(directory, temporaryFiles);
+            private final DataOutputStream table = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tableFile)));
+            final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(dataFile)));
+            private long dataSize;
+
+            SpilledSection() throws IOException {
+            }
+
+            void start() throws IOException {
+                // DataOutputStream.size() saturates at Integer.MAX_VALUE, the offsets are checked by the header.
+                table.writeInt(out.size());
+            }
+
+            void writeVarint(int value) throws IOException {
+                PatternIndexWriter.writeVarint(out, value);
+            }
+
+            void finish() throws IOException {
+                table.close();
+                out.close();
+                dataSize = dataFile.length();
+            }
+
+            long size() {
+                return tableFile.length() + dataSize;
+            }
+
+            void writeTo(OutputStream target) throws IOException {
+                Files.copy(tableFile.toPath(), target);
+                Files.copy(dataFile.toPath(), target);
+            }
+
+            @Override
+            public void close() throws IOException {
+                table.close();
+                out.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+package vlfsoft.index;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Reads {@link PatternIndex} written by {@link PatternIndexWriter}.
+ */
+public final class PatternIndexReader {
+
+    private PatternIndexReader() {
+    }
+
+    /**
+     * Reads and decodes the whole index into the heap arrays: the fastest lookups, the load time and the memory
+     * are proportional to the size of the index. See {@link #map(File)} for the lazy decoding.
+     */
+    public static PatternIndex read(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        for (int read; (read = inputStream.read(chunk)) > 0; ) bytes.write(chunk, 0, read);
+        PatternIndex index = read(ByteBuffer.wrap(bytes.toByteArray()));
+        return index instanceof MappedPatternIndex ? ((MappedPatternIndex) index).decode() : index;
+    }
+
+    /**
+     * The index in the buffer from its position to its limit. The current version is used in place, zero-copy,
+     * so the buffer must not be modified; the strings and the posting lists are decoded on access.
+     */
+    public static PatternIndex read(ByteBuffer buffer) throws IOException {
+        ByteBuffer index = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        if (index.limit() >= 6 && index.getInt(0) == PatternIndexWriter.MAGIC && (index.getShort(4) & 0xffff) == PatternIndexWriter.VERSION_1) {
+            byte[] bytes = new byte[index.limit()];
+            index.get(bytes);
+            return readVersion1(new DataInputStream(new ByteArrayInputStream(bytes)));
+        }
+        return new MappedPatternIndex(index);
+    }
+
+    public static PatternIndex read(File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return read(in);
+        }
+    }
+
+    /**
+     * Memory-maps the index file: opening does not depend on the size of the index, the pages are read on access.
+     * The index must be of the current version.
+     */
+    public static PatternIndex map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static PatternIndex readVersion1(DataInputStream in) throws IOException {
+        in.readInt();
+        in.readUnsignedShort();
+
+        String[] annotations = new String[in.readInt()];
+        for (int i = 0; i < annotations.length; i++) annotations[i] = in.readUTF();
+
+        int elementCount = in.readInt();
+        String[] elements = new String[elementCount];
+        PatternIndex.Kind[] kinds = new PatternIndex.Kind[elementCount];
+        int[] enclosingTypes = new int[elementCount];
+        for (int i = 0; i < elementCount; i++) {
+            elements[i] = in.readUTF();
+            kinds[i] = PatternIndex.Kind.of(in.readUnsignedByte());
+            enclosingTypes[i] = in.readInt();
+        }
+
+        int[][] annotationsOf = new int[elementCount][];
+        for (int i = 0; i < elementCount; i++) annotationsOf[i] = readIds(in);
+        int[][] elementsOf = new int[annotations.length][];
+        for (int i = 0; i < annotations.length; i++) elementsOf[i] = readIds(in);
+        return new ArrayPatternIndex(annotations, elements, kinds, enclosingTypes, annotationsOf, elementsOf);
+    }
+
+    /**
+     * Reads and merges all the {@link PatternIndex#RESOURCE} visible to the class loader (one per jar).
+     */
+    public static PatternIndex readAll(ClassLoader classLoader) throws IOException {
+        List<PatternIndex> indexes = new ArrayList<>();
+        Enumeration<URL> resources = classLoader.getResources(PatternIndex.RESOURCE);
+        while (resources.hasMoreElements()) {
+            try (InputStream in = resources.nextElement().openStream()) {
+                indexes.add(read(in));
+            }
+        }
+        return indexes.size() == 1 ? indexes.get(0) : PatternIndex.merge(indexes);
+    }
+
+    /**
+     * Reads and merges the shards of the index,
+     * f.e. after an incremental compilation, that has rewritten only the shards of the changed files.
+     *
+     * @param classes class output directory or jar, that contains {@link PatternIndex#SHARDS_DIRECTORY}
+     */
+    public static PatternIndex readShards(File classes) throws IOException {
+        List<PatternIndex> indexes = new ArrayList<>();
+        if (classes.isDirectory()) {
+            File[] shards = new File(classes, PatternIndex.SHARDS_DIRECTORY).listFiles();
+            if (shards == null) return PatternIndex.EMPTY;
+            for (File shard : shards) {
+                if (shard.getName().endsWith(PatternIndex.SHARD_SUFFIX)) indexes.add(read(shard));
+            }
+        } else {
+            try (JarFile jar = new JarFile(classes)) {
+                Enumeration<JarEntry> entries = jar.entries();
+                while (entries.hasMoreElements()) {
+                    JarEntry entry = entries.nextElement();
+                    if (entry.getName().startsWith(PatternIndex.SHARDS_DIRECTORY) && entry.getName().endsWith(PatternIndex.SHARD_SUFFIX)) {
+                        try (InputStream in = jar.getInputStream(entry)) {
+                            indexes.add(read(in));
+                        }
+                    }
+                }
+            }
+        }
+        return PatternIndex.merge(indexes);
+    }
+
+    private static int[] readIds(DataInputStream in) throws IOException {
+        int[] ids = new int[in.readInt()];
+        for (int i = 0; i < ids.length; i++) ids[i] = in.readInt();
+        return ids;
+    }
+
+}
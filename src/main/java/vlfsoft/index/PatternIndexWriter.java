@@ -0,0 +1,196 @@
+package vlfsoft.index;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes {@link PatternIndex} in the compact binary form, that is read by {@link PatternIndexReader}.
+ * <p>
+ * The format is designed to be used in place from a {@link java.nio.MappedByteBuffer} ({@link MappedPatternIndex}):
+ * every section starts with a table of int offsets (relative to the end of the table), so any string, element record
+ * or posting list is decoded on demand, nothing is decoded on open.
+ * <p>
+ * Layout of version 2 (big-endian, varint - unsigned LEB128, strings - UTF-8):
+ * <pre>
+ * int    magic 'SDIX'
+ * short  version
+ * short  flags
+ * int    annotation count, element count
+ * int    offsets of the sections: annotations, elements, records, postings; total length
+ *
+ * annotations: per annotation: varint length, bytes           (the string table of the annotation names)
+ * elements:    per block of {@value #BLOCK_SIZE} keys: varint length, bytes of the first key,
+ *              then per key: varint shared prefix length, varint suffix length, suffix bytes (front coding)
+ * records:     per element: byte kind, varint enclosing type id + 1, varint count, delta-coded annotation ids
+ * postings:    per annotation: varint count, delta-coded element ids
+ * </pre>
+ * Delta coding: the first id, then the differences between the neighbouring ids, all varints.
+ * <p>
+ * Version 1 (int ids, modified UTF-8 strings, decoded on read) is still accepted by {@link PatternIndexReader}.
+ */
+public final class PatternIndexWriter {
+
+    static final int MAGIC = 0x53444958; // SDIX
+    static final int VERSION = 2;
+    static final int VERSION_1 = 1;
+
+    static final int HEADER_SIZE = 36;
+    static final int BLOCK_SIZE = 16;
+
+    /**
+     * The element keys are not sorted by their UTF-8 bytes (only possible with supplementary characters),
+     * so the keys can't be searched by the bytes.
+     */
+    static final int FLAG_UNSORTED_BYTES = 1;
+
+    private PatternIndexWriter() {
+    }
+
+    public static void write(PatternIndex index, OutputStream outputStream) throws IOException {
+        int annotationCount = index.annotationCount();
+        int elementCount = index.elementCount();
+
+        Section annotations = new Section(annotationCount);
+        for (int i = 0; i < annotationCount; i++) {
+            annotations.start(i);
+            annotations.writeBytes(index.annotation(i).getBytes(StandardCharsets.UTF_8));
+        }
+
+        int flags = 0;
+        Section elements = new Section((elementCount + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        byte[] previous = null;
+        for (int i = 0; i < elementCount; i++) {
+            byte[] key = index.element(i).getBytes(StandardCharsets.UTF_8);
+            if (previous != null && compare(previous, key) >= 0) flags |= FLAG_UNSORTED_BYTES;
+            if (i % BLOCK_SIZE == 0) {
+                elements.start(i / BLOCK_SIZE);
+                elements.writeBytes(key);
+            } else {
+                int shared = sharedPrefix(previous, key);
+                elements.writeVarint(shared);
+                elements.writeVarint(key.length - shared);
+                elements.out.write(key, shared, key.length - shared);
+            }
+            previous = key;
+        }
+
+        Section records = new Section(elementCount);
+        for (int i = 0; i < elementCount; i++) {
+            records.start(i);
+            records.out.writeByte(index.kind(i).ordinal());
+            records.writeVarint(index.enclosingType(i) + 1);
+            records.writeIds(index.annotationsOf(i));
+        }
+
+        Section postings = new Section(annotationCount);
+        for (int i = 0; i < annotationCount; i++) {
+            postings.start(i);
+            postings.writeIds(index.elementsAnnotatedWith(i));
+        }
+
+        DataOutputStream out = new DataOutputStream(outputStream);
+        writeHeader(out, flags, annotationCount, elementCount, annotations.size(), elements.size(), records.size(), postings.size());
+        annotations.writeTo(out);
+        elements.writeTo(out);
+        records.writeTo(out);
+        postings.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Writes the header for the sections of the given sizes, that follow it in this order.
+     */
+    static void writeHeader(DataOutputStream out, int flags, int annotationCount, int elementCount,
+                            long annotationsSize, long elementsSize, long recordsSize, long postingsSize) throws IOException {
+        long elementsOffset = HEADER_SIZE + annotationsSize;
+        long recordsOffset = elementsOffset + elementsSize;
+        long postingsOffset = recordsOffset + recordsSize;
+        long length = postingsOffset + postingsSize;
+        if (length > Integer.MAX_VALUE) throw new IOException("The index is too large: " + length + " bytes");
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeShort(flags);
+        out.writeInt(annotationCount);
+        out.writeInt(elementCount);
+        out.writeInt(HEADER_SIZE);
+        out.writeInt((int) elementsOffset);
+        out.writeInt((int) recordsOffset);
+        out.writeInt((int) postingsOffset);
+        out.writeInt((int) length);
+    }
+
+    static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            out.writeByte(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /**
+     * Unsigned comparison of the bytes, the order of the code points for UTF-8.
+     */
+    static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int diff = (a[i] & 0xff) - (b[i] & 0xff);
+            if (diff != 0) return diff;
+        }
+        return a.length - b.length;
+    }
+
+    static int sharedPrefix(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        int i = 0;
+        while (i < length && a[i] == b[i]) i++;
+        return i;
+    }
+
+    /**
+     * Offset table and the data of a section.
+     */
+    static final class Section {
+        private final int[] offsets;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+
+        Section(int count) {
+            offsets = new int[count];
+        }
+
+        void start(int entry) {
+            offsets[entry] = bytes.size();
+        }
+
+        void writeVarint(int value) throws IOException {
+            PatternIndexWriter.writeVarint(out, value);
+        }
+
+        void writeBytes(byte[] value) throws IOException {
+            writeVarint(value.length);
+            out.write(value);
+        }
+
+        void writeIds(int[] ids) throws IOException {
+            writeVarint(ids.length);
+            int previous = 0;
+            for (int id : ids) {
+                writeVarint(id - previous);
+                previous = id;
+            }
+        }
+
+        int size() {
+            return offsets.length * 4 + bytes.size();
+        }
+
+        void writeTo(DataOutputStream target) throws IOException {
+            for (int offset : offsets) target.writeInt(offset);
+            bytes.writeTo(target);
+        }
+    }
+
+}
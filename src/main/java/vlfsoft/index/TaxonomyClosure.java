@@ -0,0 +1,135 @@
+package vlfsoft.index;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Immutable reflexive-transitive closure of the vlfsoft.* taxonomy:
+ * for every annotation type the set of all its meta-annotations and {@link vlfsoft.tags.Related} patterns/principles,
+ * followed transitively.
+ * <p>
+ * F.e. {@code vlfsoft.patterns.Pattern.Caching} is {@code vlfsoft.patterns.design.DesignPattern.Other}, and
+ * {@code vlfsoft.patterns.VLFP.DataStream.Reactive} is {@code vlfsoft.principles.reactive.ReactiveManifesto}.
+ * <p>
+ * The meta-annotations are {@link java.lang.annotation.RetentionPolicy#SOURCE}, so the table is computed at build time
+ * by {@link vlfsoft.processor.TaxonomyClosureProcessor} into {@link #RESOURCE}.
+ * Every closure is a bitset over the annotation ids, so {@link #isA(int, int)} is a single array read.
+ */
+public final class TaxonomyClosure {
+
+    public static final String RESOURCE = "META-INF/sdannotations.closure";
+
+    private static final int MAGIC = 0x5344434c; // SDCL
+    private static final int VERSION = 1;
+
+    private final String[] annotations;
+    private final Map<String, Integer> ids;
+    private final int words;
+    private final long[] closures;
+
+    private TaxonomyClosure(String[] annotations, int words, long[] closures) {
+        this.annotations = annotations;
+        this.words = words;
+        this.closures = closures;
+        this.ids = new HashMap<>(annotations.length * 2);
+        for (int i = 0; i < annotations.length; i++) ids.put(annotations[i], i);
+    }
+
+    private static final class Holder {
+        static final TaxonomyClosure INSTANCE = load();
+
+        private static TaxonomyClosure load() {
+            try (InputStream in = TaxonomyClosure.class.getClassLoader().getResourceAsStream(RESOURCE)) {
+                if (in == null) throw new IllegalStateException(RESOURCE + " is not found, the sdannotations jar is built without the taxonomy closure");
+                return read(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * @return closure of the vlfsoft.* taxonomy, that is shipped with the sdannotations jar.
+     */
+    public static TaxonomyClosure get() {
+        return Holder.INSTANCE;
+    }
+
+    public int annotationCount() {
+        return annotations.length;
+    }
+
+    public String annotation(int id) {
+        return annotations[id];
+    }
+
+    /**
+     * @return id of the annotation (canonical name) or -1, if it is not a part of the taxonomy.
+     */
+    public int id(String annotation) {
+        Integer id = ids.get(annotation);
+        return id != null ? id : -1;
+    }
+
+    /**
+     * @return true, if the annotation is the ancestor or it is (transitively) meta-annotated with / related to the ancestor.
+     */
+    public boolean isA(int annotation, int ancestor) {
+        return (closures[annotation * words + (ancestor >>> 6)] & (1L << ancestor)) != 0;
+    }
+
+    public boolean isA(String annotation, String ancestor) {
+        int annotationId = id(annotation);
+        int ancestorId = id(ancestor);
+        return annotationId >= 0 && ancestorId >= 0 && isA(annotationId, ancestorId);
+    }
+
+    /**
+     * @return canonical names of all the annotations, that the annotation transitively is, including itself.
+     */
+    public SortedSet<String> closureOf(String annotation) {
+        SortedSet<String> result = new TreeSet<>();
+        int id = id(annotation);
+        if (id < 0) return result;
+        for (int word = 0; word < words; word++) {
+            long bits = closures[id * words + word];
+            while (bits != 0) {
+                result.add(annotations[(word << 6) + Long.numberOfTrailingZeros(bits)]);
+                bits &= bits - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param annotations canonical names of the annotation types
+     * @param closures    closures[i] - ids of all the annotations, that annotations[i] transitively is
+     */
+    public static void write(String[] annotations, BitSet[] closures, OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        int words = (annotations.length + 63) >>> 6;
+        out.writeInt(annotations.length);
+        for (String annotation : annotations) out.writeUTF(annotation);
+        for (BitSet closure : closures) {
+            long[] bits = closure.toLongArray();
+            for (int word = 0; word < words; word++) out.writeLong(word < bits.length ? bits[word] : 0L);
+        }
+        out.flush();
+    }
+
+    public static TaxonomyClosure read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream));
+        if (in.readInt() != MAGIC) throw new IOException("Not a sdannotations taxonomy closure");
+        int version = in.readUnsignedShort();
+        if (version != VERSION) throw new IOException("Unsupported sdannotations taxonomy closure version " + version);
+        String[] annotations = new String[in.readInt()];
+        for (int i = 0; i < annotations.length; i++) annotations[i] = in.readUTF();
+        int words = (annotations.length + 63) >>> 6;
+        long[] closures = new long[annotations.length * words];
+        for (int i = 0; i < closures.length; i++) closures[i] = in.readLong();
+        return new TaxonomyClosure(annotations, words, closures);
+    }
+
+}
@@ -168,7 +168,7 @@ public @interface ProgrammingParadigm {
              * We refer to a recursive function as {@link Tail}-recursion when the recursive call is the last thing that function executes. Otherwise, it’s known as {@link Head}-recursion.
              * @return one of {@link Tail}, {@link Head}
              */
-            Class [] value() default {};
+            Class<?> [] value() default {};
 
             @Retention(RetentionPolicy.SOURCE)
             @Target({})
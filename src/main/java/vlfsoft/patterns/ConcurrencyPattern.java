@@ -74,13 +74,15 @@ public @interface ConcurrencyPattern {
      * <p>
      * {@link DesignPattern.Language.Form#Problem}:"Reduce the overhead of acquiring a lock by first testing the locking criterion (the 'lock hint') without actually acquiring the lock.",
      * "Only if the locking criterion check indicates that locking is required does the actual locking logic proceed."
+     * <p>
+     * The lazily initialized field must be volatile, vlfsoft.processor.SingletonProcessor reports the non-volatile one as an error.
      */
     @Related.Patterns(GOF.Singleton.class)
     @DesignPattern.Concurrency
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.FIELD, ElementType.METHOD})
     @interface DoubleCheckedLocking {
     }
 
@@ -147,6 +149,8 @@ public @interface ConcurrencyPattern {
 
     /**
      * See <a href="http://java-design-patterns.com/patterns/half-sync-half-async/">Half-Sync/Half-Async</a>
+     * <p>
+     * vlfsoft.runtime.bridge.SyncBridge is the queueing layer: bounded MPSC queues with backpressure and the latency histograms of the crossing.
      */
     @DesignPattern.Concurrency
     @Documented
@@ -176,6 +180,7 @@ public @interface ConcurrencyPattern {
      * <li> decouple system by separate work in two process produce and consume.
      * <li> addresses the issue of different timing require to produce work or consuming work
      * </ul>
+     * vlfsoft.runtime.queue.RingQueue (SPSC / MPSC / MPMC ring buffers) is the runtime of the {@link Queue}, its close() is the {@link Queue.Item.PoisonPill}.
      */
     @DesignPattern.Concurrency
     @Documented
@@ -344,6 +349,8 @@ public @interface ConcurrencyPattern {
 
     /**
      * See <a href="http://java-design-patterns.com/patterns/reactor/">Reactor</a>
+     * <p>
+     * vlfsoft.runtime.reactor.Reactor is the runtime: a selector loop per core with the pooled direct buffers, SO_REUSEPORT, where the platform has it.
      */
     @DesignPattern.Concurrency
     @Documented
@@ -355,12 +362,15 @@ public @interface ConcurrencyPattern {
 
     /**
      * See <a href="http://java-design-patterns.com/patterns/reader-writer-lock/    ">Reader Writer Lock</a>
+     * <p>
+     * vlfsoft.runtime.lock.ReadMostlyLock is the runtime: the optimistic reads of a StampedLock and the BRAVO-biased striped reader counters.
+     * On a type - guarded by a read-write lock, on a field - the lock.
      */
     @DesignPattern.Concurrency
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.FIELD})
     @interface ReaderWriterLock {
     }
 
@@ -388,6 +398,8 @@ public @interface ConcurrencyPattern {
 
     /**
      * See <a href="http://java-design-patterns.com/patterns/thread-pool/">Thread Pool</a>
+     * <p>
+     * vlfsoft.runtime.executor.ThreadPool is the runtime: the platform threads for the CPU-bound tasks, the virtual threads bounded by a semaphore for the blocking ones.
      */
     @DesignPattern.Concurrency
     @Documented
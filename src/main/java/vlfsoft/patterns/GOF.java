@@ -721,11 +721,11 @@ public @interface GOF {
             @Retention(RetentionPolicy.SOURCE)
             @Target({ElementType.TYPE, ElementType.FIELD})
             @interface Convert {
-                Class fromAdapteeInterface();
+                Class<?> fromAdapteeInterface();
 
-                Class toTargetInterface();
+                Class<?> toTargetInterface();
 
-                Class[] requiredBy();
+                Class<?>[] requiredBy();
             }
         }
 
@@ -748,11 +748,11 @@ public @interface GOF {
             @Retention(RetentionPolicy.SOURCE)
             @Target({ElementType.TYPE, ElementType.FIELD})
             @interface Convert {
-                Class fromAdapteeInterface();
+                Class<?> fromAdapteeInterface();
 
-                Class toTargetInterface();
+                Class<?> toTargetInterface();
 
-                Class[] requiredBy();
+                Class<?>[] requiredBy();
             }
         }
 
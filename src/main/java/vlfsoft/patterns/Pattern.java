@@ -23,13 +23,16 @@ public @interface Pattern {
     /**
      * See <a href="http://java-design-patterns.com/patterns/caching/">Caching</a>
      * {@link PerformanceTag}
+     * <p>
+     * On a method vlfsoft.processor.CachingProcessor generates the caching subclass of its class (vlfsoft.runtime.cache.Cache),
+     * vlfsoft.runtime.cache.Cached sets up the cache.
      */
 
     @DesignPattern.Other
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.METHOD})
     @interface Caching {
     }
 
@@ -293,12 +296,14 @@ public @interface Pattern {
 
     /**
      * See <a href="http://java-design-patterns.com/patterns/throttling/">Throttling</a>
+     * <p>
+     * vlfsoft.runtime.throttle.RateLimiter (GCRA / token bucket) and vlfsoft.runtime.throttle.KeyedRateLimiter are the runtime.
      */
     @GOF.Behavioral
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.METHOD})
     @interface Throttling {
     }
 
@@ -339,7 +344,7 @@ public @interface Pattern {
         /**
          * Name of {@link GOF.Factory.FactoryMethod} interface or {@link GOF.Factory.AbstractFactory} interface
          */
-        Class value();
+        Class<?> value();
     }
 
     /**
@@ -390,7 +390,7 @@ public @interface VLFP {
         @Retention(RetentionPolicy.SOURCE)
         @Target({ElementType.TYPE, ElementType.FIELD, ElementType.METHOD, ElementType.PARAMETER, ElementType.LOCAL_VARIABLE})
         @interface Generic {
-            Class typeParameter() default Object.class;
+            Class<?> typeParameter() default Object.class;
 
             /**
              * <? extends T> or <T extends O>
@@ -197,7 +197,7 @@ public @interface DDD {
     @Related.Patterns({PEAA.DTO.class})
     @DomainObject
     @interface Entity {
-        Class[] value() default Mutable.class;
+        Class<?>[] value() default Mutable.class;
 
         /**
          * {@link DDDEvansTag}: Each ENTITY must have an operational way of establishing its identity with another object—distinguishable even from another object with the same descriptive attributes.
@@ -257,7 +257,7 @@ public @interface DDD {
     @DomainObject
     @FunctionPrinciple.Pure
     @interface ValueObject {
-        Class[] value() default Immutable.class;
+        Class<?>[] value() default Immutable.class;
 
         /**
          * {@link ValueObject} can contain one property {@link SingleProperty}.
@@ -651,6 +651,8 @@ public @interface DDD {
      * You may wrap those in something called the data store, but the {@link Repository} is sort of a further layer of an abstraction on top of all those individual data stores.
      * Usually, i implement the {@link DDD.Repository} as an interface within the {@link DomainLayer}/{@link DomainService}s within Onion Architecture (skip for now, gonna talk about this “Onion” later),
      * and then the implementation logic of the {@link DDD.Repository} interface is going to be defined in the {@link InfrastructureLayer}.
+     * <p>
+     * vlfsoft.runtime.repository.BatchLoader collects the findById calls into one query (vlfsoft.runtime.repository.InQuery) against the N+1 queries.
      */
     @Documented
     @Inherited
@@ -162,12 +162,12 @@ public @interface EIP {
         /**
          * @return description of method to transfer files. It's possible to use one of the constants below.
          */
-        Class by();
+        Class<?> by();
 
         /**
          * @return Name of the counterpart system.
          */
-        Class with();
+        Class<?> with();
 
         @Retention(RetentionPolicy.SOURCE)
         @Target({})
@@ -258,7 +258,7 @@ public @interface EIP {
          * @return One or more of {@link PointToPoint}, {@link PublishSubscribe}, {@link Datatype}, {@link InvalidMessage}, {@link DeadLetter}, {@link GuaranteedDelivery}, {@link Hierarchical},
          * {@link Unidirectional}, {@link Bidirectional}
          */
-        Class[] value();
+        Class<?>[] value();
 
         /**
          * See <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/PointToPointChannel.html">Point-to-Point Channel</a>
@@ -409,7 +409,7 @@ public @interface EIP {
          *
          * @return One of {@link UserInterfaceAdapter}, {@link BusinessLogicAdapter}, {@link DatabaseAdapter}, {@link MetadataAdapter}, {@link MessagingBridge}
          */
-        Class connectTo();
+        Class<?> connectTo();
 
     }
 
@@ -529,7 +529,7 @@ public @interface EIP {
         /**
          * @return One or more of {@link Command}, {@link Document}, {@link Event}, {@link RequestReply.Request}, {@link RequestReply.Reply}
          */
-        Class[] value();
+        Class<?>[] value();
 
         @DesignPattern
         @Documented
@@ -1021,7 +1021,7 @@ public @interface EIP {
          * @return {} or {@link Dynamic}, {@link Static}, {@link ContentBasedRouter}, {@link RecipientList}, {@link Splitter}, {@link Aggregator},
          * {@link Resequencer}, {@link ComposedMessageProcessor}, {@link ScatterGather}, {@link RoutingSlip}, {@link RoutingSlip}, {@link ProcessManager}, {@link MessageBroker}
          */
-        Class[] value();
+        Class<?>[] value();
 
         /**
          * See <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/DynamicRouter.html">Dynamic Router</a>
@@ -1127,7 +1127,7 @@ public @interface EIP {
              *
              * @return {} or {@link Dynamic}.class
              */
-            Class[] value();
+            Class<?>[] value();
 
             /**
              * See <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/Filter.html">Message Filter</a>
@@ -1154,7 +1154,7 @@ public @interface EIP {
                  *
                  * @return {} or {@link Dynamic}.class
                  */
-                Class[] value() default {};
+                Class<?>[] value() default {};
             }
         }
 
@@ -1192,7 +1192,7 @@ public @interface EIP {
              *
              * @return {} or {@link Dynamic}.class
              */
-            Class[] value();
+            Class<?>[] value();
 
             /**
              * If the {@link RecipientList} fails, it needs to be restartable. This can be accomplished in multiple ways:
@@ -1205,7 +1205,7 @@ public @interface EIP {
              *
              * @return One or more of {@link Robustness}.*
              */
-            Class[] robustness();
+            Class<?>[] robustness();
 
             @Retention(RetentionPolicy.SOURCE)
             @Target({})
@@ -1256,7 +1256,7 @@ public @interface EIP {
              *
              * @return {} or {@link Dynamic}.class, {@link Static}, {@link Iterating}
              */
-            Class[] value();
+            Class<?>[] value();
 
             /**
              * Iterating Splitters
@@ -1302,7 +1302,7 @@ public @interface EIP {
              *
              * @return {} or {@link Dynamic}.class, {@link Static}, {@link Initialized}, {@link SelfStarting}
              */
-            Class[] value();
+            Class<?>[] value();
 
             @Retention(RetentionPolicy.SOURCE)
             @Target({ElementType.ANNOTATION_TYPE})
@@ -1317,17 +1317,17 @@ public @interface EIP {
             /**
              * @return on of {@link Correlation}.*
              */
-            Class[] correlation();
+            Class<?>[] correlation();
 
             /**
              * @return on of {@link CompletenessCondition}.*
              */
-            Class[] completenessCondition();
+            Class<?>[] completenessCondition();
 
             /**
              * @return on of {@link AggregationAlgorithm}.*
              */
-            Class[] aggregationAlgorithm();
+            Class<?>[] aggregationAlgorithm();
 
             @Retention(RetentionPolicy.SOURCE)
             @Target({ElementType.ANNOTATION_TYPE})
@@ -1401,7 +1401,7 @@ public @interface EIP {
              *
              * @return {} or {@link Dynamic}.class
              */
-            Class[] value();
+            Class<?>[] value();
         }
 
         /**
@@ -1439,7 +1439,7 @@ public @interface EIP {
             /**
              * @return one of {@link Distribution}, {@link Auction}
              */
-            Class[] value();
+            Class<?>[] value();
 
             @Retention(RetentionPolicy.SOURCE)
             @Target({})
@@ -1575,12 +1575,12 @@ public @interface EIP {
              * @return One or more names of software, that implements functions of {@link MessageBroker}. Use "*", to point, that any software can be used as a {@link MessageBroker}.
              * It's possible to use constants below.
              */
-            Class[] value() default {};
+            Class<?>[] value() default {};
 
             /**
              * @return One or more classes of {@link MessageBroker} API.
              */
-            Class[] api();
+            Class<?>[] api();
 
             /**
              * See <a href="https://core.telegram.org/bots/api">Telegram Bot API</a>
@@ -1651,11 +1651,11 @@ public @interface EIP {
         /**
          * @return One or more of {@link Envelope}.*, {@link ContentEnricher}.*, {@link ContentFilter}, {@link ClaimCheck}
          */
-        Class[] value();
+        Class<?>[] value();
 
-        Class from();
+        Class<?> from();
 
-        Class to();
+        Class<?> to();
 
         /**
          * See <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/DataEnricher.html">Content Enricher</a>
@@ -1812,7 +1812,7 @@ public @interface EIP {
          * @return One or more of {@link MessagingGateway}, {@link MessagingMapper}, {@link TransactionalClient}, {@link PollingConsumer}, {@link EventDrivenConsumer},
          * {@link CompetingConsumers}, {@link MessageDispatcher}, {@link SelectiveConsumer}, {@link DurableSubscriber}, {@link IdempotentReceiver}, {@link ServiceActivator}
          */
-        Class[] value();
+        Class<?>[] value();
 
         /**
          * See <a href="http://www.enterpriseintegrationpatterns.com/patterns/messaging/MessagingGateway.html">Messaging Gateway</a>
@@ -1846,9 +1846,9 @@ public @interface EIP {
         @Related.Patterns({MessageTranslator.class, PEAA.DataMapper.class})
         @PEAA.Mapper
         @interface MessagingMapper {
-            Class from();
+            Class<?> from();
 
-            Class to();
+            Class<?> to();
         }
 
         /**
@@ -1871,7 +1871,7 @@ public @interface EIP {
             /**
              * @return One or more of {@link Producer}, {@link Consumer}, {@link Scenario}.*.
              */
-            Class[] value();
+            Class<?>[] value();
 
             @Patterns.MessagingEndpoints
             @Retention(RetentionPolicy.SOURCE)
@@ -471,12 +471,15 @@ public @interface Microservices {
 
     /**
      * See <a href="http://microservices.io/patterns/reliability/circuit-breaker.html">Circuit breaker</a>
+     * <p>
+     * On a class or a method vlfsoft.processor.CircuitBreakerProcessor generates the guarded subclass (vlfsoft.runtime.breaker.CircuitBreaker),
+     * vlfsoft.runtime.breaker.Breaker sets up the breaker.
      */
     @DesignPattern
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.METHOD})
     @Patterns.Communication.Reliability
     @interface CircuitBreaker {
     }
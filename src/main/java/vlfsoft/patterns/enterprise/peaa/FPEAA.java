@@ -642,7 +642,7 @@ public @interface FPEAA {
          *
          * @return one of {@link CQRS_0},  ...
          */
-        Class[] value() default {};
+        Class<?>[] value() default {};
 
         @Retention(RetentionPolicy.SOURCE)
         @Target({})
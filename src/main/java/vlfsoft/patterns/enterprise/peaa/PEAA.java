@@ -375,12 +375,15 @@ public @interface PEAA {
      * Similarly you have to insert new objects you create and remove any objects you delete.
      * {@link Language.Form#Solution}: A Unit of Work keeps track of everything you do during a business transaction that can affect the database.
      * When you're done, it figures out everything that needs to be done to alter the database as a result of your work.
+     * <p>
+     * vlfsoft.runtime.uow.UnitOfWork is the engine: bitsets of the new, dirty and removed entities over the identity maps,
+     * JDBC batches in the order of the dependencies on commit.
      */
     @DesignPattern
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE})
     @Patterns.Layer.DataSource
     @interface UnitOfWork {
     }
@@ -391,12 +394,15 @@ public @interface PEAA {
      * Thus, not loading the same data twice doesn't just help correctness, but can also speed up your application.
      * {@link Language.Form#Solution}: An Identity Map keeps a record of all objects that have been read from the database in a single business transaction.
      * Whenever you want an object, you check the Identity Map first to see if you already have it.
+     * <p>
+     * On an entity type with a long {@link DDD.Entity.Id} field vlfsoft.processor.IdentityMapProcessor
+     * generates the typed identity map.
      */
     @DesignPattern
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE})
     @Patterns.Layer.DataSource
     @interface IdentityMap {
     }
@@ -410,12 +416,15 @@ public @interface PEAA {
      * {@link Language.Form#Solution}: A Lazy Load interrupts this loading process for the moment, leaving a marker in the object structure so that if the data is needed it can be loaded only when it is used.
      * As many people know, if you're lazy about doing things you'll win when it turns out you don't need to do them at all.
      * There are four main varieties of lazy load: Lazy Initialization, Virtual Proxy, Value Holder, ghost.
+     * <p>
+     * On an interface, a class or a field of such type vlfsoft.processor.LazyLoadProcessor generates the virtual proxy
+     * (a ghost for a class), vlfsoft.runtime.lazy.Lazy is the value holder.
      */
     @DesignPattern
     @Documented
     @Inherited
     @Retention(RetentionPolicy.SOURCE)
-    @Target({ElementType.ANNOTATION_TYPE})
+    @Target({ElementType.ANNOTATION_TYPE, ElementType.TYPE, ElementType.FIELD})
     @Patterns.Layer.DataSource
     @interface LazyLoad {
     }
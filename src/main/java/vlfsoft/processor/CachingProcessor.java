@@ -0,0 +1,244 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import java.util.*;
+
+/**
+ * Generates the caching subclass {@code <Class>Cached} on top of vlfsoft.runtime.cache.Cache for the methods marked
+ * {@link vlfsoft.patterns.Pattern.Caching} or its runtime companion vlfsoft.runtime.cache.Cached (the settings of the cache):
+ * <pre>
+ * class PricingService {
+ *     &#64;Cached(maximumSize = 50_000, refreshAfterWrite = 30, expireAfterWrite = 120)
+ *     public double price(String symbol, int venue) { ... }
+ * }
+ * PricingService service = new PricingServiceCached(backend);
+ * </pre>
+ * Every marked method gets its own cache keyed by the arguments, the subclass overrides the method with the cache lookup,
+ * the loader calls the original method (a single argument is the key itself, null is replaced by a sentinel key).
+ * The constructors of the class are repeated, {@code caches()} returns the caches, f.e. for the stats.
+ * The caches are created after the constructor of the class, the calls from it go to the original methods.
+ * <p>
+ * The class must be non-final, non-generic and have a non-private constructor. The static, private, final, void and generic methods
+ * can't be cached, they are reported with a warning.
+ */
+@SupportedAnnotationTypes({CachingProcessor.CACHING, CachingProcessor.CACHED})
+public class CachingProcessor extends CodegenProcessor {
+
+    static final String CACHING = "vlfsoft.patterns.Pattern.Caching";
+    static final String CACHED = "vlfsoft.runtime.cache.Cached";
+    private static final String RUNTIME = "vlfsoft.runtime.cache.Cache";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        if (element.getKind() != ElementKind.METHOD || !firstVisit(element.getEnclosingElement())) return;
+        TypeElement type = (TypeElement) element.getEnclosingElement();
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.FINAL) || !type.getTypeParameters().isEmpty()
+                || !accessible(type) || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            warning("No caching subclass is generated for the interface, final, generic, private or inner class", type);
+            return;
+        }
+        List<ExecutableElement> constructors = new ArrayList<>();
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!c.getModifiers().contains(Modifier.PRIVATE)) constructors.add(c);
+        }
+        if (constructors.isEmpty()) {
+            warning("No caching subclass is generated: no non-private constructor", type);
+            return;
+        }
+        List<ExecutableElement> methods = new ArrayList<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            if (!isAnnotated(method, CACHING) && !isAnnotated(method, CACHED)) continue;
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                    || method.getReturnType().getKind() == TypeKind.VOID || !method.getTypeParameters().isEmpty()) {
+                warning("The static, private, final, void or generic method is not cached", method);
+                continue;
+            }
+            methods.add(method);
+        }
+        if (methods.isEmpty()) return;
+
+        String packageName = packageName(type);
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = generatedName(type, "Cached");
+        StringBuilder fields = new StringBuilder();
+        StringBuilder body = new StringBuilder();
+        StringBuilder keys = new StringBuilder();
+        List<String> cacheNames = new ArrayList<>();
+        Map<String, Integer> overloads = new HashMap<>();
+        boolean nullKey = false;
+        for (ExecutableElement method : methods) {
+            String name = method.getSimpleName().toString();
+            int overload = overloads.merge(name, 1, Integer::sum);
+            String id = overload == 1 ? name : name + overload;
+            String cache = id + "$cache";
+            cacheNames.add(cache);
+            nullKey |= cache(fields, body, keys, typeName, method, id, cache);
+        }
+
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n\n");
+        s.append("import java.util.Arrays;\n");
+        s.append("import java.util.List;\n\n");
+        s.append("/**\n");
+        s.append(" * {@link ").append(typeName).append("} with the cached results of the marked methods, generated by ")
+                .append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public class ").append(simpleName).append(" extends ").append(typeName).append(" {\n\n");
+        if (nullKey) s.append("    private static final Object NULL_KEY = new Object();\n\n");
+        s.append(fields);
+        for (ExecutableElement constructor : constructors) {
+            s.append("    ").append(constructor.getModifiers().contains(Modifier.PUBLIC) ? "public " : constructor.getModifiers().contains(Modifier.PROTECTED) ? "protected " : "")
+                    .append(simpleName).append('(').append(parameters(constructor)).append(')').append(throwsClause(constructor)).append(" {\n");
+            s.append("        super(").append(arguments(constructor.getParameters().size(), "p")).append(");\n");
+            s.append("    }\n\n");
+        }
+        s.append("    /**\n     * @return the caches of the methods, f.e. for the stats.\n     */\n");
+        s.append("    public List<Cache<?, ?>> caches() {\n");
+        s.append("        return Arrays.<Cache<?, ?>>asList(").append(String.join(", ", cacheNames)).append(");\n");
+        s.append("    }\n");
+        s.append(body);
+        s.append(keys);
+        s.append("\n}\n");
+        write(qualifiedName(packageName, simpleName), type, s.toString());
+    }
+
+    /**
+     * @return true, if the key of the method is its single reference argument, that needs NULL_KEY.
+     */
+    private boolean cache(StringBuilder fields, StringBuilder body, StringBuilder keys, String typeName, ExecutableElement method, String id, String cache) {
+        List<? extends VariableElement> parameters = method.getParameters();
+        String name = method.getSimpleName().toString();
+        String valueType = boxed(method.getReturnType());
+        String keyType;
+        String key;
+        String loadArguments;
+        boolean nullKey = false;
+        boolean unchecked = false;
+        if (parameters.isEmpty()) {
+            keyType = "Boolean";
+            key = "Boolean.TRUE";
+            loadArguments = "";
+        } else if (parameters.size() == 1 && parameters.get(0).asType().getKind().isPrimitive()) {
+            keyType = boxed(parameters.get(0).asType());
+            key = "p0";
+            loadArguments = "key";
+        } else if (parameters.size() == 1 && parameters.get(0).asType().getKind() != TypeKind.ARRAY) {
+            // The cache takes no null keys.
+            TypeMirror parameter = parameters.get(0).asType();
+            keyType = "Object";
+            key = "p0 != null ? p0 : NULL_KEY";
+            loadArguments = "key != NULL_KEY ? (" + typeName(parameter) + ") key : null";
+            nullKey = true;
+            unchecked = parameter.getKind() == TypeKind.DECLARED && !((DeclaredType) parameter).getTypeArguments().isEmpty();
+        } else {
+            keyType = Character.toUpperCase(id.charAt(0)) + id.substring(1) + "Key";
+            key = "new " + keyType + "(" + arguments(parameters.size(), "p") + ")";
+            loadArguments = arguments(parameters.size(), "key.p");
+            key(keys, keyType, parameters);
+        }
+
+        Map<String, Object> settings = values(method, CACHED);
+        boolean weighted = ((Number) settings.get("maximumWeight")).longValue() >= 0;
+        TypeMirror weigher = (TypeMirror) settings.get("weigher");
+        if (weighted && (weigher.getKind() != TypeKind.DECLARED || typeName(weigher).equals(Void.class.getName()))) {
+            error("maximumWeight requires the weigher", method);
+            weighted = false;
+        }
+        if (weighted) fields.append("    @SuppressWarnings({\"unchecked\", \"rawtypes\"})\n");
+        fields.append("    private final Cache<").append(keyType).append(", ").append(valueType).append("> ").append(cache)
+                .append(" = Cache.<").append(keyType).append(", ").append(valueType).append(">builder(this::").append(id).append("$load)\n");
+        fields.append("            .name(\"").append(typeName).append('.').append(name).append("\")");
+        if (weighted) {
+            fields.append(".maximumWeight(").append(settings.get("maximumWeight")).append("L, (Cache.Weigher) new ").append(typeName(weigher)).append("())");
+        } else if (((Number) settings.get("maximumSize")).longValue() >= 0) {
+            fields.append(".maximumSize(").append(settings.get("maximumSize")).append("L)");
+        }
+        String unit = "java.util.concurrent.TimeUnit." + settings.get("unit");
+        if (((Number) settings.get("expireAfterWrite")).longValue() > 0) {
+            fields.append(".expireAfterWrite(").append(settings.get("expireAfterWrite")).append("L, ").append(unit).append(')');
+        }
+        if (((Number) settings.get("refreshAfterWrite")).longValue() > 0) {
+            fields.append(".refreshAfterWrite(").append(settings.get("refreshAfterWrite")).append("L, ").append(unit).append(')');
+        }
+        fields.append(".build();\n\n");
+
+        Set<Modifier> modifiers = method.getModifiers();
+        List<? extends TypeMirror> thrown = method.getThrownTypes();
+        body.append("\n    @Override\n");
+        body.append("    ").append(modifiers.contains(Modifier.PUBLIC) ? "public " : modifiers.contains(Modifier.PROTECTED) ? "protected " : "")
+                .append(typeName(method.getReturnType())).append(' ').append(name).append('(').append(parameters(method)).append(')')
+                .append(throwsClause(method)).append(" {\n");
+        body.append("        if (").append(cache).append(" == null) return super.").append(name).append('(')
+                .append(arguments(parameters.size(), "p")).append(");\n");
+        if (thrown.isEmpty()) {
+            body.append("        return ").append(cache).append(".get(").append(key).append(");\n");
+        } else {
+            body.append("        try {\n");
+            body.append("            return ").append(cache).append(".get(").append(key).append(");\n");
+            body.append("        } catch (Cache.LoadException e) {\n");
+            for (TypeMirror exception : thrown) {
+                body.append("            if (e.getCause() instanceof ").append(typeName(exception)).append(") throw (")
+                        .append(typeName(exception)).append(") e.getCause();\n");
+            }
+            body.append("            throw e;\n");
+            body.append("        }\n");
+        }
+        body.append("    }\n\n");
+        if (unchecked) body.append("    @SuppressWarnings(\"unchecked\")\n");
+        body.append("    private ").append(valueType).append(' ').append(id).append("$load(").append(keyType).append(" key) throws Exception {\n");
+        body.append("        return super.").append(name).append('(').append(loadArguments).append(");\n");
+        body.append("    }\n");
+        return nullKey;
+    }
+
+    private void key(StringBuilder s, String keyType, List<? extends VariableElement> parameters) {
+        s.append("\n    private static final class ").append(keyType).append(" {\n");
+        for (int i = 0; i < parameters.size(); i++) {
+            s.append("        final ").append(typeName(parameters.get(i).asType())).append(" p").append(i).append(";\n");
+        }
+        s.append("\n        ").append(keyType).append('(');
+        for (int i = 0; i < parameters.size(); i++) {
+            s.append(i > 0 ? ", " : "").append(typeName(parameters.get(i).asType())).append(" p").append(i);
+        }
+        s.append(") {\n");
+        for (int i = 0; i < parameters.size(); i++) s.append("            this.p").append(i).append(" = p").append(i).append(";\n");
+        s.append("        }\n\n");
+        s.append("        @Override\n");
+        s.append("        public int hashCode() {\n");
+        s.append("            int hash = 1;\n");
+        for (int i = 0; i < parameters.size(); i++) {
+            s.append("            hash = 31 * hash + ").append(hash(parameters.get(i).asType(), "p" + i)).append(";\n");
+        }
+        s.append("            return hash;\n");
+        s.append("        }\n\n");
+        s.append("        @Override\n");
+        s.append("        public boolean equals(Object o) {\n");
+        s.append("            if (this == o) return true;\n");
+        s.append("            if (!(o instanceof ").append(keyType).append(")) return false;\n");
+        s.append("            ").append(keyType).append(" key = (").append(keyType).append(") o;\n");
+        s.append("            return ");
+        for (int i = 0; i < parameters.size(); i++) {
+            s.append(i > 0 ? "\n                    && " : "").append(equal(parameters.get(i).asType(), "p" + i, "key.p" + i));
+        }
+        s.append(";\n");
+        s.append("        }\n");
+        s.append("    }\n");
+    }
+
+    private String boxed(TypeMirror type) {
+        return type.getKind().isPrimitive()
+                ? processingEnv.getTypeUtils().boxedClass((PrimitiveType) type).getQualifiedName().toString() : typeName(type);
+    }
+
+}
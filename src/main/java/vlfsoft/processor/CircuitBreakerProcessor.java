@@ -0,0 +1,186 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.util.ElementFilter;
+import java.util.*;
+
+/**
+ * Generates the subclass {@code <Class>Guarded} on top of vlfsoft.runtime.breaker.CircuitBreaker for the classes and methods marked
+ * {@link vlfsoft.patterns.enterprise.microservices.Microservices.CircuitBreaker} or its runtime companion vlfsoft.runtime.breaker.Breaker
+ * (the settings of the breaker):
+ * <pre>
+ * &#64;Breaker(failureRateThreshold = 25, waitInOpenState = 10, unit = TimeUnit.SECONDS)
+ * class InventoryClient {
+ *     public Stock stock(String sku) throws IOException { ... }
+ *     &#64;Breaker(name = "reservations", windowType = CircuitBreaker.WindowType.TIME, windowSize = 30)
+ *     public void reserve(String sku, int quantity) throws IOException { ... }
+ * }
+ * InventoryClient client = new InventoryClientGuarded(http);
+ * </pre>
+ * The subclass overrides the methods with the permission check, the call of the original method, the timing and the recording of the outcome:
+ * plain calls instead of an AOP proxy, nothing is allocated, an open breaker throws its CallNotPermittedException.
+ * A marked class has one breaker for all its public methods, a marked method - its own, the methods with the same breaker name share it.
+ * The constructors of the class are repeated, {@code circuitBreakers()} returns the breakers, f.e. for the listeners and the metrics.
+ * The breakers are created after the constructor of the class, the calls from it go to the original methods unguarded.
+ * <p>
+ * The class must be non-final, non-generic and have a non-private constructor. The static, private, final and generic methods
+ * can't be guarded, the marked ones are reported with a warning.
+ */
+@SupportedAnnotationTypes({CircuitBreakerProcessor.CIRCUIT_BREAKER, CircuitBreakerProcessor.BREAKER})
+public class CircuitBreakerProcessor extends CodegenProcessor {
+
+    static final String CIRCUIT_BREAKER = "vlfsoft.patterns.enterprise.microservices.Microservices.CircuitBreaker";
+    static final String BREAKER = "vlfsoft.runtime.breaker.Breaker";
+    private static final String RUNTIME = "vlfsoft.runtime.breaker.CircuitBreaker";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        TypeElement type;
+        if (element.getKind() == ElementKind.METHOD) {
+            type = (TypeElement) element.getEnclosingElement();
+        } else if (element.getKind().isClass() || element.getKind().isInterface()) {
+            type = (TypeElement) element;
+        } else {
+            return;
+        }
+        // The generated subclass inherits @Microservices.CircuitBreaker.
+        if (isAnnotated(type, GENERATED) || !firstVisit(type)) return;
+        if (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.FINAL) || !type.getTypeParameters().isEmpty()
+                || !accessible(type) || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            warning("No guarded subclass is generated for the interface, final, generic, private or inner class", type);
+            return;
+        }
+        List<ExecutableElement> constructors = new ArrayList<>();
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (!c.getModifiers().contains(Modifier.PRIVATE)) constructors.add(c);
+        }
+        if (constructors.isEmpty()) {
+            warning("No guarded subclass is generated: no non-private constructor", type);
+            return;
+        }
+        boolean typeMarked = isAnnotated(type, CIRCUIT_BREAKER) || isAnnotated(type, BREAKER);
+        String typeName = type.getQualifiedName().toString();
+
+        // Breaker name -> settings and field, in the order of the methods.
+        Map<String, Map<String, Object>> breakers = new LinkedHashMap<>();
+        Map<String, String> fieldNames = new LinkedHashMap<>();
+        Map<ExecutableElement, String> methods = new LinkedHashMap<>();
+        Map<String, Integer> overloads = new HashMap<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            boolean marked = isAnnotated(method, CIRCUIT_BREAKER) || isAnnotated(method, BREAKER);
+            Set<Modifier> modifiers = method.getModifiers();
+            if (!marked && !(typeMarked && modifiers.contains(Modifier.PUBLIC))) continue;
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.FINAL)
+                    || !method.getTypeParameters().isEmpty()) {
+                if (marked) warning("The static, private, final or generic method is not guarded", method);
+                continue;
+            }
+            Map<String, Object> settings = values(marked ? method : type, BREAKER);
+            String name = (String) settings.get("name");
+            if (name.isEmpty()) name = marked ? typeName + "." + method.getSimpleName() : typeName;
+            if (!breakers.containsKey(name)) {
+                if ("COUNT".equals(settings.get("windowType").toString())
+                        && (Integer) settings.get("minimumNumberOfCalls") > (Integer) settings.get("windowSize")) {
+                    error("minimumNumberOfCalls is more than the windowSize of the COUNT window: the breaker would never open",
+                            marked ? method : type);
+                    return;
+                }
+                breakers.put(name, settings);
+                String id = marked ? method.getSimpleName().toString() : "type";
+                int overload = overloads.merge(id, 1, Integer::sum);
+                fieldNames.put(name, (overload == 1 ? id : id + overload) + "$breaker");
+            }
+            methods.put(method, fieldNames.get(name));
+        }
+        if (methods.isEmpty()) return;
+
+        String packageName = packageName(type);
+        String simpleName = generatedName(type, "Guarded");
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n\n");
+        s.append("import java.util.Arrays;\n");
+        s.append("import java.util.List;\n");
+        s.append("import java.util.concurrent.TimeUnit;\n\n");
+        s.append("/**\n");
+        s.append(" * {@link ").append(typeName).append("} with the calls of the marked methods through the circuit breakers, generated by ")
+                .append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public class ").append(simpleName).append(" extends ").append(typeName).append(" {\n\n");
+        for (Map.Entry<String, Map<String, Object>> breaker : breakers.entrySet()) {
+            field(s, fieldNames.get(breaker.getKey()), breaker.getKey(), breaker.getValue());
+        }
+        for (ExecutableElement constructor : constructors) {
+            s.append("    ").append(constructor.getModifiers().contains(Modifier.PUBLIC) ? "public " : constructor.getModifiers().contains(Modifier.PROTECTED) ? "protected " : "")
+                    .append(simpleName).append('(').append(parameters(constructor)).append(')').append(throwsClause(constructor)).append(" {\n");
+            s.append("        super(").append(arguments(constructor.getParameters().size(), "p")).append(");\n");
+            s.append("    }\n\n");
+        }
+        s.append("    /**\n     * @return the circuit breakers of the methods, f.e. for the listeners and the metrics.\n     */\n");
+        s.append("    public List<CircuitBreaker> circuitBreakers() {\n");
+        s.append("        return Arrays.asList(").append(String.join(", ", fieldNames.values())).append(");\n");
+        s.append("    }\n");
+        for (Map.Entry<ExecutableElement, String> method : methods.entrySet()) {
+            guard(s, method.getKey(), method.getValue());
+        }
+        s.append("\n}\n");
+        write(qualifiedName(packageName, simpleName), type, s.toString());
+    }
+
+    private static void field(StringBuilder s, String field, String name, Map<String, Object> settings) {
+        String unit = "TimeUnit." + settings.get("unit");
+        s.append("    private final CircuitBreaker ").append(field).append(" = CircuitBreaker.builder()\n");
+        s.append("            .name(\"").append(name.replace("\\", "\\\\").replace("\"", "\\\"")).append("\")\n");
+        s.append("            .failureRateThreshold(").append(settings.get("failureRateThreshold")).append("f)")
+                .append(".slowCallRateThreshold(").append(settings.get("slowCallRateThreshold")).append("f)")
+                .append(".slowCallDuration(").append(settings.get("slowCallDuration")).append("L, ").append(unit).append(")\n");
+        s.append("            .slidingWindow(CircuitBreaker.WindowType.").append(settings.get("windowType")).append(", ").append(settings.get("windowSize")).append(')');
+        if ((Integer) settings.get("minimumNumberOfCalls") > 0) s.append(".minimumNumberOfCalls(").append(settings.get("minimumNumberOfCalls")).append(')');
+        s.append('\n');
+        s.append("            .waitInOpenState(").append(settings.get("waitInOpenState")).append("L, ").append(unit).append(')')
+                .append(".permittedCallsInHalfOpenState(").append(settings.get("permittedCallsInHalfOpenState")).append(")\n");
+        s.append("            .build();\n\n");
+    }
+
+    private static void guard(StringBuilder s, ExecutableElement method, String breaker) {
+        Set<Modifier> modifiers = method.getModifiers();
+        boolean result = method.getReturnType().getKind() != TypeKind.VOID;
+        String call = "super." + method.getSimpleName() + "(" + arguments(method.getParameters().size(), "p") + ");\n";
+        s.append("\n    @Override\n");
+        s.append("    ").append(modifiers.contains(Modifier.PUBLIC) ? "public " : modifiers.contains(Modifier.PROTECTED) ? "protected " : "")
+                .append(typeName(method.getReturnType())).append(' ').append(method.getSimpleName()).append('(').append(parameters(method)).append(')')
+                .append(throwsClause(method)).append(" {\n");
+        if (result) {
+            s.append("        if (").append(breaker).append(" == null) return ").append(call);
+        } else {
+            s.append("        if (").append(breaker).append(" == null) {\n");
+            s.append("            ").append(call);
+            s.append("            return;\n");
+            s.append("        }\n");
+        }
+        s.append("        if (!").append(breaker).append(".tryAcquirePermission()) throw ").append(breaker).append(".notPermitted();\n");
+        s.append("        long start = System.nanoTime();\n");
+        s.append("        try {\n");
+        if (result) {
+            s.append("            ").append(typeName(method.getReturnType())).append(" result = ").append(call);
+        } else {
+            s.append("            ").append(call);
+        }
+        s.append("            ").append(breaker).append(".onSuccess(System.nanoTime() - start);\n");
+        if (result) s.append("            return result;\n");
+        s.append("        } catch (Throwable e) {\n");
+        s.append("            ").append(breaker).append(".onError(System.nanoTime() - start, e);\n");
+        s.append("            throw e;\n");
+        s.append("        }\n");
+        s.append("    }\n");
+    }
+
+}
@@ -0,0 +1,294 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Base of the processors, that generate the implementations of the patterns on top of the sdannotations-runtime engines,
+ * f.e. {@link ObjectPoolProcessor}.
+ * <p>
+ * The annotations stay markers: nothing is generated, if the runtime class {@link #runtimeClass()} is not on the compile classpath,
+ * so the projects, that use the annotations only for the documentation, are not affected (besides {@link #check(Element)}).
+ * The generated classes are marked with {@value #GENERATED}.
+ * Every generated source has exactly one originating element (the annotated top level type),
+ * the processors are registered in META-INF/gradle/incremental.annotation.processors as isolating.
+ * <p>
+ * Options:
+ * <ul>
+ * <li> {@value #OPTION_CODEGEN} (default true) - false switches off all the generating processors.
+ * </ul>
+ */
+abstract class CodegenProcessor extends AbstractProcessor {
+
+    static final String OPTION_CODEGEN = "sdannotations.codegen";
+    static final String GENERATED = "vlfsoft.runtime.Generated";
+
+    private final Map<String, String> generated = new HashMap<>();
+    private final Map<String, Element> origins = new HashMap<>();
+    private final Set<Element> visited = new HashSet<>();
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(OPTION_CODEGEN);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * @return qualified name of the runtime class, that the generated code depends on.
+     */
+    String runtimeClass() {
+        return GENERATED;
+    }
+
+    abstract void generate(Element element);
+
+    /**
+     * Verifies the hand-written code of the element, it runs also when nothing is generated.
+     */
+    void check(Element element) {
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (annotations.isEmpty()) return false;
+        boolean generating = !"false".equals(processingEnv.getOptions().get(OPTION_CODEGEN))
+                && processingEnv.getElementUtils().getTypeElement(runtimeClass()) != null;
+        Set<Element> annotated = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            annotated.addAll(roundEnv.getElementsAnnotatedWith(annotation));
+        }
+        for (Element element : annotated) {
+            check(element);
+            if (generating) generate(element);
+        }
+        return false;
+    }
+
+    /**
+     * Writes the source once per name, the same name with another source or from another top level type is an error:
+     * f.e. the types of the same simple name from different packages, a generated file has one originating element (the isolating mode).
+     */
+    void write(String qualifiedName, Element element, String source) {
+        TypeElement topLevelType = ElementKeys.topLevelType(element);
+        Element origin = topLevelType != null ? topLevelType : element;
+        String previous = generated.putIfAbsent(qualifiedName, source);
+        if (previous != null) {
+            if (!previous.equals(source) || !origins.get(qualifiedName).equals(origin)) {
+                error(qualifiedName + " is already generated for " + origins.get(qualifiedName) + " with another source", element);
+            }
+            return;
+        }
+        origins.put(qualifiedName, origin);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, origin);
+            try (Writer out = file.openWriter()) {
+                out.write(source);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedName + ": " + e, element);
+        }
+    }
+
+    /**
+     * @return true for the first call with the element, f.e. a type, that is processed once for all its annotated members.
+     */
+    boolean firstVisit(Element element) {
+        return visited.add(element);
+    }
+
+    /**
+     * @return true, if the element is annotated with the annotation, including the {@link java.lang.annotation.Inherited} ones.
+     */
+    boolean isAnnotated(Element element, String annotation) {
+        for (AnnotationMirror mirror : processingEnv.getElementUtils().getAllAnnotationMirrors(element)) {
+            if (((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return expression, that reads the field of an instance from the package, without the instance, f.e. "symbol" or "getSymbol()",
+     * or null, if the field and its accessors (x(), getX(), isX()) are not accessible.
+     */
+    String accessor(VariableElement field, String fromPackage) {
+        String name = field.getSimpleName().toString();
+        if (accessible(field, fromPackage)) return name;
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        for (ExecutableElement method : ElementFilter.methodsIn(field.getEnclosingElement().getEnclosedElements())) {
+            String methodName = method.getSimpleName().toString();
+            if (!accessible(method, fromPackage) || method.getModifiers().contains(Modifier.STATIC) || !method.getParameters().isEmpty()
+                    || !processingEnv.getTypeUtils().isSameType(method.getReturnType(), field.asType())) continue;
+            if (methodName.equals(name) || methodName.equals("get" + capitalized) || methodName.equals("is" + capitalized)) {
+                return methodName + "()";
+            }
+        }
+        return null;
+    }
+
+    private static boolean accessible(Element member, String fromPackage) {
+        Set<Modifier> modifiers = member.getModifiers();
+        return modifiers.contains(Modifier.PUBLIC) || !modifiers.contains(Modifier.PRIVATE) && packageName(member).equals(fromPackage);
+    }
+
+    void note(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE, message, element);
+    }
+
+    void warning(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, message, element);
+    }
+
+    void error(String message, Element element) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    static String packageName(Element element) {
+        Element e = element;
+        while (e.getKind() != ElementKind.PACKAGE) e = e.getEnclosingElement();
+        return ((PackageElement) e).getQualifiedName().toString();
+    }
+
+    /**
+     * @return name of the generated class for the type: simple names of the nested types joined with '_' plus the suffix,
+     * f.e. Outer_InnerPool.
+     */
+    static String generatedName(TypeElement type, String suffix) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        for (Element e = type.getEnclosingElement(); e instanceof TypeElement; e = e.getEnclosingElement()) {
+            name.insert(0, '_').insert(0, e.getSimpleName());
+        }
+        return name.append(suffix).toString();
+    }
+
+    static String qualifiedName(String packageName, String simpleName) {
+        return packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+    }
+
+    /**
+     * @return true, if the element and all its enclosing types are not private, so the generated class in the same package can use it.
+     */
+    static boolean accessible(Element element) {
+        for (Element e = element; e != null && e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e.getModifiers().contains(Modifier.PRIVATE)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return source form of the type, f.e. java.util.Map.Entry&lt;java.lang.String, java.lang.Integer&gt;.
+     */
+    static String typeName(TypeMirror type) {
+        return type.toString();
+    }
+
+    static String packageLine(String packageName) {
+        return packageName.isEmpty() ? "" : "package " + packageName + ";\n\n";
+    }
+
+    /**
+     * @return the {@value #GENERATED} annotation line of the generated class.
+     */
+    String generatedLine() {
+        return "@" + GENERATED + "(\"" + getClass().getName() + "\")\n";
+    }
+
+    /**
+     * @return the values of the annotation of the element with the defaults, only the defaults, if the element is not annotated with it,
+     * f.e. the settings of a runtime companion annotation.
+     */
+    Map<String, Object> values(Element element, String annotation) {
+        Map<String, Object> values = new HashMap<>();
+        AnnotationMirror mirror = null;
+        for (AnnotationMirror m : element.getAnnotationMirrors()) {
+            if (((TypeElement) m.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotation)) mirror = m;
+        }
+        TypeElement type = processingEnv.getElementUtils().getTypeElement(annotation);
+        for (ExecutableElement attribute : ElementFilter.methodsIn(type.getEnclosedElements())) {
+            AnnotationValue value = mirror != null ? processingEnv.getElementUtils().getElementValuesWithDefaults(mirror).get(attribute)
+                    : attribute.getDefaultValue();
+            values.put(attribute.getSimpleName().toString(), value.getValue());
+        }
+        return values;
+    }
+
+    /**
+     * @return hash code expression of the value of the type, f.e. for a key class.
+     */
+    static String hash(TypeMirror type, String value) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "(" + value + " ? 1231 : 1237)";
+            case BYTE:
+            case SHORT:
+            case CHAR:
+            case INT:
+                return value;
+            case LONG:
+                return "(int) (" + value + " ^ " + value + " >>> 32)";
+            case FLOAT:
+                return "Float.floatToIntBits(" + value + ")";
+            case DOUBLE:
+                return "(int) (Double.doubleToLongBits(" + value + ") ^ Double.doubleToLongBits(" + value + ") >>> 32)";
+            case ARRAY:
+                return "java.util.Arrays.hashCode(" + value + ")";
+            default:
+                return "java.util.Objects.hashCode(" + value + ")";
+        }
+    }
+
+    /**
+     * @return expression, that compares the values of the type.
+     */
+    static String equal(TypeMirror type, String a, String b) {
+        switch (type.getKind()) {
+            case FLOAT:
+                return "Float.floatToIntBits(" + a + ") == Float.floatToIntBits(" + b + ")";
+            case DOUBLE:
+                return "Double.doubleToLongBits(" + a + ") == Double.doubleToLongBits(" + b + ")";
+            case ARRAY:
+                return "java.util.Arrays.equals(" + a + ", " + b + ")";
+            default:
+                return type.getKind().isPrimitive() ? a + " == " + b : "java.util.Objects.equals(" + a + ", " + b + ")";
+        }
+    }
+
+    /**
+     * @return parameters of the method or constructor in the source form, named p0, p1, ...
+     */
+    static String parameters(ExecutableElement executable) {
+        StringBuilder s = new StringBuilder();
+        List<? extends VariableElement> parameters = executable.getParameters();
+        for (int i = 0; i < parameters.size(); i++) {
+            String type = typeName(parameters.get(i).asType());
+            if (executable.isVarArgs() && i == parameters.size() - 1) type = type.replaceFirst("\\[]$", "...");
+            s.append(i > 0 ? ", " : "").append(type).append(" p").append(i);
+        }
+        return s.toString();
+    }
+
+    static String arguments(int count, String prefix) {
+        StringBuilder s = new StringBuilder();
+        for (int i = 0; i < count; i++) s.append(i > 0 ? ", " : "").append(prefix).append(i);
+        return s.toString();
+    }
+
+    static String throwsClause(ExecutableElement executable) {
+        StringBuilder s = new StringBuilder();
+        for (TypeMirror exception : executable.getThrownTypes()) s.append(s.length() == 0 ? " throws " : ", ").append(typeName(exception));
+        return s.toString();
+    }
+
+}
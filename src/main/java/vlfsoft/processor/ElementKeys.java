@@ -0,0 +1,115 @@
+package vlfsoft.processor;
+
+import vlfsoft.index.PatternIndex;
+
+import javax.lang.model.element.*;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+
+/**
+ * Builds the stable string keys of the elements, see {@link PatternIndex} for the key format.
+ */
+final class ElementKeys {
+
+    private final Elements elements;
+    private final Types types;
+
+    ElementKeys(Elements elements, Types types) {
+        this.elements = elements;
+        this.types = types;
+    }
+
+    String key(Element element) {
+        switch (element.getKind()) {
+            case PACKAGE:
+                return ((PackageElement) element).getQualifiedName().toString();
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return elements.getBinaryName((TypeElement) element).toString();
+            case METHOD:
+            case CONSTRUCTOR:
+                return executableKey((ExecutableElement) element);
+            case PARAMETER:
+                return key(element.getEnclosingElement()) + ":" + element.getSimpleName();
+            case TYPE_PARAMETER:
+                return key(((TypeParameterElement) element).getGenericElement()) + "<" + element.getSimpleName() + ">";
+            default:
+                Element enclosing = element.getEnclosingElement();
+                return enclosing != null ? key(enclosing) + "#" + element.getSimpleName() : element.getSimpleName().toString();
+        }
+    }
+
+    PatternIndex.Kind kind(Element element) {
+        switch (element.getKind()) {
+            case PACKAGE:
+                return PatternIndex.Kind.PACKAGE;
+            case CLASS:
+            case INTERFACE:
+            case ENUM:
+            case ANNOTATION_TYPE:
+                return PatternIndex.Kind.TYPE;
+            case FIELD:
+            case ENUM_CONSTANT:
+                return PatternIndex.Kind.FIELD;
+            case METHOD:
+                return PatternIndex.Kind.METHOD;
+            case CONSTRUCTOR:
+                return PatternIndex.Kind.CONSTRUCTOR;
+            case PARAMETER:
+                return PatternIndex.Kind.PARAMETER;
+            default:
+                return PatternIndex.Kind.OTHER;
+        }
+    }
+
+    /**
+     * @return nearest type, that encloses the element (not the element itself), or null.
+     */
+    static TypeElement enclosingType(Element element) {
+        for (Element e = element.getEnclosingElement(); e != null; e = e.getEnclosingElement()) {
+            if (e instanceof TypeElement) return (TypeElement) e;
+        }
+        return null;
+    }
+
+    /**
+     * @return outermost type, that contains the element (the element itself, if it is a top level type), or null for packages.
+     */
+    static TypeElement topLevelType(Element element) {
+        TypeElement result = null;
+        for (Element e = element; e != null && e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            if (e instanceof TypeElement) result = (TypeElement) e;
+        }
+        return result;
+    }
+
+    private String executableKey(ExecutableElement method) {
+        StringBuilder key = new StringBuilder(key(method.getEnclosingElement())).append('#');
+        key.append(method.getKind() == ElementKind.CONSTRUCTOR ? "<init>" : method.getSimpleName().toString()).append('(');
+        boolean first = true;
+        for (VariableElement parameter : method.getParameters()) {
+            if (!first) key.append(',');
+            key.append(typeKey(parameter.asType()));
+            first = false;
+        }
+        return key.append(')').toString();
+    }
+
+    private String typeKey(TypeMirror type) {
+        TypeMirror erased = types.erasure(type);
+        switch (erased.getKind()) {
+            case ARRAY:
+                return typeKey(((ArrayType) erased).getComponentType()) + "[]";
+            case DECLARED:
+                return elements.getBinaryName((TypeElement) ((DeclaredType) erased).asElement()).toString();
+            default:
+                return erased.toString();
+        }
+    }
+
+}
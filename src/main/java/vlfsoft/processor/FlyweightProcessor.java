@@ -0,0 +1,169 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates the flyweight factory for the classes with {@link vlfsoft.patterns.GOF.Flyweight.Intrinsic} fields
+ * (or the class itself marked {@link vlfsoft.patterns.GOF.Flyweight.Intrinsic}, then all its instance fields are intrinsic):
+ * <pre>
+ * class Instrument {
+ *     &#64;GOF.Flyweight.Intrinsic private final String symbol;
+ *     &#64;GOF.Flyweight.Intrinsic private final int exchange;
+ *     Instrument(String symbol, int exchange) { ... }
+ *     double notional(&#64;GOF.Flyweight.Extrinsic double price, &#64;GOF.Flyweight.Extrinsic long quantity) { ... }
+ * }
+ * Instrument instrument = InstrumentFlyweightFactory.of("VOD.L", 7);
+ * </pre>
+ * The factory interns the instances in vlfsoft.runtime.flyweight.InternTable keyed on the intrinsic fields,
+ * so equal intrinsic state is one shared instance, while it is reachable.
+ * The extrinsic state stays with the clients and is passed to the operations as the parameters.
+ * <p>
+ * Requirements: a non-private constructor with the parameters of the types of the intrinsic fields in the declaration order,
+ * and the intrinsic fields either non-private or with a non-private accessor (x(), getX() or isX()).
+ * The other instance fields are reported with a warning: they are shared by all the users of the flyweight.
+ */
+@SupportedAnnotationTypes(FlyweightProcessor.INTRINSIC)
+public class FlyweightProcessor extends CodegenProcessor {
+
+    static final String INTRINSIC = "vlfsoft.patterns.GOF.Flyweight.Intrinsic";
+    private static final String RUNTIME = "vlfsoft.runtime.flyweight.InternTable";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        if (element.getKind() == ElementKind.FIELD) {
+            generate((TypeElement) element.getEnclosingElement());
+        } else if (element.getKind() == ElementKind.CLASS) {
+            generate((TypeElement) element);
+        }
+    }
+
+    private void generate(TypeElement type) {
+        if (!firstVisit(type)) return;
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty() || !accessible(type)) {
+            note("No flyweight factory is generated for the abstract, generic or private class", type);
+            return;
+        }
+
+        boolean allIntrinsic = isAnnotated(type, INTRINSIC);
+        List<VariableElement> intrinsic = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) continue;
+            if (allIntrinsic || isAnnotated(field, INTRINSIC)) {
+                intrinsic.add(field);
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "The field is not @GOF.Flyweight.Intrinsic, "
+                        + "it is shared by all the users of the flyweight: pass it as a @GOF.Flyweight.Extrinsic parameter", field);
+            }
+        }
+        if (intrinsic.isEmpty()) return;
+
+        if (!hasConstructor(type, intrinsic)) {
+            StringBuilder signature = new StringBuilder();
+            for (VariableElement field : intrinsic) {
+                if (signature.length() > 0) signature.append(", ");
+                signature.append(field.asType());
+            }
+            note("No flyweight factory is generated: no accessible constructor (" + signature + ")", type);
+            return;
+        }
+        List<String> accessors = new ArrayList<>();
+        for (VariableElement field : intrinsic) {
+            String accessor = accessor(field, packageName(type));
+            if (accessor == null) {
+                note("No flyweight factory is generated: the intrinsic field is private and has no accessor", field);
+                return;
+            }
+            accessors.add(accessor);
+        }
+
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = generatedName(type, "FlyweightFactory");
+        String packageName = packageName(type);
+        StringBuilder parameters = new StringBuilder();
+        StringBuilder arguments = new StringBuilder();
+        for (VariableElement field : intrinsic) {
+            if (parameters.length() > 0) {
+                parameters.append(", ");
+                arguments.append(", ");
+            }
+            parameters.append(field.asType()).append(' ').append(field.getSimpleName());
+            arguments.append(field.getSimpleName());
+        }
+
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n\n");
+        s.append("/**\n");
+        s.append(" * Flyweight factory of {@link ").append(typeName).append("}: the instances are shared by the intrinsic state,\n");
+        s.append(" * generated by ").append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public final class ").append(simpleName).append(" {\n\n");
+        s.append("    private static final InternTable<").append(typeName).append("> TABLE = new InternTable<>();\n\n");
+        s.append("    private ").append(simpleName).append("() {\n    }\n\n");
+        s.append("    public static ").append(typeName).append(" of(").append(parameters).append(") {\n");
+        s.append("        return TABLE.intern(new Key(").append(arguments).append("));\n");
+        s.append("    }\n\n");
+        s.append("    /**\n     * @return number of the interned instances, including the collected, but not yet removed ones.\n     */\n");
+        s.append("    public static int size() {\n");
+        s.append("        return TABLE.size();\n");
+        s.append("    }\n\n");
+        s.append("    private static final class Key implements InternTable.Key<").append(typeName).append("> {\n");
+        for (VariableElement field : intrinsic) {
+            s.append("        private final ").append(field.asType()).append(' ').append(field.getSimpleName()).append(";\n");
+        }
+        s.append("\n        Key(").append(parameters).append(") {\n");
+        for (VariableElement field : intrinsic) {
+            s.append("            this.").append(field.getSimpleName()).append(" = ").append(field.getSimpleName()).append(";\n");
+        }
+        s.append("        }\n\n");
+        s.append("        @Override\n");
+        s.append("        public int hash() {\n");
+        s.append("            int hash = 1;\n");
+        for (VariableElement field : intrinsic) {
+            s.append("            hash = 31 * hash + ").append(hash(field.asType(), field.getSimpleName().toString())).append(";\n");
+        }
+        s.append("            return hash;\n");
+        s.append("        }\n\n");
+        s.append("        @Override\n");
+        s.append("        public boolean matches(").append(typeName).append(" flyweight) {\n");
+        s.append("            return ");
+        for (int i = 0; i < intrinsic.size(); i++) {
+            if (i > 0) s.append("\n                    && ");
+            VariableElement field = intrinsic.get(i);
+            s.append(equal(field.asType(), field.getSimpleName().toString(), "flyweight." + accessors.get(i)));
+        }
+        s.append(";\n");
+        s.append("        }\n\n");
+        s.append("        @Override\n");
+        s.append("        public ").append(typeName).append(" create() {\n");
+        s.append("            return new ").append(typeName).append("(").append(arguments).append(");\n");
+        s.append("        }\n");
+        s.append("    }\n\n");
+        s.append("}\n");
+        write(qualifiedName(packageName, simpleName), type, s.toString());
+    }
+
+    private boolean hasConstructor(TypeElement type, List<VariableElement> fields) {
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PRIVATE) || constructor.getParameters().size() != fields.size()) continue;
+            boolean same = true;
+            for (int i = 0; i < fields.size() && same; i++) {
+                same = processingEnv.getTypeUtils().isSameType(constructor.getParameters().get(i).asType(), fields.get(i).asType());
+            }
+            if (same) return true;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,118 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * Generates the typed identity map on top of vlfsoft.runtime.identity.LongIdentityMap for the entity types marked
+ * {@link vlfsoft.patterns.enterprise.peaa.PEAA.IdentityMap} with a {@link vlfsoft.patterns.enterprise.ddd.DDD.Entity.Id} field
+ * (in the type or its superclasses) of long, int, short or their wrappers:
+ * <pre>
+ * &#64;PEAA.IdentityMap
+ * class Order {
+ *     &#64;DDD.Entity.Id final long id;
+ * }
+ * try (IdentityScope scope = IdentityScope.open()) {
+ *     Order order = OrderIdentityMap.current().computeIfAbsent(id, orderMapper::load);
+ * }
+ * </pre>
+ * OrderIdentityMap.current() is the map of the current vlfsoft.runtime.identity.IdentityScope (the unit of work),
+ * {@code put(order)} takes the id from the entity.
+ */
+@SupportedAnnotationTypes(IdentityMapProcessor.IDENTITY_MAP)
+public class IdentityMapProcessor extends CodegenProcessor {
+
+    static final String IDENTITY_MAP = "vlfsoft.patterns.enterprise.peaa.PEAA.IdentityMap";
+    static final String ID = "vlfsoft.patterns.enterprise.ddd.DDD.Entity.Id";
+    private static final String RUNTIME = "vlfsoft.runtime.identity.LongIdentityMap";
+    private static final String SCOPE = "vlfsoft.runtime.identity.IdentityScope";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        if (element.getKind() != ElementKind.CLASS) return;
+        TypeElement type = (TypeElement) element;
+        if (!type.getTypeParameters().isEmpty() || !accessible(type)) {
+            note("No identity map is generated for the generic or private class", type);
+            return;
+        }
+        VariableElement id = idField(type);
+        if (id == null) {
+            note("No identity map is generated: no long @DDD.Entity.Id field", type);
+            return;
+        }
+        String packageName = packageName(type);
+        String accessor = accessor(id, packageName);
+        if (accessor == null) {
+            note("No identity map is generated: the id field is not accessible and has no accessor", id);
+            return;
+        }
+
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = generatedName(type, "IdentityMap");
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n");
+        s.append("import ").append(SCOPE).append(";\n\n");
+        s.append("/**\n");
+        s.append(" * Identity map of {@link ").append(typeName).append("} by {@code ").append(id.getSimpleName())
+                .append("}, generated by ").append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public class ").append(simpleName).append(" extends LongIdentityMap<").append(typeName).append("> {\n\n");
+        s.append("    public ").append(simpleName).append("() {\n");
+        s.append("        super(").append(simpleName).append("::idOf);\n");
+        s.append("    }\n\n");
+        s.append("    public static long idOf(").append(typeName).append(" entity) {\n");
+        s.append("        return entity.").append(accessor).append(";\n");
+        s.append("    }\n\n");
+        s.append("    /**\n     * @return the map of the scope, it is created on the first call.\n     */\n");
+        s.append("    public static ").append(simpleName).append(" of(IdentityScope scope) {\n");
+        s.append("        return scope.map(").append(typeName).append(".class, ").append(simpleName).append("::new);\n");
+        s.append("    }\n\n");
+        s.append("    /**\n     * @return the map of {@link IdentityScope#current()}.\n     */\n");
+        s.append("    public static ").append(simpleName).append(" current() {\n");
+        s.append("        return of(IdentityScope.current());\n");
+        s.append("    }\n\n");
+        s.append("}\n");
+        write(qualifiedName(packageName, simpleName), type, s.toString());
+    }
+
+    /**
+     * @return the first instance field marked {@value #ID} of an integral type in the type or its superclasses, or null.
+     */
+    private VariableElement idField(TypeElement type) {
+        for (TypeElement t = type; t != null; t = superclass(t)) {
+            for (VariableElement field : ElementFilter.fieldsIn(t.getEnclosedElements())) {
+                if (!field.getModifiers().contains(Modifier.STATIC) && isAnnotated(field, ID) && integral(field.asType())) return field;
+            }
+        }
+        return null;
+    }
+
+    private static TypeElement superclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    private boolean integral(TypeMirror type) {
+        TypeMirror unboxed = type;
+        if (type.getKind() == TypeKind.DECLARED) {
+            try {
+                unboxed = processingEnv.getTypeUtils().unboxedType(type);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return unboxed.getKind() == TypeKind.LONG || unboxed.getKind() == TypeKind.INT || unboxed.getKind() == TypeKind.SHORT;
+    }
+
+}
@@ -0,0 +1,203 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates the virtual proxy {@code <Type>VirtualProxy} on top of vlfsoft.runtime.lazy.Lazy for
+ * {@link vlfsoft.patterns.GOF.Proxy.Virtual} and {@link vlfsoft.patterns.enterprise.peaa.PEAA.LazyLoad}:
+ * <ul>
+ * <li> on an interface or a class (non-final, with an accessible no-arg constructor) - the proxy of the type.
+ * <li> on a field - the proxy {@code <Class>_<Type>VirtualProxy} of the type of the field, in the package of the class of the field:
+ * f.e. the proxy of a {@code java.*} interface can't be in its package. The name of the class makes the proxy unique,
+ * the classes of a package can use the types of the same simple name from different packages.
+ * Nothing is generated for a field of a type, that is annotated itself (in the sources, the annotations are SOURCE), its proxy is used.
+ * </ul>
+ * The proxy implements the interface or extends the class (a ghost: the instance exists, its state is loaded on the first call)
+ * and delegates every overridable method to the loaded object:
+ * <pre>
+ * class Order {
+ *     &#64;PEAA.LazyLoad Customer customer = new Order_CustomerVirtualProxy(() -&gt; customerMapper.load(customerId));
+ * }
+ * </pre>
+ * Unlike {@link java.lang.reflect.Proxy} the calls are plain monomorphic calls, that the JIT inlines: no reflection,
+ * no boxing of the arguments, no allocation. The loaded object is published with a single CAS.
+ * <p>
+ * The final methods of a class and the protected / package-private methods of its superclasses from other packages can't be delegated,
+ * they run on the ghost itself and are reported with a warning. The generic and private types are skipped with a note.
+ */
+@SupportedAnnotationTypes({LazyLoadProcessor.VIRTUAL, LazyLoadProcessor.LAZY_LOAD})
+public class LazyLoadProcessor extends CodegenProcessor {
+
+    static final String VIRTUAL = "vlfsoft.patterns.GOF.Proxy.Virtual";
+    static final String LAZY_LOAD = "vlfsoft.patterns.enterprise.peaa.PEAA.LazyLoad";
+    private static final String RUNTIME = "vlfsoft.runtime.lazy.Lazy";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        if (element.getKind().isInterface() && element.getKind() != ElementKind.ANNOTATION_TYPE || element.getKind() == ElementKind.CLASS) {
+            // The generated proxy of a class inherits the annotation.
+            if (isAnnotated(element, GENERATED)) return;
+            generate((TypeElement) element, element);
+        } else if (element.getKind() == ElementKind.FIELD) {
+            TypeMirror type = element.asType();
+            if (type.getKind() != TypeKind.DECLARED) {
+                note("No proxy is generated for the field of a primitive or array type", element);
+                return;
+            }
+            TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+            if (isAnnotated(typeElement, VIRTUAL) || isAnnotated(typeElement, LAZY_LOAD)) return;
+            generate(typeElement, element);
+        }
+    }
+
+    /**
+     * @param element the annotated type or field, the originating element, the proxy is generated in its package.
+     */
+    private void generate(TypeElement type, Element element) {
+        String packageName = packageName(element);
+        boolean isInterface = type.getKind().isInterface();
+        if (!isInterface && (type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.FINAL))
+                || !type.getTypeParameters().isEmpty() || !accessible(type)
+                || type.getNestingKind() == NestingKind.MEMBER && !isInterface && !type.getModifiers().contains(Modifier.STATIC)) {
+            note("No proxy is generated for the final, generic, private or inner class " + type.getQualifiedName(), element);
+            return;
+        }
+        if (!packageName(type).equals(packageName) && !visible(type)) {
+            note("No proxy is generated: " + type.getQualifiedName() + " is not public", element);
+            return;
+        }
+        if (!isInterface && !hasConstructor(type, packageName)) {
+            note("No proxy is generated: " + type.getQualifiedName() + " has no accessible no-arg constructor", element);
+            return;
+        }
+        String typeName = type.getQualifiedName().toString();
+        String simpleName = element == type ? generatedName(type, "VirtualProxy")
+                : generatedName((TypeElement) element.getEnclosingElement(), "_" + generatedName(type, "VirtualProxy"));
+
+        StringBuilder methods = new StringBuilder();
+        List<String> ghostMethods = new ArrayList<>();
+        DeclaredType declaredType = (DeclaredType) type.asType();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            Set<Modifier> modifiers = method.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.PRIVATE)) continue;
+            TypeElement owner = (TypeElement) method.getEnclosingElement();
+            boolean object = owner.getQualifiedName().contentEquals(Object.class.getName());
+            String name = method.getSimpleName().toString();
+            if (object && !(name.equals("equals") || name.equals("hashCode") || name.equals("toString"))) continue;
+            if (modifiers.contains(Modifier.FINAL) || !modifiers.contains(Modifier.PUBLIC) && !packageName(owner).equals(packageName)) {
+                if (!object) ghostMethods.add(name);
+                continue;
+            }
+            delegate(methods, method, (ExecutableType) processingEnv.getTypeUtils().asMemberOf(declaredType, method));
+        }
+        if (!ghostMethods.isEmpty()) {
+            warning("The methods " + ghostMethods + " of " + typeName
+                    + " can't be delegated by the virtual proxy, they are called on the not loaded proxy itself", element);
+        }
+
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n\n");
+        s.append("import java.util.Objects;\n");
+        s.append("import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;\n");
+        s.append("import java.util.function.Supplier;\n\n");
+        s.append("/**\n");
+        s.append(" * Virtual proxy of {@link ").append(typeName).append("}, the object is loaded on the first call, generated by ")
+                .append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public final class ").append(simpleName).append(isInterface ? " implements " : " extends ").append(typeName).append(" {\n\n");
+        s.append("    private static final AtomicReferenceFieldUpdater<").append(simpleName).append(", ").append(typeName)
+                .append("> TARGET = AtomicReferenceFieldUpdater.newUpdater(").append(simpleName).append(".class, ")
+                .append(typeName).append(".class, \"target$\");\n\n");
+        s.append("    private final Supplier<? extends ").append(typeName).append("> loader$;\n");
+        s.append("    private volatile ").append(typeName).append(" target$;\n\n");
+        s.append("    /**\n     * @param loader loads the object on the first call, it can be called more than once by the concurrent first calls.\n     */\n");
+        s.append("    public ").append(simpleName).append("(Supplier<? extends ").append(typeName).append("> loader) {\n");
+        s.append("        this.loader$ = Objects.requireNonNull(loader, \"loader\");\n");
+        s.append("    }\n\n");
+        s.append("    private ").append(typeName).append(" target$() {\n");
+        s.append("        ").append(typeName).append(" target = this.target$;\n");
+        s.append("        return target != null ? target : Lazy.load(TARGET, this, loader$);\n");
+        s.append("    }\n");
+        s.append(methods);
+        s.append("\n}\n");
+        write(qualifiedName(packageName, simpleName), element, s.toString());
+    }
+
+    private void delegate(StringBuilder s, ExecutableElement method, ExecutableType type) {
+        s.append("\n    @Override\n    ");
+        s.append(method.getModifiers().contains(Modifier.PUBLIC) ? "public " : method.getModifiers().contains(Modifier.PROTECTED) ? "protected " : "");
+        if (!method.getTypeParameters().isEmpty()) {
+            s.append('<');
+            for (int i = 0; i < method.getTypeParameters().size(); i++) {
+                TypeParameterElement parameter = method.getTypeParameters().get(i);
+                if (i > 0) s.append(", ");
+                s.append(parameter.getSimpleName());
+                String bounds = "";
+                for (TypeMirror bound : parameter.getBounds()) {
+                    if (bound.toString().equals(Object.class.getName())) continue;
+                    bounds += (bounds.isEmpty() ? " extends " : " & ") + typeName(bound);
+                }
+                s.append(bounds);
+            }
+            s.append("> ");
+        }
+        s.append(typeName(type.getReturnType())).append(' ').append(method.getSimpleName()).append('(');
+        StringBuilder arguments = new StringBuilder();
+        List<? extends TypeMirror> parameterTypes = type.getParameterTypes();
+        for (int i = 0; i < parameterTypes.size(); i++) {
+            if (i > 0) {
+                s.append(", ");
+                arguments.append(", ");
+            }
+            String parameterType = typeName(parameterTypes.get(i));
+            if (method.isVarArgs() && i == parameterTypes.size() - 1) parameterType = parameterType.replaceFirst("\\[]$", "...");
+            s.append(parameterType).append(" p").append(i);
+            arguments.append('p').append(i);
+        }
+        s.append(')');
+        for (int i = 0; i < type.getThrownTypes().size(); i++) {
+            s.append(i == 0 ? " throws " : ", ").append(typeName(type.getThrownTypes().get(i)));
+        }
+        s.append(" {\n        ");
+        if (type.getReturnType().getKind() != TypeKind.VOID) s.append("return ");
+        s.append("target$().").append(method.getSimpleName()).append('(').append(arguments).append(");\n    }\n");
+    }
+
+    /**
+     * @return true, if the type and its enclosing types are public, f.e. for the proxy in another package.
+     */
+    private static boolean visible(TypeElement type) {
+        for (Element e = type; e instanceof TypeElement; e = e.getEnclosingElement()) {
+            if (!e.getModifiers().contains(Modifier.PUBLIC)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true, if the class has a no-arg constructor without exceptions, that the proxy in the package can call.
+     */
+    private static boolean hasConstructor(TypeElement type, String fromPackage) {
+        boolean samePackage = packageName(type).equals(fromPackage);
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = c.getModifiers();
+            boolean callable = modifiers.contains(Modifier.PUBLIC) || modifiers.contains(Modifier.PROTECTED)
+                    || samePackage && !modifiers.contains(Modifier.PRIVATE);
+            if (c.getParameters().isEmpty() && callable && c.getThrownTypes().isEmpty()) return true;
+        }
+        return false;
+    }
+
+}
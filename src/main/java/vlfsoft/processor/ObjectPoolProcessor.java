@@ -0,0 +1,134 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+
+/**
+ * Generates a typed pool on top of vlfsoft.runtime.pool.ObjectPool for {@link vlfsoft.patterns.Pattern.ObjectPool}:
+ * <ul>
+ * <li> class Foo (concrete, with an accessible no-arg constructor) -> FooPool, the objects are created with new Foo().
+ * <li> static no-arg method Foo.newBuffer() -> FooNewBufferPool, the objects are created with Foo.newBuffer().
+ * </ul>
+ * On release the generated pool calls reset() of the objects, that implement ObjectPool.Resettable,
+ * and close() of the objects, that implement {@link AutoCloseable}, when they leave the pool.
+ * <pre>
+ * FooPool pool = new FooPool(FooPool.builder().maxSize(64).leakDetection(ObjectPool.LeakDetection.SAMPLED));
+ * Foo foo = pool.acquire();
+ * try { ... } finally { pool.release(foo); }
+ * </pre>
+ * The elements, that can't be pooled this way (interfaces, abstract or generic classes, no accessible constructor), are skipped with a note.
+ */
+@SupportedAnnotationTypes(ObjectPoolProcessor.OBJECT_POOL)
+public class ObjectPoolProcessor extends CodegenProcessor {
+
+    static final String OBJECT_POOL = "vlfsoft.patterns.Pattern.ObjectPool";
+    private static final String RUNTIME = "vlfsoft.runtime.pool.ObjectPool";
+
+    @Override
+    String runtimeClass() {
+        return RUNTIME;
+    }
+
+    @Override
+    void generate(Element element) {
+        if (element.getKind() == ElementKind.CLASS) {
+            generate((TypeElement) element);
+        } else if (element.getKind() == ElementKind.METHOD) {
+            generate((ExecutableElement) element);
+        }
+    }
+
+    private void generate(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty() || !accessible(type)
+                || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            note("No pool is generated for the abstract, generic, private or inner class", type);
+            return;
+        }
+        boolean constructor = false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) constructor = true;
+        }
+        if (!constructor) {
+            note("No pool is generated: no accessible no-arg constructor", type);
+            return;
+        }
+        String typeName = type.getQualifiedName().toString();
+        write(type, generatedName(type, "Pool"), typeName, "new " + typeName + "()", type.asType());
+    }
+
+    private void generate(ExecutableElement method) {
+        TypeMirror returnType = method.getReturnType();
+        if (!method.getModifiers().contains(Modifier.STATIC) || !method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()
+                || returnType.getKind() != TypeKind.DECLARED || !accessible(method)) {
+            note("No pool is generated: the factory method must be static, non-private, non-generic, without parameters and return an object", method);
+            return;
+        }
+        TypeElement enclosing = (TypeElement) method.getEnclosingElement();
+        String methodName = method.getSimpleName().toString();
+        String suffix = Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1) + "Pool";
+        write(method, generatedName(enclosing, suffix), typeName(returnType),
+                enclosing.getQualifiedName() + "." + methodName + "()", returnType);
+    }
+
+    private void write(Element element, String simpleName, String typeName, String create, TypeMirror type) {
+        String packageName = packageName(element);
+        boolean resettable = isSubtype(type, RUNTIME + ".Resettable");
+        boolean closeable = isSubtype(type, AutoCloseable.class.getName());
+
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("import ").append(RUNTIME).append(";\n\n");
+        s.append("/**\n");
+        s.append(" * Pool of {@link ").append(typeName.replaceAll("<.*", "")).append("}, generated by ").append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public final class ").append(simpleName).append(" extends ObjectPool<").append(typeName).append("> {\n\n");
+        s.append("    private static final ObjectPool.Factory<").append(typeName).append("> FACTORY = new ObjectPool.Factory<")
+                .append(typeName).append(">() {\n");
+        s.append("        @Override\n");
+        s.append("        public ").append(typeName).append(" create() {\n");
+        s.append("            return ").append(create).append(";\n");
+        s.append("        }\n");
+        if (resettable) {
+            s.append("\n        @Override\n");
+            s.append("        public void reset(").append(typeName).append(" object) {\n");
+            s.append("            object.reset();\n");
+            s.append("        }\n");
+        }
+        if (closeable) {
+            s.append("\n        @Override\n");
+            s.append("        public void destroy(").append(typeName).append(" object) {\n");
+            s.append("            try {\n");
+            s.append("                object.close();\n");
+            s.append("            } catch (RuntimeException e) {\n");
+            s.append("                throw e;\n");
+            s.append("            } catch (Exception e) {\n");
+            s.append("                throw new IllegalStateException(e);\n");
+            s.append("            }\n");
+            s.append("        }\n");
+        }
+        s.append("    };\n\n");
+        s.append("    public ").append(simpleName).append("() {\n");
+        s.append("        this(builder());\n");
+        s.append("    }\n\n");
+        s.append("    public ").append(simpleName).append("(ObjectPool.Builder<").append(typeName).append("> builder) {\n");
+        s.append("        super(builder);\n");
+        s.append("    }\n\n");
+        s.append("    public static ObjectPool.Builder<").append(typeName).append("> builder() {\n");
+        s.append("        return ObjectPool.builder(FACTORY).name(\"").append(simpleName).append("\");\n");
+        s.append("    }\n\n");
+        s.append("}\n");
+        write(qualifiedName(packageName, simpleName), element, s.toString());
+    }
+
+    private boolean isSubtype(TypeMirror type, String supertype) {
+        TypeElement supertypeElement = processingEnv.getElementUtils().getTypeElement(supertype);
+        return supertypeElement != null && type instanceof DeclaredType
+                && processingEnv.getTypeUtils().isAssignable(type, processingEnv.getTypeUtils().erasure(supertypeElement.asType()));
+    }
+
+}
@@ -0,0 +1,203 @@
+package vlfsoft.processor;
+
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexWriter;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Collects usages of the vlfsoft.* annotations into {@link PatternIndex#RESOURCE}.
+ * <p>
+ * All the vlfsoft.* annotations are {@link java.lang.annotation.RetentionPolicy#SOURCE}, so the compiler is the last place,
+ * where they can be seen. The processor is registered in META-INF/services, so it runs automatically,
+ * when the sdannotations jar is on the compile classpath.
+ * <p>
+ * Besides the whole index, the processor writes one shard per top level type into {@link PatternIndex#SHARDS_DIRECTORY}.
+ * Every shard has exactly one originating element, so a build tool, that tracks generated files per source file,
+ * rewrites only the shard of the changed file. The shards are mergeable with {@link vlfsoft.index.PatternIndexReader#readShards(java.io.File)}.
+ * <p>
+ * The processor is registered in META-INF/gradle/incremental.annotation.processors as dynamic and reports its Gradle category
+ * through {@link #getSupportedOptions()}:
+ * <ul>
+ * <li> aggregating (default) - the whole index and the shards are written.
+ * Gradle re-processes the unchanged types from the class files, so it can keep the compilation incremental only for
+ * CLASS or RUNTIME retention annotations (the class-retention variant of the jar); for the SOURCE ones Gradle falls back to the full recompilation.
+ * <li> isolating ({@value #OPTION_INCREMENTAL}=isolating) - only the shards are written, a one-line edit recompiles
+ * and re-indexes only the changed file. Merge the shards with {@link vlfsoft.index.PatternIndexReader#readShards(java.io.File)}.
+ * </ul>
+ * <p>
+ * Options:
+ * <ul>
+ * <li> {@value #OPTION_INCREMENTAL} (aggregating | isolating, default aggregating) - see above.
+ * <li> {@value #OPTION_SHARDS} (default true) - write the per type shards, ignored in the isolating mode.
+ * <li> {@value #OPTION_REGISTRY} (qualified class name) - opt-in runtime mode: generate the static registry class,
+ * that maps {@link Class} / {@link java.lang.reflect.Method} / {@link java.lang.reflect.Field} to the pattern ids without
+ * java.lang.reflect annotation lookups, see {@link PatternRegistryWriter}. Not compatible with the isolating mode.
+ * </ul>
+ */
+@SupportedAnnotationTypes("vlfsoft.*")
+@SupportedOptions({PatternIndexProcessor.OPTION_INCREMENTAL, PatternIndexProcessor.OPTION_SHARDS, PatternIndexProcessor.OPTION_REGISTRY})
+public class PatternIndexProcessor extends AbstractProcessor {
+
+    public static final String OPTION_INCREMENTAL = "sdannotations.index.incremental";
+    public static final String OPTION_SHARDS = "sdannotations.index.shards";
+    public static final String OPTION_REGISTRY = "sdannotations.registry";
+
+    private static final String GRADLE_ISOLATING = "org.gradle.annotation.processing.isolating";
+    private static final String GRADLE_AGGREGATING = "org.gradle.annotation.processing.aggregating";
+
+    private static final String ANNOTATION_PREFIX = "vlfsoft.";
+
+    private ElementKeys elementKeys;
+    private final PatternIndex.Builder builder = new PatternIndex.Builder();
+    private final Map<Element, PatternIndex.Builder> shards = new LinkedHashMap<>();
+    private boolean registryWritten;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elementKeys = new ElementKeys(processingEnv.getElementUtils(), processingEnv.getTypeUtils());
+    }
+
+    @Override
+    public Set<String> getSupportedOptions() {
+        Set<String> options = new HashSet<>(super.getSupportedOptions());
+        options.add(isolating() ? GRADLE_ISOLATING : GRADLE_AGGREGATING);
+        return options;
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Set<Element> annotated = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            annotated.addAll(roundEnv.getElementsAnnotatedWith(annotation));
+        }
+        for (Element element : annotated) {
+            index(element);
+        }
+        String registry = processingEnv.getOptions().get(OPTION_REGISTRY);
+        if (registry != null && !builder.isEmpty()) {
+            if (registryWritten && !annotated.isEmpty()) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                        registry + " is already generated, the annotations of the generated sources are not included", annotated.iterator().next());
+            }
+            // The hand-written sources are all in the first round. Generating the registry there, not in the last round,
+            // lets it be compiled without "created in the last round" warning.
+            if (!registryWritten) {
+                writeRegistry(registry);
+            }
+        }
+        if (roundEnv.processingOver() && !builder.isEmpty()) {
+            if (!isolating()) {
+                write(PatternIndex.RESOURCE, builder.build(), shards.keySet().toArray(new Element[0]));
+            }
+            if (isolating() || !"false".equals(processingEnv.getOptions().get(OPTION_SHARDS))) {
+                for (Map.Entry<Element, PatternIndex.Builder> shard : shards.entrySet()) {
+                    write(PatternIndex.SHARDS_DIRECTORY + shardName(shard.getKey()) + PatternIndex.SHARD_SUFFIX, shard.getValue().build(), shard.getKey());
+                }
+            }
+        }
+        return false;
+    }
+
+    private void writeRegistry(String qualifiedName) {
+        registryWritten = true;
+        if (isolating()) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    OPTION_REGISTRY + " aggregates all the sources, it can't be used with " + OPTION_INCREMENTAL + "=isolating");
+            return;
+        }
+        try {
+            JavaFileObject source = processingEnv.getFiler().createSourceFile(qualifiedName, shards.keySet().toArray(new Element[0]));
+            try (Writer out = source.openWriter()) {
+                PatternRegistryWriter.write(out, qualifiedName, builder.build());
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + qualifiedName + ": " + e);
+        }
+    }
+
+    private boolean isolating() {
+        return processingEnv != null && "isolating".equals(processingEnv.getOptions().get(OPTION_INCREMENTAL));
+    }
+
+    private void index(Element element) {
+        String key = elementKeys.key(element);
+        PatternIndex.Kind kind = elementKeys.kind(element);
+        TypeElement enclosingType = ElementKeys.enclosingType(element);
+        String enclosingKey = enclosingType != null ? elementKeys.key(enclosingType) : null;
+        TypeElement topLevelType = ElementKeys.topLevelType(element);
+        Element originatingElement = topLevelType != null ? topLevelType : element;
+        PatternIndex.Builder shard = shards.get(originatingElement);
+        if (shard == null) {
+            shard = new PatternIndex.Builder();
+            shards.put(originatingElement, shard);
+        }
+        for (String annotation : annotationNames(element)) {
+            builder.add(key, kind, enclosingKey, annotation);
+            shard.add(key, kind, enclosingKey, annotation);
+        }
+    }
+
+    private String shardName(Element originatingElement) {
+        return originatingElement.getKind() == ElementKind.PACKAGE
+                ? elementKeys.key(originatingElement) + ".package-info"
+                : elementKeys.key(originatingElement);
+    }
+
+    /**
+     * @return names of the vlfsoft.* annotations of the element, {@link java.lang.annotation.Repeatable} containers are unwrapped.
+     */
+    private static Set<String> annotationNames(Element element) {
+        Set<String> names = new TreeSet<>();
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String name = annotationName(mirror);
+            if (!name.startsWith(ANNOTATION_PREFIX)) continue;
+            names.add(name);
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues().entrySet()) {
+                if (!entry.getKey().getSimpleName().contentEquals("value")) continue;
+                Object value = entry.getValue().getValue();
+                if (!(value instanceof List)) continue;
+                for (Object item : (List<?>) value) {
+                    Object repeated = ((AnnotationValue) item).getValue();
+                    if (repeated instanceof AnnotationMirror) {
+                        String repeatedName = annotationName((AnnotationMirror) repeated);
+                        if (repeatedName.startsWith(ANNOTATION_PREFIX)) names.add(repeatedName);
+                    }
+                }
+            }
+        }
+        return names;
+    }
+
+    private static String annotationName(AnnotationMirror mirror) {
+        return ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+    }
+
+    private void write(String name, PatternIndex index, Element... originatingElements) {
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", name, originatingElements);
+            try (OutputStream out = resource.openOutputStream()) {
+                PatternIndexWriter.write(index, out);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + name + ": " + e);
+        }
+    }
+
+}
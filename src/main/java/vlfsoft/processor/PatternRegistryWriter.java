@@ -0,0 +1,318 @@
+package vlfsoft.processor;
+
+import vlfsoft.index.PatternIndex;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates the source of the static pattern registry: element -> pattern ids through a perfect hash table.
+ * <p>
+ * The generated class is self-contained (it does not need the sdannotations jar at runtime), and its lookups
+ * by {@link Class} do not allocate and do not touch the annotations via java.lang.reflect:
+ * {@link Class#getName()} and {@link String#hashCode()} are cached by the JVM, the rest is arithmetic and array reads.
+ * <p>
+ * Perfect hash: "hash and displace". The keys are spread into buckets, every bucket gets a seed (displacement),
+ * that puts all the keys of the bucket into free slots. A lookup is one bucket read, one slot read and one {@link String#equals(Object)}.
+ * Keys with the same {@link String#hashCode()} can't be separated by the seed, the rare extra ones are kept in a small overflow list.
+ */
+final class PatternRegistryWriter {
+
+    /**
+     * Length of the chunks of the string constants: a constant must not exceed 65535 bytes in the class file.
+     */
+    private static final int CHUNK = 16 * 1024;
+    private static final int MAX_SEED = 0xFFFF;
+
+    private PatternRegistryWriter() {
+    }
+
+    // Must be the same as the generated bucket() and slot().
+    static int bucket(int hash, int buckets) {
+        return (mix(hash) & 0x7fffffff) % buckets;
+    }
+
+    static int slot(int hash, int seed, int size) {
+        return (mix(hash + (seed + 1) * 0x9e3779b9) & 0x7fffffff) % size;
+    }
+
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    static final class Table {
+        final String[] keys;
+        final int[][] values;
+        final char[] seeds;
+        final List<String> overflowKeys = new ArrayList<>();
+        final List<int[]> overflowValues = new ArrayList<>();
+
+        Table(int size, int buckets) {
+            keys = new String[size];
+            values = new int[size][];
+            seeds = new char[buckets];
+        }
+    }
+
+    static Table build(PatternIndex index) {
+        Map<Integer, Integer> firstByHash = new HashMap<>();
+        List<Integer> perfect = new ArrayList<>();
+        List<Integer> overflow = new ArrayList<>();
+        for (int element = 0; element < index.elementCount(); element++) {
+            if (firstByHash.putIfAbsent(index.element(element).hashCode(), element) == null) perfect.add(element);
+            else overflow.add(element);
+        }
+
+        int n = perfect.size();
+        for (int size = Math.max(1, n + n / 4); ; size += Math.max(1, n / 8)) {
+            Table table = tryBuild(index, perfect, size, Math.max(1, (n + 3) / 4));
+            if (table == null) continue;
+            for (int element : overflow) {
+                table.overflowKeys.add(index.element(element));
+                table.overflowValues.add(index.annotationsOf(element));
+            }
+            return table;
+        }
+    }
+
+    private static Table tryBuild(PatternIndex index, List<Integer> elements, int size, int buckets) {
+        List<List<Integer>> byBucket = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) byBucket.add(new ArrayList<>());
+        for (int element : elements) byBucket.get(bucket(index.element(element).hashCode(), buckets)).add(element);
+        Integer[] order = new Integer[buckets];
+        for (int i = 0; i < buckets; i++) order[i] = i;
+        Arrays.sort(order, (a, b) -> byBucket.get(b).size() - byBucket.get(a).size());
+
+        Table table = new Table(size, buckets);
+        boolean[] used = new boolean[size];
+        int[] slots = new int[elements.size()];
+        for (int bucket : order) {
+            List<Integer> bucketElements = byBucket.get(bucket);
+            if (bucketElements.isEmpty()) break;
+            int seed = 0;
+            for (; seed <= MAX_SEED; seed++) {
+                if (fits(index, bucketElements, seed, size, used, slots)) break;
+            }
+            if (seed > MAX_SEED) return null;
+            table.seeds[bucket] = (char) seed;
+            for (int i = 0; i < bucketElements.size(); i++) {
+                int element = bucketElements.get(i);
+                used[slots[i]] = true;
+                table.keys[slots[i]] = index.element(element);
+                table.values[slots[i]] = index.annotationsOf(element);
+            }
+        }
+        return table;
+    }
+
+    private static boolean fits(PatternIndex index, List<Integer> bucketElements, int seed, int size, boolean[] used, int[] slots) {
+        for (int i = 0; i < bucketElements.size(); i++) {
+            int slot = slot(index.element(bucketElements.get(i)).hashCode(), seed, size);
+            if (used[slot]) return false;
+            for (int j = 0; j < i; j++) {
+                if (slots[j] == slot) return false;
+            }
+            slots[i] = slot;
+        }
+        return true;
+    }
+
+    static void write(Writer out, String qualifiedName, PatternIndex index) throws IOException {
+        Table table = build(index);
+        int lastDot = qualifiedName.lastIndexOf('.');
+        String packageName = lastDot > 0 ? qualifiedName.substring(0, lastDot) : null;
+        String simpleName = qualifiedName.substring(lastDot + 1);
+
+        StringBuilder s = new StringBuilder();
+        if (packageName != null) s.append("package ").append(packageName).append(";\n\n");
+        s.append("import java.lang.reflect.Constructor;\n");
+        s.append("import java.lang.reflect.Field;\n");
+        s.append("import java.lang.reflect.Method;\n\n");
+        s.append("/**\n");
+        s.append(" * Generated by ").append(PatternIndexProcessor.class.getName()).append(", do not edit.\n");
+        s.append(" * <p>\n");
+        s.append(" * Runtime registry of the vlfsoft.* annotation usages: element -> pattern ids (indexes in {@link #PATTERNS}).\n");
+        s.append(" * The annotations itself are SOURCE retention, the registry keeps only their ids in a perfect hash table.\n");
+        s.append(" * The lookups by {@link Class} do not allocate. The returned arrays are shared, do not modify them.\n");
+        s.append(" */\n");
+        s.append("public final class ").append(simpleName).append(" {\n\n");
+
+        s.append("    public static final String[] PATTERNS = {\n");
+        for (int i = 0; i < index.annotationCount(); i++) {
+            s.append("            ").append(literal(index.annotation(i))).append(",\n");
+        }
+        s.append("    };\n\n");
+        Set<String> constants = new HashSet<>();
+        for (int i = 0; i < index.annotationCount(); i++) {
+            String constant = constantName(index.annotation(i));
+            while (!constants.add(constant)) constant += "_";
+            s.append("    public static final int ").append(constant).append(" = ").append(i).append(";\n");
+        }
+        s.append("\n");
+
+        s.append("    private static final int[] NONE = {};\n");
+        s.append("    private static final int SIZE = ").append(table.keys.length).append(";\n");
+        s.append("    private static final int BUCKETS = ").append(table.seeds.length).append(";\n");
+        s.append("    private static final String SEEDS = ").append(chunked(new String(table.seeds))).append(";\n");
+        StringBuilder keys = new StringBuilder();
+        StringBuilder values = new StringBuilder();
+        for (int slot = 0; slot < table.keys.length; slot++) {
+            if (slot > 0) keys.append('\n');
+            if (table.keys[slot] != null) {
+                keys.append(table.keys[slot]);
+                appendIds(values, table.values[slot]);
+            }
+            values.append('\0');
+        }
+        s.append("    private static final String[] KEYS = ").append(chunked(keys.toString())).append(".split(\"\\n\", -1);\n");
+        s.append("    private static final int[][] VALUES = decode(").append(chunked(values.toString())).append(", SIZE);\n");
+        StringBuilder overflowKeys = new StringBuilder();
+        StringBuilder overflowValues = new StringBuilder();
+        for (int i = 0; i < table.overflowKeys.size(); i++) {
+            if (i > 0) overflowKeys.append('\n');
+            overflowKeys.append(table.overflowKeys.get(i));
+            appendIds(overflowValues, table.overflowValues.get(i));
+            overflowValues.append('\0');
+        }
+        s.append("    private static final String[] OVERFLOW_KEYS = ").append(table.overflowKeys.isEmpty() ? "{}" : chunked(overflowKeys.toString()) + ".split(\"\\n\", -1)").append(";\n");
+        s.append("    private static final int[][] OVERFLOW_VALUES = decode(").append(chunked(overflowValues.toString())).append(", ").append(table.overflowKeys.size()).append(");\n\n");
+
+        s.append("    private ").append(simpleName).append("() {\n    }\n\n");
+
+        s.append("    /**\n     * @param element key of the element, see vlfsoft.index.PatternIndex\n     */\n");
+        s.append("    public static int[] patternsOf(String element) {\n");
+        s.append("        int hash = element.hashCode();\n");
+        s.append("        int slot = slot(hash, SEEDS.charAt(bucket(hash)));\n");
+        s.append("        if (element.equals(KEYS[slot])) return VALUES[slot];\n");
+        s.append("        for (int i = 0; i < OVERFLOW_KEYS.length; i++) {\n");
+        s.append("            if (element.equals(OVERFLOW_KEYS[i])) return OVERFLOW_VALUES[i];\n");
+        s.append("        }\n");
+        s.append("        return NONE;\n");
+        s.append("    }\n\n");
+        s.append("    public static int[] patternsOf(Class<?> type) {\n");
+        s.append("        return patternsOf(type.getName());\n");
+        s.append("    }\n\n");
+        s.append("    public static int[] patternsOf(Field field) {\n");
+        s.append("        return patternsOf(field.getDeclaringClass().getName() + '#' + field.getName());\n");
+        s.append("    }\n\n");
+        s.append("    public static int[] patternsOf(Method method) {\n");
+        s.append("        return patternsOf(executableKey(method.getDeclaringClass(), method.getName(), method.getParameterTypes()));\n");
+        s.append("    }\n\n");
+        s.append("    public static int[] patternsOf(Constructor<?> constructor) {\n");
+        s.append("        return patternsOf(executableKey(constructor.getDeclaringClass(), \"<init>\", constructor.getParameterTypes()));\n");
+        s.append("    }\n\n");
+        s.append("    public static boolean is(Class<?> type, int pattern) {\n");
+        s.append("        return contains(patternsOf(type), pattern);\n");
+        s.append("    }\n\n");
+        s.append("    public static boolean contains(int[] patterns, int pattern) {\n");
+        s.append("        for (int p : patterns) {\n");
+        s.append("            if (p == pattern) return true;\n");
+        s.append("        }\n");
+        s.append("        return false;\n");
+        s.append("    }\n\n");
+        s.append("    /**\n     * @return id of the pattern (canonical name of the annotation) or -1\n     */\n");
+        s.append("    public static int patternId(String annotation) {\n");
+        s.append("        int id = java.util.Arrays.binarySearch(PATTERNS, annotation);\n");
+        s.append("        return id >= 0 ? id : -1;\n");
+        s.append("    }\n\n");
+
+        s.append("    private static String executableKey(Class<?> type, String name, Class<?>[] parameters) {\n");
+        s.append("        StringBuilder key = new StringBuilder(type.getName()).append('#').append(name).append('(');\n");
+        s.append("        for (int i = 0; i < parameters.length; i++) {\n");
+        s.append("            if (i > 0) key.append(',');\n");
+        s.append("            key.append(parameters[i].getTypeName());\n");
+        s.append("        }\n");
+        s.append("        return key.append(')').toString();\n");
+        s.append("    }\n\n");
+        s.append("    private static int bucket(int hash) {\n");
+        s.append("        return (mix(hash) & 0x7fffffff) % BUCKETS;\n");
+        s.append("    }\n\n");
+        s.append("    private static int slot(int hash, int seed) {\n");
+        s.append("        return (mix(hash + (seed + 1) * 0x9e3779b9) & 0x7fffffff) % SIZE;\n");
+        s.append("    }\n\n");
+        s.append("    private static int mix(int h) {\n");
+        s.append("        h ^= h >>> 16;\n");
+        s.append("        h *= 0x85ebca6b;\n");
+        s.append("        h ^= h >>> 13;\n");
+        s.append("        h *= 0xc2b2ae35;\n");
+        s.append("        h ^= h >>> 16;\n");
+        s.append("        return h;\n");
+        s.append("    }\n\n");
+        s.append("    private static int[][] decode(String data, int count) {\n");
+        s.append("        int[][] result = new int[count][];\n");
+        s.append("        int start = 0;\n");
+        s.append("        for (int i = 0; i < count; i++) {\n");
+        s.append("            int end = data.indexOf('\\0', start);\n");
+        s.append("            int[] ids = end == start ? NONE : new int[end - start];\n");
+        s.append("            for (int j = start; j < end; j++) ids[j - start] = data.charAt(j) - 1;\n");
+        s.append("            result[i] = ids;\n");
+        s.append("            start = end + 1;\n");
+        s.append("        }\n");
+        s.append("        return result;\n");
+        s.append("    }\n\n");
+        s.append("}\n");
+        out.write(s.toString());
+    }
+
+    private static void appendIds(StringBuilder out, int[] ids) {
+        for (int id : ids) out.append((char) (id + 1));
+    }
+
+    /**
+     * vlfsoft.patterns.GOF.Proxy.Virtual -> GOF_PROXY_VIRTUAL: the nested type names after the package.
+     */
+    static String constantName(String annotation) {
+        StringBuilder result = new StringBuilder();
+        for (String part : annotation.split("\\.")) {
+            if (part.isEmpty() || !Character.isUpperCase(part.charAt(0))) continue;
+            if (result.length() > 0) result.append('_');
+            for (int i = 0; i < part.length(); i++) {
+                char c = part.charAt(i);
+                if (i > 0 && Character.isUpperCase(c) && Character.isLowerCase(part.charAt(i - 1))) result.append('_');
+                result.append(Character.toUpperCase(c));
+            }
+        }
+        return result.length() > 0 ? result.toString() : "PATTERN";
+    }
+
+    private static String chunked(String value) {
+        if (value.length() <= CHUNK) return literal(value);
+        StringBuilder result = new StringBuilder("new StringBuilder(").append(value.length()).append(')');
+        for (int start = 0; start < value.length(); start += CHUNK) {
+            result.append("\n            .append(").append(literal(value.substring(start, Math.min(value.length(), start + CHUNK)))).append(')');
+        }
+        return result.append(".toString()").toString();
+    }
+
+    static String literal(String value) {
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    result.append("\\\"");
+                    break;
+                case '\\':
+                    result.append("\\\\");
+                    break;
+                case '\n':
+                    result.append("\\n");
+                    break;
+                case '\r':
+                    result.append("\\r");
+                    break;
+                default:
+                    if (c < 0x20 || c >= 0x7f) result.append(String.format("\\u%04x", (int) c));
+                    else result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+}
@@ -0,0 +1,172 @@
+package vlfsoft.processor;
+
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.element.*;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Generates the singleton accessors for {@link vlfsoft.patterns.GOF.Singleton.Implementation.Lazy} and
+ * {@link vlfsoft.patterns.GOF.Singleton.Implementation.Eager}:
+ * <ul>
+ * <li> class Foo (with an accessible no-arg constructor) -> FooSingleton.get(), the instance is created with new Foo().
+ * <li> static no-arg method Foo.load() -> FooLoadSingleton.get(), the instance is created with Foo.load().
+ * </ul>
+ * Lazy - initialization-on-demand holder: the JVM initializes the holder class once, on the first get(),
+ * after that get() is a plain static final field read, no volatile read and no lock.
+ * Eager - a static final field of the generated class.
+ * <p>
+ * Checks, they run also without the runtime on the classpath:
+ * <ul>
+ * <li> error: {@link vlfsoft.patterns.ConcurrencyPattern.DoubleCheckedLocking} of a non-volatile field -
+ * another thread can see the reference to a not yet constructed object.
+ * <li> error: both Lazy and Eager.
+ * <li> warning: a Lazy singleton with a static synchronized accessor - every call takes the class lock.
+ * </ul>
+ */
+@SupportedAnnotationTypes({SingletonProcessor.LAZY, SingletonProcessor.EAGER, SingletonProcessor.DOUBLE_CHECKED_LOCKING})
+public class SingletonProcessor extends CodegenProcessor {
+
+    static final String LAZY = "vlfsoft.patterns.GOF.Singleton.Implementation.Lazy";
+    static final String EAGER = "vlfsoft.patterns.GOF.Singleton.Implementation.Eager";
+    static final String DOUBLE_CHECKED_LOCKING = "vlfsoft.patterns.ConcurrencyPattern.DoubleCheckedLocking";
+
+    @Override
+    void check(Element element) {
+        boolean lazy = isAnnotated(element, LAZY);
+        if (lazy && isAnnotated(element, EAGER)) {
+            error("A singleton can't be both @GOF.Singleton.Implementation.Lazy and @GOF.Singleton.Implementation.Eager", element);
+        }
+        if (isAnnotated(element, DOUBLE_CHECKED_LOCKING)) {
+            checkDoubleCheckedLocking(element);
+        }
+        if (lazy && element.getKind() == ElementKind.CLASS) {
+            TypeElement type = (TypeElement) element;
+            for (ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+                if (method.getModifiers().contains(Modifier.STATIC) && method.getModifiers().contains(Modifier.SYNCHRONIZED)
+                        && method.getParameters().isEmpty()
+                        && processingEnv.getTypeUtils().isAssignable(method.getReturnType(), type.asType())) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Every call of the synchronized accessor locks "
+                            + type.getSimpleName() + ".class, use the initialization-on-demand holder idiom", method);
+                }
+            }
+        }
+    }
+
+    /**
+     * The guarded field: the field itself, the fields of the type of the method result, the static fields of the own type.
+     * An annotated field is checked on its own, so it is reported once.
+     */
+    private void checkDoubleCheckedLocking(Element element) {
+        switch (element.getKind()) {
+            case FIELD:
+                checkVolatile((VariableElement) element);
+                break;
+            case METHOD: {
+                ExecutableElement method = (ExecutableElement) element;
+                if (method.getReturnType().getKind() != TypeKind.DECLARED) break;
+                boolean isStatic = method.getModifiers().contains(Modifier.STATIC);
+                for (VariableElement field : ElementFilter.fieldsIn(method.getEnclosingElement().getEnclosedElements())) {
+                    if (field.getModifiers().contains(Modifier.STATIC) == isStatic && !isAnnotated(field, DOUBLE_CHECKED_LOCKING)
+                            && sameType(field.asType(), method.getReturnType())) {
+                        checkVolatile(field);
+                    }
+                }
+                break;
+            }
+            case CLASS:
+                for (VariableElement field : ElementFilter.fieldsIn(element.getEnclosedElements())) {
+                    if (field.getModifiers().contains(Modifier.STATIC) && !isAnnotated(field, DOUBLE_CHECKED_LOCKING)
+                            && sameType(field.asType(), element.asType())) {
+                        checkVolatile(field);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void checkVolatile(VariableElement field) {
+        if (field.getModifiers().contains(Modifier.FINAL) || field.getModifiers().contains(Modifier.VOLATILE)) return;
+        error("Double-checked locking of the non-volatile field " + field.getSimpleName()
+                + ": another thread can see the reference before the object is constructed. Make it volatile or use the holder idiom", field);
+    }
+
+    private boolean sameType(TypeMirror a, TypeMirror b) {
+        return processingEnv.getTypeUtils().isSameType(processingEnv.getTypeUtils().erasure(a), processingEnv.getTypeUtils().erasure(b));
+    }
+
+    @Override
+    void generate(Element element) {
+        boolean lazy = isAnnotated(element, LAZY);
+        if (lazy == isAnnotated(element, EAGER)) return;
+        if (element.getKind() == ElementKind.CLASS) {
+            generate((TypeElement) element, lazy);
+        } else if (element.getKind() == ElementKind.METHOD) {
+            generate((ExecutableElement) element, lazy);
+        }
+    }
+
+    private void generate(TypeElement type, boolean lazy) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT) || !type.getTypeParameters().isEmpty() || !accessible(type)
+                || type.getNestingKind() == NestingKind.MEMBER && !type.getModifiers().contains(Modifier.STATIC)) {
+            note("No singleton accessor is generated for the abstract, generic, private or inner class", type);
+            return;
+        }
+        boolean constructor = false;
+        for (ExecutableElement c : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE)) constructor = true;
+        }
+        if (!constructor) {
+            note("No singleton accessor is generated: no accessible no-arg constructor, annotate the static factory method instead", type);
+            return;
+        }
+        String typeName = type.getQualifiedName().toString();
+        write(type, generatedName(type, "Singleton"), typeName, "new " + typeName + "()", lazy);
+    }
+
+    private void generate(ExecutableElement method, boolean lazy) {
+        TypeMirror returnType = method.getReturnType();
+        if (!method.getModifiers().contains(Modifier.STATIC) || !method.getParameters().isEmpty() || !method.getTypeParameters().isEmpty()
+                || returnType.getKind() != TypeKind.DECLARED || !accessible(method)) {
+            note("No singleton accessor is generated: the factory method must be static, non-private, non-generic, without parameters and return an object", method);
+            return;
+        }
+        TypeElement enclosing = (TypeElement) method.getEnclosingElement();
+        String methodName = method.getSimpleName().toString();
+        String suffix = Character.toUpperCase(methodName.charAt(0)) + methodName.substring(1) + "Singleton";
+        write(method, generatedName(enclosing, suffix), typeName(returnType), enclosing.getQualifiedName() + "." + methodName + "()", lazy);
+    }
+
+    private void write(Element element, String simpleName, String typeName, String create, boolean lazy) {
+        String packageName = packageName(element);
+        StringBuilder s = new StringBuilder();
+        s.append(packageLine(packageName));
+        s.append("/**\n");
+        s.append(" * ").append(lazy ? "Lazy" : "Eager").append(" singleton of {@link ").append(typeName.replaceAll("<.*", ""))
+                .append("}, generated by ").append(getClass().getName()).append(".\n");
+        s.append(" */\n");
+        s.append(generatedLine());
+        s.append("public final class ").append(simpleName).append(" {\n\n");
+        if (lazy) {
+            s.append("    /**\n");
+            s.append("     * Initialization-on-demand holder: the JVM initializes it on the first get(), exactly once.\n");
+            s.append("     */\n");
+            s.append("    private static final class Holder {\n");
+            s.append("        static final ").append(typeName).append(" INSTANCE = ").append(create).append(";\n");
+            s.append("    }\n\n");
+        } else {
+            s.append("    private static final ").append(typeName).append(" INSTANCE = ").append(create).append(";\n\n");
+        }
+        s.append("    private ").append(simpleName).append("() {\n    }\n\n");
+        s.append("    public static ").append(typeName).append(" get() {\n");
+        s.append("        return ").append(lazy ? "Holder.INSTANCE" : "INSTANCE").append(";\n");
+        s.append("    }\n\n");
+        s.append("}\n");
+        write(qualifiedName(packageName, simpleName), element, s.toString());
+    }
+
+}
@@ -0,0 +1,52 @@
+package vlfsoft.processor;
+
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Build time entry point of {@link TaxonomyClosureProcessor}: runs the compiler in the annotation processing only mode
+ * over the taxonomy sources and writes {@link vlfsoft.index.TaxonomyClosure#RESOURCE} into the class output.
+ * <p>
+ * Usage: TaxonomyClosureGenerator &lt;source directory&gt; &lt;class output directory&gt;
+ */
+public final class TaxonomyClosureGenerator {
+
+    private TaxonomyClosureGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TaxonomyClosureGenerator <source directory> <class output directory>");
+            System.exit(2);
+        }
+        List<File> sources = new ArrayList<>();
+        collectSources(new File(args[0]), sources);
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) throw new IllegalStateException("The taxonomy closure must be generated with JDK, not JRE");
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, null)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+            List<String> options = Arrays.asList("-proc:only", "-implicit:none", "-encoding", "UTF-8", "-d", args[1]);
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, null, options, null, units);
+            task.setProcessors(Arrays.asList(new TaxonomyClosureProcessor()));
+            if (!task.call()) throw new IllegalStateException("Generation of the taxonomy closure failed");
+        }
+    }
+
+    private static void collectSources(File directory, List<File> sources) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) collectSources(file, sources);
+            else if (file.getName().endsWith(".java")) sources.add(file);
+        }
+    }
+
+}
@@ -0,0 +1,124 @@
+package vlfsoft.processor;
+
+import vlfsoft.index.TaxonomyClosure;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.*;
+
+/**
+ * Computes {@link TaxonomyClosure} over the sources of the vlfsoft.* taxonomy and writes it into {@link TaxonomyClosure#RESOURCE}.
+ * <p>
+ * It is not registered in META-INF/services, it runs once, when the sdannotations jar is built, see {@link TaxonomyClosureGenerator}.
+ * Edges of the graph: vlfsoft.* meta-annotations of an annotation type and the values of
+ * {@link vlfsoft.tags.Related.Patterns} / {@link vlfsoft.tags.Related.Principles}.
+ */
+@SupportedAnnotationTypes("*")
+public class TaxonomyClosureProcessor extends AbstractProcessor {
+
+    private static final String ANNOTATION_PREFIX = "vlfsoft.";
+    private static final String RELATED_PATTERNS = "vlfsoft.tags.Related.Patterns";
+    private static final String RELATED_PRINCIPLES = "vlfsoft.tags.Related.Principles";
+
+    private final Map<String, Set<String>> edges = new TreeMap<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getRootElements()) {
+            collect(element);
+        }
+        if (roundEnv.processingOver() && !edges.isEmpty()) {
+            write();
+        }
+        return false;
+    }
+
+    private void collect(Element element) {
+        if (element.getKind() == ElementKind.ANNOTATION_TYPE) {
+            String name = ((TypeElement) element).getQualifiedName().toString();
+            if (name.startsWith(ANNOTATION_PREFIX)) {
+                edges.put(name, outgoing(element));
+            }
+        }
+        for (Element enclosed : element.getEnclosedElements()) {
+            if (enclosed instanceof TypeElement) collect(enclosed);
+        }
+    }
+
+    private static Set<String> outgoing(Element annotationType) {
+        Set<String> result = new TreeSet<>();
+        for (AnnotationMirror mirror : annotationType.getAnnotationMirrors()) {
+            String name = qualifiedName(mirror.getAnnotationType());
+            if (!name.startsWith(ANNOTATION_PREFIX)) continue;
+            if (name.equals(RELATED_PATTERNS) || name.equals(RELATED_PRINCIPLES)) {
+                for (AnnotationValue value : mirror.getElementValues().values()) {
+                    addClassValues(value.getValue(), result);
+                }
+            } else {
+                result.add(name);
+            }
+        }
+        return result;
+    }
+
+    private static void addClassValues(Object value, Set<String> result) {
+        if (value instanceof List) {
+            for (Object item : (List<?>) value) addClassValues(((AnnotationValue) item).getValue(), result);
+        } else if (value instanceof DeclaredType) {
+            String name = qualifiedName((DeclaredType) value);
+            if (name.startsWith(ANNOTATION_PREFIX)) result.add(name);
+        }
+    }
+
+    private static String qualifiedName(DeclaredType type) {
+        return ((TypeElement) type.asElement()).getQualifiedName().toString();
+    }
+
+    private void write() {
+        String[] annotations = edges.keySet().toArray(new String[0]);
+        Map<String, Integer> ids = new HashMap<>(annotations.length * 2);
+        for (int i = 0; i < annotations.length; i++) ids.put(annotations[i], i);
+
+        BitSet[] closures = new BitSet[annotations.length];
+        for (int i = 0; i < annotations.length; i++) {
+            BitSet closure = new BitSet(annotations.length);
+            Deque<Integer> pending = new ArrayDeque<>();
+            closure.set(i);
+            pending.push(i);
+            while (!pending.isEmpty()) {
+                for (String next : edges.get(annotations[pending.pop()])) {
+                    Integer id = ids.get(next);
+                    if (id != null && !closure.get(id)) {
+                        closure.set(id);
+                        pending.push(id);
+                    }
+                }
+            }
+            closures[i] = closure;
+        }
+
+        try {
+            FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", TaxonomyClosure.RESOURCE);
+            try (OutputStream out = resource.openOutputStream()) {
+                TaxonomyClosure.write(annotations, closures, out);
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Unable to write " + TaxonomyClosure.RESOURCE + ": " + e);
+        }
+    }
+
+}
@@ -0,0 +1,344 @@
+package vlfsoft.query;
+
+import vlfsoft.index.PatternIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Query over {@link PatternIndex}: a conjunction of annotation predicates, f.e.
+ * <pre>
+ * PatternQuery.annotatedWith("DDD.Aggregate.Root").and("PEAA.OptimisticOfflineLock").kind(PatternIndex.Kind.TYPE)
+ * PatternQuery.annotatedWith("EIP.MessageEndpoint.EventDrivenConsumer").kind(PatternIndex.Kind.METHOD).inside("DDD.InfrastructureLayer")
+ * </pre>
+ * The required annotations are answered by intersection of their posting lists ({@link PatternIndex#elementsAnnotatedWith(int)}),
+ * starting from the shortest one, so the cost depends on the size of the answer, not on the size of the index.
+ * Dense posting lists are intersected as bitmaps. The other predicates filter the intersection.
+ * <p>
+ * The annotation names are canonical names or their unique suffixes ("DDD.Aggregate.Root"), resolved against the queried index.
+ * An annotation, that is not used in the index, matches nothing.
+ * <p>
+ * Text form ({@link #parse(String)}), the terms are separated by whitespace or '&amp;':
+ * <ul>
+ * <li> {@code Name} or {@code @Name} - the element is annotated with Name
+ * <li> {@code !Name} - the element is not annotated with Name
+ * <li> {@code kind:method} - the element is of the {@link PatternIndex.Kind}
+ * <li> {@code in:Name} - an enclosing type of the element is annotated with Name
+ * </ul>
+ * f.e. {@code "@EIP.MessageEndpoint.EventDrivenConsumer & kind:method & in:DDD.InfrastructureLayer"}
+ */
+public final class PatternQuery {
+
+    /**
+     * The longer list is galloped, if it is at least GALLOP_RATIO times longer than the shorter one.
+     */
+    private static final int GALLOP_RATIO = 16;
+    private static final int BITMAP_PROBES = 64;
+    /**
+     * The posting lists are intersected as bitmaps, if the shortest one contains at least 1 / DENSE_RATIO of the elements.
+     */
+    private static final int DENSE_RATIO = 32;
+
+    private final List<String> required = new ArrayList<>();
+    private final List<String> excluded = new ArrayList<>();
+    private final List<String> enclosing = new ArrayList<>();
+    private PatternIndex.Kind kind;
+
+    private PatternQuery() {
+    }
+
+    /**
+     * @return query, that matches all the elements of the index.
+     */
+    public static PatternQuery all() {
+        return new PatternQuery();
+    }
+
+    public static PatternQuery annotatedWith(String annotation) {
+        return new PatternQuery().and(annotation);
+    }
+
+    public PatternQuery and(String annotation) {
+        required.add(annotation);
+        return this;
+    }
+
+    public PatternQuery not(String annotation) {
+        excluded.add(annotation);
+        return this;
+    }
+
+    public PatternQuery kind(PatternIndex.Kind kind) {
+        this.kind = kind;
+        return this;
+    }
+
+    /**
+     * The element is nested (directly or not) in a type, that is annotated with the annotation.
+     */
+    public PatternQuery inside(String annotation) {
+        enclosing.add(annotation);
+        return this;
+    }
+
+    public static PatternQuery parse(String query) {
+        PatternQuery result = new PatternQuery();
+        for (String term : query.trim().split("[\\s&]+")) {
+            if (term.isEmpty()) continue;
+            if (term.startsWith("kind:")) {
+                result.kind(PatternIndex.Kind.valueOf(term.substring("kind:".length()).toUpperCase()));
+            } else if (term.startsWith("in:")) {
+                result.inside(annotationName(term.substring("in:".length())));
+            } else if (term.startsWith("!")) {
+                result.not(annotationName(term.substring(1)));
+            } else {
+                result.and(annotationName(term));
+            }
+        }
+        return result;
+    }
+
+    private static String annotationName(String term) {
+        String name = term.startsWith("@") ? term.substring(1) : term;
+        if (name.isEmpty()) throw new IllegalArgumentException("Annotation name expected: " + term);
+        return name;
+    }
+
+    /**
+     * @return sorted ids of the matching elements.
+     */
+    public int[] execute(PatternIndex index) {
+        int[][] requiredPostings = new int[required.size()][];
+        for (int i = 0; i < requiredPostings.length; i++) {
+            int id = annotationId(index, required.get(i));
+            if (id < 0) return new int[0];
+            requiredPostings[i] = index.elementsAnnotatedWith(id);
+        }
+        int[][] enclosingPostings = new int[enclosing.size()][];
+        for (int i = 0; i < enclosingPostings.length; i++) {
+            int id = annotationId(index, enclosing.get(i));
+            if (id < 0) return new int[0];
+            enclosingPostings[i] = index.elementsAnnotatedWith(id);
+        }
+        int[][] excludedPostings = new int[excluded.size()][];
+        int excludedCount = 0;
+        for (String annotation : excluded) {
+            int id = annotationId(index, annotation);
+            if (id >= 0) excludedPostings[excludedCount++] = index.elementsAnnotatedWith(id);
+        }
+        excludedPostings = Arrays.copyOf(excludedPostings, excludedCount);
+
+        int[] result;
+        int size;
+        if (requiredPostings.length == 0) {
+            size = index.elementCount();
+            result = new int[size];
+            for (int i = 0; i < size; i++) result[i] = i;
+        } else {
+            Arrays.sort(requiredPostings, (a, b) -> Integer.compare(a.length, b.length));
+            result = requiredPostings[0].clone();
+            if (requiredPostings.length > 1 && (long) result.length * DENSE_RATIO >= index.elementCount()) {
+                size = intersectBitmaps(result, requiredPostings, index.elementCount());
+            } else {
+                size = result.length;
+                for (int i = 1; i < requiredPostings.length && size > 0; i++) {
+                    size = intersect(result, size, requiredPostings[i]);
+                }
+            }
+        }
+
+        if (kind == null && excludedPostings.length == 0 && enclosingPostings.length == 0) {
+            return size == result.length ? result : Arrays.copyOf(result, size);
+        }
+        ElementSet[] excludedSets = ElementSet.of(excludedPostings, size, index.elementCount());
+        ElementSet[] enclosingSets = ElementSet.of(enclosingPostings, size, index.elementCount());
+        int matched = 0;
+        for (int i = 0; i < size; i++) {
+            int element = result[i];
+            if (kind != null && index.kind(element) != kind) continue;
+            if (containedInAny(excludedSets, element)) continue;
+            if (!enclosedByAll(index, enclosingSets, element)) continue;
+            result[matched++] = element;
+        }
+        return matched == result.length ? result : Arrays.copyOf(result, matched);
+    }
+
+    /**
+     * @return keys of the matching elements in the order of the keys.
+     */
+    public List<String> elements(PatternIndex index) {
+        int[] ids = execute(index);
+        if (ids.length == 0) return Collections.emptyList();
+        List<String> result = new ArrayList<>(ids.length);
+        for (int id : ids) result.add(index.element(id));
+        return result;
+    }
+
+    /**
+     * Intersects the sorted ids {@code a[0..size)} with the sorted ids b in place.
+     * Lists of the similar size are merged, otherwise the shorter list drives the search and the longer one is galloped,
+     * so a rare annotation intersected with a frequent one costs O(rare * log(frequent / rare)).
+     *
+     * @return size of the intersection in a.
+     */
+    static int intersect(int[] a, int size, int[] b) {
+        if (b.length / GALLOP_RATIO <= size) return merge(a, size, b);
+        int result = 0;
+        int from = 0;
+        for (int i = 0; i < size && from < b.length; i++) {
+            int value = a[i];
+            int found = gallop(b, from, value);
+            if (found < b.length && b[found] == value) {
+                a[result++] = value;
+                from = found + 1;
+            } else {
+                from = found;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Intersection of the dense posting lists as bitmaps of the element ids, the sorted ids are written into result.
+     *
+     * @return size of the intersection.
+     */
+    private static int intersectBitmaps(int[] result, int[][] postings, int elementCount) {
+        int words = (elementCount + 63) >>> 6;
+        long[] bits = new long[words];
+        long[] other = new long[words];
+        for (int element : postings[0]) bits[element >>> 6] |= 1L << element;
+        for (int i = 1; i < postings.length; i++) {
+            Arrays.fill(other, 0L);
+            for (int element : postings[i]) other[element >>> 6] |= 1L << element;
+            for (int word = 0; word < words; word++) bits[word] &= other[word];
+        }
+        int size = 0;
+        for (int word = 0; word < words; word++) {
+            for (long value = bits[word]; value != 0; value &= value - 1) {
+                result[size++] = (word << 6) + Long.numberOfTrailingZeros(value);
+            }
+        }
+        return size;
+    }
+
+    private static int merge(int[] a, int size, int[] b) {
+        int result = 0;
+        int i = 0;
+        int j = 0;
+        // Branch-free steps: the outcome of the comparison of two posting lists is unpredictable.
+        while (i < size && j < b.length) {
+            int x = a[i];
+            int y = b[j];
+            a[result] = x;
+            result += x == y ? 1 : 0;
+            i += x <= y ? 1 : 0;
+            j += x >= y ? 1 : 0;
+        }
+        return result;
+    }
+
+    /**
+     * @return index of the first element of sorted[from..) that is &gt;= value, or sorted.length.
+     */
+    private static int gallop(int[] sorted, int from, int value) {
+        int bound = 1;
+        int low = from;
+        while (from + bound < sorted.length && sorted[from + bound] < value) {
+            low = from + bound;
+            bound <<= 1;
+        }
+        int high = Math.min(from + bound, sorted.length - 1);
+        if (sorted[high] < value) return sorted.length;
+        if (sorted[low] >= value) return low;
+        // sorted[low] < value <= sorted[high]
+        while (high - low > 1) {
+            int middle = (low + high) >>> 1;
+            if (sorted[middle] < value) low = middle;
+            else high = middle;
+        }
+        return high;
+    }
+
+    private static boolean containedInAny(ElementSet[] sets, int element) {
+        for (ElementSet set : sets) {
+            if (set.contains(element)) return true;
+        }
+        return false;
+    }
+
+    private static boolean enclosedByAll(PatternIndex index, ElementSet[] sets, int element) {
+        for (ElementSet set : sets) {
+            boolean found = false;
+            for (int type = index.enclosingType(element); type >= 0 && !found; type = index.enclosingType(type)) {
+                found = set.contains(type);
+            }
+            if (!found) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Membership test of a posting list: binary search for a few probes, a bitmap of the element ids for many.
+     */
+    private static final class ElementSet {
+        private final int[] posting;
+        private final long[] bits;
+
+        private ElementSet(int[] posting, int probes, int elementCount) {
+            this.posting = posting;
+            if (probes > BITMAP_PROBES && probes > posting.length / 8) {
+                bits = new long[(elementCount + 63) >>> 6];
+                for (int element : posting) bits[element >>> 6] |= 1L << element;
+            } else {
+                bits = null;
+            }
+        }
+
+        static ElementSet[] of(int[][] postings, int probes, int elementCount) {
+            ElementSet[] result = new ElementSet[postings.length];
+            for (int i = 0; i < postings.length; i++) result[i] = new ElementSet(postings[i], probes, elementCount);
+            return result;
+        }
+
+        boolean contains(int element) {
+            return bits != null ? (bits[element >>> 6] & 1L << element) != 0 : Arrays.binarySearch(posting, element) >= 0;
+        }
+    }
+
+    /**
+     * @return id of the annotation, given by the canonical name or its unique suffix, or -1.
+     * @throws IllegalArgumentException if the suffix matches several annotations of the index.
+     */
+    static int annotationId(PatternIndex index, String annotation) {
+        int id = index.annotationId(annotation);
+        if (id >= 0) return id;
+        String suffix = "." + annotation;
+        for (int i = 0; i < index.annotationCount(); i++) {
+            if (!index.annotation(i).endsWith(suffix)) continue;
+            if (id >= 0) {
+                throw new IllegalArgumentException(annotation + " is ambiguous: " + index.annotation(id) + ", " + index.annotation(i));
+            }
+            id = i;
+        }
+        return id;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (String annotation : required) append(result, "@" + annotation);
+        for (String annotation : excluded) append(result, "!" + annotation);
+        if (kind != null) append(result, "kind:" + kind.name().toLowerCase());
+        for (String annotation : enclosing) append(result, "in:" + annotation);
+        return result.toString();
+    }
+
+    private static void append(StringBuilder result, String term) {
+        if (result.length() > 0) result.append(" & ");
+        result.append(term);
+    }
+
+}
@@ -0,0 +1,110 @@
+package vlfsoft.query;
+
+import vlfsoft.index.PatternIndex;
+import vlfsoft.index.PatternIndexReader;
+import vlfsoft.scanner.ClasspathScanner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarFile;
+import java.util.zip.ZipEntry;
+
+/**
+ * Command line front end of {@link PatternQuery}.
+ * <p>
+ * Usage: PatternQueryTool [-index &lt;path&gt;[:&lt;path&gt;...]] [-scan &lt;classpath&gt;] [-count] [-time] &lt;query&gt;...
+ * <ul>
+ * <li> -index - the index files (.idx), class directories or jars; {@link PatternIndex#RESOURCE} is read from the directories
+ * and jars, if there is none, the shards ({@link PatternIndex#SHARDS_DIRECTORY}) are merged.
+ * Without -index and -scan the indexes of the tool's own classpath are used.
+ * <li> -scan - build the index from the bytecode of the classpath with {@link ClasspathScanner}.
+ * <li> -count - print the number of the matching elements instead of the elements.
+ * <li> -time - print the time of the query (without loading of the index) to stderr.
+ * </ul>
+ * f.e. {@code PatternQueryTool -index build/libs/app.jar "DDD.Aggregate.Root & PEAA.OptimisticOfflineLock"}
+ */
+public final class PatternQueryTool {
+
+    private static final String USAGE = "Usage: PatternQueryTool [-index <path>[" + File.pathSeparator + "<path>...]] [-scan <classpath>] [-count] [-time] <query>...";
+
+    private PatternQueryTool() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        List<PatternIndex> indexes = new ArrayList<>();
+        boolean count = false;
+        boolean time = false;
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (("-index".equals(arg) || "-scan".equals(arg)) && i + 1 < args.length) {
+                String paths = args[++i];
+                if ("-scan".equals(arg)) {
+                    indexes.add(new ClasspathScanner(ForkJoinPool.commonPool(), skipped -> System.err.println("Skipped " + skipped)).scan(paths));
+                } else {
+                    for (String path : paths.split(File.pathSeparator)) {
+                        if (!path.isEmpty()) indexes.add(read(new File(path)));
+                    }
+                }
+            } else if ("-count".equals(arg)) {
+                count = true;
+            } else if ("-time".equals(arg)) {
+                time = true;
+            } else {
+                query.append(arg).append(' ');
+            }
+        }
+        if (query.toString().trim().isEmpty()) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        PatternIndex index;
+        if (indexes.isEmpty()) index = PatternIndexReader.readAll(PatternQueryTool.class.getClassLoader());
+        else index = indexes.size() == 1 ? indexes.get(0) : PatternIndex.merge(indexes);
+
+        PatternQuery patternQuery;
+        int[] elements;
+        long start = System.nanoTime();
+        try {
+            patternQuery = PatternQuery.parse(query.toString());
+            elements = patternQuery.execute(index);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (count) {
+            System.out.println(elements.length);
+        } else {
+            for (int element : elements) {
+                System.out.println(index.kind(element).name().toLowerCase() + ' ' + index.element(element));
+            }
+        }
+        if (time) {
+            System.err.printf("%s: %d of %d elements in %.1f us%n", patternQuery, elements.length, index.elementCount(), elapsed / 1000.0);
+        }
+    }
+
+    private static PatternIndex read(File file) throws IOException {
+        if (file.isDirectory()) {
+            File resource = new File(file, PatternIndex.RESOURCE);
+            return resource.isFile() ? PatternIndexReader.read(resource) : PatternIndexReader.readShards(file);
+        }
+        if (!file.getName().endsWith(".jar")) return PatternIndexReader.read(file);
+        try (JarFile jar = new JarFile(file)) {
+            ZipEntry entry = jar.getEntry(PatternIndex.RESOURCE);
+            if (entry == null) return PatternIndexReader.readShards(file);
+            try (InputStream in = jar.getInputStream(entry)) {
+                return PatternIndexReader.read(in);
+            }
+        }
+    }
+
+}
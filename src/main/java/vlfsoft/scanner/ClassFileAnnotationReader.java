@@ -0,0 +1,329 @@
+package vlfsoft.scanner;
+
+import vlfsoft.index.PatternIndex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the vlfsoft.* annotations from a class file.
+ * <p>
+ * See <a href="https://docs.oracle.com/javase/specs/jvms/se8/html/jvms-4.html">The class File Format</a>
+ * <p>
+ * The reader is allocation-free for the classes without the vlfsoft.* annotations: the constant pool is kept as offsets
+ * in a reused int[], the attribute and type names are compared as bytes in place.
+ * Strings are created only for the elements, that are added to the index.
+ * <p>
+ * Only the annotation attributes are parsed: RuntimeInvisibleAnnotations (CLASS retention)
+ * and RuntimeVisibleAnnotations (RUNTIME retention). SOURCE retention annotations are not in the class files at all.
+ * Parameter annotations are not read: the class files do not keep the parameter names, that the index uses as keys.
+ * <p>
+ * The annotations of a class go to the builder after the whole class is read: a malformed class (a runtime exception) adds nothing.
+ * <p>
+ * Not thread-safe, use one reader per thread.
+ */
+final class ClassFileAnnotationReader {
+
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final byte[] RUNTIME_INVISIBLE_ANNOTATIONS = ascii("RuntimeInvisibleAnnotations");
+    private static final byte[] RUNTIME_VISIBLE_ANNOTATIONS = ascii("RuntimeVisibleAnnotations");
+    private static final byte[] ANNOTATION_PREFIX = ascii("Lvlfsoft/");
+    private static final byte[] CONSTRUCTOR = ascii("<init>");
+
+    private int[] constantPool = new int[1024];
+    private ByteBuffer buffer;
+    private final StringBuilder chars = new StringBuilder(128);
+    /**
+     * Annotations of the class being read, by 4: element, kind, enclosing type, annotation.
+     */
+    private final List<Object> found = new ArrayList<>();
+
+    // Element, that is being read, its key is created lazily on the first vlfsoft.* annotation.
+    private String classKey;
+    private int thisClass;
+    private int memberName;
+    private int memberDescriptor;
+    private PatternIndex.Kind memberKind;
+    private String memberKey;
+
+    /**
+     * @param classFile class file from its position to its limit, the position is not preserved
+     * @throws RuntimeException f.e. IndexOutOfBoundsException, if the class file is malformed or truncated
+     */
+    void read(ByteBuffer classFile, PatternIndex.Builder builder) {
+        found.clear();
+        buffer = classFile;
+        int base = buffer.position();
+        if (buffer.getInt(base) != MAGIC) return;
+        int position = readConstantPool(base + 8);
+
+        position += 2; // access_flags
+        thisClass = u2(position);
+        classKey = null;
+        position += 4; // this_class, super_class
+        position += 2 + 2 * u2(position); // interfaces
+
+        position = readMembers(position, PatternIndex.Kind.FIELD);
+        position = readMembers(position, PatternIndex.Kind.METHOD);
+
+        memberKind = PatternIndex.Kind.TYPE;
+        memberKey = null;
+        readAttributes(position);
+        buffer = null;
+        for (int i = 0; i < found.size(); i += 4) {
+            builder.add((String) found.get(i), (PatternIndex.Kind) found.get(i + 1), (String) found.get(i + 2), (String) found.get(i + 3));
+        }
+    }
+
+    private int readConstantPool(int position) {
+        int count = u2(position);
+        position += 2;
+        if (constantPool.length < count) constantPool = new int[Math.max(count, constantPool.length * 2)];
+        for (int i = 1; i < count; i++) {
+            constantPool[i] = position;
+            int tag = buffer.get(position) & 0xFF;
+            switch (tag) {
+                case 1: // Utf8
+                    position += 3 + u2(position + 1);
+                    break;
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                    position += 5;
+                    break;
+                case 5: // Long
+                case 6: // Double
+                    position += 9;
+                    i++;
+                    break;
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                    position += 3;
+                    break;
+                case 15: // MethodHandle
+                    position += 4;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+            }
+        }
+        return position;
+    }
+
+    private int readMembers(int position, PatternIndex.Kind kind) {
+        int count = u2(position);
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            memberName = u2(position + 2);
+            memberDescriptor = u2(position + 4);
+            memberKind = kind == PatternIndex.Kind.METHOD && utf8Equals(memberName, CONSTRUCTOR) ? PatternIndex.Kind.CONSTRUCTOR : kind;
+            memberKey = null;
+            position = readAttributes(position + 6);
+        }
+        return position;
+    }
+
+    private int readAttributes(int position) {
+        int count = u2(position);
+        position += 2;
+        for (int i = 0; i < count; i++) {
+            int name = u2(position);
+            int length = buffer.getInt(position + 2);
+            position += 6;
+            if (utf8Equals(name, RUNTIME_INVISIBLE_ANNOTATIONS) || utf8Equals(name, RUNTIME_VISIBLE_ANNOTATIONS)) {
+                int annotations = u2(position);
+                int p = position + 2;
+                for (int j = 0; j < annotations; j++) p = readAnnotation(p);
+            }
+            position += length;
+        }
+        return position;
+    }
+
+    private int readAnnotation(int position) {
+        int type = u2(position);
+        if (utf8StartsWith(type, ANNOTATION_PREFIX)) {
+            found.add(elementKey());
+            found.add(memberKind);
+            found.add(memberKind == PatternIndex.Kind.TYPE ? outerClassKey() : classKey());
+            found.add(annotationName(type));
+        }
+        int pairs = u2(position + 2);
+        position += 4;
+        for (int i = 0; i < pairs; i++) position = readElementValue(position + 2);
+        return position;
+    }
+
+    /**
+     * Skips element_value, the nested vlfsoft.* annotations (f.e. in {@link java.lang.annotation.Repeatable} containers) are added.
+     */
+    private int readElementValue(int position) {
+        int tag = buffer.get(position) & 0xFF;
+        switch (tag) {
+            case 'e':
+                return position + 5;
+            case '@':
+                return readAnnotation(position + 1);
+            case '[': {
+                int count = u2(position + 1);
+                position += 3;
+                for (int i = 0; i < count; i++) position = readElementValue(position);
+                return position;
+            }
+            default: // const_value_index or class_info_index
+                return position + 3;
+        }
+    }
+
+    private String classKey() {
+        if (classKey == null) {
+            chars.setLength(0);
+            appendInternalName(u2(constantPool[thisClass] + 1));
+            classKey = chars.toString();
+        }
+        return classKey;
+    }
+
+    /**
+     * @return key of the outer class of the nested class or null
+     */
+    private String outerClassKey() {
+        String key = classKey();
+        int dollar = key.lastIndexOf('$');
+        return dollar > 0 ? key.substring(0, dollar) : null;
+    }
+
+    private String elementKey() {
+        if (memberKind == PatternIndex.Kind.TYPE) return classKey();
+        if (memberKey != null) return memberKey;
+        String classKey = classKey();
+        chars.setLength(0);
+        chars.append(classKey).append('#');
+        appendUtf8(memberName);
+        if (memberKind != PatternIndex.Kind.FIELD) appendParameters(memberDescriptor);
+        return memberKey = chars.toString();
+    }
+
+    /**
+     * Lvlfsoft/patterns/GOF$Singleton$Implementation$Lazy; -> vlfsoft.patterns.GOF.Singleton.Implementation.Lazy
+     */
+    private String annotationName(int descriptor) {
+        int offset = constantPool[descriptor];
+        int length = u2(offset + 1);
+        chars.setLength(0);
+        for (int i = offset + 4; i < offset + 2 + length; i++) {
+            char c = (char) (buffer.get(i) & 0xFF);
+            chars.append(c == '/' || c == '$' ? '.' : c);
+        }
+        return chars.toString();
+    }
+
+    private void appendInternalName(int utf8) {
+        int start = chars.length();
+        appendUtf8(utf8);
+        for (int i = start; i < chars.length(); i++) {
+            if (chars.charAt(i) == '/') chars.setCharAt(i, '.');
+        }
+    }
+
+    /**
+     * (ILjava/lang/String;[[J)V -> (int,java.lang.String,long[][])
+     */
+    private void appendParameters(int descriptor) {
+        int offset = constantPool[descriptor];
+        int end = offset + 3 + u2(offset + 1);
+        int p = offset + 4; // after '('
+        chars.append('(');
+        boolean first = true;
+        while (p < end && buffer.get(p) != ')') {
+            if (!first) chars.append(',');
+            first = false;
+            int dimensions = 0;
+            while (buffer.get(p) == '[') {
+                dimensions++;
+                p++;
+            }
+            char c = (char) buffer.get(p++);
+            if (c == 'L') {
+                while (buffer.get(p) != ';') {
+                    char n = (char) (buffer.get(p++) & 0xFF);
+                    chars.append(n == '/' ? '.' : n);
+                }
+                p++;
+            } else {
+                chars.append(primitive(c));
+            }
+            for (int i = 0; i < dimensions; i++) chars.append("[]");
+        }
+        chars.append(')');
+    }
+
+    private static String primitive(char descriptor) {
+        switch (descriptor) {
+            case 'B':
+                return "byte";
+            case 'C':
+                return "char";
+            case 'D':
+                return "double";
+            case 'F':
+                return "float";
+            case 'I':
+                return "int";
+            case 'J':
+                return "long";
+            case 'S':
+                return "short";
+            case 'Z':
+                return "boolean";
+            default:
+                return "void";
+        }
+    }
+
+    private void appendUtf8(int utf8) {
+        int offset = constantPool[utf8];
+        int length = u2(offset + 1);
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = buffer.get(offset + 3 + i);
+        // Modified UTF-8 differs from UTF-8 only for \0 and the supplementary characters, that are not in the class names.
+        chars.append(new String(bytes, StandardCharsets.UTF_8));
+    }
+
+    private boolean utf8Equals(int utf8, byte[] expected) {
+        int offset = constantPool[utf8];
+        return u2(offset + 1) == expected.length && bytesEqual(offset + 3, expected);
+    }
+
+    private boolean utf8StartsWith(int utf8, byte[] prefix) {
+        int offset = constantPool[utf8];
+        return u2(offset + 1) >= prefix.length && bytesEqual(offset + 3, prefix);
+    }
+
+    private boolean bytesEqual(int position, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (buffer.get(position + i) != expected[i]) return false;
+        }
+        return true;
+    }
+
+    private int u2(int position) {
+        return buffer.getShort(position) & 0xFFFF;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+}
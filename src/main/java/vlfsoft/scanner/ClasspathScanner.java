@@ -0,0 +1,372 @@
+package vlfsoft.scanner;
+
+import vlfsoft.index.PatternIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Finds the vlfsoft.* annotations in the bytecode of a classpath (jars and class directories) and builds {@link PatternIndex}
+ * without the sources, f.e. for the jars compiled before the index existed.
+ * <p>
+ * Only CLASS and RUNTIME retention annotations are in the bytecode, so the scanned code must be compiled
+ * against the CLASS retention variant of sdannotations (classifier class-retention).
+ * <p>
+ * Every jar is memory-mapped, its central directory is read in place, the class entries are read from the mapping
+ * (stored) or inflated into a per thread buffer (deflated). Only the annotation attributes of the classes are parsed,
+ * see {@link ClassFileAnnotationReader}. Jars and large jar ranges are scanned in parallel on a {@link ForkJoinPool}.
+ * <p>
+ * A class, that can't be read (f.e. a truncated entry or an unknown constant pool tag of a newer class file version), is skipped
+ * and reported to the listener of the skipped classes, the rest of the classpath is scanned.
+ */
+public final class ClasspathScanner {
+
+    private static final int EOCD_SIGNATURE = 0x06054b50;
+    private static final int ZIP64_EOCD_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+
+    /**
+     * Entries of a jar, that are scanned by a single task.
+     */
+    private static final int ENTRIES_PER_TASK = 1024;
+
+    private static final byte[] CLASS_SUFFIX = ascii(".class");
+    private static final byte[] META_INF = ascii("META-INF/");
+    private static final byte[] MODULE_INFO = ascii("module-info.class");
+
+    private static final ThreadLocal<Worker> WORKERS = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    private final ForkJoinPool pool;
+    private final Consumer<String> skipped;
+
+    public ClasspathScanner() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public ClasspathScanner(ForkJoinPool pool) {
+        this(pool, skippedClass -> {
+        });
+    }
+
+    /**
+     * @param skipped gets "&lt;jar&gt;!/&lt;entry&gt;: &lt;exception&gt;" (or the class file) of every skipped class, called concurrently
+     */
+    public ClasspathScanner(ForkJoinPool pool, Consumer<String> skipped) {
+        this.pool = pool;
+        this.skipped = skipped;
+    }
+
+    public PatternIndex scan(List<File> classpath) {
+        return pool.invoke(new ClasspathTask(classpath, skipped));
+    }
+
+    public PatternIndex scan(String classpath) {
+        List<File> files = new ArrayList<>();
+        for (String path : classpath.split(File.pathSeparator)) {
+            if (!path.isEmpty()) files.add(new File(path));
+        }
+        return scan(files);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Per thread reused state: the class file reader and the inflate buffers.
+     */
+    private static final class Worker {
+        final ClassFileAnnotationReader reader = new ClassFileAnnotationReader();
+        final Inflater inflater = new Inflater(true);
+        byte[] compressed = new byte[64 * 1024];
+        byte[] inflated;
+        ByteBuffer inflatedView;
+
+        Worker() {
+            inflate(64 * 1024);
+        }
+
+        byte[] inflate(int size) {
+            if (inflated == null || inflated.length < size) {
+                inflated = new byte[Math.max(size, inflated == null ? 0 : inflated.length * 2)];
+                inflatedView = ByteBuffer.wrap(inflated);
+            }
+            return inflated;
+        }
+    }
+
+    private static final class ClasspathTask extends RecursiveTask<PatternIndex> {
+        private static final long serialVersionUID = 1L;
+        private final List<File> classpath;
+        private final Consumer<String> skipped;
+
+        ClasspathTask(List<File> classpath, Consumer<String> skipped) {
+            this.classpath = classpath;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected PatternIndex compute() {
+            List<RecursiveTask<PatternIndex>> tasks = new ArrayList<>(classpath.size());
+            for (File file : classpath) {
+                RecursiveTask<PatternIndex> task = file.isDirectory() ? new DirectoryTask(file, skipped) : new JarTask(file, skipped);
+                task.fork();
+                tasks.add(task);
+            }
+            List<PatternIndex> indexes = new ArrayList<>(tasks.size());
+            for (RecursiveTask<PatternIndex> task : tasks) {
+                PatternIndex index = task.join();
+                if (index.elementCount() > 0) indexes.add(index);
+            }
+            return indexes.size() == 1 ? indexes.get(0) : PatternIndex.merge(indexes);
+        }
+    }
+
+    private static final class JarTask extends RecursiveTask<PatternIndex> {
+        private static final long serialVersionUID = 1L;
+        private final File jar;
+        private final Consumer<String> skipped;
+
+        JarTask(File jar, Consumer<String> skipped) {
+            this.jar = jar;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected PatternIndex compute() {
+            if (!jar.isFile()) return PatternIndex.EMPTY;
+            MappedByteBuffer mapping;
+            try (FileChannel channel = FileChannel.open(jar.toPath(), StandardOpenOption.READ)) {
+                mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to map " + jar, e);
+            }
+            ByteBuffer zip = mapping.order(ByteOrder.LITTLE_ENDIAN);
+            int[] classEntries = classEntries(zip);
+            if (classEntries.length <= ENTRIES_PER_TASK) {
+                return scanEntries(zip, classEntries, 0, classEntries.length, jar, skipped);
+            }
+            List<RangeTask> tasks = new ArrayList<>();
+            for (int from = 0; from < classEntries.length; from += ENTRIES_PER_TASK) {
+                RangeTask task = new RangeTask(zip, classEntries, from, Math.min(classEntries.length, from + ENTRIES_PER_TASK), jar, skipped);
+                task.fork();
+                tasks.add(task);
+            }
+            List<PatternIndex> indexes = new ArrayList<>(tasks.size());
+            for (RangeTask task : tasks) indexes.add(task.join());
+            return PatternIndex.merge(indexes);
+        }
+    }
+
+    private static final class RangeTask extends RecursiveTask<PatternIndex> {
+        private static final long serialVersionUID = 1L;
+        private final ByteBuffer zip;
+        private final int[] classEntries;
+        private final int from;
+        private final int to;
+        private final File jar;
+        private final Consumer<String> skipped;
+
+        RangeTask(ByteBuffer zip, int[] classEntries, int from, int to, File jar, Consumer<String> skipped) {
+            this.zip = zip;
+            this.classEntries = classEntries;
+            this.from = from;
+            this.to = to;
+            this.jar = jar;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected PatternIndex compute() {
+            return scanEntries(zip.duplicate().order(ByteOrder.LITTLE_ENDIAN), classEntries, from, to, jar, skipped);
+        }
+    }
+
+    private static final class DirectoryTask extends RecursiveTask<PatternIndex> {
+        private static final long serialVersionUID = 1L;
+        private final File directory;
+        private final Consumer<String> skipped;
+
+        DirectoryTask(File directory, Consumer<String> skipped) {
+            this.directory = directory;
+            this.skipped = skipped;
+        }
+
+        @Override
+        protected PatternIndex compute() {
+            List<File> classFiles = new ArrayList<>();
+            collectClassFiles(directory, classFiles);
+            Worker worker = WORKERS.get();
+            PatternIndex.Builder builder = new PatternIndex.Builder();
+            for (File classFile : classFiles) {
+                try (FileChannel channel = FileChannel.open(classFile.toPath(), StandardOpenOption.READ)) {
+                    int size = (int) channel.size();
+                    ByteBuffer buffer = ByteBuffer.wrap(worker.inflate(size), 0, size);
+                    while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                        // read the whole file
+                    }
+                    buffer.flip();
+                    worker.reader.read(buffer, builder);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Unable to read " + classFile, e);
+                } catch (RuntimeException e) {
+                    skipped.accept(classFile + ": " + e);
+                }
+            }
+            return builder.build();
+        }
+
+        private static void collectClassFiles(File directory, List<File> classFiles) {
+            File[] files = directory.listFiles();
+            if (files == null) return;
+            for (File file : files) {
+                if (file.isDirectory()) collectClassFiles(file, classFiles);
+                else if (file.getName().endsWith(".class")) classFiles.add(file);
+            }
+        }
+    }
+
+    /**
+     * @return offsets of the central directory headers of the *.class entries
+     */
+    private static int[] classEntries(ByteBuffer zip) {
+        int eocd = findEndOfCentralDirectory(zip);
+        if (eocd < 0) return new int[0];
+        long entries = zip.getShort(eocd + 10) & 0xFFFF;
+        long offset = zip.getInt(eocd + 16) & 0xFFFFFFFFL;
+        if ((entries == 0xFFFF || offset == 0xFFFFFFFFL) && eocd >= 20 && zip.getInt(eocd - 20) == ZIP64_EOCD_LOCATOR_SIGNATURE) {
+            int zip64Eocd = (int) zip.getLong(eocd - 20 + 8);
+            entries = zip.getLong(zip64Eocd + 32);
+            offset = zip.getLong(zip64Eocd + 48);
+        }
+        int[] result = new int[(int) entries];
+        int count = 0;
+        int position = (int) offset;
+        for (long i = 0; i < entries && zip.getInt(position) == CENTRAL_SIGNATURE; i++) {
+            int nameLength = zip.getShort(position + 28) & 0xFFFF;
+            int extraLength = zip.getShort(position + 30) & 0xFFFF;
+            int commentLength = zip.getShort(position + 32) & 0xFFFF;
+            if (isClassEntry(zip, position + CENTRAL_HEADER_SIZE, nameLength)) result[count++] = position;
+            position += CENTRAL_HEADER_SIZE + nameLength + extraLength + commentLength;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private static int findEndOfCentralDirectory(ByteBuffer zip) {
+        int limit = Math.max(0, zip.limit() - 22 - 0xFFFF);
+        for (int position = zip.limit() - 22; position >= limit; position--) {
+            if (zip.getInt(position) == EOCD_SIGNATURE) return position;
+        }
+        return -1;
+    }
+
+    /**
+     * *.class, but not module-info.class and not META-INF/ (f.e. the multi-release META-INF/versions/) entries.
+     */
+    private static boolean isClassEntry(ByteBuffer zip, int name, int length) {
+        return endsWith(zip, name, length, CLASS_SUFFIX) && !startsWith(zip, name, length, META_INF) && !endsWith(zip, name, length, MODULE_INFO);
+    }
+
+    private static boolean startsWith(ByteBuffer zip, int name, int length, byte[] prefix) {
+        if (length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++) {
+            if (zip.get(name + i) != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean endsWith(ByteBuffer zip, int name, int length, byte[] suffix) {
+        if (length < suffix.length) return false;
+        int start = name + length - suffix.length;
+        for (int i = 0; i < suffix.length; i++) {
+            if (zip.get(start + i) != suffix[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param zip task local little-endian view of the jar mapping
+     */
+    private static PatternIndex scanEntries(ByteBuffer zip, int[] classEntries, int from, int to, File jar, Consumer<String> skipped) {
+        Worker worker = WORKERS.get();
+        PatternIndex.Builder builder = new PatternIndex.Builder();
+        ByteBuffer classView = zip.duplicate().order(ByteOrder.BIG_ENDIAN);
+        for (int i = from; i < to; i++) {
+            try {
+                worker.reader.read(entryData(zip, classView, classEntries[i], worker), builder);
+            } catch (RuntimeException e) {
+                skipped.accept(jar + "!/" + entryName(zip, classEntries[i]) + ": " + e);
+            }
+        }
+        return builder.build();
+    }
+
+    private static String entryName(ByteBuffer zip, int central) {
+        byte[] name = new byte[zip.getShort(central + 28) & 0xFFFF];
+        for (int i = 0; i < name.length; i++) name[i] = zip.get(central + CENTRAL_HEADER_SIZE + i);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the stored class file as the range of classView or the deflated one inflated into the worker buffer
+     * @throws IllegalArgumentException if the entry is truncated, malformed or compressed by an unsupported method
+     */
+    private static ByteBuffer entryData(ByteBuffer zip, ByteBuffer classView, int central, Worker worker) {
+        int method = zip.getShort(central + 10) & 0xFFFF;
+        int compressedSize = zip.getInt(central + 20);
+        int size = zip.getInt(central + 24);
+        int local = zip.getInt(central + 42);
+        int data = local + LOCAL_HEADER_SIZE + (zip.getShort(local + 26) & 0xFFFF) + (zip.getShort(local + 28) & 0xFFFF);
+        if (method == 0) {
+            classView.limit(classView.capacity());
+            classView.position(data);
+            classView.limit(data + size);
+            return classView;
+        }
+        if (method != 8) throw new IllegalArgumentException("Unsupported compression method " + method);
+        if (worker.compressed.length < compressedSize) worker.compressed = new byte[Math.max(compressedSize, worker.compressed.length * 2)];
+        worker.inflate(size);
+        zip.position(data);
+        zip.get(worker.compressed, 0, compressedSize);
+        Inflater inflater = worker.inflater;
+        inflater.reset();
+        inflater.setInput(worker.compressed, 0, compressedSize);
+        try {
+            int inflated = 0;
+            while (inflated < size && !inflater.finished()) {
+                int n = inflater.inflate(worker.inflated, inflated, size - inflated);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += n;
+            }
+            if (inflated < size) throw new IllegalArgumentException("Inflated " + inflated + " of " + size + " bytes");
+            worker.inflatedView.clear();
+            worker.inflatedView.limit(inflated);
+            return worker.inflatedView;
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Malformed deflated entry", e);
+        }
+    }
+
+}
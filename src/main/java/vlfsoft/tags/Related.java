@@ -13,7 +13,7 @@ public @interface Related {
     @Retention(RetentionPolicy.SOURCE)
     @Target({ElementType.ANNOTATION_TYPE})
     public @interface Principles {
-        Class [] value();
+        Class<?> [] value();
     }
 
     @Documented
@@ -21,7 +21,7 @@ public @interface Related {
     @Retention(RetentionPolicy.SOURCE)
     @Target({ElementType.ANNOTATION_TYPE, ElementType.FIELD})
     @interface Patterns {
-        Class [] value();
+        Class<?> [] value();
     }
 
 }
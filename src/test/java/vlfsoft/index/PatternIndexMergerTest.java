@@ -0,0 +1,62 @@
+package vlfsoft.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PatternIndexMergerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void streamingMergeEqualsMergeInMemory() throws IOException {
+        Random random = new Random(3);
+        List<PatternIndex> modules = new ArrayList<>();
+        List<File> files = new ArrayList<>();
+        for (int m = 0; m < 5; m++) {
+            // The packages overlap between the modules: the elements are joined, the annotations united.
+            PatternIndex module = PatternIndexTest.index(random, 3 + m, 10 + m * 7).build();
+            modules.add(module);
+            files.add(PatternIndexTest.file(folder, module));
+        }
+        modules.add(PatternIndex.EMPTY);
+        files.add(PatternIndexTest.file(folder, PatternIndex.EMPTY));
+        PatternIndex expected = PatternIndex.merge(modules);
+
+        File merged = new File(folder.getRoot(), "merged.idx");
+        PatternIndexMerger.merge(files, merged);
+        PatternIndexTest.assertSameIndex(expected, PatternIndexReader.map(merged));
+
+        File output = new File(folder.getRoot(), "updated.idx");
+        PatternIndexMerger merger = new PatternIndexMerger(folder.newFolder("work"), 3);
+        assertTrue(merger.update(files, output));
+        PatternIndexTest.assertSameIndex(expected, PatternIndexReader.map(output));
+        assertFalse(merger.update(files, output));
+
+        // One module changes: its segment and the output are merged again.
+        PatternIndex changed = new PatternIndex.Builder().addAll(modules.get(0))
+                .add("org.other.Added", PatternIndex.Kind.TYPE, null, PatternIndexTest.PATTERNS[2]).build();
+        try (OutputStream out = new FileOutputStream(files.get(0))) {
+            PatternIndexWriter.write(changed, out);
+        }
+        modules.set(0, changed);
+        assertTrue(merger.update(files, output));
+        PatternIndexTest.assertSameIndex(PatternIndex.merge(modules), PatternIndexReader.map(output));
+
+        // A removed module drops its elements.
+        assertTrue(merger.update(files.subList(0, 1), output));
+        PatternIndexTest.assertSameIndex(changed, PatternIndexReader.map(output));
+    }
+
+}
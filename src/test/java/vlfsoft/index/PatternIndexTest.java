@@ -0,0 +1,155 @@
+package vlfsoft.index;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PatternIndexTest {
+
+    static final String[] PATTERNS = {
+            "vlfsoft.patterns.GOF.Singleton", "vlfsoft.patterns.GOF.Flyweight", "vlfsoft.patterns.GOF.Proxy",
+            "vlfsoft.patterns.enterprise.peaa.PEAA.LazyLoad", "vlfsoft.patterns.ConcurrencyPattern.ThreadPool"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Types of the packages with their fields and methods, the keys share long prefixes over several blocks of the front coding.
+     */
+    static PatternIndex.Builder index(Random random, int packages, int types) {
+        PatternIndex.Builder builder = new PatternIndex.Builder();
+        for (int p = 0; p < packages; p++) {
+            String packageName = "com.acme.module" + p;
+            builder.add(packageName, PatternIndex.Kind.PACKAGE, null, PATTERNS[p % PATTERNS.length]);
+            for (int t = 0; t < types; t++) {
+                String type = packageName + ".Type" + t;
+                builder.add(type, PatternIndex.Kind.TYPE, null, PATTERNS[random.nextInt(PATTERNS.length)]);
+                builder.add(type + "#field" + t, PatternIndex.Kind.FIELD, type, PATTERNS[random.nextInt(PATTERNS.length)]);
+                String method = type + "#run(java.lang.String,int)";
+                builder.add(method, PatternIndex.Kind.METHOD, type, PATTERNS[random.nextInt(PATTERNS.length)]);
+                builder.add(method, PatternIndex.Kind.METHOD, type, PATTERNS[random.nextInt(PATTERNS.length)]);
+                builder.add(method + ":name", PatternIndex.Kind.PARAMETER, type, PATTERNS[random.nextInt(PATTERNS.length)]);
+            }
+        }
+        return builder;
+    }
+
+    private static byte[] bytes(PatternIndex index) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PatternIndexWriter.write(index, out);
+        return out.toByteArray();
+    }
+
+    static File file(TemporaryFolder folder, PatternIndex index) throws IOException {
+        File file = folder.newFile();
+        try (OutputStream out = new FileOutputStream(file)) {
+            PatternIndexWriter.write(index, out);
+        }
+        return file;
+    }
+
+    static void assertSameIndex(PatternIndex expected, PatternIndex actual) {
+        assertEquals(expected.annotationCount(), actual.annotationCount());
+        assertEquals(expected.elementCount(), actual.elementCount());
+        for (int i = 0; i < expected.annotationCount(); i++) {
+            assertEquals(expected.annotation(i), actual.annotation(i));
+            assertEquals(i, actual.annotationId(expected.annotation(i)));
+            assertArrayEquals(expected.annotation(i), expected.elementsAnnotatedWith(i), actual.elementsAnnotatedWith(i));
+        }
+        for (int i = 0; i < expected.elementCount(); i++) {
+            String element = expected.element(i);
+            assertEquals(element, actual.element(i));
+            assertEquals(element, i, actual.elementId(element));
+            assertEquals(element, expected.kind(i), actual.kind(i));
+            assertEquals(element, expected.enclosingType(i), actual.enclosingType(i));
+            assertArrayEquals(element, expected.annotationsOf(i), actual.annotationsOf(i));
+        }
+        assertEquals(-1, actual.annotationId("vlfsoft.patterns.GOF.Missing"));
+        assertEquals(-1, actual.elementId("com.acme.Missing"));
+        assertEquals(-1, actual.elementId(""));
+    }
+
+    @Test
+    public void writtenIndexIsReadTheSame() throws IOException {
+        PatternIndex index = index(new Random(1), 7, 40).build();
+        PatternIndex read = PatternIndexReader.read(new ByteArrayInputStream(bytes(index)));
+        assertSameIndex(index, read);
+        assertEquals(index.elementsAnnotatedWith(PATTERNS[0]), read.elementsAnnotatedWith(PATTERNS[0]));
+        assertEquals(Collections.emptyList(), read.annotationsOf("com.acme.Missing"));
+        assertSameIndex(PatternIndex.EMPTY, PatternIndexReader.read(new ByteArrayInputStream(bytes(PatternIndex.EMPTY))));
+    }
+
+    @Test
+    public void writtenIndexIsUsedInPlaceAndMapped() throws IOException {
+        PatternIndex index = index(new Random(1), 7, 40).build();
+        assertTrue(index.elementCount() > 10 * PatternIndexWriter.BLOCK_SIZE);
+        byte[] bytes = bytes(index);
+
+        // The stream is decoded into the arrays, the buffer is used as it is.
+        assertTrue(PatternIndexReader.read(new ByteArrayInputStream(bytes)) instanceof ArrayPatternIndex);
+        PatternIndex inPlace = PatternIndexReader.read(ByteBuffer.wrap(bytes));
+        assertTrue(inPlace instanceof MappedPatternIndex);
+        assertSameIndex(index, inPlace);
+        assertSameIndex(index, PatternIndexReader.map(file(folder, index)));
+        // The buffer from its position.
+        ByteBuffer shifted = ByteBuffer.allocate(bytes.length + 3);
+        shifted.position(3);
+        shifted.put(bytes).position(3);
+        assertSameIndex(index, PatternIndexReader.read(shifted));
+    }
+
+    @Test
+    public void keysNotSortedByUtf8BytesAreFound() throws IOException {
+        // U+FFFD sorts after the surrogates of U+1F600 in a String, before its 4 UTF-8 bytes.
+        PatternIndex index = new PatternIndex.Builder()
+                .add("com.acme.\uD83D\uDE00", PatternIndex.Kind.TYPE, null, PATTERNS[0])
+                .add("com.acme.\uFFFD", PatternIndex.Kind.TYPE, null, PATTERNS[1])
+                .add("com.acme.\u00e9t\u00e9", PatternIndex.Kind.TYPE, null, PATTERNS[1])
+                .build();
+        byte[] bytes = bytes(index);
+        assertEquals(PatternIndexWriter.FLAG_UNSORTED_BYTES, ByteBuffer.wrap(bytes).getShort(6) & PatternIndexWriter.FLAG_UNSORTED_BYTES);
+        assertSameIndex(index, PatternIndexReader.read(ByteBuffer.wrap(bytes)));
+        assertSameIndex(index, PatternIndexReader.map(file(folder, index)));
+    }
+
+    @Test
+    public void version1IsStillRead() throws IOException {
+        PatternIndex index = index(new Random(2), 2, 5).build();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(PatternIndexWriter.MAGIC);
+        out.writeShort(PatternIndexWriter.VERSION_1);
+        out.writeInt(index.annotationCount());
+        for (int i = 0; i < index.annotationCount(); i++) out.writeUTF(index.annotation(i));
+        out.writeInt(index.elementCount());
+        for (int i = 0; i < index.elementCount(); i++) {
+            out.writeUTF(index.element(i));
+            out.writeByte(index.kind(i).ordinal());
+            out.writeInt(index.enclosingType(i));
+        }
+        for (int i = 0; i < index.elementCount(); i++) writeIds(out, index.annotationsOf(i));
+        for (int i = 0; i < index.annotationCount(); i++) writeIds(out, index.elementsAnnotatedWith(i));
+
+        assertSameIndex(index, PatternIndexReader.read(new ByteArrayInputStream(bytes.toByteArray())));
+        // The merger converts it.
+        File version1 = folder.newFile();
+        try (OutputStream file = new FileOutputStream(version1)) {
+            bytes.writeTo(file);
+        }
+        File merged = new File(folder.getRoot(), "merged.idx");
+        PatternIndexMerger.merge(Collections.singletonList(version1), merged);
+        assertSameIndex(index, PatternIndexReader.map(merged));
+    }
+
+    private static void writeIds(DataOutputStream out, int[] ids) throws IOException {
+        out.writeInt(ids.length);
+        for (int id : ids) out.writeInt(id);
+    }
+
+}
@@ -0,0 +1,77 @@
+package vlfsoft.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import vlfsoft.runtime.breaker.CircuitBreaker;
+
+import javax.tools.Diagnostic;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerProcessorTest {
+
+    private static final String CLIENT = "package app;\n"
+            + "import vlfsoft.runtime.breaker.Breaker;\n"
+            + "public class Client implements java.util.function.Supplier<String> {\n"
+            + "    public final String greeting;\n"
+            + "    public int pings;\n"
+            + "    public Client() {\n"
+            + "        greeting = greet(\"constructor\");\n"
+            + "        ping();\n"
+            + "    }\n"
+            + "    @Breaker(name = \"greet\")\n"
+            + "    public String greet(String name) {\n"
+            + "        return \"hello \" + name;\n"
+            + "    }\n"
+            + "    @Breaker(name = \"ping\")\n"
+            + "    public void ping() {\n"
+            + "        pings++;\n"
+            + "    }\n"
+            + "    public String get() {\n"
+            + "        ping();\n"
+            + "        return greeting + \" \" + greet(\"get\") + \" \" + pings;\n"
+            + "    }\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void callsFromConstructorGoToOriginalMethods() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new CircuitBreakerProcessor(), CLIENT);
+        assertTrue(compilation.toString(), compilation.success);
+        assertTrue(compilation.generated("app.ClientGuarded"));
+        try (URLClassLoader loader = compilation.loader()) {
+            Class<?> guarded = loader.loadClass("app.ClientGuarded");
+            @SuppressWarnings("unchecked")
+            Supplier<String> client = (Supplier<String>) guarded.getConstructor().newInstance();
+            assertEquals("hello constructor hello get 2", client.get());
+            @SuppressWarnings("unchecked")
+            List<CircuitBreaker> breakers = (List<CircuitBreaker>) guarded.getMethod("circuitBreakers").invoke(client);
+            assertEquals(2, breakers.size());
+            // Only the calls after the constructor went through the breakers.
+            for (CircuitBreaker breaker : breakers) assertEquals(breaker.name(), 1, breaker.metrics().calls);
+        }
+    }
+
+    @Test
+    public void minimumOverCountWindowIsError() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new CircuitBreakerProcessor(), "package app;\n"
+                + "import vlfsoft.runtime.breaker.Breaker;\n"
+                + "public class Backend {\n"
+                + "    @Breaker(windowSize = 10, minimumNumberOfCalls = 20)\n"
+                + "    public String call() {\n"
+                + "        return \"\";\n"
+                + "    }\n"
+                + "}\n");
+        assertFalse(compilation.success);
+        List<String> errors = compilation.messages(Diagnostic.Kind.ERROR);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("minimumNumberOfCalls"));
+    }
+
+}
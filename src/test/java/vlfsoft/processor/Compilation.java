@@ -0,0 +1,112 @@
+package vlfsoft.processor;
+
+import vlfsoft.runtime.Generated;
+
+import javax.annotation.processing.Processor;
+import javax.tools.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-process javac with a processor: the sources are written to the directory, the annotations, the processors and the runtime
+ * (vlfsoft.runtime, a test dependency) are on the classpath.
+ */
+final class Compilation {
+
+    private static final Pattern PACKAGE = Pattern.compile("package\\s+([\\w.]+)\\s*;");
+    private static final Pattern TYPE = Pattern.compile("(?:class|interface|enum|@interface)\\s+(\\w+)");
+
+    final File classes;
+    final File generated;
+    final boolean success;
+    final List<Diagnostic<? extends JavaFileObject>> diagnostics;
+
+    private Compilation(File classes, File generated, boolean success, List<Diagnostic<? extends JavaFileObject>> diagnostics) {
+        this.classes = classes;
+        this.generated = generated;
+        this.success = success;
+        this.diagnostics = diagnostics;
+    }
+
+    static Compilation compile(File directory, Processor processor, String... sources) throws IOException {
+        File classes = new File(directory, "classes");
+        File generated = new File(directory, "generated");
+        Path sourceRoot = new File(directory, "src").toPath();
+        Files.createDirectories(classes.toPath());
+        Files.createDirectories(generated.toPath());
+        List<File> files = new ArrayList<>();
+        for (String source : sources) files.add(write(sourceRoot, source));
+
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, StandardCharsets.UTF_8)) {
+            fileManager.setLocation(StandardLocation.CLASS_PATH, Arrays.asList(classesOf(processor.getClass()),
+                    classesOf(Generated.class)));
+            fileManager.setLocation(StandardLocation.CLASS_OUTPUT, Collections.singletonList(classes));
+            fileManager.setLocation(StandardLocation.SOURCE_OUTPUT, Collections.singletonList(generated));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, null, null, fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections.singletonList(processor));
+            boolean success = task.call();
+            return new Compilation(classes, generated, success, diagnostics.getDiagnostics());
+        }
+    }
+
+    /**
+     * @return the class loader of the compiled classes, the test classes and the runtime are its parents.
+     */
+    URLClassLoader loader() throws IOException {
+        return new URLClassLoader(new URL[]{classes.toURI().toURL()}, Compilation.class.getClassLoader());
+    }
+
+    boolean generated(String qualifiedName) {
+        return new File(generated, qualifiedName.replace('.', '/') + ".java").isFile();
+    }
+
+    /**
+     * @return the messages of the kind, f.e. the errors.
+     */
+    List<String> messages(Diagnostic.Kind kind) {
+        List<String> messages = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics) {
+            if (diagnostic.getKind() == kind) messages.add(diagnostic.getMessage(null));
+        }
+        return messages;
+    }
+
+    @Override
+    public String toString() {
+        return diagnostics.toString();
+    }
+
+    private static File classesOf(Class<?> type) throws IOException {
+        try {
+            return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new IOException("No classes of " + type.getName(), e);
+        }
+    }
+
+    private static File write(Path root, String source) throws IOException {
+        Matcher packageName = PACKAGE.matcher(source);
+        Matcher typeName = TYPE.matcher(source);
+        if (!typeName.find()) throw new IllegalArgumentException("No type in " + source);
+        String path = (packageName.find() ? packageName.group(1).replace('.', '/') + "/" : "") + typeName.group(1) + ".java";
+        Path file = root.resolve(path);
+        Files.createDirectories(file.getParent());
+        Files.write(file, source.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+}
@@ -0,0 +1,101 @@
+package vlfsoft.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import java.io.File;
+import java.net.URLClassLoader;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.*;
+
+public class LazyLoadProcessorTest {
+
+    private static final String ORDER = "package app;\n"
+            + "import vlfsoft.patterns.enterprise.peaa.PEAA;\n"
+            + "public class Order {\n"
+            + "    @PEAA.LazyLoad CharSequence comment;\n"
+            + "    @PEAA.LazyLoad CharSequence note;\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static String customer(String packageName) {
+        return "package " + packageName + ";\n"
+                + "public interface Customer {\n"
+                + "    String name();\n"
+                + "}\n";
+    }
+
+    @Test
+    public void proxyOfJdkInterfaceFieldIsInPackageOfOwner() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new LazyLoadProcessor(), ORDER);
+        assertTrue(compilation.toString(), compilation.success);
+        assertTrue(compilation.generated("app.Order_CharSequenceVirtualProxy"));
+        assertFalse(new File(compilation.generated, "java/lang").exists());
+        try (URLClassLoader loader = compilation.loader()) {
+            Supplier<CharSequence> target = () -> "lazy";
+            CharSequence proxy = (CharSequence) loader.loadClass("app.Order_CharSequenceVirtualProxy")
+                    .getConstructor(Supplier.class).newInstance(target);
+            assertEquals(4, proxy.length());
+            assertEquals("az", proxy.subSequence(1, 3));
+        }
+    }
+
+    @Test
+    public void typesOfSameSimpleNameInClassesOfPackageHaveTheirOwnProxies() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new LazyLoadProcessor(), customer("a"), customer("b"),
+                "package app;\n"
+                        + "import vlfsoft.patterns.enterprise.peaa.PEAA;\n"
+                        + "public class Order {\n"
+                        + "    @PEAA.LazyLoad a.Customer customer;\n"
+                        + "}\n",
+                "package app;\n"
+                        + "import vlfsoft.patterns.enterprise.peaa.PEAA;\n"
+                        + "public class Invoice {\n"
+                        + "    @PEAA.LazyLoad b.Customer customer;\n"
+                        + "}\n");
+        assertTrue(compilation.toString(), compilation.success);
+        try (URLClassLoader loader = compilation.loader()) {
+            assertEquals(loader.loadClass("a.Customer"), loader.loadClass("app.Order_CustomerVirtualProxy").getInterfaces()[0]);
+            assertEquals(loader.loadClass("b.Customer"), loader.loadClass("app.Invoice_CustomerVirtualProxy").getInterfaces()[0]);
+        }
+    }
+
+    @Test
+    public void typesOfSameSimpleNameInOneClassAreError() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new LazyLoadProcessor(), customer("a"), customer("b"),
+                "package app;\n"
+                        + "import vlfsoft.patterns.enterprise.peaa.PEAA;\n"
+                        + "public class Order {\n"
+                        + "    @PEAA.LazyLoad a.Customer customer;\n"
+                        + "    @PEAA.LazyLoad b.Customer payer;\n"
+                        + "}\n");
+        assertFalse(compilation.success);
+        List<String> errors = compilation.messages(Diagnostic.Kind.ERROR);
+        assertEquals(errors.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("app.Order_CustomerVirtualProxy"));
+    }
+
+    @Test
+    public void fieldOfAnnotatedTypeUsesProxyOfType() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new LazyLoadProcessor(), "package a;\n"
+                        + "@vlfsoft.patterns.enterprise.peaa.PEAA.LazyLoad\n"
+                        + "public interface Customer {\n"
+                        + "    String name();\n"
+                        + "}\n",
+                "package app;\n"
+                        + "import vlfsoft.patterns.enterprise.peaa.PEAA;\n"
+                        + "public class Order {\n"
+                        + "    @PEAA.LazyLoad a.Customer customer = new a.CustomerVirtualProxy(() -> () -> \"Ann\");\n"
+                        + "}\n");
+        assertTrue(compilation.toString(), compilation.success);
+        assertTrue(compilation.generated("a.CustomerVirtualProxy"));
+        assertFalse(compilation.generated("app.Order_CustomerVirtualProxy"));
+    }
+
+}
@@ -0,0 +1,160 @@
+package vlfsoft.processor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SingletonProcessorTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @return the lines of the errors.
+     */
+    private static List<Long> errorLines(Compilation compilation) {
+        List<Long> lines = new ArrayList<>();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : compilation.diagnostics) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) lines.add(diagnostic.getLineNumber());
+        }
+        return lines;
+    }
+
+    @Test
+    public void doubleCheckedLockingOfNonVolatileFieldIsErrorOnField() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.ConcurrencyPattern;\n"
+                        + "public class Registry {\n"
+                        + "    @ConcurrencyPattern.DoubleCheckedLocking private static Registry broken;\n"
+                        + "    @ConcurrencyPattern.DoubleCheckedLocking private static volatile Registry fixed;\n"
+                        + "    private static Registry instance;\n"
+                        + "    private Object cache;\n"
+                        + "    @ConcurrencyPattern.DoubleCheckedLocking\n"
+                        + "    public static Registry get() {\n"
+                        + "        return instance;\n"
+                        + "    }\n"
+                        + "}\n");
+        assertFalse(compilation.success);
+        List<String> errors = compilation.messages(Diagnostic.Kind.ERROR);
+        assertEquals(compilation.toString(), 2, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("Double-checked locking of the non-volatile field broken:"));
+        // The method reports the static field of its result type, not the unrelated one.
+        assertTrue(errors.get(1), errors.get(1).startsWith("Double-checked locking of the non-volatile field instance:"));
+        List<Long> lines = errorLines(compilation);
+        assertEquals(Long.valueOf(4), lines.get(0));
+        assertEquals(Long.valueOf(6), lines.get(1));
+    }
+
+    @Test
+    public void doubleCheckedLockingOfClassChecksStaticFieldsOfItsType() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.ConcurrencyPattern;\n"
+                        + "@ConcurrencyPattern.DoubleCheckedLocking\n"
+                        + "public class Config {\n"
+                        + "    private static final Config DEFAULT = new Config();\n"
+                        + "    private static Config current;\n"
+                        + "    private String name;\n"
+                        + "}\n");
+        assertFalse(compilation.success);
+        List<String> errors = compilation.messages(Diagnostic.Kind.ERROR);
+        assertEquals(compilation.toString(), 1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).contains("field current"));
+        assertEquals(Long.valueOf(6), errorLines(compilation).get(0));
+    }
+
+    @Test
+    public void volatileDoubleCheckedLockingCompiles() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.ConcurrencyPattern;\n"
+                        + "public class Registry {\n"
+                        + "    @ConcurrencyPattern.DoubleCheckedLocking private static volatile Registry instance;\n"
+                        + "    public static Registry get() {\n"
+                        + "        Registry registry = instance;\n"
+                        + "        if (registry == null) {\n"
+                        + "            synchronized (Registry.class) {\n"
+                        + "                if ((registry = instance) == null) instance = registry = new Registry();\n"
+                        + "            }\n"
+                        + "        }\n"
+                        + "        return registry;\n"
+                        + "    }\n"
+                        + "}\n");
+        assertTrue(compilation.toString(), compilation.success);
+        assertTrue(compilation.messages(Diagnostic.Kind.ERROR).isEmpty());
+    }
+
+    @Test
+    public void lazyAndEagerIsError() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.GOF;\n"
+                        + "@GOF.Singleton.Implementation.Lazy @GOF.Singleton.Implementation.Eager\n"
+                        + "public class Clock {\n"
+                        + "}\n");
+        assertFalse(compilation.success);
+        assertEquals(compilation.toString(), 1, compilation.messages(Diagnostic.Kind.ERROR).size());
+        assertFalse(compilation.generated("app.ClockSingleton"));
+    }
+
+    @Test
+    public void synchronizedAccessorOfLazySingletonIsWarning() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.GOF;\n"
+                        + "@GOF.Singleton.Implementation.Lazy\n"
+                        + "public class Clock {\n"
+                        + "    private static Clock instance;\n"
+                        + "    public static synchronized Clock getInstance() {\n"
+                        + "        if (instance == null) instance = new Clock();\n"
+                        + "        return instance;\n"
+                        + "    }\n"
+                        + "}\n");
+        assertTrue(compilation.toString(), compilation.success);
+        List<String> warnings = compilation.messages(Diagnostic.Kind.WARNING);
+        assertEquals(compilation.toString(), 1, warnings.size());
+        assertTrue(warnings.get(0), warnings.get(0).startsWith("Every call of the synchronized accessor locks Clock.class"));
+    }
+
+    @Test
+    public void lazyAndEagerAccessorsReturnOneInstance() throws Exception {
+        Compilation compilation = Compilation.compile(folder.getRoot(), new SingletonProcessor(),
+                "package app;\n"
+                        + "import vlfsoft.patterns.GOF;\n"
+                        + "@GOF.Singleton.Implementation.Lazy\n"
+                        + "public class Clock {\n"
+                        + "    public static int created;\n"
+                        + "    public Clock() {\n"
+                        + "        created++;\n"
+                        + "    }\n"
+                        + "    @GOF.Singleton.Implementation.Eager\n"
+                        + "    static StringBuilder load() {\n"
+                        + "        return new StringBuilder(\"loaded\");\n"
+                        + "    }\n"
+                        + "}\n");
+        assertTrue(compilation.toString(), compilation.success);
+        try (URLClassLoader loader = compilation.loader()) {
+            Class<?> clock = loader.loadClass("app.Clock");
+            Class<?> lazy = loader.loadClass("app.ClockSingleton");
+            // The holder is not initialized with the accessor class.
+            assertEquals(0, clock.getField("created").getInt(null));
+            Object instance = lazy.getMethod("get").invoke(null);
+            assertSame(instance, lazy.getMethod("get").invoke(null));
+            assertEquals(1, clock.getField("created").getInt(null));
+
+            Object loaded = loader.loadClass("app.ClockLoadSingleton").getMethod("get").invoke(null);
+            assertEquals("loaded", loaded.toString());
+            assertSame(loaded, loader.loadClass("app.ClockLoadSingleton").getMethod("get").invoke(null));
+        }
+    }
+
+}
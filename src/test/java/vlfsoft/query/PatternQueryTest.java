@@ -0,0 +1,141 @@
+package vlfsoft.query;
+
+import org.junit.Test;
+import vlfsoft.index.PatternIndex;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class PatternQueryTest {
+
+    /**
+     * The frequencies differ by the orders of magnitude: the rare and the frequent lists are galloped, the dense ones - bitmaps.
+     */
+    private static final String[] ANNOTATIONS = {"vlfsoft.patterns.DDD.Aggregate.Root", "vlfsoft.patterns.PEAA.OptimisticOfflineLock",
+            "vlfsoft.patterns.DDD.InfrastructureLayer", "vlfsoft.patterns.EIP.MessageEndpoint.EventDrivenConsumer", "vlfsoft.patterns.GOF.Singleton"};
+    private static final double[] FREQUENCIES = {0.002, 0.05, 0.3, 0.6, 0.9};
+
+    private static PatternIndex index(Random random, int types) {
+        PatternIndex.Builder builder = new PatternIndex.Builder();
+        for (int t = 0; t < types; t++) {
+            String type = "com.acme.Type" + t;
+            add(builder, random, type, PatternIndex.Kind.TYPE, null);
+            String nested = type + "$Nested";
+            add(builder, random, nested, PatternIndex.Kind.TYPE, type);
+            add(builder, random, nested + "#handle()", PatternIndex.Kind.METHOD, nested);
+            add(builder, random, type + "#id", PatternIndex.Kind.FIELD, type);
+        }
+        return builder.build();
+    }
+
+    private static void add(PatternIndex.Builder builder, Random random, String element, PatternIndex.Kind kind, String enclosingType) {
+        boolean added = false;
+        for (int i = 0; i < ANNOTATIONS.length; i++) {
+            if (random.nextDouble() < FREQUENCIES[i]) {
+                builder.add(element, kind, enclosingType, ANNOTATIONS[i]);
+                added = true;
+            }
+        }
+        // An element of the index has at least one annotation.
+        if (!added) builder.add(element, kind, enclosingType, ANNOTATIONS[ANNOTATIONS.length - 1]);
+    }
+
+    private static boolean annotated(PatternIndex index, int element, String annotation) {
+        return index.annotationsOf(index.element(element)).contains(annotation);
+    }
+
+    /**
+     * The query evaluated element by element.
+     */
+    private static int[] scan(PatternIndex index, List<String> required, List<String> excluded, PatternIndex.Kind kind, List<String> inside) {
+        List<Integer> result = new ArrayList<>();
+        next:
+        for (int element = 0; element < index.elementCount(); element++) {
+            for (String annotation : required) {
+                if (!annotated(index, element, annotation)) continue next;
+            }
+            for (String annotation : excluded) {
+                if (annotated(index, element, annotation)) continue next;
+            }
+            if (kind != null && index.kind(element) != kind) continue;
+            for (String annotation : inside) {
+                boolean found = false;
+                for (int type = index.enclosingType(element); type >= 0; type = index.enclosingType(type)) {
+                    found |= annotated(index, type, annotation);
+                }
+                if (!found) continue next;
+            }
+            result.add(element);
+        }
+        int[] ids = new int[result.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = result.get(i);
+        return ids;
+    }
+
+    @Test
+    public void queryMatchesScanOfElements() {
+        Random random = new Random(7);
+        PatternIndex index = index(random, 3000);
+        PatternIndex.Kind[] kinds = {null, PatternIndex.Kind.TYPE, PatternIndex.Kind.METHOD};
+        for (int round = 0; round < 300; round++) {
+            List<String> terms = new ArrayList<>(Arrays.asList(ANNOTATIONS));
+            Collections.shuffle(terms, random);
+            List<String> required = terms.subList(0, random.nextInt(4));
+            List<String> excluded = terms.subList(required.size(), required.size() + random.nextInt(2));
+            List<String> inside = random.nextInt(3) == 0 ? Collections.singletonList(terms.get(4)) : Collections.<String>emptyList();
+            PatternIndex.Kind kind = kinds[random.nextInt(kinds.length)];
+
+            PatternQuery query = PatternQuery.all();
+            for (String annotation : required) query.and(annotation);
+            for (String annotation : excluded) query.not(annotation);
+            for (String annotation : inside) query.inside(annotation);
+            query.kind(kind);
+            int[] expected = scan(index, required, excluded, kind, inside);
+            assertArrayEquals(query.toString(), expected, query.execute(index));
+            // The text form is the same query.
+            assertArrayEquals(query.toString(), expected, PatternQuery.parse(query.toString()).execute(index));
+        }
+    }
+
+    @Test
+    public void intersectGallopsLongerList() {
+        int[] frequent = new int[10_000];
+        for (int i = 0; i < frequent.length; i++) frequent[i] = i * 2;
+        int[] rare = {-1, 0, 3, 4, 9_998, 19_998, 19_999, 30_000};
+        int size = PatternQuery.intersect(rare, rare.length, frequent);
+        assertArrayEquals(new int[]{0, 4, 9_998, 19_998}, Arrays.copyOf(rare, size));
+
+        int[] similar = {1, 2, 4, 6, 7};
+        size = PatternQuery.intersect(similar, similar.length, new int[]{2, 3, 4, 7, 8});
+        assertArrayEquals(new int[]{2, 4, 7}, Arrays.copyOf(similar, size));
+        assertEquals(0, PatternQuery.intersect(new int[]{5}, 1, new int[0]));
+    }
+
+    @Test
+    public void annotationIsResolvedBySuffix() {
+        PatternIndex index = new PatternIndex.Builder()
+                .add("com.acme.Order", PatternIndex.Kind.TYPE, null, "vlfsoft.patterns.DDD.Aggregate.Root")
+                .add("com.acme.Order", PatternIndex.Kind.TYPE, null, "vlfsoft.patterns.DDD.Entity.Root")
+                .add("com.acme.Order#lines", PatternIndex.Kind.FIELD, "com.acme.Order", "vlfsoft.patterns.PEAA.LazyLoad")
+                .build();
+        assertEquals(Collections.singletonList("com.acme.Order"), PatternQuery.parse("@Aggregate.Root").elements(index));
+        assertEquals(Collections.singletonList("com.acme.Order#lines"), PatternQuery.parse("LazyLoad in:Aggregate.Root").elements(index));
+        // Not used in the index: required matches nothing, excluded excludes nothing.
+        assertEquals(Collections.emptyList(), PatternQuery.annotatedWith("GOF.Singleton").elements(index));
+        assertEquals(2, PatternQuery.parse("!GOF.Singleton").elements(index).size());
+        try {
+            PatternQuery.parse("Root").execute(index);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            PatternQuery.parse("LazyLoad & !");
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals("@PEAA.LazyLoad & !Entity.Root & kind:field & in:Aggregate.Root",
+                PatternQuery.parse("kind:FIELD in:Aggregate.Root !Entity.Root @PEAA.LazyLoad").toString());
+    }
+
+}
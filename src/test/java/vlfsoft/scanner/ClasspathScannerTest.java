@@ -0,0 +1,165 @@
+package vlfsoft.scanner;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import vlfsoft.index.PatternIndex;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+public class ClasspathScannerTest {
+
+    private static final String MARK = "package vlfsoft.fixture;\n"
+            + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.CLASS)\n"
+            + "public @interface Mark {\n"
+            + "}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<String> skipped = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, byte[]> classes = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        File sources = folder.newFolder("src");
+        File output = folder.newFolder("classes");
+        List<String> files = new ArrayList<>();
+        files.add(write(sources, "vlfsoft/fixture/Mark.java", MARK));
+        files.add(write(sources, "app/A.java", "package app;\n"
+                + "@vlfsoft.fixture.Mark public class A {\n"
+                + "    @vlfsoft.fixture.Mark void run(int times, String[] names) {\n"
+                + "    }\n"
+                + "}\n"));
+        files.add(write(sources, "app/B.java", "package app;\n"
+                + "public class B {\n"
+                + "    @vlfsoft.fixture.Mark long id;\n"
+                + "    static final double RATE = 0.5;\n"
+                + "}\n"));
+        List<String> arguments = new ArrayList<>(Arrays.asList("-d", output.getPath()));
+        arguments.addAll(files);
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertEquals(0, compiler.run(null, null, null, arguments.toArray(new String[0])));
+        for (String name : new String[]{"app/A.class", "app/B.class"}) {
+            classes.put(name, Files.readAllBytes(new File(output, name).toPath()));
+        }
+    }
+
+    private static String write(File root, String path, String source) throws IOException {
+        File file = new File(root, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), source.getBytes(StandardCharsets.UTF_8));
+        return file.getPath();
+    }
+
+    private File jar(String name, Map<String, byte[]> entries, boolean stored) throws IOException {
+        File jar = new File(folder.getRoot(), name);
+        try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                ZipEntry zipEntry = new ZipEntry(entry.getKey());
+                if (stored) {
+                    CRC32 crc = new CRC32();
+                    crc.update(entry.getValue());
+                    zipEntry.setMethod(ZipEntry.STORED);
+                    zipEntry.setSize(entry.getValue().length);
+                    zipEntry.setCrc(crc.getValue());
+                }
+                out.putNextEntry(zipEntry);
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private PatternIndex scan(File... classpath) {
+        return new ClasspathScanner(ForkJoinPool.commonPool(), skipped::add).scan(Arrays.asList(classpath));
+    }
+
+    private static void assertFixture(PatternIndex index) {
+        assertEquals(Arrays.asList("app.A", "app.A#run(int,java.lang.String[])", "app.B#id"),
+                sorted(index.elementsAnnotatedWith("vlfsoft.fixture.Mark")));
+        assertEquals(PatternIndex.Kind.METHOD, index.kind(index.elementId("app.A#run(int,java.lang.String[])")));
+        assertEquals(PatternIndex.Kind.FIELD, index.kind(index.elementId("app.B#id")));
+    }
+
+    private static List<String> sorted(List<String> values) {
+        List<String> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        return sorted;
+    }
+
+    @Test
+    public void storedAndDeflatedJarsAndDirectoriesGiveTheSameIndex() throws IOException {
+        assertFixture(scan(jar("stored.jar", classes, true)));
+        assertFixture(scan(jar("deflated.jar", classes, false)));
+        assertFixture(scan(new File(folder.getRoot(), "classes")));
+        assertEquals(Collections.emptyList(), skipped);
+    }
+
+    @Test
+    public void malformedClassesAreSkippedAndReported() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>(classes);
+        byte[] unknownTag = classes.get("app/A.class").clone();
+        // The tag of the first constant: after magic, minor_version, major_version and constant_pool_count.
+        unknownTag[10] = 99;
+        entries.put("app/UnknownTag.class", unknownTag);
+        entries.put("app/Truncated.class", Arrays.copyOf(classes.get("app/B.class"), classes.get("app/B.class").length / 2));
+
+        assertFixture(scan(jar("stored.jar", entries, true)));
+        assertFixture(scan(jar("deflated.jar", entries, false)));
+        assertEquals(skipped.toString(), 4, skipped.size());
+        for (String entry : skipped) {
+            assertTrue(entry, entry.contains("!/app/UnknownTag.class: ") || entry.contains("!/app/Truncated.class: "));
+        }
+        assertTrue(skipped.toString(), skipped.get(0).contains("Unknown constant pool tag 99")
+                || skipped.get(1).contains("Unknown constant pool tag 99"));
+    }
+
+    @Test
+    public void truncatedEntriesOfJarAreSkipped() throws IOException {
+        File jar = jar("truncated.jar", classes, true);
+        byte[] bytes = Files.readAllBytes(jar.toPath());
+        // The central directory of A.class claims more bytes, than the jar has.
+        byte[] name = "app/A.class".getBytes(StandardCharsets.US_ASCII);
+        int central = lastIndexOf(bytes, name) - 46;
+        assertEquals(0x02014b50, littleEndianInt(bytes, central));
+        putLittleEndianInt(bytes, central + 24, bytes.length);
+        Files.write(jar.toPath(), bytes);
+
+        PatternIndex index = scan(jar);
+        assertEquals(Collections.singletonList("app.B#id"), index.elementsAnnotatedWith("vlfsoft.fixture.Mark"));
+        assertEquals(skipped.toString(), 1, skipped.size());
+        assertTrue(skipped.get(0), skipped.get(0).contains("!/app/A.class: "));
+    }
+
+    private static int lastIndexOf(byte[] bytes, byte[] value) {
+        for (int i = bytes.length - value.length; i >= 0; i--) {
+            if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + value.length), value)) return i;
+        }
+        return -1;
+    }
+
+    private static int littleEndianInt(byte[] bytes, int position) {
+        return (bytes[position] & 0xFF) | (bytes[position + 1] & 0xFF) << 8 | (bytes[position + 2] & 0xFF) << 16 | (bytes[position + 3] & 0xFF) << 24;
+    }
+
+    private static void putLittleEndianInt(byte[] bytes, int position, int value) {
+        for (int i = 0; i < 4; i++) bytes[position + i] = (byte) (value >>> 8 * i);
+    }
+
+}